@@ -43,11 +43,28 @@ public final class Configs {
      */
     public static final String SECURE_STORE_UPDATE_LOCATION_ENABLED = "twill.secure.store.update.location.enabled";
 
+    /**
+     * Number of threads for renewing the secure store of running applications in parallel. It is also the
+     * maximum number of concurrent calls to the {@link org.apache.twill.api.security.SecureStoreRenewer}.
+     */
+    public static final String SECURE_STORE_RENEWAL_THREADS = "twill.secure.store.renewal.threads";
+
+    /**
+     * Maximum number of attempts to renew the secure store of an application in each renewal, with exponential
+     * backoff between attempts. Applications that still fail are retried with the retry delay of the renewer.
+     */
+    public static final String SECURE_STORE_RENEWAL_MAX_ATTEMPTS = "twill.secure.store.renewal.max.attempts";
+
     /**
      * Specifies the local directory for twill to store files generated at runtime.
      */
     public static final String LOCAL_STAGING_DIRECTORY = "twill.local.staging.dir";
 
+    /**
+     * Setting the maximum number of files being copied in parallel when staging files of an application.
+     */
+    public static final String STAGING_COPY_PARALLELISM = "twill.staging.copy.parallelism";
+
     /**
      * Setting caching directory name for location cache.
      */
@@ -100,6 +117,36 @@ public final class Configs {
      */
     public static final String FILE_CONTEXT_CACHE_MAX_SIZE = "twill.file.context.cache.max.size";
 
+    /**
+     * Setting for enabling the generation of a class data sharing archive for the runnable container JVMs.
+     * When enabled, a training run is performed at bundle time to produce the archive, which is then localized
+     * to the containers and used if the container JVM matches the JVM that created the archive.
+     */
+    public static final String JAVA_CDS_ENABLED = "twill.java.cds.enabled";
+
+    /**
+     * Maximum time in seconds allowed for the class data sharing archive training run.
+     */
+    public static final String JAVA_CDS_TRAINING_TIMEOUT_SECONDS = "twill.java.cds.training.timeout.seconds";
+
+    /**
+     * Interval in seconds for runnables to report metrics recorded through
+     * {@link org.apache.twill.api.TwillContext#getMetrics()} to the application master.
+     */
+    public static final String METRICS_REPORT_INTERVAL_SECONDS = "twill.metrics.report.interval.seconds";
+
+    /**
+     * Interval in seconds for the application master to evaluate the
+     * {@link org.apache.twill.api.autoscale.AutoscalePolicy} of runnables.
+     */
+    public static final String AUTOSCALE_INTERVAL_SECONDS = "twill.autoscale.interval.seconds";
+
+    /**
+     * Number of ZooKeeper sessions used by the {@link org.apache.twill.api.TwillRunnerService}, with operations
+     * routed to sessions by application name.
+     */
+    public static final String ZK_CLIENT_SHARDS = "twill.zk.client.shards";
+
     private Keys() {
     }
   }
@@ -119,6 +166,11 @@ public final class Configs {
      */
     public static final String LOCAL_STAGING_DIRECTORY = System.getProperty("java.io.tmpdir");
 
+    /**
+     * Default to copy up to four files in parallel when staging files of an application.
+     */
+    public static final int STAGING_COPY_PARALLELISM = 4;
+
     /**
      * Default expiration is one day for location cache.
      */
@@ -144,11 +196,45 @@ public final class Configs {
      */
     public static final boolean LOG_COLLECTION_ENABLED = true;
 
+    /**
+     * Default to renew the secure store of up to eight applications in parallel.
+     */
+    public static final int SECURE_STORE_RENEWAL_THREADS = 8;
+
+    /**
+     * Default to make three attempts for renewing the secure store of an application.
+     */
+    public static final int SECURE_STORE_RENEWAL_MAX_ATTEMPTS = 3;
+
     /**
      * Default size of the file context cache.
      */
     public static final int FILE_CONTEXT_CACHE_MAX_SIZE = 100;
 
+    /**
+     * Default to not generate class data sharing archive.
+     */
+    public static final boolean JAVA_CDS_ENABLED = false;
+
+    /**
+     * Default to allow five minutes for the class data sharing archive training run.
+     */
+    public static final long JAVA_CDS_TRAINING_TIMEOUT_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+
+    /**
+     * Default to report metrics every ten seconds.
+     */
+    public static final long METRICS_REPORT_INTERVAL_SECONDS = 10L;
+
+    /**
+     * Default to evaluate autoscale policies every ten seconds.
+     */
+    public static final long AUTOSCALE_INTERVAL_SECONDS = 10L;
+
+    /**
+     * Default to use a single ZooKeeper session.
+     */
+    public static final int ZK_CLIENT_SHARDS = 1;
 
     private Defaults() {
     }
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A counting semaphore shared by all instances of a {@link TwillApplication}. At most the number of permits
+ * given when the semaphore is created can be acquired at the same time across all instances.
+ * <p/>
+ * Unlike {@link java.util.concurrent.locks.Lock}, permits are not owned by threads. A permit acquired by one thread
+ * can be released by another thread using the same semaphore object.
+ */
+public interface DistributedSemaphore {
+
+  /**
+   * Returns the number of permits of this semaphore.
+   */
+  int getPermits();
+
+  /**
+   * Acquires a permit, blocking until one is available.
+   *
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  void acquire() throws InterruptedException;
+
+  /**
+   * Acquires a permit only if one is available at the time of invocation.
+   *
+   * @return {@code true} if a permit was acquired, {@code false} otherwise
+   */
+  boolean tryAcquire();
+
+  /**
+   * Acquires a permit if one becomes available within the given waiting time.
+   *
+   * @param timeout the maximum time to wait for a permit
+   * @param unit the time unit of the timeout argument
+   * @return {@code true} if a permit was acquired, {@code false} if the waiting time elapsed
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException;
+
+  /**
+   * Releases a permit acquired through this semaphore object.
+   *
+   * @throws IllegalStateException if there is no permit acquired through this object
+   */
+  void release();
+}
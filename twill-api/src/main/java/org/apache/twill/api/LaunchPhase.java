@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api;
+
+/**
+ * Phases in the launch of an application and its containers, in the order they happen. The time of each phase is
+ * recorded by the process that observes it, hence the time between two phases recorded on different hosts
+ * (e.g. between {@link #LAUNCH_REQUESTED} and {@link #JVM_STARTED}) is subject to clock skew between those hosts.
+ */
+public enum LaunchPhase {
+
+  /**
+   * The client started preparing the application for launch.
+   */
+  PREPARE_STARTED,
+
+  /**
+   * The client completed bundling and uploading the application jars and files.
+   */
+  BUNDLE_COMPLETED,
+
+  /**
+   * The client submitted the application to the resource manager.
+   */
+  SUBMITTED,
+
+  /**
+   * The application master requested a container from the resource manager.
+   */
+  CONTAINER_REQUESTED,
+
+  /**
+   * The resource manager allocated a container to the application master.
+   */
+  CONTAINER_ALLOCATED,
+
+  /**
+   * The application master requested the node manager to launch the container.
+   */
+  LAUNCH_REQUESTED,
+
+  /**
+   * The JVM of the container started. The time before this phase includes resource localization by the node manager.
+   */
+  JVM_STARTED,
+
+  /**
+   * The launcher completed building the classpath of the container.
+   */
+  CLASSPATH_BUILT,
+
+  /**
+   * The {@link TwillRunnable#initialize(TwillContext)} method is about to be called.
+   */
+  INITIALIZE_STARTED,
+
+  /**
+   * The container is running.
+   */
+  RUNNING
+}
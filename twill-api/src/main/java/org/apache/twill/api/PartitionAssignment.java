@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api;
+
+import org.apache.twill.common.Cancellable;
+
+import java.util.Set;
+
+/**
+ * Assignment of a fixed number of partitions of work among all live instances of a {@link TwillRunnable} that
+ * participate with the same name. Each partition is owned by at most one instance at any time. When instances join
+ * or leave, only the partitions needed to keep the load balanced are moved between instances.
+ * <p/>
+ * Partitions are moved with a two-phase handoff. The previous owner is notified through
+ * {@link PartitionListener#released(Set)} and the new owner is only notified through
+ * {@link PartitionListener#acquired(Set)} after the previous owner returned from the call.
+ * <p/>
+ * Calling {@link #cancel()} leaves the assignment and releases all partitions owned by this instance.
+ */
+public interface PartitionAssignment extends Cancellable {
+
+  /**
+   * Returns the name of this partition assignment.
+   */
+  String getName();
+
+  /**
+   * Returns the total number of partitions.
+   */
+  int getNumPartitions();
+
+  /**
+   * Returns an immutable set of partitions currently owned by this instance.
+   */
+  Set<Integer> getPartitions();
+
+  /**
+   * Adds a {@link PartitionListener} to receive changes in partitions owned by this instance. The listener is
+   * called with the partitions currently owned right after it is added. Calls to the listener are made from
+   * a single thread.
+   *
+   * @param listener the listener to add
+   * @return a {@link Cancellable} to remove the listener
+   */
+  Cancellable addListener(PartitionListener listener);
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api;
+
+import java.util.Set;
+
+/**
+ * Listener for changes in partitions owned by an instance, as given by {@link PartitionAssignment}.
+ */
+public interface PartitionListener {
+
+  /**
+   * Invoked when partitions are acquired by this instance. Work on those partitions can be started.
+   *
+   * @param partitions the newly acquired partitions
+   */
+  void acquired(Set<Integer> partitions);
+
+  /**
+   * Invoked when partitions are being released by this instance. Work on those partitions has to be stopped
+   * before this method returns, as another instance can acquire them right after.
+   *
+   * @param partitions the partitions being released
+   */
+  void released(Set<Integer> partitions);
+}
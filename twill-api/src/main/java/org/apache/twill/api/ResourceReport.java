@@ -18,6 +18,7 @@
 package org.apache.twill.api;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -61,4 +62,16 @@ public interface ResourceReport {
    * @return list of services of the application master.
    */
   List<String> getServices();
+
+  /**
+   * Get a summary of the launch of all instances of the specified runnable. For each {@link LaunchPhase}, it is
+   * the maximum time in milliseconds taken by an instance to reach that phase from the phase recorded before it.
+   *
+   * @param runnableName the runnable name.
+   * @return launch durations of the runnable, ordered by the phases. The default implementation returns an empty map.
+   * @see TwillRunResources#getLaunchTimeline()
+   */
+  default Map<LaunchPhase, Long> getLaunchSummary(String runnableName) {
+    return Collections.emptyMap();
+  }
 }
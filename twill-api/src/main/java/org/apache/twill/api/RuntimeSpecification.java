@@ -17,7 +17,10 @@
  */
 package org.apache.twill.api;
 
+import org.apache.twill.api.autoscale.AutoscalePolicySpecification;
+
 import java.util.Collection;
+import javax.annotation.Nullable;
 
 /**
  * Specifications for runtime requirements.
@@ -31,4 +34,11 @@ public interface RuntimeSpecification {
   ResourceSpecification getResourceSpecification();
 
   Collection<LocalFile> getLocalFiles();
+
+  /**
+   * Returns the specification of the {@link org.apache.twill.api.autoscale.AutoscalePolicy} of the runnable or
+   * {@code null} if the runnable is not autoscaled.
+   */
+  @Nullable
+  AutoscalePolicySpecification getAutoscalePolicy();
 }
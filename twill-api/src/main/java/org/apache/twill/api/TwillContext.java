@@ -17,12 +17,17 @@
  */
 package org.apache.twill.api;
 
+import org.apache.twill.api.metrics.MetricsRegistry;
 import org.apache.twill.common.Cancellable;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.apache.twill.discovery.ServiceDiscovered;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
 /**
  * Represents the runtime context of a {@link TwillRunnable}.
@@ -96,6 +101,33 @@ public interface TwillContext extends ServiceAnnouncer, DiscoveryServiceClient {
    */
   Cancellable electLeader(String name, ElectionHandler participantHandler);
 
+  /**
+   * Register to participate in multiple leader elections by instances within the same {@link TwillApplication}.
+   * It is the same as calling {@link #electLeader(String, ElectionHandler)} for each entry of the given map, except
+   * that implementations may share threads and handling of ZooKeeper connection events among the elections, and
+   * coalesce listings of participants of the same election when they are requested at the same time, for example
+   * after reconnecting to ZooKeeper. Handlers should return quickly, as they may be called from threads shared by
+   * the elections. The default implementation calls {@link #electLeader(String, ElectionHandler)} for each entry.
+   *
+   * @param participantHandlers map from the unique name of each election to the handler of the election
+   * @return A {@link org.apache.twill.common.Cancellable} object representing this candidate's participation in
+   *         all the elections.
+   */
+  default Cancellable electLeaders(Map<String, ? extends ElectionHandler> participantHandlers) {
+    final List<Cancellable> cancellables = new ArrayList<>(participantHandlers.size());
+    for (Map.Entry<String, ? extends ElectionHandler> entry : participantHandlers.entrySet()) {
+      cancellables.add(electLeader(entry.getKey(), entry.getValue()));
+    }
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        for (Cancellable cancellable : cancellables) {
+          cancellable.cancel();
+        }
+      }
+    };
+  }
+
   /**
    * Creates a {@link Lock} for performing locking mechanism within the same {@link TwillApplication}.
    * The lock created is a reentrant such that if the lock is owned by the current thread, it will return immediately.
@@ -104,4 +136,56 @@ public interface TwillContext extends ServiceAnnouncer, DiscoveryServiceClient {
    * @return A {@link Lock} object
    */
   Lock createLock(String name);
+
+  /**
+   * Creates a {@link ReadWriteLock} for performing locking mechanism within the same {@link TwillApplication}.
+   * The read lock can be held by multiple readers at the same time, as long as there is no writer holding or
+   * waiting for the write lock. Both locks are reentrant. The read lock can be acquired by the thread holding
+   * the write lock, and releasing the write lock afterwards downgrades it to the read lock. Upgrading a read lock
+   * to a write lock is not supported. The default implementation throws {@link UnsupportedOperationException}.
+   *
+   * @param name Unique name for the lock
+   * @return A {@link ReadWriteLock} object
+   */
+  default ReadWriteLock createReadWriteLock(String name) {
+    throw new UnsupportedOperationException("Read-write lock is not supported by " + getClass().getName());
+  }
+
+  /**
+   * Creates a {@link DistributedSemaphore} for limiting concurrent access within the same {@link TwillApplication}.
+   * All instances using the semaphore of the same name should use the same number of permits.
+   * The default implementation throws {@link UnsupportedOperationException}.
+   *
+   * @param name Unique name for the semaphore
+   * @param permits number of permits of the semaphore
+   * @return A {@link DistributedSemaphore} object
+   */
+  default DistributedSemaphore createSemaphore(String name, int permits) {
+    throw new UnsupportedOperationException("Semaphore is not supported by " + getClass().getName());
+  }
+
+  /**
+   * Returns the {@link PartitionAssignment} of the given name, which assigns partitions of work among the instances
+   * of this runnable that are calling this method with the same name. Unlike sharding by
+   * {@link #getInstanceId()} and {@link #getInstanceCount()}, only a small fraction of partitions are moved when
+   * the number of instances changes. Calling this method multiple times with the same name returns the
+   * same {@link PartitionAssignment} until it is cancelled. The default implementation throws
+   * {@link UnsupportedOperationException}.
+   *
+   * @param name Unique name for the partition assignment
+   * @param numPartitions total number of partitions, which should be the same for all instances
+   * @return A {@link PartitionAssignment} object
+   */
+  default PartitionAssignment getPartitionAssignment(String name, int numPartitions) {
+    throw new UnsupportedOperationException("Partition assignment is not supported by " + getClass().getName());
+  }
+
+  /**
+   * Returns the {@link MetricsRegistry} for recording metrics of this runnable instance. Metrics recorded are
+   * aggregated across all instances of the runnable by the application master. The default implementation returns
+   * {@link MetricsRegistry#NOOP}, which discards all metrics.
+   */
+  default MetricsRegistry getMetrics() {
+    return MetricsRegistry.NOOP;
+  }
 }
@@ -19,6 +19,7 @@ package org.apache.twill.api;
 
 import org.apache.twill.api.logging.LogEntry;
 import org.apache.twill.api.logging.LogHandler;
+import org.apache.twill.api.metrics.MetricsSnapshot;
 import org.apache.twill.discovery.Discoverable;
 import org.apache.twill.discovery.ServiceDiscovered;
 
@@ -148,4 +149,28 @@ public interface TwillController extends ServiceController {
    */
   Future<String[]> resetRunnableLogLevels(String runnableName, String...loggerNames);
 
+  /**
+   * Get a summary of where the time went when launching the application. The launch of the application master
+   * itself is available from the {@link ResourceReport#getAppMasterResources()}.
+   *
+   * @return A {@link Map} from runnable name to the launch summary of the runnable as returned by
+   *         {@link ResourceReport#getLaunchSummary(String)}, or null in case the user calls this before the
+   *         application completely starts. The default implementation always returns null.
+   */
+  @Nullable
+  default Map<String, Map<LaunchPhase, Long>> getLaunchSummary() {
+    return null;
+  }
+
+  /**
+   * Get a snapshot of the metrics recorded by the runnables through {@link TwillContext#getMetrics()}.
+   *
+   * @return A {@link Map} from runnable name to the metrics aggregated across all instances of the runnable, or
+   *         null in case the user calls this before the application completely starts. The default implementation
+   *         always returns null.
+   */
+  @Nullable
+  default Map<String, MetricsSnapshot> getMetrics() {
+    return null;
+  }
 }
@@ -19,6 +19,7 @@ package org.apache.twill.api;
 
 import org.apache.twill.api.logging.LogEntry;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -74,4 +75,13 @@ public interface TwillRunResources {
    * @return the enabled log level arguments for the container where the runnable is running in.
    */
   Map<String, LogEntry.Level> getLogLevels();
+
+  /**
+   * @return the time in milliseconds when each {@link LaunchPhase} of the container happened. The map is ordered by
+   *   the phases and only contains the phases that have been recorded so far. The default implementation returns
+   *   an empty map.
+   */
+  default Map<LaunchPhase, Long> getLaunchTimeline() {
+    return Collections.emptyMap();
+  }
 }
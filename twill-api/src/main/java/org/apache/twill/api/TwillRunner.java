@@ -118,6 +118,7 @@ public interface TwillRunner {
    * Sets and schedules a periodic renewal of {@link SecureStore} using a given {@link SecureStoreRenewer}.
    * There is always only one active {@link SecureStoreRenewer}. Setting a new renewer will replace the old one
    * and setting up a new schedule.
+   * The renewer is called concurrently for different application runs, hence it must be thread-safe.
    *
    * @param renewer a {@link SecureStoreRenewer} for renewing {@link SecureStore} for all applications.
    * @param initialDelay delay before the first call to renew method.
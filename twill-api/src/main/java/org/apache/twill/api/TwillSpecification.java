@@ -17,6 +17,8 @@
  */
 package org.apache.twill.api;
 
+import org.apache.twill.api.autoscale.AutoscalePolicy;
+import org.apache.twill.api.autoscale.AutoscalePolicySpecification;
 import org.apache.twill.internal.DefaultLocalFile;
 import org.apache.twill.internal.DefaultRuntimeSpecification;
 import org.apache.twill.internal.DefaultTwillRunnableSpecification;
@@ -198,10 +200,12 @@ public interface TwillSpecification {
                                            final ResourceSpecification resourceSpec) {
         final TwillRunnableSpecification spec = new DefaultTwillRunnableSpecification(
                                             runnable.getClass().getName(), name, runnable.configure().getConfigs());
-        return new RuntimeSpecificationAdder(new LocalFileCompleter() {
+        return new RuntimeSpecificationAdder(new RuntimeSpecificationCompleter() {
           @Override
-          public RunnableSetter complete(Collection<LocalFile> files) {
-            runnables.put(spec.getName(), new DefaultRuntimeSpecification(spec.getName(), spec, resourceSpec, files));
+          public RunnableSetter complete(Collection<LocalFile> files,
+                                         @Nullable AutoscalePolicySpecification autoscalePolicy) {
+            runnables.put(spec.getName(), new DefaultRuntimeSpecification(spec.getName(), spec, resourceSpec,
+                                                                          files, autoscalePolicy));
             return RunnableSetter.this;
           }
         });
@@ -230,23 +234,45 @@ public interface TwillSpecification {
       RunnableSetter complete(Collection<LocalFile> files);
     }
 
+    /**
+     * Internal interface for completing addition of a runnable.
+     */
+    private interface RuntimeSpecificationCompleter {
+      RunnableSetter complete(Collection<LocalFile> files, @Nullable AutoscalePolicySpecification autoscalePolicy);
+    }
+
     /**
      * For setting runtime specific settings.
      */
     public final class RuntimeSpecificationAdder {
 
-      private final LocalFileCompleter completer;
+      private final RuntimeSpecificationCompleter completer;
+      private AutoscalePolicySpecification autoscalePolicy;
 
-      RuntimeSpecificationAdder(LocalFileCompleter completer) {
+      RuntimeSpecificationAdder(RuntimeSpecificationCompleter completer) {
         this.completer = completer;
       }
 
+      /**
+       * Sets the {@link AutoscalePolicy} for the runnable. The application master evaluates the policy
+       * periodically and changes the number of instances of the runnable according to it.
+       */
+      public RuntimeSpecificationAdder withAutoscalePolicy(AutoscalePolicy policy) {
+        this.autoscalePolicy = policy.configure();
+        return this;
+      }
+
       public LocalFileAdder withLocalFiles() {
-        return new MoreFile(completer);
+        return new MoreFile(new LocalFileCompleter() {
+          @Override
+          public RunnableSetter complete(Collection<LocalFile> files) {
+            return completer.complete(files, autoscalePolicy);
+          }
+        });
       }
 
       public RunnableSetter noLocalFiles() {
-        return completer.complete(Collections.<LocalFile>emptyList());
+        return completer.complete(Collections.<LocalFile>emptyList(), autoscalePolicy);
       }
     }
 
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api.autoscale;
+
+import org.apache.twill.api.metrics.MetricsSnapshot;
+
+import java.util.List;
+
+/**
+ * Input for {@link AutoscalePolicy#evaluate(AutoscaleInput)}, which carries the state of a runnable as seen by
+ * the application master.
+ */
+public interface AutoscaleInput {
+
+  /**
+   * Returns the name of the runnable being evaluated.
+   */
+  String getRunnableName();
+
+  /**
+   * Returns the current number of instances of the runnable.
+   */
+  int getInstances();
+
+  /**
+   * Returns the latest metrics reported by each running instance of the runnable. Instances that haven't
+   * reported any metrics yet are not included.
+   */
+  List<MetricsSnapshot> getInstanceMetrics();
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api.autoscale;
+
+import org.apache.twill.api.metrics.MetricsSnapshot;
+import org.apache.twill.internal.DefaultAutoscalePolicySpecification;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A policy for changing the number of instances of a {@link org.apache.twill.api.TwillRunnable} based on the
+ * metrics reported by its instances. The policy is evaluated periodically by the application master, and the
+ * number of instances it returns is applied in the same way as
+ * {@link org.apache.twill.api.TwillController#changeInstances(String, int)}, after being limited by the
+ * bounds and cooldowns set through {@link #setInstancesBounds(int, int)} and
+ * {@link #setCooldowns(long, long, TimeUnit)}.
+ * <p/>
+ * The policy instance is recreated in the application master with the public no-argument constructor, hence
+ * any settings need to be returned by {@link #getConfigs()} and read back in
+ * {@link #initialize(AutoscalePolicySpecification)}.
+ */
+public abstract class AutoscalePolicy {
+
+  private static final long DEFAULT_SCALE_OUT_COOLDOWN = TimeUnit.MINUTES.toMillis(1);
+  private static final long DEFAULT_SCALE_IN_COOLDOWN = TimeUnit.MINUTES.toMillis(5);
+
+  private int minInstances = 1;
+  private int maxInstances = Integer.MAX_VALUE;
+  private long scaleOutCooldown = DEFAULT_SCALE_OUT_COOLDOWN;
+  private long scaleInCooldown = DEFAULT_SCALE_IN_COOLDOWN;
+
+  /**
+   * Sets the range of number of instances that the policy can scale the runnable to. By default the runnable
+   * is scaled between one and {@link Integer#MAX_VALUE} instances.
+   *
+   * @return this policy
+   */
+  public AutoscalePolicy setInstancesBounds(int minInstances, int maxInstances) {
+    if (minInstances <= 0 || maxInstances < minInstances) {
+      throw new IllegalArgumentException("Invalid instances bounds [" + minInstances + ", " + maxInstances + "]");
+    }
+    this.minInstances = minInstances;
+    this.maxInstances = maxInstances;
+    return this;
+  }
+
+  /**
+   * Sets the cooldowns of the policy. After the runnable is scaled out, it won't be scaled out again until the
+   * scale out cooldown has passed. After the runnable is scaled in either direction, it won't be scaled in until
+   * the scale in cooldown has passed. By default they are one minute and five minutes respectively.
+   *
+   * @return this policy
+   */
+  public AutoscalePolicy setCooldowns(long scaleOutCooldown, long scaleInCooldown, TimeUnit unit) {
+    if (scaleOutCooldown < 0 || scaleInCooldown < 0) {
+      throw new IllegalArgumentException("Cooldowns cannot be negative");
+    }
+    this.scaleOutCooldown = unit.toMillis(scaleOutCooldown);
+    this.scaleInCooldown = unit.toMillis(scaleInCooldown);
+    return this;
+  }
+
+  /**
+   * Returns an {@link AutoscalePolicySpecification} for configuring this policy class.
+   */
+  public AutoscalePolicySpecification configure() {
+    return new DefaultAutoscalePolicySpecification(getClass().getName(), getConfigs(),
+                                                   minInstances, maxInstances, scaleOutCooldown, scaleInCooldown);
+  }
+
+  /**
+   * Returns set of configurations available at runtime for access.
+   */
+  protected Map<String, String> getConfigs() {
+    return Collections.emptyMap();
+  }
+
+  /**
+   * Invoked by the application master to initialize the policy instance. It is called once before the first
+   * call to {@link #evaluate(AutoscaleInput)}.
+   *
+   * @param specification the specification returned by {@link #configure()}
+   */
+  public void initialize(AutoscalePolicySpecification specification) {
+    // No-op by default
+  }
+
+  /**
+   * Evaluates the policy.
+   *
+   * @param input the current state of the runnable
+   * @return the desired number of instances of the runnable
+   */
+  public abstract int evaluate(AutoscaleInput input);
+
+  /**
+   * Returns the average of the given gauge across the instances that reported it, or {@code null} if no
+   * instance reported it.
+   */
+  @Nullable
+  protected static Double averageGauge(AutoscaleInput input, String gauge) {
+    long sum = 0;
+    int count = 0;
+    for (MetricsSnapshot metrics : input.getInstanceMetrics()) {
+      Long value = metrics.getGauges().get(gauge);
+      if (value != null) {
+        sum += value;
+        count++;
+      }
+    }
+    return count == 0 ? null : (double) sum / count;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api.autoscale;
+
+import java.util.Map;
+
+/**
+ * Specification for {@link AutoscalePolicy}.
+ */
+public interface AutoscalePolicySpecification {
+
+  String getClassName();
+
+  Map<String, String> getConfigs();
+
+  /**
+   * Returns the minimum number of instances the policy can scale the runnable to.
+   */
+  int getMinInstances();
+
+  /**
+   * Returns the maximum number of instances the policy can scale the runnable to.
+   */
+  int getMaxInstances();
+
+  /**
+   * Returns the time in milliseconds to wait after scaling out before the runnable can be scaled out again.
+   */
+  long getScaleOutCooldown();
+
+  /**
+   * Returns the time in milliseconds to wait after any scaling before the runnable can be scaled in.
+   */
+  long getScaleInCooldown();
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api.autoscale;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link AutoscalePolicy} that adjusts the number of instances of a runnable by fixed steps, based on the
+ * range the average value of a gauge across instances falls in. For example, to add two instances when the
+ * average queue depth is above {@code 200}, one instance when it is between {@code 100} and {@code 200}, and remove
+ * one instance when it is below {@code 10}:
+ *
+ * <pre>{@code
+ * new StepAutoscalePolicy("queue.depth")
+ *   .addStep(200, Double.POSITIVE_INFINITY, 2)
+ *   .addStep(100, 200, 1)
+ *   .addStep(Double.NEGATIVE_INFINITY, 10, -1);
+ * }</pre>
+ *
+ * Each step covers the range from its lower bound inclusive to its upper bound exclusive. If the ranges overlap,
+ * the step added first is used.
+ */
+public final class StepAutoscalePolicy extends AutoscalePolicy {
+
+  private static final String GAUGE = "gauge";
+  private static final String STEPS = "steps";
+
+  private final List<Step> steps = new ArrayList<Step>();
+  private String gauge;
+
+  /**
+   * Constructor used by the application master to recreate the policy.
+   */
+  public StepAutoscalePolicy() {
+  }
+
+  /**
+   * Creates a policy based on the given gauge. Steps are added with {@link #addStep(double, double, int)}.
+   *
+   * @param gauge name of the gauge registered by the runnable
+   */
+  public StepAutoscalePolicy(String gauge) {
+    this.gauge = gauge;
+  }
+
+  /**
+   * Adds a step to this policy.
+   *
+   * @param lowerBound lower bound of the average gauge value, inclusive
+   * @param upperBound upper bound of the average gauge value, exclusive
+   * @param adjustment number of instances to add, or to remove if negative
+   * @return this policy
+   */
+  public StepAutoscalePolicy addStep(double lowerBound, double upperBound, int adjustment) {
+    if (lowerBound >= upperBound) {
+      throw new IllegalArgumentException("Lower bound " + lowerBound + " must be less than upper bound " + upperBound);
+    }
+    steps.add(new Step(lowerBound, upperBound, adjustment));
+    return this;
+  }
+
+  @Override
+  protected Map<String, String> getConfigs() {
+    StringBuilder encoded = new StringBuilder();
+    for (Step step : steps) {
+      if (encoded.length() > 0) {
+        encoded.append(';');
+      }
+      encoded.append(step.lowerBound).append(',').append(step.upperBound).append(',').append(step.adjustment);
+    }
+    Map<String, String> configs = new HashMap<String, String>();
+    configs.put(GAUGE, gauge);
+    configs.put(STEPS, encoded.toString());
+    return configs;
+  }
+
+  @Override
+  public void initialize(AutoscalePolicySpecification specification) {
+    Map<String, String> configs = specification.getConfigs();
+    gauge = configs.get(GAUGE);
+    steps.clear();
+    String encoded = configs.get(STEPS);
+    if (encoded == null || encoded.isEmpty()) {
+      return;
+    }
+    for (String step : encoded.split(";")) {
+      String[] parts = step.split(",");
+      addStep(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Integer.parseInt(parts[2]));
+    }
+  }
+
+  @Override
+  public int evaluate(AutoscaleInput input) {
+    Double average = averageGauge(input, gauge);
+    if (average == null) {
+      return input.getInstances();
+    }
+    for (Step step : steps) {
+      if (average >= step.lowerBound && average < step.upperBound) {
+        return input.getInstances() + step.adjustment;
+      }
+    }
+    return input.getInstances();
+  }
+
+  /**
+   * A step of the policy.
+   */
+  private static final class Step {
+    private final double lowerBound;
+    private final double upperBound;
+    private final int adjustment;
+
+    Step(double lowerBound, double upperBound, int adjustment) {
+      this.lowerBound = lowerBound;
+      this.upperBound = upperBound;
+      this.adjustment = adjustment;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api.autoscale;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link AutoscalePolicy} that keeps the average value of a gauge across the instances of a runnable close to
+ * a target value. The number of instances is scaled proportionally to the ratio between the average and the
+ * target, e.g. with an average queue depth of {@code 150} and a target of {@code 100}, four instances are scaled
+ * out to six. No change is made while the ratio is within the tolerance, which defaults to 10%.
+ */
+public final class TargetTrackingAutoscalePolicy extends AutoscalePolicy {
+
+  private static final String GAUGE = "gauge";
+  private static final String TARGET = "target";
+  private static final String TOLERANCE = "tolerance";
+  private static final double DEFAULT_TOLERANCE = 0.1d;
+
+  private String gauge;
+  private double target;
+  private double tolerance;
+
+  /**
+   * Constructor used by the application master to recreate the policy.
+   */
+  public TargetTrackingAutoscalePolicy() {
+  }
+
+  /**
+   * Creates a policy that tracks the given target value of a gauge per instance.
+   *
+   * @param gauge name of the gauge registered by the runnable, e.g.
+   *              {@link org.apache.twill.api.metrics.MetricsRegistry#CPU_PERCENT}
+   * @param target the desired average value of the gauge across instances
+   */
+  public TargetTrackingAutoscalePolicy(String gauge, double target) {
+    this(gauge, target, DEFAULT_TOLERANCE);
+  }
+
+  /**
+   * Creates a policy that tracks the given target value of a gauge per instance.
+   *
+   * @param gauge name of the gauge registered by the runnable
+   * @param target the desired average value of the gauge across instances
+   * @param tolerance the relative deviation from the target that doesn't trigger scaling
+   */
+  public TargetTrackingAutoscalePolicy(String gauge, double target, double tolerance) {
+    if (target <= 0) {
+      throw new IllegalArgumentException("Target must be positive: " + target);
+    }
+    if (tolerance < 0 || tolerance >= 1) {
+      throw new IllegalArgumentException("Tolerance must be in [0, 1): " + tolerance);
+    }
+    this.gauge = gauge;
+    this.target = target;
+    this.tolerance = tolerance;
+  }
+
+  @Override
+  protected Map<String, String> getConfigs() {
+    Map<String, String> configs = new HashMap<String, String>();
+    configs.put(GAUGE, gauge);
+    configs.put(TARGET, Double.toString(target));
+    configs.put(TOLERANCE, Double.toString(tolerance));
+    return configs;
+  }
+
+  @Override
+  public void initialize(AutoscalePolicySpecification specification) {
+    Map<String, String> configs = specification.getConfigs();
+    gauge = configs.get(GAUGE);
+    target = Double.parseDouble(configs.get(TARGET));
+    tolerance = Double.parseDouble(configs.get(TOLERANCE));
+  }
+
+  @Override
+  public int evaluate(AutoscaleInput input) {
+    Double average = averageGauge(input, gauge);
+    if (average == null) {
+      return input.getInstances();
+    }
+    double ratio = average / target;
+    if (Math.abs(ratio - 1) <= tolerance) {
+      return input.getInstances();
+    }
+    return (int) Math.ceil(input.getInstances() * ratio);
+  }
+}
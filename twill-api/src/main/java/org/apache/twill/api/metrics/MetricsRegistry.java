@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A registry of metrics of a {@link org.apache.twill.api.TwillRunnable}. Metrics registered are periodically
+ * reported to the application master, aggregated per runnable and made available through
+ * {@link org.apache.twill.api.TwillController#getMetrics()}.
+ * <p/>
+ * Metrics are identified by name. Calling {@link #counter(String)} or {@link #timer(String)} with the same name
+ * returns the same instance, which can be kept and used from multiple threads. Recording values to a metric
+ * is lock-free and doesn't allocate memory.
+ */
+public interface MetricsRegistry {
+
+  /**
+   * Name of the gauge registered by Twill for every runnable, with the CPU usage of the container process in
+   * percentage of the virtual cores allocated to the container, averaged since the previous report. The value is
+   * rounded to a multiple of five percent.
+   */
+  String CPU_PERCENT = "twill.cpu.percent";
+
+  /**
+   * A {@link MetricsRegistry} that discards all recorded values.
+   */
+  MetricsRegistry NOOP = new MetricsRegistry() {
+
+    private final Counter counter = new Counter() {
+      @Override
+      public void increment() {
+        // No-op
+      }
+
+      @Override
+      public void increment(long delta) {
+        // No-op
+      }
+
+      @Override
+      public long getCount() {
+        return 0L;
+      }
+    };
+
+    private final Timer timer = new Timer() {
+      @Override
+      public void record(long duration, TimeUnit unit) {
+        // No-op
+      }
+
+      @Override
+      public long getCount() {
+        return 0L;
+      }
+    };
+
+    @Override
+    public Counter counter(String name) {
+      return counter;
+    }
+
+    @Override
+    public Timer timer(String name) {
+      return timer;
+    }
+
+    @Override
+    public void gauge(String name, Gauge gauge) {
+      // No-op
+    }
+  };
+
+  /**
+   * Returns the {@link Counter} of the given name, creating it if it doesn't exist.
+   */
+  Counter counter(String name);
+
+  /**
+   * Returns the {@link Timer} of the given name, creating it if it doesn't exist.
+   */
+  Timer timer(String name);
+
+  /**
+   * Registers a {@link Gauge} with the given name. It replaces the gauge previously registered with the same name.
+   */
+  void gauge(String name, Gauge gauge);
+}
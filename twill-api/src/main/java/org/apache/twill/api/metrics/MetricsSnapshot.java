@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api.metrics;
+
+import java.util.Map;
+
+/**
+ * A point in time view of the metrics of a {@link org.apache.twill.api.TwillRunnable}, aggregated across its
+ * instances. Counters and timers include the values recorded by instances that have already completed, while
+ * gauges are the sum of the latest values reported by the running instances.
+ */
+public interface MetricsSnapshot {
+
+  /**
+   * Returns the counts of all counters, keyed by the counter name.
+   */
+  Map<String, Long> getCounters();
+
+  /**
+   * Returns the values of all gauges, keyed by the gauge name.
+   */
+  Map<String, Long> getGauges();
+
+  /**
+   * Returns the distributions of all timers, keyed by the timer name.
+   */
+  Map<String, TimerSnapshot> getTimers();
+}
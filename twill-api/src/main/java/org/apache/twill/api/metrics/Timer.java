@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A metric that records the distribution of durations. Durations are kept in a histogram with bounded relative
+ * error, so that distributions from multiple instances can be merged without losing precision.
+ */
+public interface Timer {
+
+  /**
+   * Records a duration.
+   *
+   * @param duration the duration to record; negative values are recorded as zero
+   * @param unit unit of the duration
+   */
+  void record(long duration, TimeUnit unit);
+
+  /**
+   * Returns the number of durations recorded.
+   */
+  long getCount();
+}
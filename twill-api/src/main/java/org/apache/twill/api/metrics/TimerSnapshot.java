@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.api.metrics;
+
+/**
+ * A point in time view of the distribution recorded by a {@link Timer}. All durations are in nanoseconds.
+ */
+public interface TimerSnapshot {
+
+  /**
+   * Returns the number of durations recorded.
+   */
+  long getCount();
+
+  /**
+   * Returns the minimum duration recorded, or {@code 0} if nothing was recorded.
+   */
+  long getMin();
+
+  /**
+   * Returns the maximum duration recorded, or {@code 0} if nothing was recorded.
+   */
+  long getMax();
+
+  /**
+   * Returns the mean of the durations recorded, or {@code 0} if nothing was recorded.
+   */
+  double getMean();
+
+  /**
+   * Returns the duration at the given percentile. The value returned is within the precision of the histogram
+   * used for recording, which has a relative error of at most 6.25%.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the duration at the given percentile, or {@code 0} if nothing was recorded
+   */
+  long getPercentile(double percentile);
+}
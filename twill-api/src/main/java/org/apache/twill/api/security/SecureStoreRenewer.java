@@ -25,6 +25,11 @@ import java.io.IOException;
 
 /**
  * This class is responsible for renewing the secure store used by application.
+ * <p/>
+ * The secure stores of different application runs are renewed in parallel, hence the
+ * {@link #renew(String, RunId, SecureStoreWriter)} method may be called concurrently from multiple threads and
+ * implementations must be thread-safe. Calls are never concurrent for the same application run. Setting
+ * {@link org.apache.twill.api.Configs.Keys#SECURE_STORE_RENEWAL_THREADS} to one makes all calls sequential.
  */
 public abstract class SecureStoreRenewer {
 
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal;
+
+import org.apache.twill.api.autoscale.AutoscalePolicySpecification;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Straightforward implementation of {@link AutoscalePolicySpecification}.
+ */
+public final class DefaultAutoscalePolicySpecification implements AutoscalePolicySpecification {
+
+  private final String className;
+  private final Map<String, String> configs;
+  private final int minInstances;
+  private final int maxInstances;
+  private final long scaleOutCooldown;
+  private final long scaleInCooldown;
+
+  public DefaultAutoscalePolicySpecification(String className, Map<String, String> configs,
+                                             int minInstances, int maxInstances,
+                                             long scaleOutCooldown, long scaleInCooldown) {
+    this.className = className;
+    this.configs = Collections.unmodifiableMap(new HashMap<String, String>(configs));
+    this.minInstances = minInstances;
+    this.maxInstances = maxInstances;
+    this.scaleOutCooldown = scaleOutCooldown;
+    this.scaleInCooldown = scaleInCooldown;
+  }
+
+  @Override
+  public String getClassName() {
+    return className;
+  }
+
+  @Override
+  public Map<String, String> getConfigs() {
+    return configs;
+  }
+
+  @Override
+  public int getMinInstances() {
+    return minInstances;
+  }
+
+  @Override
+  public int getMaxInstances() {
+    return maxInstances;
+  }
+
+  @Override
+  public long getScaleOutCooldown() {
+    return scaleOutCooldown;
+  }
+
+  @Override
+  public long getScaleInCooldown() {
+    return scaleInCooldown;
+  }
+}
@@ -21,10 +21,12 @@ import org.apache.twill.api.LocalFile;
 import org.apache.twill.api.ResourceSpecification;
 import org.apache.twill.api.RuntimeSpecification;
 import org.apache.twill.api.TwillRunnableSpecification;
+import org.apache.twill.api.autoscale.AutoscalePolicySpecification;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import javax.annotation.Nullable;
 
 /**
  * Straightforward implementation of {@link RuntimeSpecification}.
@@ -35,15 +37,25 @@ public final class DefaultRuntimeSpecification implements RuntimeSpecification {
   private final TwillRunnableSpecification runnableSpec;
   private final ResourceSpecification resourceSpec;
   private final Collection<LocalFile> localFiles;
+  private final AutoscalePolicySpecification autoscalePolicy;
 
   public DefaultRuntimeSpecification(String name,
                                      TwillRunnableSpecification runnableSpec,
                                      ResourceSpecification resourceSpec,
                                      Collection<LocalFile> localFiles) {
+    this(name, runnableSpec, resourceSpec, localFiles, null);
+  }
+
+  public DefaultRuntimeSpecification(String name,
+                                     TwillRunnableSpecification runnableSpec,
+                                     ResourceSpecification resourceSpec,
+                                     Collection<LocalFile> localFiles,
+                                     @Nullable AutoscalePolicySpecification autoscalePolicy) {
     this.name = name;
     this.runnableSpec = runnableSpec;
     this.resourceSpec = resourceSpec;
     this.localFiles = Collections.unmodifiableList(new ArrayList<LocalFile>(localFiles));
+    this.autoscalePolicy = autoscalePolicy;
   }
 
   @Override
@@ -65,4 +77,10 @@ public final class DefaultRuntimeSpecification implements RuntimeSpecification {
   public Collection<LocalFile> getLocalFiles() {
     return localFiles;
   }
+
+  @Nullable
+  @Override
+  public AutoscalePolicySpecification getAutoscalePolicy() {
+    return autoscalePolicy;
+  }
 }
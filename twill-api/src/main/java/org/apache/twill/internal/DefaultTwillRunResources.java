@@ -17,12 +17,14 @@
  */
 package org.apache.twill.internal;
 
+import org.apache.twill.api.LaunchPhase;
 import org.apache.twill.api.TwillRunResources;
 import org.apache.twill.api.logging.LogEntry;
 import org.apache.twill.api.logging.LogEntry.Level;
 import org.slf4j.Logger;
 
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import javax.annotation.Nullable;
@@ -39,6 +41,7 @@ public class DefaultTwillRunResources implements TwillRunResources {
   private final String host;
   private final Integer debugPort;
   private final Map<String, LogEntry.Level> logLevels;
+  private final Map<LaunchPhase, Long> launchTimeline;
 
   /**
    * Constructor to create an instance of {@link DefaultTwillRunResources} with empty log levels.
@@ -51,6 +54,13 @@ public class DefaultTwillRunResources implements TwillRunResources {
 
   public DefaultTwillRunResources(int instanceId, String containerId, int cores, int memoryMB, int maxHeapMemoryMB,
                                   String host, Integer debugPort, Map<String, LogEntry.Level> logLevels) {
+    this(instanceId, containerId, cores, memoryMB, maxHeapMemoryMB, host, debugPort, logLevels,
+         Collections.<LaunchPhase, Long>emptyMap());
+  }
+
+  public DefaultTwillRunResources(int instanceId, String containerId, int cores, int memoryMB, int maxHeapMemoryMB,
+                                  String host, Integer debugPort, Map<String, LogEntry.Level> logLevels,
+                                  Map<LaunchPhase, Long> launchTimeline) {
     this.instanceId = instanceId;
     this.containerId = containerId;
     this.virtualCores = cores;
@@ -59,6 +69,8 @@ public class DefaultTwillRunResources implements TwillRunResources {
     this.host = host;
     this.debugPort = debugPort;
     this.logLevels = new HashMap<>(logLevels);
+    this.launchTimeline = new EnumMap<>(LaunchPhase.class);
+    this.launchTimeline.putAll(launchTimeline);
   }
 
   /**
@@ -124,6 +136,11 @@ public class DefaultTwillRunResources implements TwillRunResources {
     return logLevels;
   }
 
+  @Override
+  public Map<LaunchPhase, Long> getLaunchTimeline() {
+    return Collections.unmodifiableMap(launchTimeline);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof TwillRunResources)) {
@@ -160,6 +177,7 @@ public class DefaultTwillRunResources implements TwillRunResources {
       ", host='" + host + '\'' +
       ", debugPort=" + debugPort +
       ", logLevels=" + logLevels +
+      ", launchTimeline=" + getLaunchTimeline() +
       '}';
   }
 }
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.filesystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+
+/**
+ * Base implementation of {@link LocationStatusStream} that fetches entries one at a time through
+ * {@link #computeNext()}.
+ */
+public abstract class AbstractLocationStatusStream implements LocationStatusStream {
+
+  private boolean iterated;
+
+  /**
+   * Fetches the next entry of the stream.
+   *
+   * @return the next {@link LocationStatus} or {@code null} if there is no more entry
+   * @throws IOException if failed to fetch the next entry
+   */
+  @Nullable
+  protected abstract LocationStatus computeNext() throws IOException;
+
+  @Override
+  public final synchronized Iterator<LocationStatus> iterator() {
+    if (iterated) {
+      throw new IllegalStateException("Stream can only be iterated once.");
+    }
+    iterated = true;
+
+    return new Iterator<LocationStatus>() {
+      private LocationStatus next;
+      private boolean done;
+
+      @Override
+      public boolean hasNext() {
+        if (next != null) {
+          return true;
+        }
+        if (done) {
+          return false;
+        }
+        try {
+          next = computeNext();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        done = next == null;
+        return !done;
+      }
+
+      @Override
+      public LocationStatus next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        LocationStatus result = next;
+        next = null;
+        return result;
+      }
+    };
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.filesystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A {@link LocationReadChannel} that reads through {@link Location#getInputStream()}, used by the default
+ * {@link Location#getReadChannel()} implementation. Seeking forward skips bytes of the current stream, while seeking
+ * backward reopens the stream. Each positional read opens a new stream, hence locations that support random access
+ * should provide their own {@link LocationReadChannel}.
+ */
+final class InputStreamReadChannel implements LocationReadChannel {
+
+  private final Location location;
+  private final long size;
+  private InputStream input;
+  private ReadableByteChannel channel;
+  private long position;
+  private boolean closed;
+
+  InputStreamReadChannel(Location location) throws IOException {
+    this.location = location;
+    this.size = location.length();
+  }
+
+  @Override
+  public synchronized int read(ByteBuffer dst) throws IOException {
+    ensureOpen();
+    if (channel == null) {
+      openAt(position);
+    }
+    int bytesRead = channel.read(dst);
+    if (bytesRead > 0) {
+      position += bytesRead;
+    }
+    return bytesRead;
+  }
+
+  @Override
+  public int read(ByteBuffer dst, long position) throws IOException {
+    ensureOpen();
+    if (position < 0) {
+      throw new IllegalArgumentException("Position must be non-negative: " + position);
+    }
+    if (position >= size) {
+      return -1;
+    }
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+    try (InputStream is = location.getInputStream()) {
+      skipFully(is, position);
+      return Channels.newChannel(is).read(dst);
+    }
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public synchronized long position() throws IOException {
+    ensureOpen();
+    return position;
+  }
+
+  @Override
+  public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+    ensureOpen();
+    if (newPosition < 0) {
+      throw new IllegalArgumentException("Position must be non-negative: " + newPosition);
+    }
+    if (channel != null && newPosition >= position) {
+      skipFully(input, newPosition - position);
+    } else {
+      closeStream();
+    }
+    // The stream is opened lazily on the next read if it was closed
+    position = newPosition;
+    return this;
+  }
+
+  @Override
+  public synchronized long size() throws IOException {
+    ensureOpen();
+    return size;
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) throws IOException {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return !closed;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      closeStream();
+    }
+  }
+
+  private void openAt(long position) throws IOException {
+    InputStream is = location.getInputStream();
+    try {
+      skipFully(is, position);
+    } catch (IOException e) {
+      is.close();
+      throw e;
+    }
+    input = is;
+    channel = Channels.newChannel(is);
+  }
+
+  private void closeStream() throws IOException {
+    if (input != null) {
+      input.close();
+      input = null;
+      channel = null;
+    }
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (closed) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  /**
+   * Skips the given number of bytes of the given stream, or until the end of the stream.
+   */
+  private static void skipFully(InputStream is, long bytes) throws IOException {
+    long remaining = bytes;
+    while (remaining > 0) {
+      long skipped = is.skip(remaining);
+      if (skipped <= 0) {
+        // skip() may return 0 before the end of stream, hence check with read()
+        if (is.read() < 0) {
+          return;
+        }
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+}
@@ -25,14 +25,25 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.PosixFileAttributes;
@@ -43,6 +54,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -52,6 +64,10 @@ import java.util.UUID;
  * A concrete implementation of {@link Location} for the Local filesystem.
  */
 final class LocalLocation implements Location {
+
+  // Maximum size of each memory mapped region when copying to non-local location
+  private static final long MAX_MAP_SIZE = 64L * 1024 * 1024;
+
   private final File file;
   private final LocalLocationFactory locationFactory;
 
@@ -96,6 +112,54 @@ final class LocalLocation implements Location {
     return new FileOutputStream(file);
   }
 
+  @Override
+  public LocationReadChannel getReadChannel() throws IOException {
+    return new FileLocationReadChannel(openForRead());
+  }
+
+  @Override
+  public FileChannel getWriteChannel() throws IOException {
+    ensureDirectory(file.getParentFile());
+    return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  @Override
+  public long transferTo(Location target) throws IOException {
+    try (FileChannel source = openForRead()) {
+      if (target instanceof LocalLocation) {
+        // The copy is done by the kernel (sendfile / copy_file_range) through FileChannel.transferTo
+        return copyTo(source, (LocalLocation) target);
+      }
+
+      // Memory map the file so that the content is written to the target without reading it to the heap first
+      long size = source.size();
+      long position = 0;
+      try (WritableByteChannel channel = target.getWriteChannel()) {
+        while (position < size) {
+          MappedByteBuffer buffer = source.map(FileChannel.MapMode.READ_ONLY, position,
+                                               Math.min(MAX_MAP_SIZE, size - position));
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          position += buffer.capacity();
+        }
+      }
+      return position;
+    }
+  }
+
+  @Override
+  public long transferFrom(Location source) throws IOException {
+    if (source instanceof LocalLocation) {
+      return source.transferTo(this);
+    }
+    try (ReadableByteChannel channel = source.getReadChannel();
+         WritableByteChannel target = getWriteChannel()) {
+      return Locations.copy(channel, target);
+    }
+  }
+
   @Override
   public OutputStream getOutputStream(String permission) throws IOException {
     Set<PosixFilePermission> permissions = parsePermissions(permission);
@@ -311,6 +375,65 @@ final class LocalLocation implements Location {
     return Collections.unmodifiableList(result);
   }
 
+  @Override
+  public LocationStatusStream listStatus() throws IOException {
+    final DirectoryStream<Path> stream;
+    try {
+      stream = Files.newDirectoryStream(file.toPath());
+    } catch (NotDirectoryException e) {
+      return new AbstractLocationStatusStream() {
+        @Override
+        protected LocationStatus computeNext() {
+          return null;
+        }
+
+        @Override
+        public void close() {
+          // no-op
+        }
+      };
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException("File " + file + " does not exist.");
+    }
+
+    final Iterator<Path> paths = stream.iterator();
+    final boolean posix = Files.getFileAttributeView(file.toPath(), PosixFileAttributeView.class) != null;
+    return new AbstractLocationStatusStream() {
+      @Override
+      protected LocationStatus computeNext() throws IOException {
+        try {
+          while (paths.hasNext()) {
+            Path path = paths.next();
+            try {
+              return createStatus(path, posix);
+            } catch (NoSuchFileException e) {
+              // The entry is removed after it is listed, just skip it
+            }
+          }
+          return null;
+        } catch (DirectoryIteratorException e) {
+          throw e.getCause();
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        stream.close();
+      }
+    };
+  }
+
+  private LocationStatus createStatus(Path path, boolean posix) throws IOException {
+    LocalLocation location = new LocalLocation(locationFactory, path.toFile());
+    if (posix) {
+      PosixFileAttributes attrs = Files.readAttributes(path, PosixFileAttributes.class);
+      return new LocationStatus(location, attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.isDirectory(),
+                                PosixFilePermissions.toString(attrs.permissions()));
+    }
+    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    return new LocationStatus(location, attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.isDirectory(), null);
+  }
+
   @Override
   public LocationFactory getLocationFactory() {
     return locationFactory;
@@ -339,6 +462,32 @@ final class LocalLocation implements Location {
     return file.toString();
   }
 
+  /**
+   * Opens a {@link FileChannel} for reading this location.
+   */
+  private FileChannel openForRead() throws IOException {
+    try {
+      return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException("File " + file + " does not exist.");
+    }
+  }
+
+  /**
+   * Copies the content of the given {@link FileChannel} to the given local target.
+   */
+  private long copyTo(FileChannel source, LocalLocation target) throws IOException {
+    if (target.file.getAbsoluteFile().equals(file.getAbsoluteFile())) {
+      // Copying to itself. Truncating the target would lose the content.
+      return source.size();
+    }
+    ensureDirectory(target.file.getParentFile());
+    try (FileChannel channel = FileChannel.open(target.file.toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      return Locations.copy(source, channel);
+    }
+  }
+
   /**
    * Ensures the given {@link File} is a directory. If it doesn't exist, it will be created.
    */
@@ -397,4 +546,62 @@ final class LocalLocation implements Location {
     }
     return PosixFilePermissions.fromString(posixPermission);
   }
+
+  /**
+   * A {@link LocationReadChannel} backed by a {@link FileChannel}.
+   */
+  private static final class FileLocationReadChannel implements LocationReadChannel {
+
+    private final FileChannel channel;
+
+    FileLocationReadChannel(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+      return channel.read(dst, position);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      return channel.read(dst);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+      return channel.position();
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+      channel.position(newPosition);
+      return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+      return channel.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+      throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+      return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
 }
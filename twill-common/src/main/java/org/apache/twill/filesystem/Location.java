@@ -21,7 +21,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Iterator;
 import java.util.List;
 import javax.annotation.Nullable;
 
@@ -142,6 +146,68 @@ public interface Location {
    */
   OutputStream getOutputStream(String permission) throws IOException;
 
+  /**
+   * Opens a {@link LocationReadChannel} for reading the content of this location. Compare to
+   * {@link #getInputStream()}, the channel supports seeking and positional read, and allows reading into
+   * direct {@link java.nio.ByteBuffer} without going through the Java heap if the underlying file system supports it.
+   * <p>
+   * The default implementation reads through {@link #getInputStream()}, which reopens the stream for seeking
+   * backward and for each positional read.
+   * </p>
+   *
+   * @return A {@link LocationReadChannel} for this location, which must be closed after use.
+   * @throws IOException If failed to open the channel.
+   */
+  default LocationReadChannel getReadChannel() throws IOException {
+    return new InputStreamReadChannel(this);
+  }
+
+  /**
+   * Opens a {@link WritableByteChannel} for writing to this location. It has the same semantic as
+   * {@link #getOutputStream()}.
+   *
+   * @return A {@link WritableByteChannel} for this location, which must be closed after use.
+   * @throws IOException If failed to open the channel.
+   */
+  default WritableByteChannel getWriteChannel() throws IOException {
+    return Channels.newChannel(getOutputStream());
+  }
+
+  /**
+   * Copies the content of this location to the given target location, replacing the existing content of the target.
+   * Implementations use the most efficient way of copying supported by both locations, for example, with
+   * {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)} between local files.
+   * The default implementation copies from {@link #getReadChannel()} to the {@link #getWriteChannel()} of the target.
+   *
+   * @param target the location to copy to
+   * @return number of bytes copied
+   * @throws IOException If failed to copy.
+   */
+  default long transferTo(Location target) throws IOException {
+    try (ReadableByteChannel source = getReadChannel();
+         WritableByteChannel channel = target.getWriteChannel()) {
+      return Locations.copy(source, channel);
+    }
+  }
+
+  /**
+   * Replaces the content of this location with the content of the given source location.
+   * It is the same as calling {@code source.transferTo(this)}, with the copy done by this location if it has
+   * a more efficient way of copying from the source.
+   * The default implementation copies from the {@link #getReadChannel()} of the source to {@link #getWriteChannel()}.
+   * It doesn't delegate to {@link #transferTo(Location)} of the source, since implementations may delegate back.
+   *
+   * @param source the location to copy from
+   * @return number of bytes copied
+   * @throws IOException If failed to copy.
+   */
+  default long transferFrom(Location source) throws IOException {
+    try (ReadableByteChannel channel = source.getReadChannel();
+         WritableByteChannel target = getWriteChannel()) {
+      return Locations.copy(channel, target);
+    }
+  }
+
   /**
    * Appends the child to the current {@link Location}.
    * <p>
@@ -247,6 +313,41 @@ public interface Location {
    */
   List<Location> list() throws IOException;
 
+  /**
+   * Lists the locations under this location together with their status. Implementations fetch entries from the
+   * file system lazily while the returned stream is iterated, with the status of each entry obtained from the
+   * listing, without extra calls to the file system.
+   * <p>
+   * The default implementation calls {@link #list()} and fetches the status of each entry with separate calls
+   * while iterating.
+   * </p>
+   *
+   * @return a {@link LocationStatusStream} of the locations under this location, which must be closed after use.
+   *         An empty stream is returned if this location is not a directory.
+   * @throws java.io.FileNotFoundException if this location does not exist
+   * @throws IOException if failed to list this location
+   */
+  default LocationStatusStream listStatus() throws IOException {
+    final Iterator<Location> children = list().iterator();
+    return new AbstractLocationStatusStream() {
+      @Nullable
+      @Override
+      protected LocationStatus computeNext() throws IOException {
+        if (!children.hasNext()) {
+          return null;
+        }
+        Location child = children.next();
+        return new LocationStatus(child, child.length(), child.lastModified(),
+                                  child.isDirectory(), child.getPermissions());
+      }
+
+      @Override
+      public void close() {
+        // No-op
+      }
+    };
+  }
+
   /**
    * Returns the location factory used to create this instance.
    *
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A {@link SeekableByteChannel} for reading the content of a {@link Location}. Besides the sequential read from
+ * the current position, it also supports positional read, which doesn't change the position of the channel.
+ * Write operations are not supported and throw {@link java.nio.channels.NonWritableChannelException}.
+ */
+public interface LocationReadChannel extends SeekableByteChannel {
+
+  /**
+   * Reads a sequence of bytes from this channel into the given buffer, starting at the given position of the
+   * location content. The position of this channel is not updated.
+   *
+   * @param dst the buffer into which bytes are to be transferred
+   * @param position the position in the location content at which the transfer is to begin; must be non-negative
+   * @return the number of bytes read, possibly zero, or {@code -1} if the given position is greater than or equal
+   *         to the size of the content
+   * @throws IOException if failed to read from the location
+   */
+  int read(ByteBuffer dst, long position) throws IOException;
+}
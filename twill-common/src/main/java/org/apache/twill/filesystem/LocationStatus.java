@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.filesystem;
+
+import java.nio.file.attribute.PosixFilePermissions;
+import javax.annotation.Nullable;
+
+/**
+ * Represents the status of a {@link Location}, as obtained from the file system at the time the status is
+ * created. The metadata is not refreshed afterward.
+ */
+public final class LocationStatus {
+
+  private final Location location;
+  private final long length;
+  private final long lastModified;
+  private final boolean directory;
+  private final String permissions;
+
+  public LocationStatus(Location location, long length, long lastModified,
+                        boolean directory, @Nullable String permissions) {
+    this.location = location;
+    this.length = length;
+    this.lastModified = lastModified;
+    this.directory = directory;
+    this.permissions = permissions;
+  }
+
+  /**
+   * Returns the {@link Location} that this status is for.
+   */
+  public Location getLocation() {
+    return location;
+  }
+
+  /**
+   * Returns the length of the file.
+   */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Returns the last modified time of the location.
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Returns {@code true} if the location is a directory.
+   */
+  public boolean isDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the permissions of the location as a nine character string in the format specified by the
+   * {@link PosixFilePermissions#fromString(String)} method, or {@code null} if Posix file permissions are not
+   * supported by the file system.
+   */
+  @Nullable
+  public String getPermissions() {
+    return permissions;
+  }
+
+  @Override
+  public String toString() {
+    return "LocationStatus{" +
+      "location=" + location +
+      ", length=" + length +
+      ", lastModified=" + lastModified +
+      ", directory=" + directory +
+      ", permissions=" + permissions +
+      '}';
+  }
+}
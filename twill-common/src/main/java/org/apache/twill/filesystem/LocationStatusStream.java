@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.filesystem;
+
+import java.io.Closeable;
+
+/**
+ * A stream of {@link LocationStatus} returned by {@link Location#listStatus()}. Entries are fetched lazily from
+ * the file system while iterating, hence the stream can only be iterated once, and it must be closed after use,
+ * preferably with a try-with-resources statement.
+ * <p>
+ * Since {@link java.util.Iterator} cannot throw checked exception, errors encountered while fetching entries are
+ * thrown as {@link java.io.UncheckedIOException}.
+ * </p>
+ */
+public interface LocationStatusStream extends Iterable<LocationStatus>, Closeable {
+}
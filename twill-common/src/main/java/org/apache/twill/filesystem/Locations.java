@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.filesystem;
+
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+/**
+ * Utility methods for copying content between {@link Location}s.
+ */
+public final class Locations {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Locations.class);
+
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  // Files larger than this size are copied in ranges of this size in parallel if the target supports it
+  private static final long COPY_RANGE_SIZE = 64L * 1024 * 1024;
+
+  /**
+   * Copies the content of the source {@link Location} to the target {@link Location}, replacing the existing content
+   * of the target. It uses {@link Location#transferTo(Location)}, which picks the most efficient way of copying
+   * supported by the two locations.
+   *
+   * @return number of bytes copied
+   * @throws IOException if failed to copy
+   */
+  public static long copy(Location source, Location target) throws IOException {
+    return source.transferTo(target);
+  }
+
+  /**
+   * Copies all bytes from the given {@link ReadableByteChannel} to the given {@link WritableByteChannel} until
+   * the end of the source is reached. Neither channel is closed by this method. If the source is a
+   * {@link FileChannel}, the copy is done by {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+   * which avoids copying the bytes through the Java heap when the underlying operating system supports it.
+   *
+   * @return number of bytes copied
+   * @throws IOException if failed to copy
+   */
+  public static long copy(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+    if (source instanceof FileChannel) {
+      FileChannel fileChannel = (FileChannel) source;
+      long position = fileChannel.position();
+      long size = fileChannel.size();
+      long transferred = position;
+      while (transferred < size) {
+        long count = fileChannel.transferTo(transferred, size - transferred, target);
+        if (count <= 0) {
+          // The file was truncated while copying
+          break;
+        }
+        transferred += count;
+      }
+      fileChannel.position(transferred);
+      return transferred - position;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+    long copied = 0;
+    while (source.read(buffer) >= 0 || buffer.position() > 0) {
+      // Cast to Buffer, since ByteBuffer overrides these methods with covariant return types since Java 9
+      ((Buffer) buffer).flip();
+      copied += target.write(buffer);
+      buffer.compact();
+    }
+    return copied;
+  }
+
+  /**
+   * Copies each source {@link Location} in the given map to its target {@link Location}, with at most
+   * {@code parallelism} copies running at the same time.
+   * <p/>
+   * <ul>
+   *   <li>A copy is skipped if the target already exists with the same length and CRC32 checksum as the source.</li>
+   *   <li>Content is first copied to a temporary file next to the target, which is then renamed to the target,
+   *       hence the target either has the old content or the complete new content.</li>
+   *   <li>Large files are split into ranges that are copied in parallel if the target is on the local file system,
+   *       which supports writing at arbitrary positions.</li>
+   * </ul>
+   *
+   * @param copies map from source location to target location
+   * @param parallelism maximum number of copies running at the same time
+   * @return number of bytes copied, excluding the skipped copies
+   * @throws IOException if any of the copies failed. Targets that were copied before the failure are kept.
+   */
+  public static long copyAll(Map<Location, Location> copies, int parallelism) throws IOException {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    if (copies.isEmpty()) {
+      return 0L;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                                                            Threads.createDaemonThreadFactory("location-copy-%d"));
+    final boolean splittable = parallelism > 1;
+    List<Future<Object>> futures = new ArrayList<>();
+    boolean succeeded = false;
+    try {
+      // Copy files that don't need splitting. Files that need splitting are returned as RangedCopy,
+      // whose ranges are submitted from this thread to avoid tasks waiting on other tasks in the bounded pool.
+      for (final Map.Entry<Location, Location> entry : copies.entrySet()) {
+        futures.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            return copyOrPrepare(entry.getKey(), entry.getValue(), splittable);
+          }
+        }));
+      }
+
+      long copied = 0L;
+      List<RangedCopy> rangedCopies = new ArrayList<>();
+      List<Future<Object>> rangeFutures = new ArrayList<>();
+      for (Future<Object> future : futures) {
+        Object result = getUninterruptibly(future);
+        if (result instanceof RangedCopy) {
+          RangedCopy rangedCopy = (RangedCopy) result;
+          rangedCopies.add(rangedCopy);
+          rangeFutures.addAll(rangedCopy.submitRanges(executor));
+        } else {
+          copied += (Long) result;
+        }
+      }
+      for (Future<Object> future : rangeFutures) {
+        getUninterruptibly(future);
+      }
+      for (RangedCopy rangedCopy : rangedCopies) {
+        copied += rangedCopy.complete();
+      }
+      succeeded = true;
+      return copied;
+    } finally {
+      // Tasks that never started are cancelled, otherwise waiting on them in abortRangedCopies never returns
+      for (Runnable task : executor.shutdownNow()) {
+        if (task instanceof Future) {
+          ((Future<?>) task).cancel(false);
+        }
+      }
+      if (!succeeded) {
+        abortRangedCopies(futures);
+      }
+    }
+  }
+
+  /**
+   * Waits for the given copy tasks to finish after a failure and aborts all {@link RangedCopy} returned by them.
+   * Tasks that never started must be cancelled before calling this method.
+   */
+  private static void abortRangedCopies(List<Future<Object>> futures) {
+    for (Future<Object> future : futures) {
+      try {
+        Object result = future.get();
+        if (result instanceof RangedCopy) {
+          ((RangedCopy) result).abort();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOG.warn("Interrupted while cleaning up failed copies. Some temporary files may be left behind.");
+        return;
+      } catch (Exception e) {
+        // The failure of the task is either already reported or is caused by the cancellation
+        LOG.trace("Copy task failed", e);
+      }
+    }
+  }
+
+  /**
+   * Copies the source to the target, unless the target already has the same content. If the copy should be done
+   * in ranges, a {@link RangedCopy} is returned instead, otherwise the number of bytes copied is returned.
+   */
+  private static Object copyOrPrepare(Location source, Location target, boolean splittable) throws IOException {
+    long length = source.length();
+    if (hasSameContent(source, length, target)) {
+      LOG.debug("Skip copying {} to {} as the content is the same", source, target);
+      return 0L;
+    }
+
+    Location tempLocation = target.getTempFile(Location.TEMP_FILE_SUFFIX);
+    try {
+      if (splittable && length > COPY_RANGE_SIZE && tempLocation instanceof LocalLocation) {
+        return new RangedCopy(source, target, tempLocation, length);
+      }
+      long copied = source.transferTo(tempLocation);
+      rename(tempLocation, target);
+      LOG.debug("Copied {} bytes from {} to {}", copied, source, target);
+      return copied;
+    } catch (IOException | RuntimeException e) {
+      deleteQuietly(tempLocation);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns {@code true} if the target exists and has the same length and CRC32 checksum as the source.
+   */
+  private static boolean hasSameContent(Location source, long sourceLength, Location target) throws IOException {
+    if (!target.exists() || target.isDirectory() || target.length() != sourceLength) {
+      return false;
+    }
+    return checksum(source) == checksum(target);
+  }
+
+  /**
+   * Computes the CRC32 checksum of the content of the given {@link Location}.
+   */
+  private static long checksum(Location location) throws IOException {
+    CRC32 crc32 = new CRC32();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+    try (ReadableByteChannel channel = location.getReadChannel()) {
+      while (channel.read(buffer) >= 0) {
+        ((Buffer) buffer).flip();
+        crc32.update(buffer);
+        ((Buffer) buffer).clear();
+      }
+    }
+    return crc32.getValue();
+  }
+
+  private static void rename(Location source, Location target) throws IOException {
+    if (source.renameTo(target) == null) {
+      throw new IOException("Failed to rename " + source + " to " + target);
+    }
+  }
+
+  private static void deleteQuietly(@Nullable Location location) {
+    if (location == null) {
+      return;
+    }
+    try {
+      location.delete();
+    } catch (IOException e) {
+      LOG.warn("Failed to delete {}", location, e);
+    }
+  }
+
+  /**
+   * Waits for the given {@link Future} to complete and returns its result. Failure of the task is rethrown
+   * as {@link IOException}.
+   */
+  private static <V> V getUninterruptibly(Future<V> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException ioe = new InterruptedIOException("Interrupted while copying locations");
+      ioe.initCause(e);
+      throw ioe;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * A copy of a large file to a local temporary file in ranges, with each range copied independently using
+   * positional read from the source and positional write to the target.
+   */
+  private static final class RangedCopy {
+
+    private final Location source;
+    private final Location target;
+    private final Location tempLocation;
+    private final long length;
+    private final FileChannel channel;
+
+    RangedCopy(Location source, Location target, Location tempLocation, long length) throws IOException {
+      this.source = source;
+      this.target = target;
+      this.tempLocation = tempLocation;
+      this.length = length;
+      this.channel = ((LocalLocation) tempLocation).getWriteChannel();
+    }
+
+    List<Future<Object>> submitRanges(ExecutorService executor) {
+      List<Future<Object>> futures = new ArrayList<>();
+      for (long position = 0; position < length; position += COPY_RANGE_SIZE) {
+        final long start = position;
+        final long end = Math.min(length, position + COPY_RANGE_SIZE);
+        futures.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            copyRange(start, end);
+            return null;
+          }
+        }));
+      }
+      return futures;
+    }
+
+    /**
+     * Closes the temporary file and renames it to the target.
+     *
+     * @return number of bytes copied
+     */
+    long complete() throws IOException {
+      channel.close();
+      if (tempLocation.length() != length) {
+        throw new IOException("Source " + source + " was modified while copying to " + target);
+      }
+      rename(tempLocation, target);
+      LOG.debug("Copied {} bytes from {} to {} in ranges", length, source, target);
+      return length;
+    }
+
+    void abort() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close channel for {}", tempLocation, e);
+      }
+      deleteQuietly(tempLocation);
+    }
+
+    private void copyRange(long start, long end) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+      try (LocationReadChannel input = source.getReadChannel()) {
+        long position = start;
+        while (position < end) {
+          ((Buffer) buffer).clear();
+          ((Buffer) buffer).limit((int) Math.min(buffer.capacity(), end - position));
+          int bytesRead = input.read(buffer, position);
+          if (bytesRead < 0) {
+            throw new IOException("Unexpected end of " + source + " at " + position + ". Expected length " + length);
+          }
+          ((Buffer) buffer).flip();
+          while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+          }
+        }
+      }
+    }
+  }
+
+  private Locations() {
+  }
+}
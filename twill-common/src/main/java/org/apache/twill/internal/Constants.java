@@ -57,6 +57,12 @@ public final class Constants {
    */
   public static final String TWILL_CONTAINER_CLASSLOADER = "twill.container.class.loader";
 
+  /**
+   * Constant for the system property name that carries the timestamp when the launcher finished building
+   * the container classpath.
+   */
+  public static final String TWILL_LAUNCHER_CLASSPATH_BUILT = "twill.launcher.classpath.built";
+
   /**
    * Constants for names of internal files that are shared between client, AM and containers.
    */
@@ -80,6 +86,7 @@ public final class Constants {
 
     public static final String CREDENTIALS = "credentials.store";
     public static final String LOG_LEVELS = "logLevel.json";
+    public static final String CDS_ARCHIVE = "twill.jsa";
 
     private Files() {
     }
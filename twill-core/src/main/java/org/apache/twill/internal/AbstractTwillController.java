@@ -30,6 +30,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.twill.api.Command;
+import org.apache.twill.api.LaunchPhase;
 import org.apache.twill.api.ResourceReport;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.TwillController;
@@ -61,6 +62,7 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
+import javax.annotation.Nullable;
 
 /**
  * A abstract base class for {@link TwillController} implementation that uses Zookeeper to controller a
@@ -222,6 +224,20 @@ public abstract class AbstractTwillController extends AbstractZKServiceControlle
     return sendMessage(SystemMessages.resetLogLevels(runnableName, Sets.newHashSet(loggerNames)), loggerNames);
   }
 
+  @Nullable
+  @Override
+  public Map<String, Map<LaunchPhase, Long>> getLaunchSummary() {
+    ResourceReport resourceReport = getResourceReport();
+    if (resourceReport == null) {
+      return null;
+    }
+    Map<String, Map<LaunchPhase, Long>> summary = Maps.newTreeMap();
+    for (String runnableName : resourceReport.getResources().keySet()) {
+      summary.put(runnableName, resourceReport.getLaunchSummary(runnableName));
+    }
+    return summary;
+  }
+
   /**
    * Reset the log handler to poll from the beginning of Kafka.
    */
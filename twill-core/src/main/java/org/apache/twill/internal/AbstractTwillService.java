@@ -212,7 +212,7 @@ public abstract class AbstractTwillService extends AbstractExecutionThreadServic
    */
   protected final OperationFuture<?> updateLiveNode() {
     String liveNodePath = getLiveNodePath();
-    LOG.info("Update live node {}{}", zkClient.getConnectString(), liveNodePath);
+    LOG.debug("Update live node {}{}", zkClient.getConnectString(), liveNodePath);
     return zkClient.setData(liveNodePath, serializeLiveNode());
   }
 
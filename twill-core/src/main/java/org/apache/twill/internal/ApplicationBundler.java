@@ -29,11 +29,11 @@ import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import org.apache.twill.api.ClassAcceptor;
 import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.Locations;
 import org.apache.twill.internal.utils.Dependencies;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -42,6 +42,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.Queue;
 import java.util.Set;
@@ -216,9 +219,11 @@ public final class ApplicationBundler {
         }
       }
       LOG.debug("Copying temporary bundle to destination {} ({} bytes)", target, tmpJar.length());
-      // Copy the tmp jar into destination.
-      try (OutputStream os = new BufferedOutputStream(target.getOutputStream())) {
-        Files.copy(tmpJar, os);
+      // Copy the tmp jar into destination. Copying through channels lets the file system avoid copying the bytes
+      // through the Java heap, which matters for large bundles.
+      try (FileChannel input = FileChannel.open(tmpJar.toPath(), StandardOpenOption.READ);
+           WritableByteChannel output = target.getWriteChannel()) {
+        Locations.copy(input, output);
       } catch (IOException e) {
         throw new IOException("Failed to copy bundle from " + tmpJar + " to " + target, e);
       }
@@ -17,7 +17,10 @@
  */
 package org.apache.twill.internal;
 
+import com.google.common.base.Preconditions;
+import org.apache.twill.api.DistributedSemaphore;
 import org.apache.twill.api.ElectionHandler;
+import org.apache.twill.api.PartitionAssignment;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.TwillContext;
 import org.apache.twill.api.TwillRunnable;
@@ -27,12 +30,21 @@ import org.apache.twill.discovery.Discoverable;
 import org.apache.twill.discovery.DiscoveryService;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.apache.twill.discovery.ServiceDiscovered;
-import org.apache.twill.internal.zookeeper.ReentrantDistributedLock;
+import org.apache.twill.internal.metrics.DefaultMetricsRegistry;
+import org.apache.twill.internal.zookeeper.LeasedDistributedLock;
+import org.apache.twill.internal.zookeeper.ZKPartitionAssignment;
+import org.apache.twill.internal.zookeeper.ZKReadWriteLock;
+import org.apache.twill.internal.zookeeper.ZKSemaphore;
 import org.apache.twill.zookeeper.ZKClient;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
 /**
  * Implementation of {@link TwillContext} that provides the basic runtime information of a {@link TwillRunnable}.
@@ -52,6 +64,9 @@ public final class BasicTwillContext implements TwillContext {
   private final int virtualCores;
   private final ZKClient zkClient;
   private final ElectionRegistry elections;
+  private final DefaultMetricsRegistry metrics;
+  private final ConcurrentMap<String, LeasedDistributedLock> locks;
+  private final ConcurrentMap<String, ZKPartitionAssignment> partitionAssignments;
   private volatile int instanceCount;
 
   public BasicTwillContext(RunId runId, RunId appRunId, InetAddress host, String[] args, String[] appArgs,
@@ -69,7 +84,10 @@ public final class BasicTwillContext implements TwillContext {
     this.discoveryService = discoveryService;
     this.discoveryServiceClient = discoveryServiceClient;
     this.zkClient = zkClient;
-    this.elections = new ElectionRegistry(zkClient);
+    this.metrics = new DefaultMetricsRegistry();
+    this.elections = new ElectionRegistry(zkClient, metrics);
+    this.locks = new ConcurrentHashMap<>();
+    this.partitionAssignments = new ConcurrentHashMap<>();
     this.instanceCount = instanceCount;
     this.allowedMemoryMB = allowedMemoryMB;
     this.virtualCores = virtualCores;
@@ -149,9 +167,64 @@ public final class BasicTwillContext implements TwillContext {
     return elections.register("/leader/" + name, participantHandler);
   }
 
+  @Override
+  public Cancellable electLeaders(Map<String, ? extends ElectionHandler> participantHandlers) {
+    Map<String, ElectionHandler> handlers = new HashMap<>();
+    for (Map.Entry<String, ? extends ElectionHandler> entry : participantHandlers.entrySet()) {
+      handlers.put("/leader/" + entry.getKey(), entry.getValue());
+    }
+    return elections.register(handlers);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * All locks created with the same name share the same {@link LeasedDistributedLock}, such that threads in this
+   * container queue locally and only one lock node is used in ZooKeeper. The lock node is held until another
+   * container tries to acquire the lock or the lock is idle, which makes uncontended locking a local operation.
+   */
   @Override
   public Lock createLock(String name) {
-    return new ReentrantDistributedLock(zkClient, "/lock/" + name);
+    LeasedDistributedLock lock = locks.get(name);
+    if (lock != null) {
+      return lock;
+    }
+    lock = new LeasedDistributedLock(zkClient, "/lock/" + name);
+    LeasedDistributedLock existing = locks.putIfAbsent(name, lock);
+    if (existing != null) {
+      lock.close();
+      return existing;
+    }
+    return lock;
+  }
+
+  @Override
+  public ReadWriteLock createReadWriteLock(String name) {
+    return new ZKReadWriteLock(zkClient, "/rwlock/" + name);
+  }
+
+  @Override
+  public DistributedSemaphore createSemaphore(String name, int permits) {
+    return new ZKSemaphore(zkClient, "/semaphore/" + name, permits);
+  }
+
+  @Override
+  public synchronized PartitionAssignment getPartitionAssignment(String name, int numPartitions) {
+    ZKPartitionAssignment assignment = partitionAssignments.get(name);
+    if (assignment != null && !assignment.isCancelled()) {
+      Preconditions.checkArgument(assignment.getNumPartitions() == numPartitions,
+                                  "Partition assignment %s already exists with %s partitions",
+                                  name, assignment.getNumPartitions());
+      return assignment;
+    }
+    assignment = new ZKPartitionAssignment(zkClient, "/partitions/" + name, runId.getId(), numPartitions);
+    partitionAssignments.put(name, assignment);
+    return assignment;
+  }
+
+  @Override
+  public DefaultMetricsRegistry getMetrics() {
+    return metrics;
   }
 
   /**
@@ -159,5 +232,11 @@ public final class BasicTwillContext implements TwillContext {
    */
   public void stop() {
     elections.shutdown();
+    for (LeasedDistributedLock lock : locks.values()) {
+      lock.close();
+    }
+    for (ZKPartitionAssignment assignment : partitionAssignments.values()) {
+      assignment.cancel();
+    }
   }
 }
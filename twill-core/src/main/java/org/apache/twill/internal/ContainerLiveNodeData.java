@@ -17,7 +17,11 @@
  */
 package org.apache.twill.internal;
 
+import org.apache.twill.internal.metrics.DefaultMetricsSnapshot;
+
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import javax.annotation.Nullable;
 
@@ -29,6 +33,8 @@ public final class ContainerLiveNodeData {
   private final String host;
   private final String debugPort;
   private final Map<String, String> logLevels;
+  private volatile Map<String, Long> launchTimeline;
+  private volatile DefaultMetricsSnapshot metrics;
 
   public ContainerLiveNodeData(String containerId, String host, String debugPort,
                                Map<String, String> logLevels) {
@@ -61,4 +67,29 @@ public final class ContainerLiveNodeData {
   public void removeLogLevel(String loggerName) {
     logLevels.remove(loggerName);
   }
+
+  /**
+   * Returns the launch phases recorded by the container, keyed by the phase name. It is empty if the container
+   * runs with an older version of Twill that doesn't record the launch phases.
+   */
+  public Map<String, Long> getLaunchTimeline() {
+    Map<String, Long> timeline = launchTimeline;
+    return timeline == null ? Collections.<String, Long>emptyMap() : timeline;
+  }
+
+  public void setLaunchTimeline(Map<String, Long> launchTimeline) {
+    this.launchTimeline = Collections.unmodifiableMap(new LinkedHashMap<>(launchTimeline));
+  }
+
+  /**
+   * Returns the latest metrics reported by the container, or {@code null} if no metrics has been reported.
+   */
+  @Nullable
+  public DefaultMetricsSnapshot getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(DefaultMetricsSnapshot metrics) {
+    this.metrics = metrics;
+  }
 }
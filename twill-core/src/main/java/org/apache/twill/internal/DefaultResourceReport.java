@@ -21,6 +21,7 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
+import org.apache.twill.api.LaunchPhase;
 import org.apache.twill.api.ResourceReport;
 import org.apache.twill.api.TwillRunResources;
 
@@ -145,6 +146,11 @@ public final class DefaultResourceReport implements ResourceReport {
     return services.get();
   }
 
+  @Override
+  public Map<LaunchPhase, Long> getLaunchSummary(String runnableName) {
+    return LaunchTimeline.summarize(getRunnableResources(runnableName));
+  }
+
   @Override
   public String toString() {
     return "DefaultResourceReport{" +
@@ -21,19 +21,36 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import org.apache.twill.api.ElectionHandler;
+import org.apache.twill.api.metrics.MetricsRegistry;
 import org.apache.twill.common.Cancellable;
 import org.apache.twill.internal.zookeeper.LeaderElection;
+import org.apache.twill.internal.zookeeper.LeaderElectionManager;
 import org.apache.twill.zookeeper.ZKClient;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
 /**
  * Tracks currently active leader elections within the Twill container.
  */
 public class ElectionRegistry {
   private final ZKClient zkClient;
+  private final LeaderElectionManager manager;
   private final Multimap<String, LeaderElection> registry;
 
   public ElectionRegistry(ZKClient zkClient) {
+    this(zkClient, null);
+  }
+
+  /**
+   * Creates an instance that records metrics of elections registered through {@link #register(Map)} to the given
+   * {@link MetricsRegistry}.
+   */
+  public ElectionRegistry(ZKClient zkClient, @Nullable MetricsRegistry metrics) {
     this.zkClient = zkClient;
+    this.manager = new LeaderElectionManager(zkClient, metrics);
     Multimap<String, LeaderElection> multimap = HashMultimap.create();
     this.registry = Multimaps.synchronizedMultimap(multimap);
   }
@@ -51,6 +68,31 @@ public class ElectionRegistry {
     return new CancellableElection(name, election);
   }
 
+  /**
+   * Starts {@link LeaderElection LeaderElections} for all the given names and adds them to the registry. Unlike
+   * calling {@link #register(String, ElectionHandler)} for each of them, the elections share threads, connection
+   * watching and listing of election nodes, which reduces the load on ZooKeeper when there are many elections.
+   * Handlers of those elections should not block, as it delays other elections.
+   *
+   * @param handlers Map from election name to the callback to handle leader and follower transitions.
+   * @return An object to cancel the participation of all the elections.
+   */
+  public Cancellable register(Map<String, ? extends ElectionHandler> handlers) {
+    final List<Cancellable> cancellables = new ArrayList<>(handlers.size());
+    for (Map.Entry<String, LeaderElection> entry : manager.elect(handlers).entrySet()) {
+      registry.put(entry.getKey(), entry.getValue());
+      cancellables.add(new CancellableElection(entry.getKey(), entry.getValue()));
+    }
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        for (Cancellable cancellable : cancellables) {
+          cancellable.cancel();
+        }
+      }
+    };
+  }
+
   /**
    * Stops all active {@link LeaderElection} processes.
    */
@@ -45,6 +45,16 @@ public final class EnvKeys {
   public static final String YARN_CONTAINER_VIRTUAL_CORES = "YARN_CONTAINER_VIRTUAL_CORES";
   public static final String YARN_CONTAINER_MEMORY_MB = "YARN_CONTAINER_MEMORY_MB";
 
+  /**
+   * Comma separated list of local directories of the container, as set by the YARN NodeManager.
+   */
+  public static final String YARN_CONTAINER_LOCAL_DIRS = "LOCAL_DIRS";
+
+  /**
+   * Carries the launch phases recorded by the client to the application master.
+   */
+  public static final String TWILL_LAUNCH_TIMELINE = "TWILL_LAUNCH_TIMELINE";
+
   private EnvKeys() {
   }
 }
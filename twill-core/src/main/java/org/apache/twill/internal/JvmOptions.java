@@ -24,6 +24,7 @@ import com.google.common.primitives.Booleans;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 /**
  * A class that encapsulates the different options for starting Java in containers.
@@ -33,11 +34,18 @@ public final class JvmOptions {
   private final String extraOptions;
   private final Map<String, String> runnableExtraOptions;
   private final DebugOptions debugOptions;
+  private final ClassDataSharingOptions classDataSharingOptions;
 
   public JvmOptions(String extraOptions, Map<String, String> runnableExtraOptions, DebugOptions debugOptions) {
+    this(extraOptions, runnableExtraOptions, debugOptions, null);
+  }
+
+  public JvmOptions(String extraOptions, Map<String, String> runnableExtraOptions, DebugOptions debugOptions,
+                    @Nullable ClassDataSharingOptions classDataSharingOptions) {
     this.extraOptions = extraOptions;
     this.runnableExtraOptions = runnableExtraOptions;
     this.debugOptions = debugOptions;
+    this.classDataSharingOptions = classDataSharingOptions;
   }
 
   /**
@@ -58,6 +66,104 @@ public final class JvmOptions {
     return debugOptions;
   }
 
+  /**
+   * Returns the class data sharing options or {@code null} if no class data sharing archive was created.
+   */
+  @Nullable
+  public ClassDataSharingOptions getClassDataSharingOptions() {
+    return classDataSharingOptions;
+  }
+
+  /**
+   * Represents the class data sharing archive that was created for the container JVMs.
+   * <ul>
+   *   <li>the name of the localized archive file</li>
+   *   <li>the JVM version that created the archive, which the container JVM must match in order to use it</li>
+   * </ul>
+   */
+  public static final class ClassDataSharingOptions {
+
+    /**
+     * The minimum Java specification version that supports dynamic class data sharing archive.
+     */
+    private static final int MIN_JAVA_VERSION = 13;
+
+    /**
+     * System property set on the container JVM to carry the version of the JVM that created the archive.
+     */
+    public static final String VM_VERSION_PROPERTY = "twill.cds.vm.version";
+
+    private final String archiveName;
+    private final String vmVersion;
+
+    public ClassDataSharingOptions(String archiveName, String vmVersion) {
+      this.archiveName = archiveName;
+      this.vmVersion = vmVersion;
+    }
+
+    public String getArchiveName() {
+      return archiveName;
+    }
+
+    public String getVMVersion() {
+      return vmVersion;
+    }
+
+    /**
+     * Returns the JVM options for using the class data sharing archive. The archive is used in the auto mode,
+     * such that the container JVM validates the archive against itself and falls back to normal class loading
+     * if the archive cannot be mapped. The version of the JVM that created the archive is passed with the
+     * {@link #VM_VERSION_PROPERTY} system property, so that the container can tell whether the archive is usable.
+     */
+    public String[] getJVMOptions() {
+      return new String[] {
+        "-XX:SharedArchiveFile=" + archiveName, "-Xshare:auto", "-D" + VM_VERSION_PROPERTY + "=" + vmVersion
+      };
+    }
+
+    /**
+     * @return whether a JVM of the given specification version and VM version can use the archive.
+     */
+    public boolean isSupported(String javaSpecVersion, String vmVersion) {
+      return isDynamicArchiveSupported(javaSpecVersion) && this.vmVersion.equals(vmVersion);
+    }
+
+    /**
+     * @return whether a JVM of the given specification version supports creating dynamic archive at exit.
+     */
+    public static boolean isDynamicArchiveSupported(String javaSpecVersion) {
+      try {
+        // Java 8 and before has specification version in the form of "1.x"
+        return !javaSpecVersion.startsWith("1.") && Integer.parseInt(javaSpecVersion) >= MIN_JAVA_VERSION;
+      } catch (NumberFormatException e) {
+        return false;
+      }
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+      if (!(object instanceof ClassDataSharingOptions)) {
+        return false;
+      }
+
+      ClassDataSharingOptions that = (ClassDataSharingOptions) object;
+      return Objects.equals(archiveName, that.archiveName) && Objects.equals(vmVersion, that.vmVersion);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(archiveName, vmVersion);
+    }
+
+    @Override
+    public String toString() {
+      return "{\"archiveName\":\"" + archiveName + "\",\"vmVersion\":\"" + vmVersion + "\"}";
+    }
+  }
+
   /**
    * Represents the debugging options of the JVM.
    * <ul>
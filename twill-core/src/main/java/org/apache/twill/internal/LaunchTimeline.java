@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.twill.api.LaunchPhase;
+import org.apache.twill.api.TwillRunResources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A thread-safe recorder of the time when each {@link LaunchPhase} happened, together with helper methods
+ * for turning timelines into per phase durations.
+ */
+public final class LaunchTimeline {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LaunchTimeline.class);
+  private static final Gson GSON = new Gson();
+
+  private final Map<LaunchPhase, Long> phases = new EnumMap<>(LaunchPhase.class);
+
+  /**
+   * Creates a {@link LaunchTimeline} with the {@link LaunchPhase#JVM_STARTED} and
+   * {@link LaunchPhase#CLASSPATH_BUILT} phases of the current process.
+   */
+  public static LaunchTimeline forCurrentProcess() {
+    LaunchTimeline timeline = new LaunchTimeline();
+    timeline.mark(LaunchPhase.JVM_STARTED, ManagementFactory.getRuntimeMXBean().getStartTime());
+    String classpathBuilt = System.getProperty(Constants.TWILL_LAUNCHER_CLASSPATH_BUILT);
+    if (classpathBuilt != null) {
+      try {
+        timeline.mark(LaunchPhase.CLASSPATH_BUILT, Long.parseLong(classpathBuilt));
+      } catch (NumberFormatException e) {
+        LOG.warn("Ignore invalid value '{}' of system property {}",
+                 classpathBuilt, Constants.TWILL_LAUNCHER_CLASSPATH_BUILT);
+      }
+    }
+    return timeline;
+  }
+
+  /**
+   * Records the given phase as happening now.
+   */
+  public LaunchTimeline mark(LaunchPhase phase) {
+    return mark(phase, System.currentTimeMillis());
+  }
+
+  /**
+   * Records the given phase as happening at the given timestamp in milliseconds.
+   */
+  public synchronized LaunchTimeline mark(LaunchPhase phase, long timestamp) {
+    phases.put(phase, timestamp);
+    return this;
+  }
+
+  /**
+   * Records all the phases in the given timeline.
+   */
+  public synchronized LaunchTimeline markAll(Map<LaunchPhase, Long> timeline) {
+    phases.putAll(timeline);
+    return this;
+  }
+
+  /**
+   * Returns an immutable snapshot of the phases recorded so far, ordered by {@link LaunchPhase}.
+   */
+  public synchronized Map<LaunchPhase, Long> getPhases() {
+    return ImmutableMap.copyOf(phases);
+  }
+
+  /**
+   * Encodes the phases recorded so far as a json string.
+   */
+  public String encode() {
+    return GSON.toJson(toNames(getPhases()));
+  }
+
+  /**
+   * Decodes the phases from a string created by {@link #encode()}.
+   * An empty map is returned if the given string is {@code null}.
+   */
+  public static Map<LaunchPhase, Long> decode(@Nullable String encoded) {
+    if (encoded == null) {
+      return ImmutableMap.of();
+    }
+    Map<String, Long> timeline = GSON.fromJson(encoded, new TypeToken<Map<String, Long>>() { }.getType());
+    return fromNames(timeline);
+  }
+
+  /**
+   * Converts a timeline to be keyed by the phase names.
+   */
+  public static Map<String, Long> toNames(Map<LaunchPhase, Long> timeline) {
+    Map<String, Long> result = Maps.newLinkedHashMap();
+    for (Map.Entry<LaunchPhase, Long> entry : timeline.entrySet()) {
+      result.put(entry.getKey().name(), entry.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * Converts a timeline keyed by phase names back to {@link LaunchPhase}. Unknown phase names, which can come from
+   * a process running a different version of Twill, are ignored.
+   */
+  public static Map<LaunchPhase, Long> fromNames(@Nullable Map<String, Long> timeline) {
+    Map<LaunchPhase, Long> result = new EnumMap<>(LaunchPhase.class);
+    if (timeline == null) {
+      return result;
+    }
+    for (Map.Entry<String, Long> entry : timeline.entrySet()) {
+      if (entry.getValue() == null) {
+        continue;
+      }
+      try {
+        result.put(LaunchPhase.valueOf(entry.getKey()), entry.getValue());
+      } catch (IllegalArgumentException e) {
+        LOG.debug("Ignore unknown launch phase {}", entry.getKey());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes the time in milliseconds spent to reach each phase in the given timeline from the phase
+   * recorded before it. The first recorded phase is not included in the result.
+   */
+  public static Map<LaunchPhase, Long> getDurations(Map<LaunchPhase, Long> timeline) {
+    Map<LaunchPhase, Long> durations = new EnumMap<>(LaunchPhase.class);
+    Long previous = null;
+    for (LaunchPhase phase : LaunchPhase.values()) {
+      Long timestamp = timeline.get(phase);
+      if (timestamp == null) {
+        continue;
+      }
+      if (previous != null) {
+        durations.put(phase, timestamp - previous);
+      }
+      previous = timestamp;
+    }
+    return durations;
+  }
+
+  /**
+   * Summarizes the launch of the given instances by taking, for each phase, the maximum duration among all instances.
+   *
+   * @see #getDurations(Map)
+   */
+  public static Map<LaunchPhase, Long> summarize(Iterable<? extends TwillRunResources> resources) {
+    Map<LaunchPhase, Long> summary = new EnumMap<>(LaunchPhase.class);
+    for (TwillRunResources instance : resources) {
+      for (Map.Entry<LaunchPhase, Long> entry : getDurations(instance.getLaunchTimeline()).entrySet()) {
+        Long current = summary.get(entry.getKey());
+        if (current == null || current < entry.getValue()) {
+          summary.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    return summary;
+  }
+
+  @Override
+  public String toString() {
+    return "LaunchTimeline{phases=" + getPhases() + '}';
+  }
+}
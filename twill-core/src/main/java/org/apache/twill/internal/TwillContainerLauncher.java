@@ -152,6 +152,21 @@ public final class TwillContainerLauncher {
                        "-Dtwill.runnable=$" + Constants.TWILL_APP_NAME + ".$" + EnvKeys.TWILL_RUNNABLE_NAME,
                        "-cp", Constants.Files.LAUNCHER_JAR + ":" + classPath,
                        "-Xmx" + maxHeapSizeMB + "m");
+
+    // The class data sharing archive is only usable by the same JVM that created it, which is validated by the
+    // container JVM itself as the archive is used in the auto mode. Only JVMs that are too old to understand the
+    // archive options are excluded here, based on the cluster JVM this launcher runs with.
+    JvmOptions.ClassDataSharingOptions cdsOptions = jvmOpts.getClassDataSharingOptions();
+    if (cdsOptions != null) {
+      if (JvmOptions.ClassDataSharingOptions.isDynamicArchiveSupported(
+        System.getProperty("java.specification.version"))) {
+        commandBuilder.add(cdsOptions.getJVMOptions());
+      } else {
+        LOG.debug("Class data sharing archive is not supported by Java {}. Not using it.",
+                  System.getProperty("java.specification.version"));
+      }
+    }
+
     String extraOptions = jvmOpts.getRunnableExtraOptions(runtimeSpec.getName());
     if (!extraOptions.isEmpty()) {
       commandBuilder.add(extraOptions);
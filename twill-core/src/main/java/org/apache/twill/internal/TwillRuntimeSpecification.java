@@ -127,6 +127,22 @@ public class TwillRuntimeSpecification {
       Configs.Defaults.LOG_COLLECTION_ENABLED;
   }
 
+  /**
+   * Returns the interval in seconds for runnables to report metrics to the application master.
+   */
+  public long getMetricsReportIntervalSeconds() {
+    String interval = config.get(Configs.Keys.METRICS_REPORT_INTERVAL_SECONDS);
+    return interval == null ? Configs.Defaults.METRICS_REPORT_INTERVAL_SECONDS : Long.parseLong(interval);
+  }
+
+  /**
+   * Returns the interval in seconds for the application master to evaluate the autoscale policies of runnables.
+   */
+  public long getAutoscaleIntervalSeconds() {
+    String interval = config.get(Configs.Keys.AUTOSCALE_INTERVAL_SECONDS);
+    return interval == null ? Configs.Defaults.AUTOSCALE_INTERVAL_SECONDS : Long.parseLong(interval);
+  }
+
   @Nullable
   public String getRmSchedulerAddr() {
     return rmSchedulerAddr;
@@ -7,7 +7,7 @@
  * "License"); you may not use this file except in compliance
  * with the License.  You may obtain a copy of the License at
  *
- *      http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.apache.org/licenses/LICENSE-2.0
  *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
@@ -17,36 +17,210 @@
  */
 package org.apache.twill.internal.io;
 
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.api.metrics.Counter;
+import org.apache.twill.api.metrics.MetricsRegistry;
+import org.apache.twill.api.metrics.Timer;
 import org.apache.twill.filesystem.Location;
+import org.apache.twill.internal.metrics.DefaultMetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A straightforward implementation of {@link LocationCache} that simply use location existence as the cache
- * indicator.
+ * indicator. The creation and last use time of each entry are recorded in the {@link LocationCacheManifest}
+ * of the cache directory. The manifest is written when an entry is created, while the last use time of cache hits
+ * is written at most once per manifest update interval, as the cleanup only needs it to be roughly accurate.
+ * Entries deleted by the cache cleaner are dropped from the manifest through {@link #removed(String)}, such that
+ * writing the manifest doesn't need to check the existence of each entry.
+ * <p/>
+ * Calls to {@link #get(String, Loader)} with different names don't block each other. Concurrent calls with
+ * the same name share a single load. The loader always writes to a temporary location, which is renamed to the
+ * cache location after the load completed, so that a partially written location is never treated as cached.
  */
 public class BasicLocationCache implements LocationCache {
 
+  /**
+   * Name of the counter of {@link #get(String, Loader)} calls that returned without loading.
+   */
+  public static final String HITS = "location.cache.hits";
+
+  /**
+   * Name of the counter of {@link #get(String, Loader)} calls that loaded the content.
+   */
+  public static final String MISSES = "location.cache.misses";
+
+  /**
+   * Name of the timer of the time taken by the {@link Loader}.
+   */
+  public static final String LOAD_TIME = "location.cache.load.time";
+
   private static final Logger LOG = LoggerFactory.getLogger(BasicLocationCache.class);
 
+  private static final long DEFAULT_MANIFEST_UPDATE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
   private final Location cacheDir;
+  private final ConcurrentMap<String, SettableFuture<Location>> loads;
+  private final Counter hits;
+  private final Counter misses;
+  private final Timer loadTime;
+  private final long manifestUpdateIntervalMs;
+  private Map<String, LocationCacheManifest.Entry> manifest;
+  private long manifestWriteTime;
 
   public BasicLocationCache(Location cacheDir) {
+    this(cacheDir, new DefaultMetricsRegistry());
+  }
+
+  public BasicLocationCache(Location cacheDir, MetricsRegistry metricsRegistry) {
+    this(cacheDir, metricsRegistry, DEFAULT_MANIFEST_UPDATE_INTERVAL_MS);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param cacheDir the cache directory
+   * @param metricsRegistry the {@link MetricsRegistry} for the cache metrics
+   * @param manifestUpdateIntervalMs minimum time in milliseconds between manifest writes caused by cache hits
+   */
+  public BasicLocationCache(Location cacheDir, MetricsRegistry metricsRegistry, long manifestUpdateIntervalMs) {
     this.cacheDir = cacheDir;
+    this.manifestUpdateIntervalMs = manifestUpdateIntervalMs;
+    this.loads = new ConcurrentHashMap<>();
+    this.hits = metricsRegistry.counter(HITS);
+    this.misses = metricsRegistry.counter(MISSES);
+    this.loadTime = metricsRegistry.timer(LOAD_TIME);
   }
 
   @Override
-  public synchronized Location get(String name, Loader loader) throws IOException {
+  public Location get(String name, Loader loader) throws IOException {
     Location location = cacheDir.append(name);
     if (location.exists()) {
       LOG.debug("Cache hit for {} in {}", name, location);
+      return hit(name, location);
+    }
+
+    SettableFuture<Location> future = SettableFuture.create();
+    SettableFuture<Location> existing = loads.putIfAbsent(name, future);
+    if (existing != null) {
+      LOG.debug("Cache miss for {}. Wait for the concurrent load to {}", name, location);
+      return hit(name, waitForLoad(name, existing));
+    }
+
+    try {
+      // Check again, as the location could be loaded by another call between the check above and the putIfAbsent
+      if (location.exists()) {
+        LOG.debug("Cache hit for {} in {}", name, location);
+        future.set(hit(name, location));
+        return location;
+      }
+
+      LOG.debug("Cache miss for {}. Use Loader to save to {}", name, location);
+      load(name, location, loader);
+      future.set(location);
       return location;
+    } catch (Throwable t) {
+      future.setException(t);
+      throw t;
+    } finally {
+      loads.remove(name, future);
     }
+  }
 
-    LOG.debug("Cache miss for {}. Use Loader to save to {}", name, location);
-    loader.load(name, location);
+  private Location hit(String name, Location location) {
+    hits.increment();
+    updateManifest(name, false);
     return location;
   }
+
+  /**
+   * Loads the content with the given {@link Loader} to a temporary location and renames it to the given location.
+   */
+  private void load(String name, Location location, Loader loader) throws IOException {
+    misses.increment();
+    long startTime = System.nanoTime();
+    Location tempLocation = location.getTempFile(Location.TEMP_FILE_SUFFIX);
+    try {
+      loader.load(name, tempLocation);
+      if (tempLocation.renameTo(location) == null) {
+        throw new IOException("Failed to rename " + tempLocation + " to " + location);
+      }
+    } catch (IOException | RuntimeException e) {
+      try {
+        tempLocation.delete();
+      } catch (IOException deleteException) {
+        e.addSuppressed(deleteException);
+      }
+      throw e;
+    }
+    loadTime.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+    updateManifest(name, true);
+  }
+
+  /**
+   * Waits for the load performed by another call to complete.
+   */
+  private Location waitForLoad(String name, SettableFuture<Location> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException ioe = new InterruptedIOException("Interrupted while waiting for loading of " + name);
+      ioe.initCause(e);
+      throw ioe;
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to load " + name + " to cache " + cacheDir, e.getCause());
+    }
+  }
+
+  /**
+   * Records the use of the given cache entry in the manifest. The manifest is always written for a newly created
+   * entry, and for a cache hit only if it was not written within the manifest update interval.
+   *
+   * @param name name of the cache entry
+   * @param created {@code true} if the entry was just created by the loader
+   */
+  private synchronized void updateManifest(String name, boolean created) {
+    long now = System.currentTimeMillis();
+    try {
+      if (manifest == null) {
+        Map<String, LocationCacheManifest.Entry> entries = LocationCacheManifest.read(cacheDir);
+        manifest = entries == null ? new LinkedHashMap<String, LocationCacheManifest.Entry>() : entries;
+      }
+      LocationCacheManifest.Entry entry = manifest.get(name);
+      long creationTime = (created || entry == null) ? now : entry.getCreationTime();
+      manifest.put(name, new LocationCacheManifest.Entry(name, creationTime, now));
+
+      if (!created && entry != null && now - manifestWriteTime < manifestUpdateIntervalMs) {
+        return;
+      }
+
+      LocationCacheManifest.write(cacheDir, manifest.values());
+      manifestWriteTime = now;
+    } catch (IOException e) {
+      // Failure to update the manifest only affects the cache cleanup, hence not failing the call.
+      LOG.warn("Failed to update cache manifest in {} for {}", cacheDir, name, e);
+    }
+  }
+
+  /**
+   * Drops the given entry from the manifest, which is called when the cached location is deleted by the cache
+   * cleaner. The manifest is written without the entry on the next manifest update.
+   *
+   * @param name name of the cache entry
+   */
+  public synchronized void removed(String name) {
+    if (manifest != null) {
+      manifest.remove(name);
+    }
+  }
 }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.io;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.apache.twill.filesystem.Location;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * The manifest of a {@link LocationCache} directory. It records each entry in the cache with its creation and
+ * last use time, so that the cache cleaner can find the entries to clean up without listing the cache directory.
+ * The manifest is stored as a JSON file named {@link #NAME} inside the cache directory, and is always replaced
+ * atomically by writing to a temporary file followed by a rename.
+ */
+public final class LocationCacheManifest {
+
+  /**
+   * Name of the manifest file in the cache directory.
+   */
+  public static final String NAME = ".manifest";
+
+  private static final Gson GSON = new Gson();
+  private static final Type ENTRIES_TYPE = new TypeToken<List<Entry>>() { }.getType();
+
+  /**
+   * Reads the manifest in the given cache directory.
+   *
+   * @param cacheDir the cache directory
+   * @return a map from entry name to {@link Entry}, or {@code null} if there is no manifest in the directory
+   * @throws IOException if failed to read the manifest
+   */
+  @Nullable
+  public static Map<String, Entry> read(Location cacheDir) throws IOException {
+    Location manifest = cacheDir.append(NAME);
+    if (!manifest.exists()) {
+      return null;
+    }
+    List<Entry> entries;
+    try (Reader reader = new InputStreamReader(manifest.getInputStream(), StandardCharsets.UTF_8)) {
+      entries = GSON.fromJson(reader, ENTRIES_TYPE);
+    } catch (JsonParseException e) {
+      throw new IOException("Failed to decode manifest " + manifest, e);
+    }
+
+    Map<String, Entry> result = new LinkedHashMap<>();
+    if (entries != null) {
+      for (Entry entry : entries) {
+        result.put(entry.getName(), entry);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Replaces the manifest in the given cache directory with the given entries.
+   *
+   * @param cacheDir the cache directory
+   * @param entries entries in the cache
+   * @throws IOException if failed to write the manifest
+   */
+  public static void write(Location cacheDir, Collection<Entry> entries) throws IOException {
+    Location manifest = cacheDir.append(NAME);
+    Location tempManifest = manifest.getTempFile(Location.TEMP_FILE_SUFFIX);
+    boolean renamed = false;
+    try {
+      try (Writer writer = new OutputStreamWriter(tempManifest.getOutputStream(), StandardCharsets.UTF_8)) {
+        GSON.toJson(new ArrayList<>(entries), ENTRIES_TYPE, writer);
+      }
+      renamed = tempManifest.renameTo(manifest) != null;
+      if (!renamed) {
+        throw new IOException("Failed to rename " + tempManifest + " to " + manifest);
+      }
+    } finally {
+      if (!renamed) {
+        tempManifest.delete();
+      }
+    }
+  }
+
+  /**
+   * An entry in the manifest.
+   */
+  public static final class Entry {
+    private final String name;
+    private final long creationTime;
+    private final long lastUseTime;
+
+    public Entry(String name, long creationTime, long lastUseTime) {
+      this.name = name;
+      this.creationTime = creationTime;
+      this.lastUseTime = lastUseTime;
+    }
+
+    /**
+     * Returns the name of the cache entry, which is the name of the cached location inside the cache directory.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the time in milliseconds when the cache entry was created.
+     */
+    public long getCreationTime() {
+      return creationTime;
+    }
+
+    /**
+     * Returns the time in milliseconds when the cache entry was last returned from the cache.
+     */
+    public long getLastUseTime() {
+      return lastUseTime;
+    }
+
+    @Override
+    public String toString() {
+      return "Entry{name='" + name + "', creationTime=" + creationTime + ", lastUseTime=" + lastUseTime + "}";
+    }
+  }
+
+  private LocationCacheManifest() {
+  }
+}
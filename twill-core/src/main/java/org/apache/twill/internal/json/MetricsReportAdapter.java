@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.apache.twill.api.metrics.MetricsSnapshot;
+import org.apache.twill.internal.metrics.DefaultMetricsSnapshot;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class provides utility to help encode/decode the metrics of an application, which is a map from runnable
+ * name to {@link MetricsSnapshot}, to/from Json.
+ */
+public final class MetricsReportAdapter {
+
+  private static final Type METRICS_TYPE = new TypeToken<Map<String, DefaultMetricsSnapshot>>() { }.getType();
+
+  private final Gson gson;
+
+  public static MetricsReportAdapter create() {
+    return new MetricsReportAdapter();
+  }
+
+  private MetricsReportAdapter() {
+    gson = new GsonBuilder().create();
+  }
+
+  public void toJson(Map<String, DefaultMetricsSnapshot> metrics, Writer writer) {
+    gson.toJson(metrics, METRICS_TYPE, writer);
+  }
+
+  public Map<String, MetricsSnapshot> fromJson(Reader reader) {
+    Map<String, DefaultMetricsSnapshot> metrics = gson.fromJson(reader, METRICS_TYPE);
+    return Collections.<String, MetricsSnapshot>unmodifiableMap(metrics);
+  }
+}
@@ -29,10 +29,13 @@ import org.apache.twill.api.LocalFile;
 import org.apache.twill.api.ResourceSpecification;
 import org.apache.twill.api.RuntimeSpecification;
 import org.apache.twill.api.TwillRunnableSpecification;
+import org.apache.twill.api.autoscale.AutoscalePolicySpecification;
+import org.apache.twill.internal.DefaultAutoscalePolicySpecification;
 import org.apache.twill.internal.DefaultRuntimeSpecification;
 
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * Gson codec for {@link RuntimeSpecification}.
@@ -48,6 +51,11 @@ final class RuntimeSpecificationCodec implements JsonSerializer<RuntimeSpecifica
     json.add("resources", context.serialize(src.getResourceSpecification(), ResourceSpecification.class));
     json.add("files", context.serialize(src.getLocalFiles(), new TypeToken<Collection<LocalFile>>() { }.getType()));
 
+    AutoscalePolicySpecification autoscalePolicy = src.getAutoscalePolicy();
+    if (autoscalePolicy != null) {
+      json.add("autoscale", serializeAutoscalePolicy(autoscalePolicy, context));
+    }
+
     return json;
   }
 
@@ -64,6 +72,33 @@ final class RuntimeSpecificationCodec implements JsonSerializer<RuntimeSpecifica
     Collection<LocalFile> files = context.deserialize(jsonObj.get("files"),
                                                       new TypeToken<Collection<LocalFile>>() { }.getType());
 
-    return new DefaultRuntimeSpecification(name, runnable, resources, files);
+    AutoscalePolicySpecification autoscalePolicy = null;
+    if (jsonObj.has("autoscale")) {
+      autoscalePolicy = deserializeAutoscalePolicy(jsonObj.getAsJsonObject("autoscale"), context);
+    }
+
+    return new DefaultRuntimeSpecification(name, runnable, resources, files, autoscalePolicy);
+  }
+
+  private JsonElement serializeAutoscalePolicy(AutoscalePolicySpecification spec, JsonSerializationContext context) {
+    JsonObject json = new JsonObject();
+    json.addProperty("classname", spec.getClassName());
+    json.add("configs", context.serialize(spec.getConfigs(), new TypeToken<Map<String, String>>() { }.getType()));
+    json.addProperty("minInstances", spec.getMinInstances());
+    json.addProperty("maxInstances", spec.getMaxInstances());
+    json.addProperty("scaleOutCooldown", spec.getScaleOutCooldown());
+    json.addProperty("scaleInCooldown", spec.getScaleInCooldown());
+    return json;
+  }
+
+  private AutoscalePolicySpecification deserializeAutoscalePolicy(JsonObject json,
+                                                                  JsonDeserializationContext context) {
+    Map<String, String> configs = context.deserialize(json.get("configs"),
+                                                      new TypeToken<Map<String, String>>() { }.getType());
+    return new DefaultAutoscalePolicySpecification(json.get("classname").getAsString(), configs,
+                                                   json.get("minInstances").getAsInt(),
+                                                   json.get("maxInstances").getAsInt(),
+                                                   json.get("scaleOutCooldown").getAsLong(),
+                                                   json.get("scaleInCooldown").getAsLong());
   }
 }
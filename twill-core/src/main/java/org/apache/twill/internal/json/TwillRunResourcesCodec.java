@@ -28,6 +28,7 @@ import com.google.gson.reflect.TypeToken;
 import org.apache.twill.api.TwillRunResources;
 import org.apache.twill.api.logging.LogEntry;
 import org.apache.twill.internal.DefaultTwillRunResources;
+import org.apache.twill.internal.LaunchTimeline;
 
 import java.lang.reflect.Type;
 import java.util.Map;
@@ -45,6 +46,7 @@ public final class TwillRunResourcesCodec implements JsonSerializer<TwillRunReso
   private static final String VIRTUAL_CORES = "virtualCores";
   private static final String DEBUG_PORT = "debugPort";
   private static final String LOG_LEVELS = "logLevels";
+  private static final String LAUNCH_TIMELINE = "launchTimeline";
 
   @Override
   public JsonElement serialize(TwillRunResources src, Type typeOfSrc, JsonSerializationContext context) {
@@ -61,6 +63,10 @@ public final class TwillRunResourcesCodec implements JsonSerializer<TwillRunReso
     }
     json.add(LOG_LEVELS, context.serialize(src.getLogLevels(),
                                            new TypeToken<Map<String, LogEntry.Level>>() { }.getType()));
+    if (!src.getLaunchTimeline().isEmpty()) {
+      json.add(LAUNCH_TIMELINE, context.serialize(LaunchTimeline.toNames(src.getLaunchTimeline()),
+                                                  new TypeToken<Map<String, Long>>() { }.getType()));
+    }
 
     return json;
   }
@@ -71,6 +77,12 @@ public final class TwillRunResourcesCodec implements JsonSerializer<TwillRunReso
     JsonObject jsonObj = json.getAsJsonObject();
     Map<String, LogEntry.Level> logLevels =
       context.deserialize(jsonObj.get(LOG_LEVELS), new TypeToken<Map<String, LogEntry.Level>>() { }.getType());
+    // For backward compatibility when a newer Twill client re-attached to running app started with older version.
+    Map<String, Long> launchTimeline = null;
+    if (jsonObj.has(LAUNCH_TIMELINE)) {
+      launchTimeline = context.deserialize(jsonObj.get(LAUNCH_TIMELINE),
+                                           new TypeToken<Map<String, Long>>() { }.getType());
+    }
     int memoryMB = jsonObj.get(MEMORY_MB).getAsInt();
     return new DefaultTwillRunResources(
       jsonObj.get(INSTANCE_ID).getAsInt(),
@@ -81,6 +93,7 @@ public final class TwillRunResourcesCodec implements JsonSerializer<TwillRunReso
       jsonObj.has(MAX_HEAP_MEMORY_MB) ? jsonObj.get(MAX_HEAP_MEMORY_MB).getAsInt() : memoryMB,
       jsonObj.get(HOST).getAsString(),
       jsonObj.has(DEBUG_PORT) ? jsonObj.get(DEBUG_PORT).getAsInt() : null,
-      logLevels);
+      logLevels,
+      LaunchTimeline.fromNames(launchTimeline));
   }
 }
@@ -150,7 +150,7 @@ public final class KafkaAppender extends UnsynchronizedAppenderBase<ILoggingEven
     zkClientService = ZKClientServices.delegate(
       ZKClients.reWatchOnExpire(
         ZKClients.retryOnFailure(ZKClientService.Builder.of(zkConnectStr).build(),
-                                 RetryStrategies.fixDelay(1, TimeUnit.SECONDS))));
+                                 RetryStrategies.decorrelatedJitter(100, 2000, TimeUnit.MILLISECONDS))));
 
     kafkaClient = new ZKKafkaClientService(zkClientService);
     Futures.addCallback(Services.chainStart(zkClientService, kafkaClient),
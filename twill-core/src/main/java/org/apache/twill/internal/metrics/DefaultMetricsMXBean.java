@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.metrics;
+
+import org.apache.twill.api.metrics.TimerSnapshot;
+import org.apache.twill.common.Cancellable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Default implementation of {@link MetricsMXBean} that reads from a {@link DefaultMetricsRegistry}.
+ */
+public final class DefaultMetricsMXBean implements MetricsMXBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DefaultMetricsMXBean.class);
+
+  private final DefaultMetricsRegistry registry;
+
+  /**
+   * Registers the metrics of the given registry to the platform {@link MBeanServer} with the given name.
+   *
+   * @return a {@link Cancellable} for unregistering the bean
+   */
+  public static Cancellable register(String objectName, DefaultMetricsRegistry registry) throws JMException {
+    final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = new ObjectName(objectName);
+    mbeanServer.registerMBean(new DefaultMetricsMXBean(registry), name);
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        try {
+          mbeanServer.unregisterMBean(name);
+        } catch (JMException e) {
+          LOG.warn("Failed to unregister metrics bean {}", name, e);
+        }
+      }
+    };
+  }
+
+  private DefaultMetricsMXBean(DefaultMetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public Map<String, Long> getCounters() {
+    return new TreeMap<>(registry.snapshot().getCounters());
+  }
+
+  @Override
+  public Map<String, Long> getGauges() {
+    return new TreeMap<>(registry.snapshot().getGauges());
+  }
+
+  @Override
+  public Map<String, Long> getTimers() {
+    Map<String, Long> values = new TreeMap<>();
+    for (Map.Entry<String, TimerSnapshot> entry : registry.snapshot().getTimers().entrySet()) {
+      TimerSnapshot timer = entry.getValue();
+      values.put(entry.getKey() + ".count", timer.getCount());
+      values.put(entry.getKey() + ".p50", timer.getPercentile(50));
+      values.put(entry.getKey() + ".p99", timer.getPercentile(99));
+      values.put(entry.getKey() + ".max", timer.getMax());
+    }
+    return values;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.metrics;
+
+import org.apache.twill.api.metrics.Counter;
+import org.apache.twill.api.metrics.Gauge;
+import org.apache.twill.api.metrics.MetricsRegistry;
+import org.apache.twill.api.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Default implementation of {@link MetricsRegistry}. Metrics are kept in memory until they are collected
+ * through {@link #snapshot()}.
+ */
+public final class DefaultMetricsRegistry implements MetricsRegistry {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DefaultMetricsRegistry.class);
+
+  private final ConcurrentMap<String, DefaultCounter> counters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, HistogramTimer> timers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+  @Override
+  public Counter counter(String name) {
+    DefaultCounter counter = counters.get(name);
+    if (counter != null) {
+      return counter;
+    }
+    counter = new DefaultCounter();
+    DefaultCounter existing = counters.putIfAbsent(name, counter);
+    return existing == null ? counter : existing;
+  }
+
+  @Override
+  public Timer timer(String name) {
+    HistogramTimer timer = timers.get(name);
+    if (timer != null) {
+      return timer;
+    }
+    timer = new HistogramTimer();
+    HistogramTimer existing = timers.putIfAbsent(name, timer);
+    return existing == null ? timer : existing;
+  }
+
+  @Override
+  public void gauge(String name, Gauge gauge) {
+    gauges.put(name, gauge);
+  }
+
+  /**
+   * Removes the counter, timer and gauge of the given name. A later call to {@link #counter(String)} or
+   * {@link #timer(String)} with the same name creates a new metric.
+   */
+  public void remove(String name) {
+    counters.remove(name);
+    timers.remove(name);
+    gauges.remove(name);
+  }
+
+  /**
+   * Creates a snapshot of the current value of all metrics in this registry.
+   */
+  public DefaultMetricsSnapshot snapshot() {
+    Map<String, Long> counterValues = new HashMap<>();
+    for (Map.Entry<String, DefaultCounter> entry : counters.entrySet()) {
+      counterValues.put(entry.getKey(), entry.getValue().getCount());
+    }
+
+    Map<String, Long> gaugeValues = new HashMap<>();
+    for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+      try {
+        gaugeValues.put(entry.getKey(), entry.getValue().getValue());
+      } catch (Throwable t) {
+        LOG.warn("Failed to get value of gauge {}", entry.getKey(), t);
+      }
+    }
+
+    Map<String, DefaultTimerSnapshot> timerValues = new HashMap<>();
+    for (Map.Entry<String, HistogramTimer> entry : timers.entrySet()) {
+      timerValues.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return new DefaultMetricsSnapshot(counterValues, gaugeValues, timerValues);
+  }
+}
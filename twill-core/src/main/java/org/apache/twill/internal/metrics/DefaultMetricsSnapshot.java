@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.twill.api.metrics.MetricsSnapshot;
+import org.apache.twill.api.metrics.TimerSnapshot;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Implementation of {@link MetricsSnapshot}. It is used both for the metrics reported by a single runnable
+ * instance and for the metrics aggregated across instances.
+ */
+public final class DefaultMetricsSnapshot implements MetricsSnapshot {
+
+  public static final DefaultMetricsSnapshot EMPTY = new DefaultMetricsSnapshot(
+    ImmutableMap.<String, Long>of(), ImmutableMap.<String, Long>of(), ImmutableMap.<String, DefaultTimerSnapshot>of());
+
+  private final Map<String, Long> counters;
+  private final Map<String, Long> gauges;
+  private final Map<String, DefaultTimerSnapshot> timers;
+
+  public DefaultMetricsSnapshot(Map<String, Long> counters, Map<String, Long> gauges,
+                                Map<String, DefaultTimerSnapshot> timers) {
+    this.counters = new TreeMap<>(counters);
+    this.gauges = new TreeMap<>(gauges);
+    this.timers = new TreeMap<>(timers);
+  }
+
+  @Override
+  public Map<String, Long> getCounters() {
+    return Collections.unmodifiableMap(counters);
+  }
+
+  @Override
+  public Map<String, Long> getGauges() {
+    return Collections.unmodifiableMap(gauges);
+  }
+
+  @Override
+  public Map<String, TimerSnapshot> getTimers() {
+    return Collections.<String, TimerSnapshot>unmodifiableMap(timers);
+  }
+
+  /**
+   * Returns a new snapshot that contains only the counters and timers of this snapshot. It is used to retain
+   * the metrics of instances that have completed, as gauges are meaningful only for running instances.
+   */
+  public DefaultMetricsSnapshot withoutGauges() {
+    return new DefaultMetricsSnapshot(counters, ImmutableMap.<String, Long>of(), timers);
+  }
+
+  /**
+   * Returns a new snapshot that aggregates this and the given snapshot. Counters and gauges are summed, while
+   * timers are merged.
+   */
+  public DefaultMetricsSnapshot merge(DefaultMetricsSnapshot other) {
+    Map<String, Long> mergedCounters = new TreeMap<>(counters);
+    for (Map.Entry<String, Long> entry : other.counters.entrySet()) {
+      Long value = mergedCounters.get(entry.getKey());
+      mergedCounters.put(entry.getKey(), value == null ? entry.getValue() : value + entry.getValue());
+    }
+    Map<String, Long> mergedGauges = new TreeMap<>(gauges);
+    for (Map.Entry<String, Long> entry : other.gauges.entrySet()) {
+      Long value = mergedGauges.get(entry.getKey());
+      mergedGauges.put(entry.getKey(), value == null ? entry.getValue() : value + entry.getValue());
+    }
+    Map<String, DefaultTimerSnapshot> mergedTimers = new TreeMap<>(timers);
+    for (Map.Entry<String, DefaultTimerSnapshot> entry : other.timers.entrySet()) {
+      DefaultTimerSnapshot value = mergedTimers.get(entry.getKey());
+      mergedTimers.put(entry.getKey(), value == null ? entry.getValue() : value.merge(entry.getValue()));
+    }
+    return new DefaultMetricsSnapshot(mergedCounters, mergedGauges, mergedTimers);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    DefaultMetricsSnapshot other = (DefaultMetricsSnapshot) o;
+    return counters.equals(other.counters) && gauges.equals(other.gauges) && timers.equals(other.timers);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = counters.hashCode();
+    result = 31 * result + gauges.hashCode();
+    result = 31 * result + timers.hashCode();
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricsSnapshot{" +
+      "counters=" + counters +
+      ", gauges=" + gauges +
+      ", timers=" + timers +
+      '}';
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.metrics;
+
+import org.apache.twill.api.metrics.TimerSnapshot;
+
+import java.util.Arrays;
+
+/**
+ * Implementation of {@link TimerSnapshot} that carries the non-empty buckets of a {@link HistogramTimer}.
+ * Snapshots from different instances can be merged without losing precision.
+ */
+public final class DefaultTimerSnapshot implements TimerSnapshot {
+
+  static final DefaultTimerSnapshot EMPTY = new DefaultTimerSnapshot(0L, 0L, 0L, 0L, new int[0], new long[0]);
+
+  private final long count;
+  private final long min;
+  private final long max;
+  private final long sum;
+  private final int[] buckets;
+  private final long[] bucketCounts;
+
+  DefaultTimerSnapshot(long count, long min, long max, long sum, int[] buckets, long[] bucketCounts) {
+    this.count = count;
+    this.min = min;
+    this.max = max;
+    this.sum = sum;
+    this.buckets = buckets;
+    this.bucketCounts = bucketCounts;
+  }
+
+  @Override
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public long getMin() {
+    return min;
+  }
+
+  @Override
+  public long getMax() {
+    return max;
+  }
+
+  @Override
+  public double getMean() {
+    return count == 0 ? 0d : (double) sum / count;
+  }
+
+  @Override
+  public long getPercentile(double percentile) {
+    if (count == 0) {
+      return 0L;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(Math.min(100d, Math.max(0d, percentile)) / 100d * count));
+    long seen = 0L;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += bucketCounts[i];
+      if (seen >= rank) {
+        return Math.max(min, Math.min(max, HistogramTimer.bucketUpperBound(buckets[i])));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Returns a new snapshot that contains values from this and the given snapshot.
+   */
+  DefaultTimerSnapshot merge(DefaultTimerSnapshot other) {
+    if (other.count == 0) {
+      return this;
+    }
+    if (count == 0) {
+      return other;
+    }
+
+    int[] mergedBuckets = new int[buckets.length + other.buckets.length];
+    long[] mergedCounts = new long[mergedBuckets.length];
+    int i = 0;
+    int j = 0;
+    int size = 0;
+    while (i < buckets.length || j < other.buckets.length) {
+      if (j >= other.buckets.length || (i < buckets.length && buckets[i] < other.buckets[j])) {
+        mergedBuckets[size] = buckets[i];
+        mergedCounts[size++] = bucketCounts[i++];
+      } else if (i >= buckets.length || other.buckets[j] < buckets[i]) {
+        mergedBuckets[size] = other.buckets[j];
+        mergedCounts[size++] = other.bucketCounts[j++];
+      } else {
+        mergedBuckets[size] = buckets[i];
+        mergedCounts[size++] = bucketCounts[i++] + other.bucketCounts[j++];
+      }
+    }
+    return new DefaultTimerSnapshot(count + other.count, Math.min(min, other.min), Math.max(max, other.max),
+                                    sum + other.sum, Arrays.copyOf(mergedBuckets, size),
+                                    Arrays.copyOf(mergedCounts, size));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    DefaultTimerSnapshot other = (DefaultTimerSnapshot) o;
+    return count == other.count && min == other.min && max == other.max && sum == other.sum
+      && Arrays.equals(buckets, other.buckets) && Arrays.equals(bucketCounts, other.bucketCounts);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = (int) (count ^ (count >>> 32));
+    result = 31 * result + (int) (sum ^ (sum >>> 32));
+    result = 31 * result + Arrays.hashCode(buckets);
+    result = 31 * result + Arrays.hashCode(bucketCounts);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "TimerSnapshot{" +
+      "count=" + count +
+      ", min=" + min +
+      ", max=" + max +
+      ", mean=" + getMean() +
+      ", p50=" + getPercentile(50) +
+      ", p99=" + getPercentile(99) +
+      '}';
+  }
+}
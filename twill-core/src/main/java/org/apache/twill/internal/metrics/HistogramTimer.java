@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.metrics;
+
+import org.apache.twill.api.metrics.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link Timer} that records durations in nanoseconds into a log-linear histogram, similar to HdrHistogram.
+ * Values are grouped by their highest set bit, and each group is linearly divided into {@link #SUB_BUCKET_COUNT}
+ * buckets, which bounds the relative error of each bucket by {@code 1 / SUB_BUCKET_COUNT}. The whole range of
+ * {@code long} is covered with a fixed number of buckets, hence recording never allocates.
+ */
+final class HistogramTimer implements Timer {
+
+  static final int SUB_BUCKET_BITS = 4;
+  static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong(0L);
+
+  @Override
+  public void record(long duration, TimeUnit unit) {
+    long nanos = Math.max(0L, unit.toNanos(duration));
+    counts.incrementAndGet(bucketIndex(nanos));
+    sum.add(nanos);
+
+    long current = min.get();
+    while (nanos < current && !min.compareAndSet(current, nanos)) {
+      current = min.get();
+    }
+    current = max.get();
+    while (nanos > current && !max.compareAndSet(current, nanos)) {
+      current = max.get();
+    }
+  }
+
+  @Override
+  public long getCount() {
+    long count = 0L;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Creates a {@link DefaultTimerSnapshot} that contains only the non-empty buckets of this timer.
+   */
+  DefaultTimerSnapshot snapshot() {
+    int size = 0;
+    long[] values = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      values[i] = counts.get(i);
+      if (values[i] != 0) {
+        size++;
+      }
+    }
+
+    int[] buckets = new int[size];
+    long[] bucketCounts = new long[size];
+    long count = 0L;
+    int idx = 0;
+    for (int i = 0; i < BUCKET_COUNT && idx < size; i++) {
+      if (values[i] != 0) {
+        buckets[idx] = i;
+        bucketCounts[idx] = values[i];
+        count += values[i];
+        idx++;
+      }
+    }
+    if (count == 0) {
+      return DefaultTimerSnapshot.EMPTY;
+    }
+    // The min and max can lag behind the buckets when there are concurrent recordings
+    long minValue = Math.min(min.get(), bucketUpperBound(buckets[0]));
+    long maxValue = Math.max(max.get(), bucketLowerBound(buckets[size - 1]));
+    return new DefaultTimerSnapshot(count, minValue, maxValue, sum.sum(), buckets, bucketCounts);
+  }
+
+  /**
+   * Returns the index of the bucket for the given non-negative value.
+   */
+  static int bucketIndex(long value) {
+    if (value < 2 * SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+  }
+
+  /**
+   * Returns the smallest value that falls into the given bucket.
+   */
+  static long bucketLowerBound(int index) {
+    if (index < 2 * SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    long subBucket = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+    return subBucket << shift;
+  }
+
+  /**
+   * Returns the largest value that falls into the given bucket.
+   */
+  static long bucketUpperBound(int index) {
+    return index >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : bucketLowerBound(index + 1) - 1;
+  }
+}
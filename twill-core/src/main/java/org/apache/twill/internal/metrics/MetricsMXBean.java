@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.metrics;
+
+import java.util.Map;
+
+/**
+ * MXBean for exposing the metrics of a {@link DefaultMetricsRegistry} through JMX. Timer values are flattened to
+ * {@code <name>.count}, {@code <name>.p50}, {@code <name>.p99} and {@code <name>.max}, with durations in
+ * nanoseconds.
+ */
+public interface MetricsMXBean {
+
+  /**
+   * Returns the value of all counters.
+   */
+  Map<String, Long> getCounters();
+
+  /**
+   * Returns the value of all gauges.
+   */
+  Map<String, Long> getGauges();
+
+  /**
+   * Returns the flattened values of all timers.
+   */
+  Map<String, Long> getTimers();
+}
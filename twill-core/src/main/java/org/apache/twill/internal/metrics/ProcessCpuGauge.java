@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.metrics;
+
+import org.apache.twill.api.metrics.Gauge;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Gauge} of the CPU usage of the current process, in percentage of the given number of cores. Each read
+ * returns the usage averaged since the previous read, rounded to a multiple of {@link #QUANTUM_PERCENT}, so that
+ * small fluctuations don't change the value and hence don't cause the metrics to be republished.
+ */
+public final class ProcessCpuGauge implements Gauge {
+
+  /**
+   * The granularity in percentage of the values returned.
+   */
+  static final int QUANTUM_PERCENT = 5;
+
+  private final com.sun.management.OperatingSystemMXBean osBean;
+  private final int cores;
+  private long lastCpuTime;
+  private long lastNanoTime;
+
+  /**
+   * Creates a {@link ProcessCpuGauge} if the JVM provides the process CPU time.
+   *
+   * @param cores number of cores to compute the percentage against
+   * @return a new gauge or {@code null} if the process CPU time is not available
+   */
+  @Nullable
+  public static ProcessCpuGauge create(int cores) {
+    OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+    if (!(osBean instanceof com.sun.management.OperatingSystemMXBean)) {
+      return null;
+    }
+    com.sun.management.OperatingSystemMXBean sunOsBean = (com.sun.management.OperatingSystemMXBean) osBean;
+    if (sunOsBean.getProcessCpuTime() < 0) {
+      return null;
+    }
+    return new ProcessCpuGauge(sunOsBean, Math.max(1, cores));
+  }
+
+  private ProcessCpuGauge(com.sun.management.OperatingSystemMXBean osBean, int cores) {
+    this.osBean = osBean;
+    this.cores = cores;
+    this.lastCpuTime = osBean.getProcessCpuTime();
+    this.lastNanoTime = System.nanoTime();
+  }
+
+  @Override
+  public synchronized long getValue() {
+    long cpuTime = osBean.getProcessCpuTime();
+    long nanoTime = System.nanoTime();
+    long elapsed = nanoTime - lastNanoTime;
+    if (elapsed <= 0) {
+      return 0L;
+    }
+    double percent = (cpuTime - lastCpuTime) * 100d / elapsed / cores;
+    lastCpuTime = cpuTime;
+    lastNanoTime = nanoTime;
+    return quantize(percent);
+  }
+
+  /**
+   * Rounds the given percentage to the nearest multiple of {@link #QUANTUM_PERCENT}.
+   */
+  static long quantize(double percent) {
+    return Math.round(percent / QUANTUM_PERCENT) * QUANTUM_PERCENT;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.launcher;
+
+import org.apache.twill.internal.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+
+/**
+ * Main class for the class data sharing training run. It is launched through the {@link TwillLauncher} in a
+ * directory that has the same layout as a container, so that classes are loaded by the same container ClassLoader
+ * as in the actual run. All classes in the lib jars of the application and twill jars are loaded without
+ * initialization, so that the JVM can dump them to the archive on exit.
+ * This class is loaded from the launcher jar, hence it should have no runtime dependencies on any library except
+ * the J2SE one. Only compile time constants from {@link Constants} are used, which are inlined by the compiler.
+ */
+public final class ClassDataSharingTrainer {
+
+  private static final Logger LOG = Logger.getLogger(ClassDataSharingTrainer.class.getName());
+
+  /**
+   * Main method for the training run.
+   *
+   * @param args args[0] is the path of the file to write the JVM start time in milliseconds to. It is the JVM uptime
+   *             after all classes are loaded, which excludes the time for dumping the archive on exit.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      LOG.severe("Usage: java " + ClassDataSharingTrainer.class.getName() + " [start_time_file]");
+      return;
+    }
+
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    if (classLoader == null) {
+      classLoader = ClassDataSharingTrainer.class.getClassLoader();
+    }
+
+    long startTime = System.currentTimeMillis();
+    int loaded = 0;
+    int failed = 0;
+    for (String dir : new String[] { Constants.Files.APPLICATION_JAR, Constants.Files.TWILL_JAR }) {
+      File[] files = new File(dir, "lib").listFiles();
+      if (files == null) {
+        continue;
+      }
+      for (File file : files) {
+        if (!file.getName().endsWith(".jar")) {
+          continue;
+        }
+        int[] counts = loadClasses(file, classLoader);
+        loaded += counts[0];
+        failed += counts[1];
+      }
+    }
+
+    long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+    LOG.info("Class data sharing training loaded " + loaded + " classes in "
+               + (System.currentTimeMillis() - startTime) + " ms. " + failed + " classes failed to load. "
+               + "JVM started in " + uptime + " ms.");
+    Files.write(Paths.get(args[0]), Long.toString(uptime).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Loads all classes in the given jar file.
+   *
+   * @return an array of two elements, with the number of classes loaded and the number of classes failed to load
+   */
+  private static int[] loadClasses(File jarFile, ClassLoader classLoader) throws IOException {
+    int[] counts = new int[2];
+    try (JarFile jar = new JarFile(jarFile)) {
+      Enumeration<JarEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        String name = entries.nextElement().getName();
+        if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+          continue;
+        }
+        String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+        try {
+          Class.forName(className, false, classLoader);
+          counts[0]++;
+        } catch (Throwable t) {
+          // Classes with missing dependencies are expected, as not all optional dependencies are bundled.
+          counts[1]++;
+        }
+      }
+    }
+    return counts;
+  }
+
+  private ClassDataSharingTrainer() {
+  }
+}
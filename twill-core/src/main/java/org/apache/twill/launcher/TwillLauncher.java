@@ -61,6 +61,7 @@ public final class TwillLauncher {
     // Create ClassLoader
     URL[] classpath = createClasspath(userClassPath);
     ClassLoader classLoader = createContainerClassLoader(classpath);
+    System.setProperty(Constants.TWILL_LAUNCHER_CLASSPATH_BUILT, Long.toString(System.currentTimeMillis()));
     System.out.println("Launch class (" + mainClassName + ") using classloader " + classLoader.getClass().getName()
                          + " with classpath: " + Arrays.toString(classpath));
 
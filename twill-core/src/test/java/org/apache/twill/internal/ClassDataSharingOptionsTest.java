@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal;
+
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * Unit test for {@link org.apache.twill.internal.JvmOptions.ClassDataSharingOptions} class.
+ */
+public class ClassDataSharingOptionsTest {
+
+  @Test
+  public void testDynamicArchiveSupported() {
+    Assert.assertFalse(JvmOptions.ClassDataSharingOptions.isDynamicArchiveSupported("1.8"));
+    Assert.assertFalse(JvmOptions.ClassDataSharingOptions.isDynamicArchiveSupported("11"));
+    Assert.assertFalse(JvmOptions.ClassDataSharingOptions.isDynamicArchiveSupported("unknown"));
+    Assert.assertTrue(JvmOptions.ClassDataSharingOptions.isDynamicArchiveSupported("13"));
+    Assert.assertTrue(JvmOptions.ClassDataSharingOptions.isDynamicArchiveSupported("17"));
+  }
+
+  @Test
+  public void testSupported() {
+    JvmOptions.ClassDataSharingOptions options = new JvmOptions.ClassDataSharingOptions("test.jsa", "17.0.9+9");
+
+    Assert.assertTrue(options.isSupported("17", "17.0.9+9"));
+    Assert.assertFalse(options.isSupported("17", "17.0.8+7"));
+    Assert.assertFalse(options.isSupported("1.8", "17.0.9+9"));
+  }
+
+  @Test
+  public void testJVMOptions() {
+    JvmOptions.ClassDataSharingOptions options = new JvmOptions.ClassDataSharingOptions("test.jsa", "17.0.9+9");
+
+    // The archive is validated by the container JVM, hence the creating JVM version must be passed along
+    Assert.assertArrayEquals(new String[] {
+      "-XX:SharedArchiveFile=test.jsa", "-Xshare:auto",
+      "-D" + JvmOptions.ClassDataSharingOptions.VM_VERSION_PROPERTY + "=17.0.9+9"
+    }, options.getJVMOptions());
+  }
+
+  @Test
+  public void testSerialization() {
+    JvmOptions.ClassDataSharingOptions options = new JvmOptions.ClassDataSharingOptions("test.jsa", "17.0.9+9");
+    JvmOptions jvmOptions = new JvmOptions("", Collections.<String, String>emptyMap(),
+                                           JvmOptions.DebugOptions.NO_DEBUG, options);
+
+    Gson gson = new Gson();
+    JvmOptions decoded = gson.fromJson(gson.toJson(jvmOptions), JvmOptions.class);
+    Assert.assertEquals(options, decoded.getClassDataSharingOptions());
+
+    // JvmOptions without class data sharing options should be decoded with null
+    decoded = gson.fromJson(gson.toJson(new JvmOptions("", Collections.<String, String>emptyMap(),
+                                                       JvmOptions.DebugOptions.NO_DEBUG)), JvmOptions.class);
+    Assert.assertNull(decoded.getClassDataSharingOptions());
+  }
+}
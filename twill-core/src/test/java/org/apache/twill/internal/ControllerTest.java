@@ -24,6 +24,7 @@ import org.apache.twill.api.ResourceReport;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.TwillController;
 import org.apache.twill.api.logging.LogHandler;
+import org.apache.twill.api.metrics.MetricsSnapshot;
 import org.apache.twill.common.Threads;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
 import org.apache.twill.zookeeper.NodeData;
@@ -35,6 +36,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -211,6 +213,11 @@ public class ControllerTest {
       public ResourceReport getResourceReport() {
         return null;
       }
+
+      @Override
+      public Map<String, MetricsSnapshot> getMetrics() {
+        return null;
+      }
     };
     controller.startAndWait();
     return controller;
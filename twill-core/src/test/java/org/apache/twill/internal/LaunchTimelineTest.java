@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.twill.api.LaunchPhase;
+import org.apache.twill.api.TwillRunResources;
+import org.apache.twill.api.logging.LogEntry;
+import org.apache.twill.internal.json.TwillRunResourcesCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Unit test for {@link LaunchTimeline}.
+ */
+public class LaunchTimelineTest {
+
+  @Test
+  public void testDurations() {
+    LaunchTimeline timeline = new LaunchTimeline()
+      .mark(LaunchPhase.RUNNING, 1000L)
+      .mark(LaunchPhase.CONTAINER_REQUESTED, 100L)
+      .mark(LaunchPhase.JVM_STARTED, 600L)
+      .mark(LaunchPhase.CONTAINER_ALLOCATED, 300L);
+
+    // Phases are ordered by the LaunchPhase regardless of the marking order
+    Assert.assertEquals(ImmutableList.of(LaunchPhase.CONTAINER_REQUESTED, LaunchPhase.CONTAINER_ALLOCATED,
+                                         LaunchPhase.JVM_STARTED, LaunchPhase.RUNNING),
+                        ImmutableList.copyOf(timeline.getPhases().keySet()));
+
+    // Missing phases are skipped, with the duration measured from the previously recorded phase
+    Assert.assertEquals(ImmutableMap.of(LaunchPhase.CONTAINER_ALLOCATED, 200L,
+                                        LaunchPhase.JVM_STARTED, 300L,
+                                        LaunchPhase.RUNNING, 400L),
+                        LaunchTimeline.getDurations(timeline.getPhases()));
+  }
+
+  @Test
+  public void testSummarize() {
+    TwillRunResources instance1 = createResources(0, ImmutableMap.of(LaunchPhase.CONTAINER_REQUESTED, 0L,
+                                                                     LaunchPhase.CONTAINER_ALLOCATED, 500L,
+                                                                     LaunchPhase.RUNNING, 600L));
+    TwillRunResources instance2 = createResources(1, ImmutableMap.of(LaunchPhase.CONTAINER_REQUESTED, 0L,
+                                                                     LaunchPhase.CONTAINER_ALLOCATED, 100L,
+                                                                     LaunchPhase.RUNNING, 900L));
+    TwillRunResources instance3 = createResources(2, Collections.<LaunchPhase, Long>emptyMap());
+
+    Map<LaunchPhase, Long> summary = LaunchTimeline.summarize(ImmutableList.of(instance1, instance2, instance3));
+    Assert.assertEquals(ImmutableMap.of(LaunchPhase.CONTAINER_ALLOCATED, 500L, LaunchPhase.RUNNING, 800L), summary);
+  }
+
+  @Test
+  public void testEncodeDecode() {
+    LaunchTimeline timeline = new LaunchTimeline()
+      .mark(LaunchPhase.PREPARE_STARTED, 10L)
+      .mark(LaunchPhase.SUBMITTED, 20L);
+    Assert.assertEquals(timeline.getPhases(), LaunchTimeline.decode(timeline.encode()));
+    Assert.assertTrue(LaunchTimeline.decode(null).isEmpty());
+
+    // Unknown phases from a different version are ignored
+    Assert.assertEquals(ImmutableMap.of(LaunchPhase.SUBMITTED, 20L),
+                        LaunchTimeline.decode("{\"SUBMITTED\":20,\"UNKNOWN_PHASE\":30}"));
+  }
+
+  @Test
+  public void testCodec() {
+    Gson gson = new GsonBuilder()
+      .registerTypeAdapter(TwillRunResources.class, new TwillRunResourcesCodec())
+      .create();
+
+    TwillRunResources resources = createResources(0, ImmutableMap.of(LaunchPhase.CONTAINER_ALLOCATED, 10L,
+                                                                     LaunchPhase.RUNNING, 20L));
+    TwillRunResources decoded = gson.fromJson(gson.toJson(resources, TwillRunResources.class),
+                                              TwillRunResources.class);
+    Assert.assertEquals(resources.getLaunchTimeline(), decoded.getLaunchTimeline());
+
+    // Resources encoded by older version has no launch timeline
+    decoded = gson.fromJson("{\"containerId\":\"container\",\"instanceId\":0,\"host\":\"host\",\"memoryMB\":1024," +
+                              "\"virtualCores\":1,\"logLevels\":{}}", TwillRunResources.class);
+    Assert.assertTrue(decoded.getLaunchTimeline().isEmpty());
+  }
+
+  private TwillRunResources createResources(int instanceId, Map<LaunchPhase, Long> timeline) {
+    return new DefaultTwillRunResources(instanceId, "container" + instanceId, 1, 1024, 768, "host", null,
+                                        Collections.<String, LogEntry.Level>emptyMap(), timeline);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.io;
+
+import org.apache.twill.api.metrics.MetricsSnapshot;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
+import org.apache.twill.internal.metrics.DefaultMetricsRegistry;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for {@link BasicLocationCache}.
+ */
+public class BasicLocationCacheTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testConcurrentLoad() throws Exception {
+    LocationFactory lf = new LocalLocationFactory(TEMP_FOLDER.newFolder());
+    DefaultMetricsRegistry metricsRegistry = new DefaultMetricsRegistry();
+    final LocationCache cache = new BasicLocationCache(lf.create("cache"), metricsRegistry);
+
+    // A loader that blocks until loads of both names are started, which can only happen if they run in parallel
+    final int threads = 6;
+    final CountDownLatch loadLatch = new CountDownLatch(2);
+    final AtomicInteger loadCount = new AtomicInteger();
+    final LocationCache.Loader loader = new LocationCache.Loader() {
+      @Override
+      public void load(String name, Location targetLocation) throws IOException {
+        loadCount.incrementAndGet();
+        try (OutputStream os = targetLocation.getOutputStream()) {
+          os.write(name.getBytes(StandardCharsets.UTF_8));
+          loadLatch.countDown();
+          Assert.assertTrue(loadLatch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Location>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        final String name = "name" + (i % 2);
+        futures.add(executor.submit(new Callable<Location>() {
+          @Override
+          public Location call() throws Exception {
+            return cache.get(name, loader);
+          }
+        }));
+      }
+      for (int i = 0; i < threads; i++) {
+        Location location = futures.get(i).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals("name" + (i % 2), location.getName());
+        Assert.assertTrue(location.exists());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // Each name should only be loaded once
+    Assert.assertEquals(2, loadCount.get());
+    MetricsSnapshot metrics = metricsRegistry.snapshot();
+    Assert.assertEquals(2L, metrics.getCounters().get(BasicLocationCache.MISSES).longValue());
+    Assert.assertEquals(threads - 2L, metrics.getCounters().get(BasicLocationCache.HITS).longValue());
+    Assert.assertEquals(2L, metrics.getTimers().get(BasicLocationCache.LOAD_TIME).getCount());
+  }
+
+  @Test
+  public void testFailedLoad() throws Exception {
+    LocationFactory lf = new LocalLocationFactory(TEMP_FOLDER.newFolder());
+    Location cacheDir = lf.create("cache");
+    LocationCache cache = new BasicLocationCache(cacheDir);
+
+    // A loader that fails after partially written the content
+    try {
+      cache.get("partial", new LocationCache.Loader() {
+        @Override
+        public void load(String name, Location targetLocation) throws IOException {
+          try (OutputStream os = targetLocation.getOutputStream()) {
+            os.write(1);
+          }
+          throw new IOException("Failed to load");
+        }
+      });
+      Assert.fail("Expected failure in loading");
+    } catch (IOException e) {
+      // Expected
+    }
+
+    // Nothing should be left in the cache directory
+    Assert.assertEquals(Collections.<Location>emptyList(), cacheDir.list());
+
+    // Get it again should call the loader
+    final AtomicInteger loadCount = new AtomicInteger();
+    Location location = cache.get("partial", new LocationCache.Loader() {
+      @Override
+      public void load(String name, Location targetLocation) throws IOException {
+        loadCount.incrementAndGet();
+        targetLocation.getOutputStream().close();
+      }
+    });
+    Assert.assertEquals(1, loadCount.get());
+    Assert.assertTrue(location.exists());
+  }
+
+  @Test
+  public void testManifest() throws Exception {
+    LocationFactory lf = new LocalLocationFactory(TEMP_FOLDER.newFolder());
+    Location cacheDir = lf.create("cache");
+    BasicLocationCache cache = new BasicLocationCache(cacheDir, new DefaultMetricsRegistry(),
+                                                      TimeUnit.HOURS.toMillis(1));
+    LocationCache.Loader loader = new LocationCache.Loader() {
+      @Override
+      public void load(String name, Location targetLocation) throws IOException {
+        targetLocation.getOutputStream().close();
+      }
+    };
+
+    // Creation of an entry always writes the manifest
+    cache.get("a", loader);
+    Map<String, LocationCacheManifest.Entry> manifest = LocationCacheManifest.read(cacheDir);
+    Assert.assertNotNull(manifest);
+    Assert.assertEquals(Collections.singleton("a"), manifest.keySet());
+    long lastModified = cacheDir.append(LocationCacheManifest.NAME).lastModified();
+
+    // Cache hit within the update interval doesn't write the manifest
+    TimeUnit.MILLISECONDS.sleep(10);
+    cache.get("a", loader);
+    Assert.assertEquals(lastModified, cacheDir.append(LocationCacheManifest.NAME).lastModified());
+    Assert.assertEquals(manifest.get("a").getLastUseTime(),
+                        LocationCacheManifest.read(cacheDir).get("a").getLastUseTime());
+
+    // Entries removed by the cleaner are dropped from the manifest on the next write
+    Assert.assertTrue(cacheDir.append("a").delete());
+    cache.removed("a");
+    cache.get("b", loader);
+    manifest = LocationCacheManifest.read(cacheDir);
+    Assert.assertNotNull(manifest);
+    Assert.assertEquals(Collections.singleton("b"), manifest.keySet());
+  }
+}
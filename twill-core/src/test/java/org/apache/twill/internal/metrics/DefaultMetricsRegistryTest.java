@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.metrics;
+
+import com.google.gson.Gson;
+import org.apache.twill.api.metrics.Counter;
+import org.apache.twill.api.metrics.Gauge;
+import org.apache.twill.api.metrics.Timer;
+import org.apache.twill.api.metrics.TimerSnapshot;
+import org.apache.twill.common.Cancellable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Unit test for {@link DefaultMetricsRegistry} and the snapshots it creates.
+ */
+public class DefaultMetricsRegistryTest {
+
+  @Test
+  public void testBuckets() {
+    long previousUpper = -1L;
+    for (int i = 0; i < HistogramTimer.BUCKET_COUNT; i++) {
+      long lower = HistogramTimer.bucketLowerBound(i);
+      long upper = HistogramTimer.bucketUpperBound(i);
+
+      // Buckets are contiguous and each value maps back to the bucket
+      Assert.assertEquals(previousUpper + 1, lower);
+      Assert.assertEquals(i, HistogramTimer.bucketIndex(lower));
+      Assert.assertEquals(i, HistogramTimer.bucketIndex(upper));
+
+      // Relative error is bounded
+      Assert.assertTrue((double) (upper - lower) / Math.max(1L, lower) <= 1d / HistogramTimer.SUB_BUCKET_COUNT);
+      previousUpper = upper;
+    }
+    Assert.assertEquals(Long.MAX_VALUE, previousUpper);
+  }
+
+  @Test
+  public void testCpuQuantize() {
+    // Small fluctuations of CPU usage don't change the gauge value
+    Assert.assertEquals(0L, ProcessCpuGauge.quantize(0.4d));
+    Assert.assertEquals(0L, ProcessCpuGauge.quantize(2.4d));
+    Assert.assertEquals(50L, ProcessCpuGauge.quantize(48.1d));
+    Assert.assertEquals(50L, ProcessCpuGauge.quantize(52.4d));
+    Assert.assertEquals(55L, ProcessCpuGauge.quantize(52.6d));
+    Assert.assertEquals(100L, ProcessCpuGauge.quantize(99.9d));
+  }
+
+  @Test
+  public void testRemove() {
+    DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+    Counter counter = registry.counter("removed");
+    counter.increment();
+    registry.timer("removed").record(1, TimeUnit.MILLISECONDS);
+    registry.counter("kept").increment();
+
+    registry.remove("removed");
+    DefaultMetricsSnapshot snapshot = registry.snapshot();
+    Assert.assertFalse(snapshot.getCounters().containsKey("removed"));
+    Assert.assertFalse(snapshot.getTimers().containsKey("removed"));
+    Assert.assertEquals(1L, snapshot.getCounters().get("kept").longValue());
+
+    // A new counter is created after removal
+    Assert.assertNotSame(counter, registry.counter("removed"));
+    Assert.assertEquals(0L, registry.counter("removed").getCount());
+  }
+
+  @Test
+  public void testRegistry() {
+    DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+    Counter counter = registry.counter("requests");
+    Assert.assertSame(counter, registry.counter("requests"));
+    counter.increment();
+    counter.increment(4);
+
+    registry.gauge("queue", new Gauge() {
+      @Override
+      public long getValue() {
+        return 7L;
+      }
+    });
+
+    Timer timer = registry.timer("latency");
+    for (int i = 1; i <= 1000; i++) {
+      timer.record(i, TimeUnit.MICROSECONDS);
+    }
+
+    DefaultMetricsSnapshot snapshot = registry.snapshot();
+    Assert.assertEquals(5L, snapshot.getCounters().get("requests").longValue());
+    Assert.assertEquals(7L, snapshot.getGauges().get("queue").longValue());
+
+    TimerSnapshot timerSnapshot = snapshot.getTimers().get("latency");
+    Assert.assertEquals(1000L, timerSnapshot.getCount());
+    Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1), timerSnapshot.getMin());
+    Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), timerSnapshot.getMax());
+    Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1) * 500.5d, timerSnapshot.getMean(), 0.001d);
+    assertWithinError(TimeUnit.MICROSECONDS.toNanos(500), timerSnapshot.getPercentile(50));
+    assertWithinError(TimeUnit.MICROSECONDS.toNanos(990), timerSnapshot.getPercentile(99));
+    Assert.assertEquals(timerSnapshot.getMax(), timerSnapshot.getPercentile(100));
+
+    // Snapshot doesn't change if nothing is recorded
+    Assert.assertEquals(snapshot, registry.snapshot());
+  }
+
+  @Test
+  public void testMerge() {
+    DefaultMetricsRegistry registry1 = new DefaultMetricsRegistry();
+    DefaultMetricsRegistry registry2 = new DefaultMetricsRegistry();
+
+    registry1.counter("requests").increment(3);
+    registry2.counter("requests").increment(4);
+    registry2.counter("errors").increment();
+    registry1.timer("latency").record(10, TimeUnit.MILLISECONDS);
+    registry2.timer("latency").record(20, TimeUnit.MILLISECONDS);
+    registry2.timer("latency").record(30, TimeUnit.MILLISECONDS);
+
+    DefaultMetricsSnapshot merged = registry1.snapshot().merge(registry2.snapshot());
+    Assert.assertEquals(7L, merged.getCounters().get("requests").longValue());
+    Assert.assertEquals(1L, merged.getCounters().get("errors").longValue());
+
+    TimerSnapshot latency = merged.getTimers().get("latency");
+    Assert.assertEquals(3L, latency.getCount());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(10), latency.getMin());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(30), latency.getMax());
+    assertWithinError(TimeUnit.MILLISECONDS.toNanos(20), latency.getPercentile(50));
+
+    // Merging with empty doesn't change anything
+    Assert.assertEquals(merged, DefaultMetricsSnapshot.EMPTY.merge(merged));
+  }
+
+  @Test
+  public void testSerialization() {
+    DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+    registry.counter("requests").increment(3);
+    registry.timer("latency").record(10, TimeUnit.MILLISECONDS);
+    registry.timer("empty");
+
+    DefaultMetricsSnapshot snapshot = registry.snapshot();
+    Gson gson = new Gson();
+    Assert.assertEquals(snapshot, gson.fromJson(gson.toJson(snapshot), DefaultMetricsSnapshot.class));
+  }
+
+  @Test
+  public void testMXBean() throws Exception {
+    DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+    registry.counter("requests").increment(3);
+    registry.timer("latency").record(10, TimeUnit.MILLISECONDS);
+
+    String name = "org.apache.twill:type=DefaultMetricsRegistryTest";
+    Cancellable cancellable = DefaultMetricsMXBean.register(name, registry);
+    try {
+      MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+      MetricsMXBean bean = JMX.newMXBeanProxy(mbeanServer, new ObjectName(name), MetricsMXBean.class);
+      Assert.assertEquals(3L, bean.getCounters().get("requests").longValue());
+      Assert.assertEquals(1L, bean.getTimers().get("latency.count").longValue());
+      assertWithinError(TimeUnit.MILLISECONDS.toNanos(10), bean.getTimers().get("latency.p99"));
+
+      // Values are read from the registry on each call
+      registry.counter("requests").increment();
+      Assert.assertEquals(4L, bean.getCounters().get("requests").longValue());
+    } finally {
+      cancellable.cancel();
+    }
+    Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(name)));
+  }
+
+  private void assertWithinError(long expected, long actual) {
+    Assert.assertTrue("Expected " + expected + " but got " + actual,
+                      Math.abs(expected - actual) <= (double) expected / HistogramTimer.SUB_BUCKET_COUNT);
+  }
+}
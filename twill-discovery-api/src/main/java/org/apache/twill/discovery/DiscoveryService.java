@@ -17,9 +17,11 @@
  */
 package org.apache.twill.discovery;
 
-
 import org.apache.twill.common.Cancellable;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * DiscoveryService defines interface for registering {@link Discoverable}.
  */
@@ -31,5 +33,34 @@ public interface DiscoveryService {
    * @return A {@link Cancellable} for un-registration.
    */
   Cancellable register(Discoverable discoverable);
+
+  /**
+   * Registers multiple {@link Discoverable} services. Implementations may register them in batch, which is
+   * more efficient than registering them one by one. The default implementation calls
+   * {@link #register(Discoverable)} for each of them, and cancels the ones registered if any of the calls fails.
+   * @param discoverables Information of the service providers that could be discovered.
+   * @return A {@link Cancellable} for un-registration of all of them.
+   */
+  default Cancellable register(Iterable<? extends Discoverable> discoverables) {
+    final List<Cancellable> cancellables = new ArrayList<>();
+    try {
+      for (Discoverable discoverable : discoverables) {
+        cancellables.add(register(discoverable));
+      }
+    } catch (RuntimeException e) {
+      for (Cancellable cancellable : cancellables) {
+        cancellable.cancel();
+      }
+      throw e;
+    }
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        for (Cancellable cancellable : cancellables) {
+          cancellable.cancel();
+        }
+      }
+    };
+  }
 }
 
@@ -20,6 +20,7 @@ package org.apache.twill.discovery;
 import org.apache.twill.common.Cancellable;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents the result of service discovery. It extends from
@@ -53,7 +54,9 @@ public interface ServiceDiscovered extends Iterable<Discoverable> {
   /**
    * Registers a {@link ChangeListener} to watch for changes in the discovery list.
    * The {@link ChangeListener#onChange(ServiceDiscovered)} method will be triggered when start watching,
-   * and on every subsequent changes in the discovery list.
+   * and on every subsequent changes in the discovery list. Changes that happen while a call to the listener
+   * is still waiting in the executor are coalesced into that call, as the listener always sees the latest
+   * discovery list.
    *
    * @param listener A {@link ChangeListener} to watch for changes.
    * @param executor A {@link Executor} for issuing call to the given listener.
@@ -61,6 +64,27 @@ public interface ServiceDiscovered extends Iterable<Discoverable> {
    */
   Cancellable watchChanges(ChangeListener listener, Executor executor);
 
+  /**
+   * Registers a {@link ChangeListener} to watch for changes in the discovery list, with changes coalesced
+   * over a quiet period. The {@link ChangeListener#onChange(ServiceDiscovered)} method will be triggered when
+   * start watching. After a change, it is triggered once there are no more changes for the quiet period, or when
+   * the max delay has passed since the first change not yet notified, whichever comes first.
+   * The default implementation doesn't delay the calls and is the same as
+   * {@link #watchChanges(ChangeListener, Executor)}.
+   *
+   * @param listener A {@link ChangeListener} to watch for changes.
+   * @param executor A {@link Executor} for issuing call to the given listener.
+   * @param quietPeriod Time without changes before the listener is called.
+   * @param maxDelay Maximum time between a change and the listener call, which must not be smaller than
+   *                 the quiet period.
+   * @param unit Unit of the quiet period and max delay.
+   * @return A {@link Cancellable} to cancel the watch.
+   */
+  default Cancellable watchChanges(ChangeListener listener, Executor executor,
+                                   long quietPeriod, long maxDelay, TimeUnit unit) {
+    return watchChanges(listener, executor);
+  }
+
   /**
    * Checks if the given discoverable contains in the current discovery list.
    *
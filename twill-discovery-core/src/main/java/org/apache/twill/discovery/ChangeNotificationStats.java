@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.discovery;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Package private class for counting change notifications of {@link DefaultServiceDiscovered}, which can be shared
+ * by all {@link DefaultServiceDiscovered} created by the same discovery service.
+ */
+final class ChangeNotificationStats {
+
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong suppressed = new AtomicLong();
+
+  void delivered() {
+    delivered.incrementAndGet();
+  }
+
+  void suppressed() {
+    suppressed.incrementAndGet();
+  }
+
+  /**
+   * Returns the number of calls made to {@link ServiceDiscovered.ChangeListener}.
+   */
+  long getDelivered() {
+    return delivered.get();
+  }
+
+  /**
+   * Returns the number of changes that were coalesced into another call to {@link ServiceDiscovered.ChangeListener}.
+   */
+  long getSuppressed() {
+    return suppressed.get();
+  }
+}
@@ -17,9 +17,11 @@
  */
 package org.apache.twill.discovery;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,6 +29,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
@@ -40,13 +45,23 @@ final class DefaultServiceDiscovered implements ServiceDiscovered {
 
   private static final Logger LOG = LoggerFactory.getLogger(DefaultServiceDiscovered.class);
 
+  // Scheduler for delivering debounced change notifications, which only hands off calls to the listener executors.
+  private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+    Threads.createDaemonThreadFactory("service-discovered-debounce"));
+
   private final String name;
+  private final ChangeNotificationStats stats;
   private final AtomicReference<Set<Discoverable>> discoverables;
   private final List<ListenerCaller> listenerCallers;
   private final ReadWriteLock callerLock;
 
   DefaultServiceDiscovered(String name) {
+    this(name, new ChangeNotificationStats());
+  }
+
+  DefaultServiceDiscovered(String name, ChangeNotificationStats stats) {
     this.name = name;
+    this.stats = stats;
     this.discoverables = new AtomicReference<Set<Discoverable>>(ImmutableSet.<Discoverable>of());
     this.listenerCallers = Lists.newLinkedList();
     this.callerLock = new ReentrantReadWriteLock();
@@ -81,7 +96,16 @@ final class DefaultServiceDiscovered implements ServiceDiscovered {
 
   @Override
   public Cancellable watchChanges(ChangeListener listener, Executor executor) {
-    ListenerCaller caller = new ListenerCaller(listener, executor);
+    return watchChanges(listener, executor, 0L, 0L, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Cancellable watchChanges(ChangeListener listener, Executor executor,
+                                  long quietPeriod, long maxDelay, TimeUnit unit) {
+    Preconditions.checkArgument(quietPeriod >= 0, "Quiet period must not be negative: %s", quietPeriod);
+    Preconditions.checkArgument(maxDelay >= quietPeriod,
+                                "Max delay %s must not be smaller than quiet period %s", maxDelay, quietPeriod);
+    ListenerCaller caller = new ListenerCaller(listener, executor, unit.toNanos(quietPeriod), unit.toNanos(maxDelay));
 
     // Add the new listener with a write lock.
     Lock writeLock = callerLock.writeLock();
@@ -96,7 +120,8 @@ final class DefaultServiceDiscovered implements ServiceDiscovered {
     // Race would happen between this method and the setDiscoverables() method, but it's ok as the contract of
     // adding a new listener is that onChange will be called at least once. The actual changes is already
     // reflected by the atomic reference "discoverables", hence it's consistent.
-    caller.invoke();
+    // The first call is never debounced.
+    caller.dispatch();
     return caller;
   }
 
@@ -111,31 +136,97 @@ final class DefaultServiceDiscovered implements ServiceDiscovered {
     return discoverables.get().iterator();
   }
 
+  /**
+   * Returns the {@link ChangeNotificationStats} for counting change notifications.
+   */
+  ChangeNotificationStats getStats() {
+    return stats;
+  }
+
   /**
    * Private helper class for invoking the change listener from an executor.
    * It also responsible to remove itself from the listener list.
+   * <p/>
+   * At most one call to the listener is waiting in the executor at any time, and changes happened while a call
+   * is waiting are coalesced into it, so that a slow executor never accumulates calls for intermediate states.
+   * With a quiet period, a change only triggers a call after there are no more changes for the quiet period,
+   * or the max delay has passed since the first change not yet notified.
    */
   private final class ListenerCaller implements Runnable, Cancellable {
 
     private final ChangeListener listener;
     private final Executor executor;
+    private final long quietPeriodNanos;
+    private final long maxDelayNanos;
     private final AtomicBoolean cancelled;
+    // True when a call is submitted to the executor and not yet started
+    private final AtomicBoolean pending;
 
-    private ListenerCaller(ChangeListener listener, Executor executor) {
+    // Times of the first and last changes not yet notified, and whether a check is scheduled. Guarded by this.
+    private long firstChangeNanos;
+    private long lastChangeNanos;
+    private boolean scheduled;
+
+    private ListenerCaller(ChangeListener listener, Executor executor, long quietPeriodNanos, long maxDelayNanos) {
       this.listener = listener;
       this.executor = executor;
+      this.quietPeriodNanos = quietPeriodNanos;
+      this.maxDelayNanos = maxDelayNanos;
       this.cancelled = new AtomicBoolean(false);
+      this.pending = new AtomicBoolean(false);
     }
 
+    /**
+     * Notifies about a change in the discovery list.
+     */
     void invoke() {
-      if (!cancelled.get()) {
+      if (cancelled.get()) {
+        return;
+      }
+      if (quietPeriodNanos <= 0L) {
+        dispatch();
+        return;
+      }
+
+      synchronized (this) {
+        lastChangeNanos = System.nanoTime();
+        if (scheduled) {
+          // The pending check will cover this change
+          stats.suppressed();
+          return;
+        }
+        scheduled = true;
+        firstChangeNanos = lastChangeNanos;
+      }
+      schedule(quietPeriodNanos);
+    }
+
+    /**
+     * Submits a call to the listener to the executor, unless there is already one waiting.
+     */
+    void dispatch() {
+      if (cancelled.get()) {
+        return;
+      }
+      if (!pending.compareAndSet(false, true)) {
+        // The waiting call will see the latest discovery list
+        stats.suppressed();
+        return;
+      }
+      try {
         executor.execute(this);
+      } catch (RuntimeException e) {
+        pending.set(false);
+        throw e;
       }
     }
 
     @Override
     public void run() {
+      // Reset before calling the listener, so that changes during the call trigger another one
+      pending.set(false);
       if (!cancelled.get()) {
+        stats.delivered();
         listener.onChange(DefaultServiceDiscovered.this);
       }
     }
@@ -152,5 +243,37 @@ final class DefaultServiceDiscovered implements ServiceDiscovered {
         }
       }
     }
+
+    private void schedule(long delayNanos) {
+      SCHEDULER.schedule(new Runnable() {
+        @Override
+        public void run() {
+          checkQuietPeriod();
+        }
+      }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Dispatches a call to the listener if the quiet period or the max delay has passed, otherwise checks again
+     * when either one would pass.
+     */
+    private void checkQuietPeriod() {
+      long delayNanos;
+      synchronized (this) {
+        delayNanos = Math.min(lastChangeNanos + quietPeriodNanos, firstChangeNanos + maxDelayNanos) - System.nanoTime();
+        if (delayNanos <= 0L) {
+          scheduled = false;
+        }
+      }
+      if (delayNanos > 0L) {
+        schedule(delayNanos);
+        return;
+      }
+      try {
+        dispatch();
+      } catch (RuntimeException e) {
+        LOG.error("Failed to notify change listener {} of service {}", listener, name, e);
+      }
+    }
   }
 }
@@ -26,11 +26,13 @@ import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 
 import java.lang.reflect.Type;
 import java.net.InetSocketAddress;
+import javax.annotation.Nullable;
 
 /**
  * Helper class to serialize and deserialize {@link Discoverable}.
@@ -62,6 +64,32 @@ final class DiscoverableAdapter {
     return GSON.fromJson(new String(encoded, Charsets.UTF_8), Discoverable.class);
   }
 
+  /**
+   * Helper function for encoding a {@link ServiceSnapshot} into array of bytes.
+   */
+  static byte[] encodeSnapshot(ServiceSnapshot snapshot) {
+    return GSON.toJson(snapshot, ServiceSnapshot.class).getBytes(Charsets.UTF_8);
+  }
+
+  /**
+   * Helper function for decoding array of bytes into a {@link ServiceSnapshot}.
+   * @param encoded representing serialized {@link ServiceSnapshot}
+   * @return {@code null} if encoded bytes are null, empty or not a valid snapshot;
+   *         else an instance of {@link ServiceSnapshot}
+   */
+  @Nullable
+  static ServiceSnapshot decodeSnapshot(@Nullable byte[] encoded) {
+    if (encoded == null || encoded.length == 0) {
+      return null;
+    }
+    try {
+      ServiceSnapshot snapshot = GSON.fromJson(new String(encoded, Charsets.UTF_8), ServiceSnapshot.class);
+      return snapshot == null || snapshot.getDiscoverables() == null ? null : snapshot;
+    } catch (JsonSyntaxException e) {
+      return null;
+    }
+  }
+
   private DiscoverableAdapter() {
   }
 
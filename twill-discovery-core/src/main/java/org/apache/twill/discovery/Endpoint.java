@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.discovery;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents a {@link Discoverable} selected by an {@link EndpointStrategy} or {@link KeyedEndpointStrategy}.
+ * The same instance is returned for the same {@link Discoverable} as long as it stays in the discovery list, so
+ * that the request feedback reported through {@link #requestStarted()} and
+ * {@link #requestCompleted(long, TimeUnit)} is retained across changes in the discovery list.
+ * Reporting feedback is optional, and it is only used by strategies that balance load based on it.
+ */
+public final class Endpoint {
+
+  // Weight of a new latency sample in the smoothed latency, as a power of two.
+  private static final int LATENCY_SMOOTHING_SHIFT = 3;
+
+  private final Discoverable discoverable;
+  private final AtomicInteger outstandingRequests;
+  private final AtomicLong latencyNanos;
+
+  Endpoint(Discoverable discoverable) {
+    this.discoverable = discoverable;
+    this.outstandingRequests = new AtomicInteger();
+    this.latencyNanos = new AtomicLong();
+  }
+
+  /**
+   * Returns the {@link Discoverable} of this endpoint.
+   */
+  public Discoverable getDiscoverable() {
+    return discoverable;
+  }
+
+  /**
+   * Reports that a request to this endpoint is started.
+   */
+  public void requestStarted() {
+    outstandingRequests.incrementAndGet();
+  }
+
+  /**
+   * Reports that a request previously reported through {@link #requestStarted()} is completed.
+   *
+   * @param latency the time taken by the request, or a negative value if it is not known
+   * @param unit unit of the latency
+   */
+  public void requestCompleted(long latency, TimeUnit unit) {
+    outstandingRequests.decrementAndGet();
+    if (latency < 0) {
+      return;
+    }
+    long sample = unit.toNanos(latency);
+    while (true) {
+      long current = latencyNanos.get();
+      long updated = current == 0L ? sample : current + ((sample - current) >> LATENCY_SMOOTHING_SHIFT);
+      if (latencyNanos.compareAndSet(current, updated)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of requests to this endpoint that are started but not yet completed.
+   */
+  public int getOutstandingRequests() {
+    return outstandingRequests.get();
+  }
+
+  /**
+   * Returns the exponentially smoothed latency of the completed requests, or {@code 0} if no latency was reported.
+   */
+  public long getLatency(TimeUnit unit) {
+    return unit.convert(latencyNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String toString() {
+    return "Endpoint{discoverable=" + discoverable
+      + ", outstandingRequests=" + outstandingRequests.get()
+      + ", latencyNanos=" + latencyNanos.get() + "}";
+  }
+}
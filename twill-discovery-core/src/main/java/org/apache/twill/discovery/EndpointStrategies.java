@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.discovery;
+
+import com.google.common.base.Preconditions;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Factory methods for creating {@link EndpointStrategy} and {@link KeyedEndpointStrategy} over a
+ * {@link ServiceDiscovered}.
+ * <p/>
+ * Every strategy keeps a snapshot of the discovery list as an array of {@link Endpoint}, which is only rebuilt
+ * when the discovery list changes. Selecting an endpoint works on the snapshot without locking or allocation.
+ */
+public final class EndpointStrategies {
+
+  /**
+   * Default number of points on the hash ring for each endpoint used by {@link #consistentHash(ServiceDiscovered)}.
+   */
+  public static final int DEFAULT_VIRTUAL_NODES = 100;
+
+  /**
+   * Returns an {@link EndpointStrategy} that selects endpoints in turn.
+   */
+  public static EndpointStrategy roundRobin(ServiceDiscovered serviceDiscovered) {
+    return start(new ArrayEndpointStrategy() {
+      private final AtomicInteger next = new AtomicInteger();
+
+      @Override
+      protected Endpoint pick(Endpoint[] endpoints) {
+        return endpoints[(next.getAndIncrement() & Integer.MAX_VALUE) % endpoints.length];
+      }
+    }, serviceDiscovered);
+  }
+
+  /**
+   * Returns an {@link EndpointStrategy} that selects endpoints uniformly at random.
+   */
+  public static EndpointStrategy random(ServiceDiscovered serviceDiscovered) {
+    return start(new ArrayEndpointStrategy() {
+      @Override
+      protected Endpoint pick(Endpoint[] endpoints) {
+        return endpoints[ThreadLocalRandom.current().nextInt(endpoints.length)];
+      }
+    }, serviceDiscovered);
+  }
+
+  /**
+   * Returns an {@link EndpointStrategy} that picks two endpoints at random and selects the one with fewer
+   * outstanding requests, with ties broken by the lower smoothed latency. It relies on the feedback reported
+   * through {@link Endpoint#requestStarted()} and {@link Endpoint#requestCompleted(long, TimeUnit)}, without which
+   * it behaves the same as {@link #random(ServiceDiscovered)}.
+   */
+  public static EndpointStrategy leastOutstanding(ServiceDiscovered serviceDiscovered) {
+    return start(new ArrayEndpointStrategy() {
+      @Override
+      protected Endpoint pick(Endpoint[] endpoints) {
+        int size = endpoints.length;
+        if (size == 1) {
+          return endpoints[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+          second++;
+        }
+
+        Endpoint endpoint1 = endpoints[first];
+        Endpoint endpoint2 = endpoints[second];
+        int outstanding1 = endpoint1.getOutstandingRequests();
+        int outstanding2 = endpoint2.getOutstandingRequests();
+        if (outstanding1 != outstanding2) {
+          return outstanding1 < outstanding2 ? endpoint1 : endpoint2;
+        }
+        return endpoint1.getLatency(TimeUnit.NANOSECONDS) <= endpoint2.getLatency(TimeUnit.NANOSECONDS)
+          ? endpoint1 : endpoint2;
+      }
+    }, serviceDiscovered);
+  }
+
+  /**
+   * Returns a {@link KeyedEndpointStrategy} that selects endpoints by consistent hashing of the request key,
+   * with {@link #DEFAULT_VIRTUAL_NODES} points on the hash ring for each endpoint.
+   */
+  public static KeyedEndpointStrategy consistentHash(ServiceDiscovered serviceDiscovered) {
+    return consistentHash(serviceDiscovered, DEFAULT_VIRTUAL_NODES);
+  }
+
+  /**
+   * Returns a {@link KeyedEndpointStrategy} that selects endpoints by consistent hashing of the request key.
+   * Keys are mapped to the same endpoint by all clients, as the hash ring only depends on the addresses of the
+   * endpoints. When an endpoint is added or removed, only the keys mapped to that endpoint are remapped.
+   *
+   * @param serviceDiscovered the {@link ServiceDiscovered} to select endpoints from
+   * @param virtualNodes number of points on the hash ring for each endpoint, for spreading keys evenly
+   */
+  public static KeyedEndpointStrategy consistentHash(ServiceDiscovered serviceDiscovered, int virtualNodes) {
+    Preconditions.checkArgument(virtualNodes > 0, "Number of virtual nodes must be positive: %s", virtualNodes);
+    return start(new ConsistentHashStrategy(virtualNodes), serviceDiscovered);
+  }
+
+  private static <T extends SnapshotStrategy> T start(T strategy, ServiceDiscovered serviceDiscovered) {
+    strategy.watch(serviceDiscovered);
+    return strategy;
+  }
+
+  /**
+   * Computes a 64 bits hash of the given characters, using FNV-1a followed by the MurmurHash3 finalizer to
+   * spread the bits. It doesn't allocate memory.
+   */
+  private static long hash(CharSequence chars) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < chars.length(); i++) {
+      hash ^= chars.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  /**
+   * Base class for strategies that maintain a snapshot of {@link Endpoint}s of a {@link ServiceDiscovered}.
+   */
+  private abstract static class SnapshotStrategy implements ServiceDiscovered.ChangeListener, Cancellable {
+
+    // Endpoints in the latest snapshot, for retaining the request feedback across snapshots. Guarded by this.
+    private Map<Discoverable, Endpoint> endpoints = new HashMap<>();
+    private volatile Cancellable watchCancellable;
+
+    @Override
+    public final synchronized void onChange(ServiceDiscovered serviceDiscovered) {
+      Map<Discoverable, Endpoint> newEndpoints = new HashMap<>();
+      for (Discoverable discoverable : serviceDiscovered) {
+        Endpoint endpoint = endpoints.get(discoverable);
+        newEndpoints.put(discoverable, endpoint == null ? new Endpoint(discoverable) : endpoint);
+      }
+      endpoints = newEndpoints;
+      update(newEndpoints.values().toArray(new Endpoint[newEndpoints.size()]));
+    }
+
+    /**
+     * Starts watching for changes of the given {@link ServiceDiscovered}. The snapshot is updated from the thread
+     * that changes the discovery list, which also creates the initial snapshot before this method returns.
+     */
+    final void watch(ServiceDiscovered serviceDiscovered) {
+      watchCancellable = serviceDiscovered.watchChanges(this, Threads.SAME_THREAD_EXECUTOR);
+    }
+
+    @Override
+    public final void cancel() {
+      Cancellable cancellable = watchCancellable;
+      if (cancellable != null) {
+        cancellable.cancel();
+      }
+    }
+
+    /**
+     * Updates the snapshot with the given endpoints.
+     */
+    protected abstract void update(Endpoint[] endpoints);
+  }
+
+  /**
+   * Base class for {@link EndpointStrategy} that selects from an array of {@link Endpoint}.
+   */
+  private abstract static class ArrayEndpointStrategy extends SnapshotStrategy implements EndpointStrategy {
+
+    private volatile Endpoint[] endpoints = new Endpoint[0];
+
+    @Nullable
+    @Override
+    public final Endpoint pick() {
+      Endpoint[] endpoints = this.endpoints;
+      return endpoints.length == 0 ? null : pick(endpoints);
+    }
+
+    @Override
+    protected final void update(Endpoint[] endpoints) {
+      this.endpoints = endpoints;
+    }
+
+    /**
+     * Selects an {@link Endpoint} from the given non-empty array.
+     */
+    protected abstract Endpoint pick(Endpoint[] endpoints);
+  }
+
+  /**
+   * A {@link KeyedEndpointStrategy} that uses a consistent hash ring.
+   */
+  private static final class ConsistentHashStrategy extends SnapshotStrategy implements KeyedEndpointStrategy {
+
+    private final int virtualNodes;
+    private volatile HashRing ring = new HashRing(new TreeMap<Long, Endpoint>());
+
+    ConsistentHashStrategy(int virtualNodes) {
+      this.virtualNodes = virtualNodes;
+    }
+
+    @Nullable
+    @Override
+    public Endpoint pick(CharSequence key) {
+      HashRing ring = this.ring;
+      long[] hashes = ring.hashes;
+      if (hashes.length == 0) {
+        return null;
+      }
+      // Select the first point on the ring at or after the key hash
+      int idx = Arrays.binarySearch(hashes, hash(key));
+      if (idx < 0) {
+        idx = -idx - 1;
+      }
+      return ring.endpoints[idx == hashes.length ? 0 : idx];
+    }
+
+    @Override
+    protected void update(Endpoint[] endpoints) {
+      TreeMap<Long, Endpoint> points = new TreeMap<>();
+      StringBuilder builder = new StringBuilder();
+      for (Endpoint endpoint : endpoints) {
+        InetSocketAddress address = endpoint.getDiscoverable().getSocketAddress();
+        builder.setLength(0);
+        builder.append(address.getHostString()).append(':').append(address.getPort()).append('#');
+        int prefixLength = builder.length();
+        for (int i = 0; i < virtualNodes; i++) {
+          builder.setLength(prefixLength);
+          points.put(hash(builder.append(i)), endpoint);
+        }
+      }
+      ring = new HashRing(points);
+    }
+  }
+
+  /**
+   * An immutable hash ring, with the points sorted by hash.
+   */
+  private static final class HashRing {
+
+    private final long[] hashes;
+    private final Endpoint[] endpoints;
+
+    HashRing(TreeMap<Long, Endpoint> points) {
+      this.hashes = new long[points.size()];
+      this.endpoints = new Endpoint[points.size()];
+      int idx = 0;
+      for (Map.Entry<Long, Endpoint> entry : points.entrySet()) {
+        hashes[idx] = entry.getKey();
+        endpoints[idx] = entry.getValue();
+        idx++;
+      }
+    }
+  }
+
+  private EndpointStrategies() {
+  }
+}
@@ -18,10 +18,12 @@
 package org.apache.twill.discovery;
 
 import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import org.apache.twill.common.Cancellable;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -69,6 +71,22 @@ public class InMemoryDiscoveryService implements DiscoveryService, DiscoveryServ
     };
   }
 
+  @Override
+  public Cancellable register(Iterable<? extends Discoverable> discoverables) {
+    final List<Cancellable> cancellables = Lists.newArrayList();
+    for (Discoverable discoverable : discoverables) {
+      cancellables.add(register(discoverable));
+    }
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        for (Cancellable cancellable : cancellables) {
+          cancellable.cancel();
+        }
+      }
+    };
+  }
+
   @Override
   public ServiceDiscovered discover(final String name) {
     lock.lock();
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.discovery;
+
+import org.apache.twill.common.Cancellable;
+
+import javax.annotation.Nullable;
+
+/**
+ * Selects an {@link Endpoint} from a {@link ServiceDiscovered} based on a request key, such that requests with
+ * the same key go to the same {@link Endpoint} while the discovery list is unchanged. Instances are created through
+ * {@link EndpointStrategies} and are safe to use from multiple threads. Calling {@link #cancel()} stops the
+ * strategy from tracking changes in the discovery list.
+ */
+public interface KeyedEndpointStrategy extends Cancellable {
+
+  /**
+   * Selects an {@link Endpoint} for a request with the given key.
+   *
+   * @param key the request key
+   * @return the selected {@link Endpoint} or {@code null} if the discovery list is empty
+   */
+  @Nullable
+  Endpoint pick(CharSequence key);
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.discovery;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Package private class representing the aggregated list of {@link Discoverable} of a service, which is stored
+ * as the data of the service node by the {@link ServiceSnapshotWriter}. It records the children version of the
+ * service node that the list was built from, so that readers can tell whether it is up to date.
+ */
+final class ServiceSnapshot {
+
+  private final int cversion;
+  private final List<Discoverable> discoverables;
+
+  ServiceSnapshot(int cversion, Collection<Discoverable> discoverables) {
+    this.cversion = cversion;
+    this.discoverables = ImmutableList.copyOf(discoverables);
+  }
+
+  /**
+   * Returns the children version of the service node that this snapshot was built from.
+   */
+  int getCversion() {
+    return cversion;
+  }
+
+  List<Discoverable> getDiscoverables() {
+    return discoverables;
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.discovery;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.api.ElectionHandler;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.internal.zookeeper.LeaderElection;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.twill.zookeeper.ZKOperations;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Package private class for maintaining the {@link ServiceSnapshot} of a service. All {@link ZKDiscoveryService}
+ * with snapshot enabled that registered the service take part in a leader election, and only the leader watches
+ * the service node children and writes the snapshot.
+ */
+final class ServiceSnapshotWriter implements ElectionHandler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ServiceSnapshotWriter.class);
+
+  /**
+   * Suffix appended to the discovery namespace to form the node under which the leader elections of snapshot
+   * writers happen. The node is a sibling of the namespace, so that it is never mistaken as a service.
+   */
+  static final String ELECTION_NODE_SUFFIX = ".snapshot-writers";
+
+  private final ZKClient zkClient;
+  private final String service;
+  private final String servicePath;
+  private final LeaderElection election;
+
+  // Guarded by this
+  private Cancellable watchCancellable;
+  private int writtenCversion = -1;
+
+  /**
+   * Creates an instance.
+   *
+   * @param zkClient the {@link ZKClient} namespaced to the discovery namespace
+   * @param electionZKClient the {@link ZKClient} namespaced to the node of the snapshot writer elections
+   * @param service name of the service
+   */
+  ServiceSnapshotWriter(ZKClient zkClient, ZKClient electionZKClient, String service) {
+    this.zkClient = zkClient;
+    this.service = service;
+    this.servicePath = "/" + service;
+    this.election = new LeaderElection(electionZKClient, "/" + service, this);
+  }
+
+  /**
+   * Returns the path of the node under which the snapshot writer elections of the given discovery namespace happen.
+   *
+   * @param namespace the discovery namespace, or {@code null} if there is no namespace
+   */
+  static String getElectionPath(@Nullable String namespace) {
+    return (namespace == null ? "/" : namespace) + ELECTION_NODE_SUFFIX;
+  }
+
+  void start() {
+    election.start();
+  }
+
+  /**
+   * Leaves the election. The snapshot written stays, and the next elected writer continues to update it.
+   */
+  ListenableFuture<?> stop() {
+    return election.stop();
+  }
+
+  @Override
+  public synchronized void leader() {
+    LOG.debug("Become snapshot writer of service {}", service);
+    writtenCversion = -1;
+    watchCancellable = ZKOperations.watchChildren(zkClient, servicePath, new ZKOperations.ChildrenCallback() {
+      @Override
+      public void updated(NodeChildren nodeChildren) {
+        final int cversion = nodeChildren.getStat().getCversion();
+        Futures.addCallback(ZKDiscoveryService.fetchDiscoverables(zkClient, servicePath, nodeChildren.getChildren()),
+                            new FutureCallback<Set<Discoverable>>() {
+          @Override
+          public void onSuccess(Set<Discoverable> discoverables) {
+            write(new ServiceSnapshot(cversion, discoverables));
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            LOG.warn("Failed to fetch discoverables of service {} for snapshot", service, t);
+          }
+        }, Threads.SAME_THREAD_EXECUTOR);
+      }
+    });
+  }
+
+  @Override
+  public synchronized void follower() {
+    if (watchCancellable != null) {
+      LOG.debug("No longer snapshot writer of service {}", service);
+      watchCancellable.cancel();
+      watchCancellable = null;
+    }
+  }
+
+  private synchronized void write(final ServiceSnapshot snapshot) {
+    // Fetches complete out of order. Only write a snapshot that is newer than the one written. The writes are
+    // issued in order from the same session, hence are applied in order as well.
+    if (watchCancellable == null || snapshot.getCversion() <= writtenCversion) {
+      return;
+    }
+    writtenCversion = snapshot.getCversion();
+    Futures.addCallback(zkClient.setData(servicePath, DiscoverableAdapter.encodeSnapshot(snapshot)),
+                        new FutureCallback<Stat>() {
+      @Override
+      public void onSuccess(Stat result) {
+        LOG.trace("Snapshot of service {} written for children version {}", service, snapshot.getCversion());
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.warn("Failed to write snapshot of service {}", service, t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+}
@@ -17,15 +17,19 @@
  */
 package org.apache.twill.discovery;
 
+import com.google.common.base.Function;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
 import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -50,9 +54,12 @@ import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -103,6 +110,8 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
   private static final Logger LOG = LoggerFactory.getLogger(ZKDiscoveryService.class);
 
   private static final long RETRY_MILLIS = 1000;
+  // Time to wait for the snapshot writer to catch up with a children change before reading the nodes directly
+  private static final long SNAPSHOT_GRACE_MILLIS = 1000;
 
   private final AtomicBoolean closed;
   // In memory map for recreating ephemeral nodes after session expires.
@@ -114,6 +123,13 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
   private final ZKClient zkClient;
   private final ScheduledExecutorService retryExecutor;
   private final Cancellable watcherCancellable;
+  private final ChangeNotificationStats changeNotificationStats;
+  private final boolean useSnapshot;
+  // Snapshot writers of services registered through this instance, with the number of active registrations
+  // of each service. Both are guarded by the lock.
+  private final Map<String, ServiceSnapshotWriter> snapshotWriters;
+  private final Multiset<String> snapshotWriterRefs;
+  private final ZKClient electionZKClient;
 
   /**
    * Constructs ZKDiscoveryService using the provided zookeeper client for storing service registry.
@@ -130,12 +146,38 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
    *                  If namespace is {@code null}, no namespace will be used.
    */
   public ZKDiscoveryService(ZKClient zkClient, String namespace) {
+    this(zkClient, namespace, false);
+  }
+
+  /**
+   * Constructs ZKDiscoveryService using the provided zookeeper client for storing service registry under namespace,
+   * optionally with aggregated service snapshots.
+   * <p>
+   *   With snapshot enabled, for every service registered through this instance, this instance takes part in
+   *   electing a single writer that maintains the list of all {@link Discoverable} of the service as the data of
+   *   the service node. Services discovered through this instance are loaded with a single read of that data,
+   *   as long as it is up to date with the registered nodes, otherwise it falls back to reading the nodes.
+   *   Snapshots are only maintained for services registered through instances with snapshot enabled.
+   *   The elections happen under the node named by the namespace with the {@code .snapshot-writers} suffix,
+   *   outside of the namespace.
+   * </p>
+   * @param zkClient of zookeeper quorum
+   * @param namespace under which the service registered would be stored in zookeeper.
+   *                  If namespace is {@code null}, no namespace will be used.
+   * @param useSnapshot {@code true} to maintain and use aggregated service snapshots
+   */
+  public ZKDiscoveryService(ZKClient zkClient, String namespace, boolean useSnapshot) {
     this.closed = new AtomicBoolean();
+    this.changeNotificationStats = new ChangeNotificationStats();
+    this.useSnapshot = useSnapshot;
+    this.snapshotWriters = new HashMap<>();
+    this.snapshotWriterRefs = HashMultiset.create();
     this.discoverables = HashMultimap.create();
     this.lock = new ReentrantLock();
     this.retryExecutor = Executors.newSingleThreadScheduledExecutor(
       Threads.createDaemonThreadFactory("zk-discovery-retry"));
     this.zkClient = namespace == null ? zkClient : ZKClients.namespace(zkClient, namespace);
+    this.electionZKClient = ZKClients.namespace(zkClient, ServiceSnapshotWriter.getElectionPath(namespace));
     this.services = CacheBuilder.newBuilder()
       .removalListener(new RemovalListener<String, ServiceDiscoveredCacheEntry>() {
         @Override
@@ -164,13 +206,67 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
    * @return An instance of {@link Cancellable}
    */
   @Override
-  public Cancellable register(final Discoverable discoverable) {
+  public Cancellable register(Discoverable discoverable) {
+    return register(Collections.singletonList(discoverable));
+  }
+
+  /**
+   * Registers multiple {@link Discoverable} in zookeeper, in the same way as {@link #register(Discoverable)}.
+   * The nodes are created with pipelined requests, hence it takes about the same time as registering one.
+   * If any of them failed to register, all of them are unregistered and a runtime exception is thrown.
+   *
+   * @param discoverables Information of the service providers that could be discovered.
+   * @return An instance of {@link Cancellable} to unregister all of them
+   */
+  @Override
+  public Cancellable register(Iterable<? extends Discoverable> discoverables) {
     if (closed.get()) {
       throw new IllegalStateException("Cannot register discoverable through a closed ZKDiscoveryService");
     }
 
+    final List<DiscoveryCancellable> cancellables = new ArrayList<>();
+    List<ListenableFuture<String>> futures = new ArrayList<>();
+    for (Discoverable discoverable : discoverables) {
+      DiscoveryCancellable cancellable = new DiscoveryCancellable(discoverable);
+      cancellables.add(cancellable);
+      if (useSnapshot) {
+        acquireSnapshotWriter(discoverable.getName());
+      }
+      futures.add(register(discoverable, cancellable));
+    }
+
+    try {
+      Futures.getUnchecked(Futures.allAsList(futures));
+    } catch (RuntimeException e) {
+      for (DiscoveryCancellable cancellable : cancellables) {
+        cancellable.asyncCancel();
+      }
+      throw e;
+    }
+
+    if (cancellables.size() == 1) {
+      return cancellables.get(0);
+    }
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        List<ListenableFuture<?>> futures = new ArrayList<>();
+        for (DiscoveryCancellable cancellable : cancellables) {
+          futures.add(cancellable.asyncCancel());
+        }
+        Futures.getUnchecked(Futures.successfulAsList(futures));
+      }
+    };
+  }
+
+  /**
+   * Starts creating the zk ephemeral node for the given {@link Discoverable}.
+   *
+   * @return A future that completes with the node path when the registration is completed
+   */
+  private ListenableFuture<String> register(final Discoverable discoverable,
+                                            final DiscoveryCancellable cancellable) {
     final SettableFuture<String> future = SettableFuture.create();
-    final DiscoveryCancellable cancellable = new DiscoveryCancellable(discoverable);
 
     // Create the zk ephemeral node.
     Futures.addCallback(doRegister(discoverable), new FutureCallback<String>() {
@@ -180,10 +276,10 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
         cancellable.setPath(result);
         lock.lock();
         try {
-          if (!closed.get()) {
-            discoverables.put(discoverable, cancellable);
-          } else {
+          if (closed.get()) {
             cancellable.asyncCancel();
+          } else if (!cancellable.isCancelled()) {
+            discoverables.put(discoverable, cancellable);
           }
         } finally {
           lock.unlock();
@@ -203,8 +299,52 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
       }
     }, Threads.SAME_THREAD_EXECUTOR);
 
-    Futures.getUnchecked(future);
-    return cancellable;
+    return future;
+  }
+
+  /**
+   * Starts taking part in the snapshot writer election of the given service if not yet started. Each call must be
+   * paired with a call to {@link #releaseSnapshotWriter(String)} when the registration is cancelled or failed.
+   */
+  private void acquireSnapshotWriter(String service) {
+    lock.lock();
+    try {
+      if (closed.get()) {
+        return;
+      }
+      snapshotWriterRefs.add(service);
+      if (!snapshotWriters.containsKey(service)) {
+        ServiceSnapshotWriter writer = new ServiceSnapshotWriter(zkClient, electionZKClient, service);
+        snapshotWriters.put(service, writer);
+        writer.start();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Leaves the snapshot writer election of the given service when there is no more registration of the service
+   * through this instance.
+   */
+  private void releaseSnapshotWriter(String service) {
+    ServiceSnapshotWriter writer = null;
+    lock.lock();
+    try {
+      // On close, all writers are stopped by the close method
+      if (closed.get() || snapshotWriterRefs.remove(service, 1) == 0) {
+        return;
+      }
+      if (!snapshotWriterRefs.contains(service)) {
+        writer = snapshotWriters.remove(service);
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (writer != null) {
+      LOG.debug("No more registration of service {}. Leaving snapshot writer election.", service);
+      writer.stop();
+    }
   }
 
   @Override
@@ -215,6 +355,22 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
     return services.getUnchecked(service);
   }
 
+  /**
+   * Returns the number of calls made to {@link ServiceDiscovered.ChangeListener} of services discovered through
+   * this instance.
+   */
+  public long getChangeNotificationsDelivered() {
+    return changeNotificationStats.getDelivered();
+  }
+
+  /**
+   * Returns the number of discovery list changes that were coalesced into another call to
+   * {@link ServiceDiscovered.ChangeListener} of services discovered through this instance.
+   */
+  public long getChangeNotificationsSuppressed() {
+    return changeNotificationStats.getSuppressed();
+  }
+
   @Override
   public void close() {
     if (!closed.compareAndSet(false, true)) {
@@ -227,11 +383,17 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
     // Cancel the connection watcher
     watcherCancellable.cancel();
 
-    // Cancel all registered services
+    // Cancel all registered services and leave the snapshot writer elections
     List<ListenableFuture<?>> futures = new ArrayList<>();
     lock.lock();
     try {
-      for (Map.Entry<Discoverable, DiscoveryCancellable> entry : discoverables.entries()) {
+      for (ServiceSnapshotWriter writer : snapshotWriters.values()) {
+        futures.add(writer.stop());
+      }
+      snapshotWriters.clear();
+      snapshotWriterRefs.clear();
+      // Iterate over a copy, as the cancellation removes the entry from the map
+      for (Map.Entry<Discoverable, DiscoveryCancellable> entry : ImmutableList.copyOf(discoverables.entries())) {
         LOG.debug("Un-registering service {} - {}", entry.getKey().getName(), entry.getKey().getSocketAddress());
         futures.add(entry.getValue().asyncCancel());
       }
@@ -400,45 +562,170 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
     return new CacheLoader<String, ServiceDiscoveredCacheEntry>() {
       @Override
       public ServiceDiscoveredCacheEntry load(String service) throws Exception {
-        final DefaultServiceDiscovered serviceDiscovered = new DefaultServiceDiscovered(service);
-        final String pathBase = "/" + service;
+        DefaultServiceDiscovered serviceDiscovered = new DefaultServiceDiscovered(service, changeNotificationStats);
+        String pathBase = "/" + service;
+        Cancellable cancellable = useSnapshot ? watchSnapshot(serviceDiscovered, pathBase)
+                                              : watchNodes(serviceDiscovered, pathBase);
+        return new ServiceDiscoveredCacheEntry(serviceDiscovered, cancellable);
+      }
+    };
+  }
 
-        // Watch for children changes in /service
-        Cancellable cancellable = ZKOperations.watchChildren(zkClient, pathBase, new ZKOperations.ChildrenCallback() {
+  /**
+   * Watches the children of the service node and reads all of them on every change.
+   */
+  private Cancellable watchNodes(final DefaultServiceDiscovered serviceDiscovered, final String pathBase) {
+    // Watch for children changes in /service
+    return ZKOperations.watchChildren(zkClient, pathBase, new ZKOperations.ChildrenCallback() {
+      @Override
+      public void updated(NodeChildren nodeChildren) {
+        final ListenableFuture<Set<Discoverable>> fetchFuture =
+          fetchDiscoverables(zkClient, pathBase, nodeChildren.getChildren());
+        fetchFuture.addListener(new Runnable() {
           @Override
-          public void updated(NodeChildren nodeChildren) {
-            // Fetch data of all children nodes in parallel.
-            List<String> children = nodeChildren.getChildren();
-            List<OperationFuture<NodeData>> dataFutures = Lists.newArrayListWithCapacity(children.size());
-            for (String child : children) {
-              dataFutures.add(zkClient.getData(pathBase + "/" + child));
-            }
+          public void run() {
+            serviceDiscovered.setDiscoverables(Futures.getUnchecked(fetchFuture));
+          }
+        }, Threads.SAME_THREAD_EXECUTOR);
+      }
+    });
+  }
 
-            // Update the service map when all fetching are done.
-            final ListenableFuture<List<NodeData>> fetchFuture = Futures.successfulAsList(dataFutures);
-            fetchFuture.addListener(new Runnable() {
-              @Override
-              public void run() {
-                ImmutableSet.Builder<Discoverable> builder = ImmutableSet.builder();
-                for (NodeData nodeData : Futures.getUnchecked(fetchFuture)) {
-                  // For successful fetch, decode the content.
-                  if (nodeData != null) {
-                    Discoverable discoverable = DiscoverableAdapter.decode(nodeData.getData());
-                    if (discoverable != null) {
-                      builder.add(discoverable);
-                    }
-                  }
-                }
-                serviceDiscovered.setDiscoverables(builder.build());
-              }
-            }, Threads.SAME_THREAD_EXECUTOR);
+  /**
+   * Watches the children names and the snapshot data of the service node. The snapshot is used when it is built
+   * from the latest children version. Otherwise, the children are read directly if the snapshot doesn't catch up
+   * within a grace period, or immediately if there is no snapshot at all.
+   */
+  private Cancellable watchSnapshot(final DefaultServiceDiscovered serviceDiscovered, final String pathBase) {
+    final SnapshotState state = new SnapshotState();
+    // Watch the data first, so that the snapshot is seen before the children in the initial load,
+    // as zookeeper responds to requests of the same session in order.
+    final Cancellable dataCancellable = ZKOperations.watchData(zkClient, pathBase, new ZKOperations.DataCallback() {
+      @Override
+      public void updated(NodeData nodeData) {
+        synchronized (state) {
+          state.snapshot = nodeData == null ? null : DiscoverableAdapter.decodeSnapshot(nodeData.getData());
+          applySnapshot(serviceDiscovered, pathBase, state);
+        }
+      }
+    });
+
+    final Cancellable childrenCancellable = ZKOperations.watchChildren(
+      zkClient, pathBase, new ZKOperations.ChildrenCallback() {
+        @Override
+        public void updated(NodeChildren nodeChildren) {
+          synchronized (state) {
+            state.children = nodeChildren;
+            applySnapshot(serviceDiscovered, pathBase, state);
           }
-        });
-        return new ServiceDiscoveredCacheEntry(serviceDiscovered, cancellable);
+        }
+      });
+
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        childrenCancellable.cancel();
+        dataCancellable.cancel();
       }
     };
   }
 
+  /**
+   * Updates the {@link DefaultServiceDiscovered} from the snapshot if it is up to date, otherwise schedules
+   * to read the children directly. Must be called with the lock of the given state.
+   */
+  private void applySnapshot(final DefaultServiceDiscovered serviceDiscovered,
+                             final String pathBase, final SnapshotState state) {
+    if (state.children == null || closed.get()) {
+      return;
+    }
+    final int cversion = state.children.getStat().getCversion();
+    if (cversion <= state.appliedCversion) {
+      return;
+    }
+    ServiceSnapshot snapshot = state.snapshot;
+    if (snapshot != null && snapshot.getCversion() == cversion) {
+      state.appliedCversion = cversion;
+      state.writerLagging = false;
+      serviceDiscovered.setDiscoverables(ImmutableSet.copyOf(snapshot.getDiscoverables()));
+      return;
+    }
+
+    // The snapshot is stale, give the writer a chance to catch up before reading the children. There is no wait
+    // if there is no snapshot, or if the writer didn't catch up last time, which happens when there is no writer.
+    long delay = (snapshot == null || state.writerLagging) ? 0L : SNAPSHOT_GRACE_MILLIS;
+    final List<String> children = state.children.getChildren();
+    retryExecutor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (state) {
+          if (cversion <= state.appliedCversion || cversion != state.children.getStat().getCversion()) {
+            // Either the snapshot caught up or there are newer changes, which will be handled by a later call
+            return;
+          }
+          state.writerLagging = true;
+        }
+        LOG.debug("Snapshot of {} is stale for children version {}, reading children directly", pathBase, cversion);
+        final ListenableFuture<Set<Discoverable>> fetchFuture = fetchDiscoverables(zkClient, pathBase, children);
+        fetchFuture.addListener(new Runnable() {
+          @Override
+          public void run() {
+            synchronized (state) {
+              if (cversion > state.appliedCversion) {
+                state.appliedCversion = cversion;
+                serviceDiscovered.setDiscoverables(Futures.getUnchecked(fetchFuture));
+              }
+            }
+          }
+        }, Threads.SAME_THREAD_EXECUTOR);
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Reads the {@link Discoverable} of the given children nodes of a service node in parallel.
+   *
+   * @return A future that completes with all the {@link Discoverable} successfully read.
+   */
+  static ListenableFuture<Set<Discoverable>> fetchDiscoverables(ZKClient zkClient, String pathBase,
+                                                                List<String> children) {
+    // Fetch data of all children nodes in parallel.
+    List<OperationFuture<NodeData>> dataFutures = Lists.newArrayListWithCapacity(children.size());
+    for (String child : children) {
+      dataFutures.add(zkClient.getData(pathBase + "/" + child));
+    }
+
+    final ListenableFuture<List<NodeData>> fetchFuture = Futures.successfulAsList(dataFutures);
+    return Futures.transform(fetchFuture, new Function<List<NodeData>, Set<Discoverable>>() {
+      @Override
+      public Set<Discoverable> apply(List<NodeData> nodeDatas) {
+        ImmutableSet.Builder<Discoverable> builder = ImmutableSet.builder();
+        for (NodeData nodeData : nodeDatas) {
+          // For successful fetch, decode the content.
+          if (nodeData != null) {
+            Discoverable discoverable = DiscoverableAdapter.decode(nodeData.getData());
+            if (discoverable != null) {
+              builder.add(discoverable);
+            }
+          }
+        }
+        return builder.build();
+      }
+    });
+  }
+
+  /**
+   * The latest children and snapshot seen for a service discovered with snapshot.
+   */
+  private static final class SnapshotState {
+    private NodeChildren children;
+    private ServiceSnapshot snapshot;
+    // Children version that the discovery list was last updated for
+    private int appliedCversion = -1;
+    // True if the snapshot didn't catch up within the grace period, until an up to date snapshot is seen
+    private boolean writerLagging;
+  }
+
   /**
    * Inner class for cancelling (un-register) discovery service.
    */
@@ -476,10 +763,17 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
       LOG.debug("Service unregistered: {} {}", discoverable, path);
     }
 
+    boolean isCancelled() {
+      return cancelled.get();
+    }
+
     ListenableFuture<?> asyncCancel() {
       if (!cancelled.compareAndSet(false, true)) {
         return Futures.immediateFuture(null);
       }
+      if (useSnapshot) {
+        releaseSnapshotWriter(discoverable.getName());
+      }
 
       // Take a snapshot of the volatile path.
       String path = this.path;
@@ -536,6 +830,12 @@ public class ZKDiscoveryService implements DiscoveryService, DiscoveryServiceCli
       return serviceDiscovered.watchChanges(listener, executor);
     }
 
+    @Override
+    public Cancellable watchChanges(ChangeListener listener, Executor executor,
+                                    long quietPeriod, long maxDelay, TimeUnit unit) {
+      return serviceDiscovered.watchChanges(listener, executor, quietPeriod, maxDelay, unit);
+    }
+
     @Override
     public boolean contains(Discoverable discoverable) {
       return serviceDiscovered.contains(discoverable);
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.discovery;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import org.apache.twill.common.Threads;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for change notifications of {@link DefaultServiceDiscovered}.
+ */
+public class DefaultServiceDiscoveredTest {
+
+  @Test
+  public void testCoalesceOnSlowExecutor() {
+    DefaultServiceDiscovered serviceDiscovered = new DefaultServiceDiscovered("service");
+
+    // An executor that only runs tasks when asked to
+    final Queue<Runnable> tasks = new LinkedList<>();
+    Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        tasks.add(command);
+      }
+    };
+    final BlockingQueue<Integer> sizes = new LinkedBlockingQueue<>();
+    serviceDiscovered.watchChanges(new ServiceDiscovered.ChangeListener() {
+      @Override
+      public void onChange(ServiceDiscovered serviceDiscovered) {
+        sizes.add(Iterables.size(serviceDiscovered));
+      }
+    }, executor);
+    Assert.assertEquals(1, tasks.size());
+
+    // Changes while the first call is waiting are coalesced into it
+    for (int i = 1; i <= 5; i++) {
+      serviceDiscovered.setDiscoverables(createDiscoverables(i));
+    }
+    Assert.assertEquals(1, tasks.size());
+    tasks.poll().run();
+    Assert.assertEquals(Integer.valueOf(5), sizes.poll());
+    Assert.assertEquals(1L, serviceDiscovered.getStats().getDelivered());
+    Assert.assertEquals(5L, serviceDiscovered.getStats().getSuppressed());
+
+    // Changes after the call started trigger another call
+    serviceDiscovered.setDiscoverables(createDiscoverables(6));
+    Assert.assertEquals(1, tasks.size());
+    tasks.poll().run();
+    Assert.assertEquals(Integer.valueOf(6), sizes.poll());
+    Assert.assertEquals(2L, serviceDiscovered.getStats().getDelivered());
+  }
+
+  @Test
+  public void testQuietPeriod() throws InterruptedException {
+    DefaultServiceDiscovered serviceDiscovered = new DefaultServiceDiscovered("service");
+    final BlockingQueue<Integer> sizes = new LinkedBlockingQueue<>();
+    serviceDiscovered.watchChanges(new ServiceDiscovered.ChangeListener() {
+      @Override
+      public void onChange(ServiceDiscovered serviceDiscovered) {
+        sizes.add(Iterables.size(serviceDiscovered));
+      }
+    }, Threads.SAME_THREAD_EXECUTOR, 300, 10000, TimeUnit.MILLISECONDS);
+
+    // The first call is not delayed
+    Assert.assertEquals(Integer.valueOf(0), sizes.poll());
+
+    // A burst of changes results in one call with the latest discovery list
+    for (int i = 1; i <= 10; i++) {
+      serviceDiscovered.setDiscoverables(createDiscoverables(i));
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    Assert.assertEquals(Integer.valueOf(10), sizes.poll(5, TimeUnit.SECONDS));
+    Assert.assertNull(sizes.poll(500, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(2L, serviceDiscovered.getStats().getDelivered());
+    Assert.assertEquals(9L, serviceDiscovered.getStats().getSuppressed());
+  }
+
+  @Test
+  public void testMaxDelay() throws InterruptedException {
+    DefaultServiceDiscovered serviceDiscovered = new DefaultServiceDiscovered("service");
+    final BlockingQueue<Integer> sizes = new LinkedBlockingQueue<>();
+    serviceDiscovered.watchChanges(new ServiceDiscovered.ChangeListener() {
+      @Override
+      public void onChange(ServiceDiscovered serviceDiscovered) {
+        sizes.add(Iterables.size(serviceDiscovered));
+      }
+    }, Threads.SAME_THREAD_EXECUTOR, 200, 500, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(Integer.valueOf(0), sizes.poll());
+
+    // Keep changing more often than the quiet period. Calls should still be made after the max delay.
+    long endTime = System.currentTimeMillis() + 2000;
+    int count = 0;
+    while (System.currentTimeMillis() < endTime) {
+      serviceDiscovered.setDiscoverables(createDiscoverables(++count));
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+    Assert.assertTrue(sizes.size() >= 2);
+
+    // The last call should see the latest discovery list
+    Integer size = sizes.poll(5, TimeUnit.SECONDS);
+    while (size != null && size != count) {
+      size = sizes.poll(5, TimeUnit.SECONDS);
+    }
+    Assert.assertEquals(Integer.valueOf(count), size);
+  }
+
+  private Set<Discoverable> createDiscoverables(int count) {
+    ImmutableSet.Builder<Discoverable> builder = ImmutableSet.builder();
+    for (int i = 0; i < count; i++) {
+      builder.add(new Discoverable("service", new InetSocketAddress("localhost", 10000 + i)));
+    }
+    return builder.build();
+  }
+}
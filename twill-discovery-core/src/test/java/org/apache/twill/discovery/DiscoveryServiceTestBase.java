@@ -300,6 +300,33 @@ public abstract class DiscoveryServiceTestBase {
     }
   }
 
+  @Test
+  public void testBatchRegister() throws Exception {
+    Map.Entry<DiscoveryService, DiscoveryServiceClient> entry = create();
+    try {
+      DiscoveryService discoveryService = entry.getKey();
+      DiscoveryServiceClient discoveryServiceClient = entry.getValue();
+
+      Cancellable cancellable = discoveryService.register(ImmutableList.of(
+        new Discoverable("batch1", new InetSocketAddress("localhost", 10000)),
+        new Discoverable("batch1", new InetSocketAddress("localhost", 10001)),
+        new Discoverable("batch2", new InetSocketAddress("localhost", 10002))
+      ));
+
+      ServiceDiscovered batch1 = discoveryServiceClient.discover("batch1");
+      ServiceDiscovered batch2 = discoveryServiceClient.discover("batch2");
+      Assert.assertTrue(waitTillExpected(2, batch1));
+      Assert.assertTrue(waitTillExpected(1, batch2));
+
+      // Cancel should unregister all of them
+      cancellable.cancel();
+      Assert.assertTrue(waitTillExpected(0, batch1));
+      Assert.assertTrue(waitTillExpected(0, batch2));
+    } finally {
+      closeServices(entry);
+    }
+  }
+
   protected Cancellable register(DiscoveryService service, final String name, final String host, final int port) {
     return register(service, name, host, port, new byte[]{});
   }
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.discovery;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import org.apache.twill.common.Cancellable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link EndpointStrategies}.
+ */
+public class EndpointStrategiesTest {
+
+  @Test
+  public void testRoundRobin() {
+    InMemoryDiscoveryService discoveryService = new InMemoryDiscoveryService();
+    EndpointStrategy strategy = EndpointStrategies.roundRobin(discoveryService.discover("service"));
+    Assert.assertNull(strategy.pick());
+
+    List<Cancellable> cancellables = register(discoveryService, "service", 3);
+    Multiset<Discoverable> picked = HashMultiset.create();
+    for (int i = 0; i < 300; i++) {
+      picked.add(strategy.pick().getDiscoverable());
+    }
+    Assert.assertEquals(3, picked.elementSet().size());
+    for (Multiset.Entry<Discoverable> entry : picked.entrySet()) {
+      Assert.assertEquals(100, entry.getCount());
+    }
+
+    // Removed endpoint should not be picked
+    cancellables.get(0).cancel();
+    Discoverable removed = new Discoverable("service", new InetSocketAddress("localhost", 10000));
+    for (int i = 0; i < 100; i++) {
+      Assert.assertNotEquals(removed, strategy.pick().getDiscoverable());
+    }
+
+    // No more tracking of changes after cancel
+    strategy.cancel();
+    cancellables.get(1).cancel();
+    cancellables.get(2).cancel();
+    Assert.assertNotNull(strategy.pick());
+  }
+
+  @Test
+  public void testRandom() {
+    InMemoryDiscoveryService discoveryService = new InMemoryDiscoveryService();
+    ServiceDiscovered serviceDiscovered = discoveryService.discover("service");
+    EndpointStrategy strategy = EndpointStrategies.random(serviceDiscovered);
+    Assert.assertNull(strategy.pick());
+
+    register(discoveryService, "service", 5);
+    Multiset<Discoverable> picked = HashMultiset.create();
+    for (int i = 0; i < 1000; i++) {
+      Discoverable discoverable = strategy.pick().getDiscoverable();
+      Assert.assertTrue(serviceDiscovered.contains(discoverable));
+      picked.add(discoverable);
+    }
+    Assert.assertEquals(5, picked.elementSet().size());
+  }
+
+  @Test
+  public void testLeastOutstanding() {
+    InMemoryDiscoveryService discoveryService = new InMemoryDiscoveryService();
+    EndpointStrategy strategy = EndpointStrategies.leastOutstanding(discoveryService.discover("service"));
+    register(discoveryService, "service", 2);
+
+    // Put load on one endpoint, the other one should always be picked
+    Endpoint busy = strategy.pick();
+    busy.requestStarted();
+    for (int i = 0; i < 100; i++) {
+      Assert.assertNotSame(busy, strategy.pick());
+    }
+
+    // With equal load, the one with lower latency should be picked
+    Endpoint idle = strategy.pick();
+    idle.requestStarted();
+    busy.requestCompleted(10, TimeUnit.MILLISECONDS);
+    idle.requestCompleted(100, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(0, busy.getOutstandingRequests());
+    Assert.assertEquals(10, busy.getLatency(TimeUnit.MILLISECONDS));
+    for (int i = 0; i < 100; i++) {
+      Assert.assertSame(busy, strategy.pick());
+    }
+
+    // Feedback is retained across changes in the discovery list
+    register(discoveryService, "service", 3);
+    for (int i = 0; i < 100; i++) {
+      Endpoint endpoint = strategy.pick();
+      if (endpoint.getDiscoverable().equals(busy.getDiscoverable())) {
+        Assert.assertSame(busy, endpoint);
+      }
+    }
+  }
+
+  @Test
+  public void testConsistentHash() {
+    InMemoryDiscoveryService discoveryService = new InMemoryDiscoveryService();
+    KeyedEndpointStrategy strategy = EndpointStrategies.consistentHash(discoveryService.discover("service"));
+    Assert.assertNull(strategy.pick("key"));
+
+    register(discoveryService, "service", 4);
+    Map<String, Discoverable> assignments = Maps.newHashMap();
+    Multiset<Discoverable> counts = HashMultiset.create();
+    for (int i = 0; i < 1000; i++) {
+      String key = "key" + i;
+      Discoverable discoverable = strategy.pick(key).getDiscoverable();
+      assignments.put(key, discoverable);
+      counts.add(discoverable);
+      // The same key always maps to the same endpoint
+      Assert.assertEquals(discoverable, strategy.pick(key).getDiscoverable());
+    }
+    Assert.assertEquals(4, counts.elementSet().size());
+
+    // Another strategy maps keys the same way
+    KeyedEndpointStrategy other = EndpointStrategies.consistentHash(discoveryService.discover("service"));
+    for (Map.Entry<String, Discoverable> entry : assignments.entrySet()) {
+      Assert.assertEquals(entry.getValue(), other.pick(entry.getKey()).getDiscoverable());
+    }
+
+    // Adding an endpoint only remaps keys to the new endpoint
+    Discoverable added = new Discoverable("service", new InetSocketAddress("localhost", 20000));
+    discoveryService.register(added);
+    int moved = 0;
+    for (Map.Entry<String, Discoverable> entry : assignments.entrySet()) {
+      Discoverable discoverable = strategy.pick(entry.getKey()).getDiscoverable();
+      if (!discoverable.equals(entry.getValue())) {
+        Assert.assertEquals(added, discoverable);
+        moved++;
+      }
+    }
+    Assert.assertTrue(moved > 0 && moved < assignments.size() / 2);
+  }
+
+  private List<Cancellable> register(DiscoveryService discoveryService, String name, int count) {
+    List<Cancellable> cancellables = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      cancellables.add(discoveryService.register(new Discoverable(name, new InetSocketAddress("localhost",
+                                                                                              10000 + i))));
+    }
+    return cancellables;
+  }
+}
@@ -17,8 +17,11 @@
  */
 package org.apache.twill.discovery;
 
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import org.apache.twill.common.Cancellable;
+import org.apache.twill.internal.Constants;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
 import org.apache.twill.internal.zookeeper.KillZKSession;
 import org.apache.twill.zookeeper.RetryStrategies;
@@ -32,6 +35,9 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -148,6 +154,74 @@ public class ZKDiscoveryServiceTest extends DiscoveryServiceTestBase {
     }
   }
 
+  @Test (timeout = 60000)
+  public void testSnapshot() throws Exception {
+    try (
+      ZKDiscoveryService discoveryService = new ZKDiscoveryService(zkClient, Constants.DISCOVERY_PATH_PREFIX, true);
+      ZKDiscoveryService discoveryServiceClient = new ZKDiscoveryService(zkClient, Constants.DISCOVERY_PATH_PREFIX,
+                                                                         true)
+    ) {
+      List<Discoverable> discoverables = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        discoverables.add(new Discoverable("test_snapshot", new InetSocketAddress("localhost", 10000 + i)));
+      }
+      Cancellable cancellable = discoveryService.register(discoverables);
+
+      ServiceDiscovered serviceDiscovered = discoveryServiceClient.discover("test_snapshot");
+      Assert.assertTrue(waitTillExpected(5, serviceDiscovered));
+
+      // The snapshot should be written to the service node by the elected writer
+      String servicePath = Constants.DISCOVERY_PATH_PREFIX + "/test_snapshot";
+      ServiceSnapshot snapshot = null;
+      Stopwatch stopwatch = new Stopwatch().start();
+      while (stopwatch.elapsedTime(TimeUnit.SECONDS) < 10) {
+        snapshot = DiscoverableAdapter.decodeSnapshot(zkClient.getData(servicePath).get().getData());
+        if (snapshot != null && snapshot.getDiscoverables().size() == 5) {
+          break;
+        }
+        TimeUnit.MILLISECONDS.sleep(100);
+      }
+      Assert.assertNotNull(snapshot);
+      Assert.assertEquals(ImmutableSet.copyOf(discoverables), ImmutableSet.copyOf(snapshot.getDiscoverables()));
+
+      // Changes should be reflected through the snapshot
+      Cancellable cancellable2 = register(discoveryService, "test_snapshot", "localhost", 10005);
+      Assert.assertTrue(waitTillExpected(6, serviceDiscovered));
+      cancellable.cancel();
+      Assert.assertTrue(waitTillExpected(1, serviceDiscovered));
+      cancellable2.cancel();
+      Assert.assertTrue(waitTillExpected(0, serviceDiscovered));
+
+      // With all registrations cancelled, the writer should leave the election
+      String electionPath = Constants.DISCOVERY_PATH_PREFIX + ServiceSnapshotWriter.ELECTION_NODE_SUFFIX
+        + "/test_snapshot";
+      // The election node is outside of the discovery namespace
+      Assert.assertNull(zkClient.exists(Constants.DISCOVERY_PATH_PREFIX + "/"
+                                          + ServiceSnapshotWriter.ELECTION_NODE_SUFFIX).get());
+      stopwatch = new Stopwatch().start();
+      while (stopwatch.elapsedTime(TimeUnit.SECONDS) < 10
+        && !zkClient.getChildren(electionPath).get().getChildren().isEmpty()) {
+        TimeUnit.MILLISECONDS.sleep(100);
+      }
+      Assert.assertTrue(zkClient.getChildren(electionPath).get().getChildren().isEmpty());
+
+      // Service registered without snapshot writer should be discovered by reading the nodes
+      try (ZKDiscoveryService noSnapshotService = new ZKDiscoveryService(zkClient)) {
+        register(noSnapshotService, "test_no_snapshot", "localhost", 10000);
+        Assert.assertTrue(waitTillExpected(1, discoveryServiceClient.discover("test_no_snapshot")));
+
+        // The stale snapshot of a service without writer delays discovery by the grace period once.
+        // Later changes are read directly without waiting.
+        register(noSnapshotService, "test_snapshot", "localhost", 10000);
+        Assert.assertTrue(waitTillExpected(1, serviceDiscovered));
+        stopwatch = new Stopwatch().start();
+        register(noSnapshotService, "test_snapshot", "localhost", 10001);
+        Assert.assertTrue(waitTillExpected(2, serviceDiscovered));
+        Assert.assertTrue(stopwatch.elapsedMillis() < 1000);
+      }
+    }
+  }
+
   @Override
   protected Map.Entry<DiscoveryService, DiscoveryServiceClient> create() {
     DiscoveryService discoveryService = new ZKDiscoveryService(zkClient);
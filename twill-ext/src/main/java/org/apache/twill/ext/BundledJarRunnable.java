@@ -21,10 +21,14 @@ import com.google.common.base.Preconditions;
 import org.apache.twill.api.TwillContext;
 import org.apache.twill.api.TwillRunnable;
 import org.apache.twill.api.TwillRunnableSpecification;
+import org.apache.twill.internal.EnvKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Uses {@link BundledJarRunnable} to run a bundled jar.
@@ -32,6 +36,20 @@ import java.io.File;
 public class BundledJarRunnable implements TwillRunnable {
   private static final Logger LOG = LoggerFactory.getLogger(BundledJarRunnable.class);
 
+  /**
+   * Name of the environment variable for setting the directory for caching the extracted bundled jar. It should be
+   * a node-level directory that outlives the application, such that the extraction is shared across applications
+   * running on the same node. The environment variable can be set with
+   * {@link org.apache.twill.api.TwillPreparer#withEnv(java.util.Map)}.
+   */
+  public static final String EXTRACTION_CACHE_DIR_ENV = "TWILL_BUNDLED_JAR_CACHE_DIR";
+
+  /**
+   * Name of the directory under the container local directory for caching the extracted bundled jar, used if
+   * the {@link #EXTRACTION_CACHE_DIR_ENV} is not set.
+   */
+  private static final String EXTRACTION_CACHE_DIR = "bundled-jar-cache";
+
   /**
    * Runs the bundled jar.
    */
@@ -92,7 +110,8 @@ public class BundledJarRunnable implements TwillRunnable {
   }
 
   private BundledJarRunner loadJarRunner(File jarFile, BundledJarRunner.Arguments arguments) {
-    BundledJarRunner jarRunner = new BundledJarRunner(jarFile, arguments);
+    BundledJarRunner jarRunner = new BundledJarRunner(jarFile, arguments, getExtractionCacheDir(System.getenv()),
+                                                      BundledJarRunner.DEFAULT_EXTRACTION_CACHE_MAX_SIZE);
 
     try {
       jarRunner.load();
@@ -104,6 +123,27 @@ public class BundledJarRunnable implements TwillRunnable {
     return null;
   }
 
+  /**
+   * Returns the directory for caching extracted bundled jars, which is the directory set by the
+   * {@link #EXTRACTION_CACHE_DIR_ENV} environment variable. If it is not set, a directory under the first local
+   * directory of the container is used, which YARN removes when the application finishes.
+   *
+   * @param env the environment variables
+   * @return the cache directory or {@code null} if neither the environment variable nor the local directories is set
+   */
+  @Nullable
+  static File getExtractionCacheDir(Map<String, String> env) {
+    String cacheDir = env.get(EXTRACTION_CACHE_DIR_ENV);
+    if (cacheDir != null && !cacheDir.isEmpty()) {
+      return new File(cacheDir);
+    }
+    String localDirs = env.get(EnvKeys.YARN_CONTAINER_LOCAL_DIRS);
+    if (localDirs == null || localDirs.isEmpty()) {
+      return null;
+    }
+    return new File(localDirs.split(",")[0], EXTRACTION_CACHE_DIR);
+  }
+
   @Override
   public final void initialize(TwillContext context) {
     this.doInitialize(context);
@@ -125,7 +165,14 @@ public class BundledJarRunnable implements TwillRunnable {
 
   @Override
   public void destroy() {
-    // No-op by default. Left for children class to override.
+    // Releases the extracted lib folder of the bundled jar. Children classes overriding this method should call it.
+    if (jarRunner != null) {
+      try {
+        jarRunner.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to release extracted bundled jar", e);
+      }
+    }
   }
 
 }
@@ -19,27 +19,23 @@ package org.apache.twill.ext;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
-import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Arrays;
-import java.util.Enumeration;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import javax.annotation.Nullable;
 
 /**
  * Runs a bundled jar specified by jarPath.
@@ -50,16 +46,41 @@ import java.util.jar.JarFile;
  * /lib/*.jar (dependencies required by the user code)
  *
  * 2. Instantiates an instance of the class {#mainClassName} and calls main({#args}) on it.
+ *
+ * Only the lib folder is extracted from the bundled jar. If an extraction cache directory is given, the extraction
+ * is shared with later runs on the same node that use the same lib folder content.
 */
-public class BundledJarRunner {
+public class BundledJarRunner implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(BundledJarRunner.class);
 
+  /**
+   * Default maximum size in bytes of the extraction cache.
+   */
+  public static final long DEFAULT_EXTRACTION_CACHE_MAX_SIZE = 2L * 1024 * 1024 * 1024;
+
   private final File jarFile;
   private final Arguments arguments;
+  private final JarExtractionCache extractionCache;
+  private JarExtractionCache.Extraction extraction;
   private Method mainMethod;
 
   public BundledJarRunner(File jarFile, Arguments arguments) {
+    this(jarFile, arguments, null, DEFAULT_EXTRACTION_CACHE_MAX_SIZE);
+  }
+
+  /**
+   * Creates an instance that extracts the lib folder of the bundled jar to the given extraction cache directory.
+   *
+   * @param jarFile the bundled jar
+   * @param arguments arguments for running the bundled jar
+   * @param extractionCacheDir directory for caching extracted lib folders, or {@code null} to extract
+   *                           to a new temporary directory on every load
+   * @param extractionCacheMaxSize maximum size in bytes of the extraction cache, beyond which the least recently
+   *                               used extractions are removed
+   */
+  public BundledJarRunner(File jarFile, Arguments arguments,
+                          @Nullable File extractionCacheDir, long extractionCacheMaxSize) {
     Preconditions.checkNotNull(jarFile);
     Preconditions.checkState(jarFile.exists());
     Preconditions.checkState(jarFile.canRead());
@@ -68,6 +89,8 @@ public class BundledJarRunner {
 
     this.jarFile = jarFile;
     this.arguments = arguments;
+    this.extractionCache = extractionCacheDir == null
+      ? null : new JarExtractionCache(extractionCacheDir, extractionCacheMaxSize);
   }
 
   public void load() throws ClassNotFoundException, NoSuchMethodException,
@@ -85,16 +108,27 @@ public class BundledJarRunner {
     Preconditions.checkNotNull(libFolder);
 
     File inputJarFile = this.jarFile;
-    File outputJarDir = Files.createTempDir();
+    File libDir;
 
-    LOG.debug("Unpacking jar to " + outputJarDir.getAbsolutePath());
-    JarFile jarFile = new JarFile(inputJarFile);
-    unJar(jarFile, outputJarDir);
+    try (JarFile jarFile = new JarFile(inputJarFile)) {
+      if (extractionCache != null) {
+        if (extraction != null) {
+          extraction.close();
+        }
+        extraction = extractionCache.acquire(jarFile, libFolder);
+        libDir = extraction.getLibDir();
+      } else {
+        File outputJarDir = Files.createTempDir();
+        LOG.debug("Unpacking jar to " + outputJarDir.getAbsolutePath());
+        JarExtractionCache.extract(jarFile, libFolder, outputJarDir);
+        libDir = new File(outputJarDir, libFolder);
+      }
+    }
 
     LOG.debug("Loading jars into ClassLoader");
     List<URL> classPathUrls = new LinkedList<URL>();
     classPathUrls.add(inputJarFile.toURI().toURL());
-    classPathUrls.addAll(getJarURLs(new File(outputJarDir, libFolder)));
+    classPathUrls.addAll(getJarURLs(libDir));
     URL[] classPathUrlArray = classPathUrls.toArray(new URL[classPathUrls.size()]);
 
     for (URL url : classPathUrlArray) {
@@ -123,24 +157,15 @@ public class BundledJarRunner {
     }
   }
 
-  private void unJar(JarFile jarFile, File targetDirectory) throws IOException {
-    Enumeration<JarEntry> entries = jarFile.entries();
-    while (entries.hasMoreElements()) {
-      JarEntry entry = entries.nextElement();
-      File output = new File(targetDirectory, entry.getName());
-
-      if (entry.isDirectory()) {
-        output.mkdirs();
-      } else {
-        output.getParentFile().mkdirs();
-
-        try (
-          OutputStream os = new FileOutputStream(output);
-          InputStream is = jarFile.getInputStream(entry)
-        ) {
-          ByteStreams.copy(is, os);
-        }
-      }
+  /**
+   * Releases the extracted lib folder in the extraction cache, such that it can be evicted. It should only be
+   * called after the bundled jar finished running, as the jars in the lib folder are used by the class loader.
+   */
+  @Override
+  public void close() throws IOException {
+    if (extraction != null) {
+      extraction.close();
+      extraction = null;
     }
   }
 
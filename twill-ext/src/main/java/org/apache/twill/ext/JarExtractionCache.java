@@ -0,0 +1,456 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.ext;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.apache.twill.common.Threads;
+import org.apache.twill.internal.utils.Paths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of lib folders extracted from bundled jars, shared by all containers that use the same cache directory.
+ * <p/>
+ * Each extraction is stored in a directory named by the hash of the lib folder content, which is computed from the
+ * name, size and CRC of the entries as recorded in the jar file, without reading the entries. An extraction is done
+ * in a temporary directory, with a marker file written after all entries were extracted, and then published with
+ * an atomic rename. Only directories with the marker file are used. The marker file records the size of the
+ * extraction and its modification time is updated on each use, which is used for evicting the least recently used
+ * extractions when the cache is larger than the maximum size.
+ * <p/>
+ * An extraction in use is never evicted. Each user holds a shared {@link FileLock} on the lock file of the extraction
+ * until the {@link Extraction} is closed, and eviction only removes an extraction after acquiring an exclusive lock
+ * on it. As file locks are held on behalf of the whole JVM, users in the same JVM share one lock with a reference
+ * count.
+ */
+final class JarExtractionCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JarExtractionCache.class);
+
+  static final String MARKER_FILE = ".extracted";
+  static final String LOCK_FILE = ".lock";
+
+  private static final String TEMP_SUFFIX = ".tmp";
+  // Extractions used recently are not evicted, which covers the time between publishing an extraction and locking it
+  private static final long MIN_RETENTION_MS = TimeUnit.HOURS.toMillis(1);
+  // An extraction can be evicted between finding and locking it, in which case it is extracted again
+  private static final int MAX_ACQUIRE_ATTEMPTS = 3;
+  // Locks held by this JVM, keyed by the absolute path of the extraction directory. Also guards all file locking.
+  private static final Map<String, ExtractionLock> LOCKS = new HashMap<>();
+  // Temporary directories older than this are left by failed extractions and can be removed
+  private static final long TEMP_DIR_EXPIRY_MS = TimeUnit.DAYS.toMillis(1);
+  private static final int MAX_EXTRACT_THREADS = 8;
+
+  private final File cacheDir;
+  private final long maxSize;
+
+  JarExtractionCache(File cacheDir, long maxSize) {
+    this.cacheDir = cacheDir;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Acquires the extraction of the given lib folder of the given jar file. The lib folder is extracted to the cache
+   * if there is no such extraction yet. The extraction is not evicted until the returned {@link Extraction} is closed.
+   */
+  Extraction acquire(JarFile jarFile, String libFolder) throws IOException {
+    String key = computeKey(jarFile, libFolder);
+    File dir = new File(cacheDir, key);
+    File marker = new File(dir, MARKER_FILE);
+
+    for (int i = 0; i < MAX_ACQUIRE_ATTEMPTS; i++) {
+      boolean extracted = false;
+      if (marker.isFile()) {
+        LOG.debug("Reusing extracted {} of {} in {}", libFolder, jarFile.getName(), dir);
+      } else {
+        extractToCache(jarFile, libFolder, key);
+        extracted = true;
+      }
+
+      Extraction extraction = lock(dir, libFolder);
+      if (extraction == null) {
+        LOG.debug("Extraction {} was evicted before it was locked. Retrying.", dir);
+        continue;
+      }
+      touch(marker);
+      if (extracted) {
+        evict();
+      }
+      return extraction;
+    }
+    throw new IOException("Failed to acquire extraction of " + libFolder + " of " + jarFile.getName()
+                            + " in " + dir + " after " + MAX_ACQUIRE_ATTEMPTS + " attempts");
+  }
+
+  /**
+   * Extracts the given lib folder of the given jar file to a temporary directory and publishes it as the extraction
+   * of the given key.
+   */
+  private void extractToCache(JarFile jarFile, String libFolder, String key) throws IOException {
+    File dir = new File(cacheDir, key);
+    File marker = new File(dir, MARKER_FILE);
+    if (dir.exists()) {
+      // A directory without marker is left by an incomplete eviction, hence can be removed
+      LOG.debug("Removing incomplete extraction {}", dir);
+      Paths.deleteRecursively(dir.toPath());
+    }
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+      throw new IOException("Failed to create directory " + cacheDir);
+    }
+
+    Path tempDir = new File(cacheDir, key + "." + UUID.randomUUID() + TEMP_SUFFIX).toPath();
+    try {
+      long startTime = System.currentTimeMillis();
+      long size = extract(jarFile, libFolder, tempDir.toFile());
+      Files.write(tempDir.resolve(LOCK_FILE), new byte[0]);
+      Files.write(tempDir.resolve(MARKER_FILE), Long.toString(size).getBytes(StandardCharsets.UTF_8));
+      try {
+        Files.move(tempDir, dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        LOG.info("Extracted {} of {} with {} bytes to {} in {} ms", libFolder, jarFile.getName(), size, dir,
+                 System.currentTimeMillis() - startTime);
+      } catch (IOException e) {
+        // The same content could be extracted by another container concurrently
+        if (!marker.isFile()) {
+          throw e;
+        }
+        LOG.debug("Extraction of {} of {} was completed concurrently in {}", libFolder, jarFile.getName(), dir);
+      }
+    } finally {
+      if (Files.exists(tempDir)) {
+        Paths.deleteRecursively(tempDir);
+      }
+    }
+  }
+
+  /**
+   * Takes a shared lock on the given extraction directory.
+   *
+   * @return an {@link Extraction} that holds the lock, or {@code null} if the extraction no longer exists
+   */
+  @Nullable
+  private static Extraction lock(File dir, String libFolder) throws IOException {
+    String path = dir.getAbsolutePath();
+    synchronized (LOCKS) {
+      ExtractionLock lock = LOCKS.get(path);
+      if (lock == null) {
+        FileChannel channel;
+        try {
+          channel = FileChannel.open(new File(dir, LOCK_FILE).toPath(), StandardOpenOption.READ,
+                                     StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        } catch (NoSuchFileException e) {
+          // The extraction directory was moved away by eviction
+          return null;
+        }
+        try {
+          channel.lock(0L, Long.MAX_VALUE, true);
+          // The extraction could be evicted while waiting for the lock
+          if (!new File(dir, MARKER_FILE).isFile()) {
+            channel.close();
+            return null;
+          }
+        } catch (IOException | RuntimeException e) {
+          channel.close();
+          throw e;
+        }
+        lock = new ExtractionLock(path, channel);
+        LOCKS.put(path, lock);
+      }
+      lock.references++;
+      return new Extraction(lock, new File(dir, libFolder));
+    }
+  }
+
+  /**
+   * Extracts the files under the given lib folder of the given jar file to the target directory,
+   * with multiple threads.
+   *
+   * @return total size of the files extracted
+   */
+  static long extract(final JarFile jarFile, String libFolder, File targetDir) throws IOException {
+    String prefix = libFolder.endsWith("/") ? libFolder : libFolder + "/";
+    final String targetPath = targetDir.getCanonicalPath() + File.separator;
+
+    List<JarEntry> entries = new ArrayList<>();
+    Enumeration<JarEntry> jarEntries = jarFile.entries();
+    while (jarEntries.hasMoreElements()) {
+      JarEntry entry = jarEntries.nextElement();
+      if (!entry.isDirectory() && entry.getName().startsWith(prefix)) {
+        entries.add(entry);
+      }
+    }
+    // Always create the lib directory, even if it is empty
+    Files.createDirectories(new File(targetDir, libFolder).toPath());
+    if (entries.isEmpty()) {
+      return 0L;
+    }
+
+    int threads = Math.min(entries.size(), Math.min(MAX_EXTRACT_THREADS, Runtime.getRuntime().availableProcessors()));
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+                                                            Threads.createDaemonThreadFactory("jar-extract-%d"));
+    try {
+      List<Future<Long>> futures = new ArrayList<>();
+      for (final JarEntry entry : entries) {
+        futures.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            File output = new File(targetPath, entry.getName());
+            // Guard against entries with ".." that would be written outside of the target directory
+            if (!output.getCanonicalPath().startsWith(targetPath)) {
+              throw new IOException("Jar entry " + entry.getName() + " is outside of the target directory");
+            }
+            Files.createDirectories(output.getParentFile().toPath());
+            try (InputStream is = jarFile.getInputStream(entry)) {
+              return Files.copy(is, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+          }
+        }));
+      }
+
+      long size = 0L;
+      for (Future<Long> future : futures) {
+        size += future.get();
+      }
+      return size;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException ioe = new InterruptedIOException("Interrupted while extracting " + jarFile.getName());
+      ioe.initCause(e);
+      throw ioe;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Failed to extract " + jarFile.getName(), cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Computes the cache key of the given lib folder in the given jar file.
+   */
+  private String computeKey(JarFile jarFile, String libFolder) throws IOException {
+    String prefix = libFolder.endsWith("/") ? libFolder : libFolder + "/";
+    Hasher hasher = Hashing.md5().newHasher();
+    hasher.putString(libFolder, StandardCharsets.UTF_8);
+
+    Enumeration<JarEntry> entries = jarFile.entries();
+    while (entries.hasMoreElements()) {
+      JarEntry entry = entries.nextElement();
+      if (entry.isDirectory() || !entry.getName().startsWith(prefix)) {
+        continue;
+      }
+      hasher.putString(entry.getName(), StandardCharsets.UTF_8);
+      hasher.putLong(entry.getSize());
+      if (entry.getCrc() >= 0) {
+        hasher.putLong(entry.getCrc());
+      } else {
+        // The CRC is not recorded in the jar, hence hash the content instead
+        try (InputStream is = jarFile.getInputStream(entry)) {
+          hasher.putBytes(ByteStreams.toByteArray(is));
+        }
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Evicts the least recently used extractions until the total size is not larger than the maximum size.
+   * Extractions in use are skipped.
+   */
+  private void evict() {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    long totalSize = 0L;
+    List<File> markers = new ArrayList<>();
+    for (File file : files) {
+      try {
+        if (file.getName().endsWith(TEMP_SUFFIX)) {
+          if (now - file.lastModified() > TEMP_DIR_EXPIRY_MS) {
+            Paths.deleteRecursively(file.toPath());
+          }
+          continue;
+        }
+        File marker = new File(file, MARKER_FILE);
+        if (!marker.isFile()) {
+          continue;
+        }
+        totalSize += readSize(marker);
+        markers.add(marker);
+      } catch (IOException e) {
+        LOG.debug("Failed to inspect extraction cache entry {}", file, e);
+      }
+    }
+
+    // Sort by the last use time, with the least recently used first
+    Collections.sort(markers, new Comparator<File>() {
+      @Override
+      public int compare(File o1, File o2) {
+        return Long.compare(o1.lastModified(), o2.lastModified());
+      }
+    });
+
+    for (File marker : markers) {
+      if (totalSize <= maxSize || now - marker.lastModified() < MIN_RETENTION_MS) {
+        break;
+      }
+      File dir = marker.getParentFile();
+      try {
+        long size = readSize(marker);
+        // Rename before delete, so that other containers never see a partially deleted extraction
+        Path tempDir = new File(cacheDir, dir.getName() + "." + UUID.randomUUID() + TEMP_SUFFIX).toPath();
+        if (!moveIfUnused(dir, tempDir)) {
+          LOG.debug("Extraction {} is in use and cannot be evicted", dir);
+          continue;
+        }
+        Paths.deleteRecursively(tempDir);
+        totalSize -= size;
+        LOG.debug("Evicted extraction {} with {} bytes", dir, size);
+      } catch (IOException e) {
+        LOG.warn("Failed to evict extraction {}", dir, e);
+      }
+    }
+  }
+
+  /**
+   * Moves the given extraction directory to the given path if the extraction is not in use.
+   *
+   * @return {@code true} if the directory was moved
+   */
+  private static boolean moveIfUnused(File dir, Path target) throws IOException {
+    synchronized (LOCKS) {
+      if (LOCKS.containsKey(dir.getAbsolutePath())) {
+        return false;
+      }
+      try (FileChannel channel = FileChannel.open(new File(dir, LOCK_FILE).toPath(), StandardOpenOption.READ,
+                                                  StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+        if (channel.tryLock(0L, Long.MAX_VALUE, false) == null) {
+          return false;
+        }
+        // Users that are waiting for the lock will find the extraction gone after the lock is released
+        Files.move(dir.toPath(), target, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+      } catch (OverlappingFileLockException e) {
+        return false;
+      }
+    }
+  }
+
+  private static long readSize(File marker) throws IOException {
+    try {
+      return Long.parseLong(new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).trim());
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid extraction marker " + marker, e);
+    }
+  }
+
+  private static void touch(File marker) {
+    if (!marker.setLastModified(System.currentTimeMillis())) {
+      LOG.debug("Failed to update last modified time of {}", marker);
+    }
+  }
+
+  /**
+   * A lock held by this JVM on an extraction, shared by all {@link Extraction} of the same directory.
+   */
+  private static final class ExtractionLock {
+    private final String path;
+    private final FileChannel channel;
+    private int references;
+
+    ExtractionLock(String path, FileChannel channel) {
+      this.path = path;
+      this.channel = channel;
+    }
+  }
+
+  /**
+   * An acquired extraction, which is protected from eviction until it is closed.
+   */
+  static final class Extraction implements Closeable {
+    private final ExtractionLock lock;
+    private final File libDir;
+    private boolean closed;
+
+    private Extraction(ExtractionLock lock, File libDir) {
+      this.lock = lock;
+      this.libDir = libDir;
+    }
+
+    /**
+     * Returns the directory of the extracted lib folder.
+     */
+    File getLibDir() {
+      return libDir;
+    }
+
+    @Override
+    public void close() throws IOException {
+      synchronized (LOCKS) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        if (--lock.references == 0) {
+          LOCKS.remove(lock.path);
+          // Closing the channel releases the file lock
+          lock.channel.close();
+        }
+      }
+    }
+  }
+}
@@ -19,10 +19,15 @@ package org.apache.twill.ext;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import org.apache.twill.internal.EnvKeys;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Tests for {@link BundledJarRunnable}.
@@ -61,4 +66,20 @@ public class BundledJarRunnableTest {
     Assert.assertArrayEquals(argsArray, array);
     Assert.assertEquals(args, BundledJarRunner.Arguments.fromArray(array));
   }
+
+  @Test
+  public void testExtractionCacheDir() {
+    // Use the configured directory if it is set
+    Map<String, String> env = new HashMap<>();
+    env.put(EnvKeys.YARN_CONTAINER_LOCAL_DIRS, "/local1,/local2");
+    env.put(BundledJarRunnable.EXTRACTION_CACHE_DIR_ENV, "/node/cache");
+    Assert.assertEquals(new File("/node/cache"), BundledJarRunnable.getExtractionCacheDir(env));
+
+    // Fallback to the first container local directory
+    env.remove(BundledJarRunnable.EXTRACTION_CACHE_DIR_ENV);
+    Assert.assertEquals(new File("/local1", "bundled-jar-cache"), BundledJarRunnable.getExtractionCacheDir(env));
+
+    // No caching if neither is set
+    Assert.assertNull(BundledJarRunnable.getExtractionCacheDir(Collections.<String, String>emptyMap()));
+  }
 }
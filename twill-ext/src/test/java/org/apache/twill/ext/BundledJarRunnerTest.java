@@ -23,10 +23,12 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 
@@ -73,6 +75,94 @@ public class BundledJarRunnerTest {
     Assert.assertEquals(jarOutput, output);
   }
 
+  @Test
+  public void testExtractionCache() throws Throwable {
+    File cacheDir = tempDir.newFolder();
+    String className = "org.apache.twill.ext.BundledJarRunnerTest$Simple";
+
+    // Only the lib folder should be extracted
+    File jarFile = tempDir.newFile("cache1.jar");
+    createJarFileFromClass(className, jarFile, "lib1");
+    runJarFile(jarFile, className, cacheDir, "cache1");
+    Assert.assertEquals("cache1", jarOutput);
+
+    File[] extractions = cacheDir.listFiles();
+    Assert.assertNotNull(extractions);
+    Assert.assertEquals(1, extractions.length);
+    File extraction = extractions[0];
+    Assert.assertTrue(new File(extraction, JarExtractionCache.MARKER_FILE).isFile());
+    Assert.assertTrue(new File(extraction, "lib/lib1.jar").isFile());
+    Assert.assertFalse(new File(extraction, "data.txt").exists());
+
+    // A different jar with the same lib folder content should reuse the extraction
+    File otherJarFile = tempDir.newFile("cache2.jar");
+    createJarFileFromClass(className, otherJarFile, "lib1");
+    runJarFile(otherJarFile, className, cacheDir, "cache2");
+    Assert.assertEquals("cache2", jarOutput);
+    Assert.assertArrayEquals(extractions, cacheDir.listFiles());
+
+    // Make the first extraction looks old, so that it gets evicted when a new extraction exceeds the cache size
+    Assert.assertTrue(new File(extraction, JarExtractionCache.MARKER_FILE)
+                        .setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+    File newJarFile = tempDir.newFile("cache3.jar");
+    createJarFileFromClass(className, newJarFile, "lib2");
+    runJarFile(newJarFile, className, cacheDir, "cache3");
+    Assert.assertEquals("cache3", jarOutput);
+
+    extractions = cacheDir.listFiles();
+    Assert.assertNotNull(extractions);
+    Assert.assertEquals(1, extractions.length);
+    Assert.assertNotEquals(extraction, extractions[0]);
+    Assert.assertTrue(new File(extractions[0], "lib/lib2.jar").isFile());
+  }
+
+  @Test
+  public void testExtractionInUse() throws Throwable {
+    File cacheDir = tempDir.newFolder();
+    String className = "org.apache.twill.ext.BundledJarRunnerTest$Simple";
+
+    // Keeps the first extraction in use, even though it looks old
+    File jarFile = tempDir.newFile("inuse1.jar");
+    createJarFileFromClass(className, jarFile, "lib1");
+    BundledJarRunner inUseRunner = createJarRunner(jarFile, className, cacheDir, "inuse1");
+    inUseRunner.load();
+    File[] extractions = cacheDir.listFiles();
+    Assert.assertNotNull(extractions);
+    Assert.assertEquals(1, extractions.length);
+    File extraction = extractions[0];
+    Assert.assertTrue(new File(extraction, JarExtractionCache.MARKER_FILE)
+                        .setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+
+    // A new extraction exceeding the cache size doesn't evict the extraction in use
+    File newJarFile = tempDir.newFile("inuse2.jar");
+    createJarFileFromClass(className, newJarFile, "lib2");
+    runJarFile(newJarFile, className, cacheDir, "inuse2");
+    Assert.assertTrue(new File(extraction, "lib/lib1.jar").isFile());
+    inUseRunner.run();
+    Assert.assertEquals("inuse1", jarOutput);
+
+    // After the extraction is released, it can be evicted
+    inUseRunner.close();
+    File otherJarFile = tempDir.newFile("inuse3.jar");
+    createJarFileFromClass(className, otherJarFile, "lib3");
+    runJarFile(otherJarFile, className, cacheDir, "inuse3");
+    Assert.assertFalse(extraction.exists());
+  }
+
+  private void runJarFile(File jarFile, String className, File cacheDir, String output) throws Throwable {
+    try (BundledJarRunner jarRunner = createJarRunner(jarFile, className, cacheDir, output)) {
+      jarRunner.load();
+      jarRunner.run();
+    }
+  }
+
+  private BundledJarRunner createJarRunner(File jarFile, String className, File cacheDir, String output) {
+    BundledJarRunner.Arguments args = new BundledJarRunner.Arguments(
+      jarFile.getName(), "lib", className, new String[] { output });
+    // Use a max size of 0 to evict every extraction that is not in use
+    return new BundledJarRunner(jarFile, args, cacheDir, 0L);
+  }
+
   private void runJarFile(String jarFileName, String className, String[] mainArgs) throws Throwable {
     File jarfile = tempDir.newFile(jarFileName);
     createJarFileFromClass(className, jarfile);
@@ -96,6 +186,37 @@ public class BundledJarRunnerTest {
     }
   }
 
+  /**
+   * Creates a bundled jar with the given class, a lib folder with a jar of the given name and a data file.
+   */
+  private void createJarFileFromClass(String className, File jarfile, String libJarName) throws IOException {
+    String classAsPath = className.replace(".", "/") + ".class";
+    ByteArrayOutputStream libJar = new ByteArrayOutputStream();
+    try (JarOutputStream jarout = new JarOutputStream(libJar)) {
+      // Use a fixed time so that lib jars of the same name have the same content
+      ZipEntry entry = new ZipEntry(libJarName + ".txt");
+      entry.setTime(0L);
+      jarout.putNextEntry(entry);
+      jarout.write(libJarName.getBytes("UTF-8"));
+      jarout.closeEntry();
+    }
+
+    try (
+      JarOutputStream jarout = new JarOutputStream(new FileOutputStream(jarfile.getAbsolutePath()))
+    ) {
+      jarout.putNextEntry(new ZipEntry(classAsPath));
+      jarout.write(getClassBytes(classAsPath));
+      jarout.closeEntry();
+      jarout.putNextEntry(new ZipEntry("data.txt"));
+      jarout.write(jarfile.getName().getBytes("UTF-8"));
+      jarout.closeEntry();
+      jarout.putNextEntry(new ZipEntry("lib/"));
+      jarout.putNextEntry(new ZipEntry("lib/" + libJarName + ".jar"));
+      jarout.write(libJar.toByteArray());
+      jarout.closeEntry();
+    }
+  }
+
   private byte[] getClassBytes(String classAsPath) throws IOException {
     InputStream input = getClass().getClassLoader().getResourceAsStream(classAsPath);
     return ByteStreams.toByteArray(input);
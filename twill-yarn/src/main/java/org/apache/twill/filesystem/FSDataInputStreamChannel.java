@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.filesystem;
+
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FSDataInputStream;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A {@link LocationReadChannel} backed by a {@link FSDataInputStream}. Sequential reads go directly to the
+ * given {@link ByteBuffer} if the underlying stream is {@link ByteBufferReadable} (e.g. HDFS), otherwise the bytes
+ * are read through a byte array. Positional reads use the {@link org.apache.hadoop.fs.PositionedReadable}
+ * interface of the stream, which doesn't affect the position of the channel.
+ */
+final class FSDataInputStreamChannel implements LocationReadChannel {
+
+  private static final int TEMP_BUFFER_SIZE = 64 * 1024;
+
+  private final FSDataInputStream input;
+  private final long size;
+  private final boolean byteBufferReadable;
+  private byte[] tempBuffer;
+  private boolean closed;
+
+  /**
+   * Creates an instance.
+   *
+   * @param input the stream to read from
+   * @param size size of the content, which is the size of the file when the stream was opened
+   */
+  FSDataInputStreamChannel(FSDataInputStream input, long size) {
+    this.input = input;
+    this.size = size;
+    this.byteBufferReadable = input.getWrappedStream() instanceof ByteBufferReadable;
+  }
+
+  @Override
+  public synchronized int read(ByteBuffer dst) throws IOException {
+    ensureOpen();
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+    if (byteBufferReadable) {
+      return input.read(dst);
+    }
+    if (dst.hasArray()) {
+      int bytesRead = input.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+      if (bytesRead > 0) {
+        ((Buffer) dst).position(dst.position() + bytesRead);
+      }
+      return bytesRead;
+    }
+    byte[] buffer = getTempBuffer();
+    int bytesRead = input.read(buffer, 0, Math.min(buffer.length, dst.remaining()));
+    if (bytesRead > 0) {
+      dst.put(buffer, 0, bytesRead);
+    }
+    return bytesRead;
+  }
+
+  @Override
+  public synchronized int read(ByteBuffer dst, long position) throws IOException {
+    ensureOpen();
+    if (position < 0) {
+      throw new IllegalArgumentException("Position must be non-negative: " + position);
+    }
+    if (position >= size) {
+      return -1;
+    }
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+    if (dst.hasArray()) {
+      int bytesRead = input.read(position, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+      if (bytesRead > 0) {
+        ((Buffer) dst).position(dst.position() + bytesRead);
+      }
+      return bytesRead;
+    }
+    byte[] buffer = getTempBuffer();
+    int bytesRead = input.read(position, buffer, 0, Math.min(buffer.length, dst.remaining()));
+    if (bytesRead > 0) {
+      dst.put(buffer, 0, bytesRead);
+    }
+    return bytesRead;
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public synchronized long position() throws IOException {
+    ensureOpen();
+    return input.getPos();
+  }
+
+  @Override
+  public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+    ensureOpen();
+    if (newPosition < 0) {
+      throw new IllegalArgumentException("Position must be non-negative: " + newPosition);
+    }
+    // Seeking beyond the end is not supported by FSDataInputStream, hence limit it to the size.
+    input.seek(Math.min(newPosition, size));
+    return this;
+  }
+
+  @Override
+  public synchronized long size() throws IOException {
+    ensureOpen();
+    return size;
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) throws IOException {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return !closed;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      input.close();
+    }
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (closed) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  /**
+   * Returns a byte array for reading bytes to a {@link ByteBuffer} that is not backed by an array.
+   */
+  private byte[] getTempBuffer() {
+    if (tempBuffer == null) {
+      tempBuffer = new byte[TEMP_BUFFER_SIZE];
+    }
+    return tempBuffer;
+  }
+}
@@ -21,6 +21,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 
 import org.apache.hadoop.fs.CreateFlag;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.FileContext;
 import org.apache.hadoop.fs.FileStatus;
@@ -37,6 +38,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
@@ -111,8 +114,7 @@ final class FileContextLocation implements Location {
 
   @Override
   public String getPermissions() throws IOException {
-    FsPermission permission = fc.getFileStatus(path).getPermission();
-    return permission.getUserAction().SYMBOL + permission.getGroupAction().SYMBOL + permission.getOtherAction().SYMBOL;
+    return toPermissionString(fc.getFileStatus(path).getPermission());
   }
 
   @Override
@@ -141,6 +143,40 @@ final class FileContextLocation implements Location {
     return os;
   }
 
+  @Override
+  public LocationReadChannel getReadChannel() throws IOException {
+    FSDataInputStream input = fc.open(path);
+    try {
+      return new FSDataInputStreamChannel(input, fc.getFileStatus(path).getLen());
+    } catch (IOException e) {
+      input.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public WritableByteChannel getWriteChannel() throws IOException {
+    return Channels.newChannel(getOutputStream());
+  }
+
+  @Override
+  public long transferTo(Location target) throws IOException {
+    if (!(target instanceof FileContextLocation)) {
+      // Let the target decide how to copy, e.g. a local location can read directly into a FileChannel
+      return target.transferFrom(this);
+    }
+    return copyTo((FileContextLocation) target);
+  }
+
+  @Override
+  public long transferFrom(Location source) throws IOException {
+    if (!(source instanceof FileContextLocation)) {
+      // Let the source decide how to copy, e.g. a local location can write from memory mapped file
+      return source.transferTo(this);
+    }
+    return ((FileContextLocation) source).copyTo(this);
+  }
+
   @Override
   public Location append(String child) throws IOException {
     if (child.startsWith("/")) {
@@ -306,6 +342,31 @@ final class FileContextLocation implements Location {
 
   }
 
+  @Override
+  public LocationStatusStream listStatus() throws IOException {
+    final RemoteIterator<FileStatus> statuses = fc.listStatus(path);
+    return new AbstractLocationStatusStream() {
+      @Override
+      protected LocationStatus computeNext() throws IOException {
+        while (statuses.hasNext()) {
+          FileStatus status = statuses.next();
+          // Listing a file returns the status of the file itself
+          if (!Objects.equals(path, status.getPath())) {
+            return new LocationStatus(new FileContextLocation(locationFactory, fc, status.getPath()),
+                                      status.getLen(), status.getModificationTime(), status.isDirectory(),
+                                      toPermissionString(status.getPermission()));
+          }
+        }
+        return null;
+      }
+
+      @Override
+      public void close() {
+        // The RemoteIterator fetches entries in batches and has no resources to release
+      }
+    };
+  }
+
   @Override
   public LocationFactory getLocationFactory() {
     return locationFactory;
@@ -333,6 +394,27 @@ final class FileContextLocation implements Location {
     return toURI().toString();
   }
 
+  /**
+   * Copies the content of this location to the given target location through channels.
+   */
+  private long copyTo(FileContextLocation target) throws IOException {
+    if (equals(target)) {
+      // Copying to itself. Overwriting the target would lose the content.
+      return length();
+    }
+    try (LocationReadChannel source = getReadChannel();
+         WritableByteChannel channel = target.getWriteChannel()) {
+      return Locations.copy(source, channel);
+    }
+  }
+
+  /**
+   * Converts the given {@link FsPermission} to a nine character permission string.
+   */
+  private String toPermissionString(FsPermission permission) {
+    return permission.getUserAction().SYMBOL + permission.getGroupAction().SYMBOL + permission.getOtherAction().SYMBOL;
+  }
+
   /**
    * Parses the given permission to {@link FsPermission}.
    *
@@ -36,6 +36,7 @@ import org.apache.twill.filesystem.FileContextLocationFactory;
 import org.apache.twill.filesystem.LocalLocationFactory;
 import org.apache.twill.filesystem.Location;
 import org.apache.twill.internal.logging.KafkaAppender;
+import org.apache.twill.internal.metrics.DefaultMetricsRegistry;
 import org.apache.twill.zookeeper.RetryStrategies;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKClientService;
@@ -70,6 +71,8 @@ public abstract class ServiceMain {
     }
   }
 
+  private final DefaultMetricsRegistry zkClientMetrics = new DefaultMetricsRegistry();
+
   protected final void doMain(final Service mainService,
                               Service...prerequisites) throws Exception {
     // Only configure the log collection if it is enabled.
@@ -178,7 +181,8 @@ public abstract class ServiceMain {
   }
 
   /**
-   * Creates a {@link ZKClientService}.
+   * Creates a {@link ZKClientService}. Metrics of the ZooKeeper operations are recorded to the registry returned by
+   * {@link #getZKClientMetrics()}.
    */
   protected final ZKClientService createZKClient() {
     TwillRuntimeSpecification twillRuntimeSpec = getTwillRuntimeSpecification();
@@ -187,14 +191,25 @@ public abstract class ServiceMain {
       ZKClients.namespace(
         ZKClients.reWatchOnExpire(
           ZKClients.retryOnFailure(
-            ZKClientService.Builder.of(twillRuntimeSpec.getZkConnectStr()).build(),
-            RetryStrategies.fixDelay(1, TimeUnit.SECONDS)
+            ZKClients.instrumented(
+              ZKClientService.Builder.of(twillRuntimeSpec.getZkConnectStr()).build(),
+              zkClientMetrics
+            ),
+            RetryStrategies.decorrelatedJitter(100, 2000, TimeUnit.MILLISECONDS)
           )
         ), "/" + twillRuntimeSpec.getTwillAppName()
       )
     );
   }
 
+  /**
+   * Returns the {@link DefaultMetricsRegistry} that metrics of the {@link ZKClientService} created by
+   * {@link #createZKClient()} are recorded to.
+   */
+  protected final DefaultMetricsRegistry getZKClientMetrics() {
+    return zkClientMetrics;
+  }
+
   private void configureLogger() throws MalformedURLException, JoranException {
     // Check if SLF4J is bound to logback in the current environment
     ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
@@ -25,6 +25,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.twill.api.RunId;
+import org.apache.twill.discovery.ZKDiscoveryService;
 import org.apache.twill.internal.Constants;
 import org.apache.twill.internal.ServiceMain;
 import org.apache.twill.internal.TwillRuntimeSpecification;
@@ -87,7 +88,10 @@ public final class ApplicationMasterMain extends ServiceMain {
       new ApplicationMasterService(runId, zkClientService, twillRuntimeSpec, amClient, conf,
                                    createAppLocation(conf, twillRuntimeSpec.getFsUser(),
                                                      twillRuntimeSpec.getTwillAppDir()));
-    TrackerService trackerService = new TrackerService(service);
+    // Discovery service for serving discoverables through the tracker service without going to ZK for every client
+    ZKDiscoveryService discoveryService = new ZKDiscoveryService(zkClientService);
+    TrackerService trackerService = new TrackerService(service, service::getMetrics,
+                                                       getZKClientMetrics()::snapshot, discoveryService);
 
     List<Service> prerequisites = Lists.newArrayList(
       new YarnAMClientService(amClient, trackerService),
@@ -101,11 +105,15 @@ public final class ApplicationMasterMain extends ServiceMain {
       LOG.info("Log collection through kafka disabled");
     }
 
-    new ApplicationMasterMain(twillRuntimeSpec)
-      .doMain(
-        service,
-        prerequisites.toArray(new Service[prerequisites.size()])
-      );
+    try {
+      new ApplicationMasterMain(twillRuntimeSpec)
+        .doMain(
+          service,
+          prerequisites.toArray(new Service[prerequisites.size()])
+        );
+    } finally {
+      discoveryService.close();
+    }
   }
 
   /**
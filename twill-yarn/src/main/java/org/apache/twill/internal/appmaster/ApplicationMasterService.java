@@ -48,6 +48,7 @@ import org.apache.twill.api.Command;
 import org.apache.twill.api.EventHandler;
 import org.apache.twill.api.EventHandlerContext;
 import org.apache.twill.api.EventHandlerSpecification;
+import org.apache.twill.api.LaunchPhase;
 import org.apache.twill.api.LocalFile;
 import org.apache.twill.api.ResourceReport;
 import org.apache.twill.api.ResourceSpecification;
@@ -62,11 +63,13 @@ import org.apache.twill.internal.ContainerInfo;
 import org.apache.twill.internal.DefaultTwillRunResources;
 import org.apache.twill.internal.EnvKeys;
 import org.apache.twill.internal.JvmOptions;
+import org.apache.twill.internal.LaunchTimeline;
 import org.apache.twill.internal.ProcessLauncher;
 import org.apache.twill.internal.TwillContainerLauncher;
 import org.apache.twill.internal.TwillRuntimeSpecification;
 import org.apache.twill.internal.json.LocalFileCodec;
 import org.apache.twill.internal.json.TwillRuntimeSpecificationAdapter;
+import org.apache.twill.internal.metrics.DefaultMetricsSnapshot;
 import org.apache.twill.internal.state.Message;
 import org.apache.twill.internal.state.SystemMessages;
 import org.apache.twill.internal.utils.Instances;
@@ -100,6 +103,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -140,6 +144,9 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
   private final PlacementPolicyManager placementPolicyManager;
   private final Map<String, Map<String, String>> environments;
   private final TwillRuntimeSpecification twillRuntimeSpec;
+  private final LaunchTimeline launchTimeline;
+  private final Autoscaler autoscaler;
+  private final Set<String> pendingAutoscales;
 
   private volatile StopStatus stopStatus;
   private volatile boolean stopped;
@@ -152,6 +159,8 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
     super(zkClient, runId, config, applicationLocation);
 
     this.runId = runId;
+    this.launchTimeline = LaunchTimeline.forCurrentProcess()
+      .markAll(LaunchTimeline.decode(System.getenv(EnvKeys.TWILL_LAUNCH_TIMELINE)));
     this.twillRuntimeSpec = twillRuntimeSpec;
     this.zkClient = zkClient;
     this.applicationLocation = applicationLocation;
@@ -169,6 +178,9 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
 
     this.expectedContainers = new ExpectedContainers(twillSpec);
     this.eventHandler = createEventHandler(twillSpec);
+    this.autoscaler = new Autoscaler(twillSpec.getRunnables().values(), getClass().getClassLoader(),
+                                     System.currentTimeMillis());
+    this.pendingAutoscales = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     this.runningContainers = createRunningContainers(amClient.getContainerId(), amClient.getHost());
   }
 
@@ -297,7 +309,13 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
       Integer.parseInt(System.getenv(EnvKeys.YARN_CONTAINER_VIRTUAL_CORES)),
       containerMemoryMB,
       maxHeapMemoryMB,
-      appMasterHost, null);
+      appMasterHost, null) {
+      @Override
+      public Map<LaunchPhase, Long> getLaunchTimeline() {
+        // Live view, as the phases of the AM are recorded after the resources are created
+        return launchTimeline.getPhases();
+      }
+    };
     String appId = appMasterContainerId.getApplicationAttemptId().getApplicationId().toString();
     return new RunningContainers(twillRuntimeSpec, appId, appMasterResources, zkClient, applicationLocation,
                                  twillSpec.getRunnables(), eventHandler);
@@ -308,6 +326,13 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
     return runningContainers.getResourceReport();
   }
 
+  /**
+   * Returns the metrics reported by the runnables, aggregated per runnable.
+   */
+  Map<String, DefaultMetricsSnapshot> getMetrics() {
+    return runningContainers.getMetrics();
+  }
+
   @Override
   protected void doStart() throws Exception {
     LOG.info("Start application master with spec: {}",
@@ -328,6 +353,9 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
       .get();
     runningContainers.addWatcher(Constants.DISCOVERY_PATH_PREFIX);
     runnableContainerRequests = initContainerRequests();
+
+    launchTimeline.mark(LaunchPhase.RUNNING);
+    LOG.info("Application master started with launch timeline {}", launchTimeline);
   }
 
   @Override
@@ -488,6 +516,7 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
     long requestStartTime = 0;
     boolean isRequestRelaxed = false;
     long nextTimeoutCheck = System.currentTimeMillis() + Constants.PROVISION_TIMEOUT;
+    long nextAutoscaleCheck = System.currentTimeMillis();
     while (!stopped) {
       TimeUnit.SECONDS.sleep(1);
 
@@ -546,6 +575,7 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
       }
 
       nextTimeoutCheck = checkProvisionTimeout(nextTimeoutCheck);
+      nextAutoscaleCheck = checkAutoscale(nextAutoscaleCheck);
     }
   }
 
@@ -647,6 +677,45 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
     return nextTimeoutCheck + Constants.PROVISION_TIMEOUT;
   }
 
+  /**
+   * Evaluates the autoscale policies of runnables and changes the number of instances if necessary.
+   *
+   * @return the time for the next evaluation
+   */
+  private long checkAutoscale(long nextAutoscaleCheck) {
+    long now = System.currentTimeMillis();
+    if (autoscaler.isEmpty() || now < nextAutoscaleCheck) {
+      return nextAutoscaleCheck;
+    }
+
+    for (final String runnableName : autoscaler.getRunnables()) {
+      int oldCount = expectedContainers.getExpected(runnableName);
+      // Only evaluates runnables with all instances running, since pending or stopping instances don't report
+      // metrics that reflect the load.
+      if (pendingAutoscales.contains(runnableName) || runningContainers.count(runnableName) != oldCount) {
+        continue;
+      }
+      int newCount = autoscaler.evaluate(runnableName, oldCount,
+                                         runningContainers.getInstanceMetrics(runnableName), now);
+      if (newCount == oldCount) {
+        continue;
+      }
+
+      LOG.info("Autoscaling {} from {} to {} instances.", runnableName, oldCount, newCount);
+      autoscaler.scaled(runnableName, oldCount, newCount, now);
+      pendingAutoscales.add(runnableName);
+      Runnable completion = new Runnable() {
+        @Override
+        public void run() {
+          pendingAutoscales.remove(runnableName);
+        }
+      };
+      instanceChangeExecutor.execute(createSetInstanceRunnable(SystemMessages.setInstances(runnableName, newCount),
+                                                               completion, oldCount, newCount));
+    }
+    return now + TimeUnit.SECONDS.toMillis(twillRuntimeSpec.getAutoscaleIntervalSeconds());
+  }
+
   private Credentials createCredentials() {
     Credentials credentials = new Credentials();
     if (!UserGroupInformation.isSecurityEnabled()) {
@@ -752,6 +821,7 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
    */
   private void launchRunnable(List<? extends ProcessLauncher<YarnContainerInfo>> launchers,
                               Queue<ProvisionRequest> provisioning) {
+    long allocatedTime = System.currentTimeMillis();
     for (ProcessLauncher<YarnContainerInfo> processLauncher : launchers) {
       LOG.info("Container allocated: {}", processLauncher.getContainerInfo().<Object>getContainer());
       ProvisionRequest provisionRequest = provisioning.peek();
@@ -779,7 +849,10 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
         containerCount, jvmOpts, twillRuntimeSpec.getReservedMemory(runnableName),
         twillRuntimeSpec.getMinHeapRatio(runnableName), getSecureStoreLocation());
 
-      runningContainers.start(runnableName, processLauncher.getContainerInfo(), launcher);
+      LaunchTimeline containerTimeline = new LaunchTimeline()
+        .mark(LaunchPhase.CONTAINER_REQUESTED, provisionRequest.getRequestTime())
+        .mark(LaunchPhase.CONTAINER_ALLOCATED, allocatedTime);
+      runningContainers.start(runnableName, processLauncher.getContainerInfo(), launcher, containerTimeline);
 
       // Need to call complete to workaround bug in YARN AMRMClient
       if (provisionRequest.containerAcquired()) {
@@ -858,6 +931,9 @@ public final class ApplicationMasterService extends AbstractYarnTwillService imp
       return true;
     }
 
+    // Changes made explicitly also start the autoscale cooldowns, so that the autoscaler doesn't revert them right away
+    autoscaler.scaled(runnableName, oldCount, newCount, System.currentTimeMillis());
+
     instanceChangeExecutor.execute(createSetInstanceRunnable(message, completion, oldCount, newCount));
     return true;
   }
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.appmaster;
+
+import com.google.common.base.Preconditions;
+import org.apache.twill.api.RuntimeSpecification;
+import org.apache.twill.api.autoscale.AutoscaleInput;
+import org.apache.twill.api.autoscale.AutoscalePolicy;
+import org.apache.twill.api.autoscale.AutoscalePolicySpecification;
+import org.apache.twill.api.metrics.MetricsSnapshot;
+import org.apache.twill.internal.utils.Instances;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * Evaluates the {@link AutoscalePolicy} of runnables and applies the instances bounds and cooldowns of the
+ * policies to the results.
+ */
+final class Autoscaler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Autoscaler.class);
+
+  private final Map<String, PolicyState> policies;
+  private final ClassLoader classLoader;
+
+  /**
+   * Creates an instance for the runnables that have an {@link AutoscalePolicy}. The policy classes are loaded
+   * on the first evaluation, such that a policy that cannot be loaded only disables autoscaling of its runnable.
+   *
+   * @param runtimeSpecs specifications of all runnables
+   * @param classLoader the {@link ClassLoader} for loading the policy classes
+   * @param startTime the time in milliseconds that the scale in cooldown starts from
+   */
+  Autoscaler(Iterable<RuntimeSpecification> runtimeSpecs, ClassLoader classLoader, long startTime) {
+    Map<String, PolicyState> policies = new TreeMap<>();
+    for (RuntimeSpecification runtimeSpec : runtimeSpecs) {
+      AutoscalePolicySpecification spec = runtimeSpec.getAutoscalePolicy();
+      if (spec != null) {
+        policies.put(runtimeSpec.getName(), new PolicyState(spec, startTime));
+      }
+    }
+    this.policies = policies;
+    this.classLoader = classLoader;
+  }
+
+  boolean isEmpty() {
+    return policies.isEmpty();
+  }
+
+  /**
+   * Returns the names of runnables that are autoscaled.
+   */
+  Set<String> getRunnables() {
+    return Collections.unmodifiableSet(policies.keySet());
+  }
+
+  /**
+   * Evaluates the policy of the given runnable.
+   *
+   * @param runnableName name of the runnable
+   * @param instances current number of instances of the runnable
+   * @param instanceMetrics latest metrics reported by the running instances
+   * @param now current time in milliseconds
+   * @return the number of instances the runnable should be changed to, which is the same as {@code instances} if
+   *         no change is needed or the change is blocked by the cooldowns
+   */
+  synchronized int evaluate(String runnableName, int instances,
+                            List<? extends MetricsSnapshot> instanceMetrics, long now) {
+    PolicyState state = policies.get(runnableName);
+    AutoscalePolicy policy = state == null ? null : state.getPolicy(runnableName, classLoader);
+    if (policy == null) {
+      return instances;
+    }
+
+    int desired;
+    try {
+      desired = policy.evaluate(new Input(runnableName, instances, instanceMetrics));
+    } catch (Throwable t) {
+      LOG.warn("Exception raised when evaluating autoscale policy {} of runnable {}",
+               state.spec.getClassName(), runnableName, t);
+      return instances;
+    }
+    desired = Math.max(state.spec.getMinInstances(), Math.min(state.spec.getMaxInstances(), desired));
+
+    if (desired > instances && state.lastScaleOutTime >= 0
+      && now - state.lastScaleOutTime < state.spec.getScaleOutCooldown()) {
+      LOG.debug("Scale out of {} from {} to {} instances is blocked by cooldown.", runnableName, instances, desired);
+      return instances;
+    }
+    if (desired < instances && now - state.lastScaleTime < state.spec.getScaleInCooldown()) {
+      LOG.debug("Scale in of {} from {} to {} instances is blocked by cooldown.", runnableName, instances, desired);
+      return instances;
+    }
+    return desired;
+  }
+
+  /**
+   * Records a change of number of instances of the given runnable, which starts the cooldowns.
+   */
+  synchronized void scaled(String runnableName, int oldCount, int newCount, long now) {
+    PolicyState state = policies.get(runnableName);
+    if (state == null || oldCount == newCount) {
+      return;
+    }
+    state.lastScaleTime = now;
+    if (newCount > oldCount) {
+      state.lastScaleOutTime = now;
+    }
+  }
+
+  /**
+   * Holds a policy together with the time of the last changes made to the runnable.
+   */
+  private static final class PolicyState {
+    private final AutoscalePolicySpecification spec;
+    private AutoscalePolicy policy;
+    private boolean loadFailed;
+    private long lastScaleTime;
+    private long lastScaleOutTime;
+
+    PolicyState(AutoscalePolicySpecification spec, long startTime) {
+      this.spec = spec;
+      // Instances of a runnable that just started are still warming up, hence don't scale in right away.
+      this.lastScaleTime = startTime;
+      // Never scaled out
+      this.lastScaleOutTime = -1L;
+    }
+
+    /**
+     * Returns the policy, creating it on the first call, or {@code null} if the policy cannot be created.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    AutoscalePolicy getPolicy(String runnableName, ClassLoader classLoader) {
+      if (policy != null || loadFailed) {
+        return policy;
+      }
+      try {
+        Class<?> policyClass = classLoader.loadClass(spec.getClassName());
+        Preconditions.checkArgument(AutoscalePolicy.class.isAssignableFrom(policyClass),
+                                    "Class %s does not extend %s", policyClass, AutoscalePolicy.class.getName());
+        AutoscalePolicy policy = Instances.newInstance((Class<? extends AutoscalePolicy>) policyClass);
+        policy.initialize(spec);
+        this.policy = policy;
+      } catch (Throwable t) {
+        LOG.error("Failed to create autoscale policy {} of runnable {}. The runnable will not be autoscaled.",
+                  spec.getClassName(), runnableName, t);
+        loadFailed = true;
+      }
+      return policy;
+    }
+  }
+
+  /**
+   * Implementation of {@link AutoscaleInput}.
+   */
+  private static final class Input implements AutoscaleInput {
+    private final String runnableName;
+    private final int instances;
+    private final List<MetricsSnapshot> instanceMetrics;
+
+    Input(String runnableName, int instances, List<? extends MetricsSnapshot> instanceMetrics) {
+      this.runnableName = runnableName;
+      this.instances = instances;
+      this.instanceMetrics = Collections.unmodifiableList(new ArrayList<MetricsSnapshot>(instanceMetrics));
+    }
+
+    @Override
+    public String getRunnableName() {
+      return runnableName;
+    }
+
+    @Override
+    public int getInstances() {
+      return instances;
+    }
+
+    @Override
+    public List<MetricsSnapshot> getInstanceMetrics() {
+      return instanceMetrics;
+    }
+  }
+}
@@ -27,6 +27,7 @@ final class ProvisionRequest {
   private final String requestId;
   private int requestCount;
   private final AllocationSpecification.Type type;
+  private final long requestTime;
 
   ProvisionRequest(RuntimeSpecification runtimeSpec, String requestId, int requestCount) {
     this(runtimeSpec, requestId, requestCount, AllocationSpecification.Type.DEFAULT);
@@ -38,6 +39,7 @@ final class ProvisionRequest {
     this.requestId = requestId;
     this.requestCount = requestCount;
     this.type = type;
+    this.requestTime = System.currentTimeMillis();
   }
 
   RuntimeSpecification getRuntimeSpec() {
@@ -60,4 +62,11 @@ final class ProvisionRequest {
   AllocationSpecification.Type getType() {
     return this.type;
   }
+
+  /**
+   * Returns the time in milliseconds when the containers were requested.
+   */
+  long getRequestTime() {
+    return requestTime;
+  }
 }
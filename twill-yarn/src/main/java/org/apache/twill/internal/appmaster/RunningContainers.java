@@ -20,8 +20,10 @@ package org.apache.twill.internal.appmaster;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicates;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
@@ -29,6 +31,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.FutureCallback;
@@ -39,6 +42,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.hadoop.yarn.api.records.ContainerState;
 import org.apache.twill.api.EventHandler;
+import org.apache.twill.api.LaunchPhase;
 import org.apache.twill.api.ResourceReport;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.RuntimeSpecification;
@@ -51,15 +55,18 @@ import org.apache.twill.internal.ContainerInfo;
 import org.apache.twill.internal.ContainerLiveNodeData;
 import org.apache.twill.internal.DefaultResourceReport;
 import org.apache.twill.internal.DefaultTwillRunResources;
+import org.apache.twill.internal.LaunchTimeline;
 import org.apache.twill.internal.RunIds;
 import org.apache.twill.internal.TwillContainerController;
 import org.apache.twill.internal.TwillContainerLauncher;
 import org.apache.twill.internal.TwillRuntimeSpecification;
 import org.apache.twill.internal.container.TwillContainerMain;
+import org.apache.twill.internal.metrics.DefaultMetricsSnapshot;
 import org.apache.twill.internal.state.Message;
 import org.apache.twill.internal.state.SystemMessages;
 import org.apache.twill.internal.yarn.YarnContainerStatus;
-import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.TreeCache;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKOperations;
 import org.slf4j.Logger;
@@ -119,6 +126,8 @@ final class RunningContainers {
   private final Map<String, Integer> maxRetries;
   private final Map<String, Map<Integer, AtomicInteger>> numRetries;
   private final EventHandler eventHandler;
+  // Metrics of containers that have completed, keyed by runnable name. Guarded by containerLock.
+  private final Map<String, DefaultMetricsSnapshot> completedMetrics;
 
   RunningContainers(TwillRuntimeSpecification twillRuntimeSpec, String appId, TwillRunResources appMasterResources,
                     ZKClient zookeeperClient, Location applicationLocation,
@@ -139,6 +148,7 @@ final class RunningContainers {
     this.maxRetries = Maps.newHashMap(twillRuntimeSpec.getMaxRetries());
     this.numRetries = Maps.newHashMap();
     this.eventHandler = eventHandler;
+    this.completedMetrics = Maps.newHashMap();
   }
 
   /**
@@ -155,12 +165,16 @@ final class RunningContainers {
 
   /**
    * Start a container for a runnable.
+   *
+   * @param launchTimeline the launch phases of the container recorded by the application master so far
    */
-  void start(String runnableName, ContainerInfo containerInfo, TwillContainerLauncher launcher) {
+  void start(String runnableName, ContainerInfo containerInfo, TwillContainerLauncher launcher,
+             LaunchTimeline launchTimeline) {
     containerLock.lock();
     try {
       int instanceId = getStartInstanceId(runnableName);
       RunId runId = getRunId(runnableName, instanceId);
+      launchTimeline.mark(LaunchPhase.LAUNCH_REQUESTED);
       TwillContainerController controller = launcher.start(runId, instanceId,
                                                            TwillContainerMain.class, "$HADOOP_CONF_DIR",
                                                            saveLogLevels());
@@ -171,7 +185,7 @@ final class RunningContainers {
                                                                  containerInfo.getMemoryMB(),
                                                                  launcher.getMaxHeapMemoryMB(),
                                                                  containerInfo.getHost().getHostName(),
-                                                                 controller);
+                                                                 controller, launchTimeline);
       resourceReport.addRunResources(runnableName, resources);
       containerStats.put(runnableName, containerInfo);
 
@@ -190,11 +204,23 @@ final class RunningContainers {
    * Watch for changes to services under given path.
    * @param path to check for changes.
    */
-  void addWatcher(String path) {
-    ZKOperations.watchChildren(zkClient, path, new ZKOperations.ChildrenCallback() {
+  void addWatcher(final String path) {
+    final Set<String> services = Sets.newTreeSet();
+    // Only the children are cached, so that updates of the service nodes, such as snapshots, don't cause reads
+    ZKOperations.cacheTree(zkClient, path, 1, Predicates.<String>alwaysTrue(), false, new TreeCache.Listener() {
       @Override
-      public void updated(NodeChildren nodeChildren) {
-        resourceReport.setServices(nodeChildren.getChildren());
+      public void nodeChanged(TreeCache.EventType type, String nodePath, @Nullable NodeData nodeData) {
+        // Only the children of the given path are services; events are delivered one at a time.
+        if (nodePath.equals(path)) {
+          return;
+        }
+        String service = nodePath.substring(nodePath.lastIndexOf('/') + 1);
+        if (type == TreeCache.EventType.ADDED) {
+          services.add(service);
+        } else {
+          services.remove(service);
+        }
+        resourceReport.setServices(ImmutableList.copyOf(services));
       }
     });
   }
@@ -203,6 +229,53 @@ final class RunningContainers {
     return resourceReport;
   }
 
+  /**
+   * Returns the metrics of each runnable, aggregated from the latest metrics reported by the running containers
+   * and the metrics of containers that have completed.
+   */
+  Map<String, DefaultMetricsSnapshot> getMetrics() {
+    containerLock.lock();
+    try {
+      Map<String, DefaultMetricsSnapshot> metrics = new TreeMap<>();
+      for (String runnableName : runnableNames) {
+        DefaultMetricsSnapshot snapshot = completedMetrics.get(runnableName);
+        if (snapshot == null) {
+          snapshot = DefaultMetricsSnapshot.EMPTY;
+        }
+        for (TwillContainerController controller : containers.row(runnableName).values()) {
+          ContainerLiveNodeData liveData = controller.getLiveNodeData();
+          if (liveData != null && liveData.getMetrics() != null) {
+            snapshot = snapshot.merge(liveData.getMetrics());
+          }
+        }
+        metrics.put(runnableName, snapshot);
+      }
+      return metrics;
+    } finally {
+      containerLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the latest metrics reported by each running instance of the given runnable. Instances that haven't
+   * reported any metrics yet are not included.
+   */
+  List<DefaultMetricsSnapshot> getInstanceMetrics(String runnableName) {
+    containerLock.lock();
+    try {
+      List<DefaultMetricsSnapshot> metrics = new ArrayList<>();
+      for (TwillContainerController controller : containers.row(runnableName).values()) {
+        ContainerLiveNodeData liveData = controller.getLiveNodeData();
+        if (liveData != null && liveData.getMetrics() != null) {
+          metrics.add(liveData.getMetrics());
+        }
+      }
+      return metrics;
+    } finally {
+      containerLock.unlock();
+    }
+  }
+
   /**
    * Given a runnable name, returns a list of {@link org.apache.twill.internal.ContainerInfo} for it's instances.
    * @param runnableName name of a runnable.
@@ -266,6 +339,7 @@ final class RunningContainers {
     containerLock.lock();
     try {
       if (removeContainerInfo(containerId)) {
+        retainMetrics(runnableName, controller);
         containers.remove(runnableName, containerId);
         removeInstanceId(runnableName, instanceId);
 
@@ -441,6 +515,20 @@ final class RunningContainers {
     }
   }
 
+  /**
+   * Keeps the last metrics reported by the given container, so that the aggregated counters and timers of the
+   * runnable don't go backward after the container completed. Must be called with the containerLock held.
+   */
+  private void retainMetrics(String runnableName, TwillContainerController controller) {
+    ContainerLiveNodeData liveData = controller.getLiveNodeData();
+    if (liveData == null || liveData.getMetrics() == null) {
+      return;
+    }
+    DefaultMetricsSnapshot retained = completedMetrics.get(runnableName);
+    DefaultMetricsSnapshot completed = liveData.getMetrics().withoutGauges();
+    completedMetrics.put(runnableName, retained == null ? completed : retained.merge(completed));
+  }
+
   /**
    * Handle completion of container.
    *
@@ -479,6 +567,7 @@ final class RunningContainers {
         // In case of multiple controllers, even if one is stopped we will not re-request the container
         containerStopped = containerStopped || isControllerStopped(controller);
         controller.completed(exitStatus);
+        retainMetrics(runnableName, controller);
 
         if (exitStatus == ContainerExitCodes.SUCCESS) {
           if (!completedContainerCount.containsKey(runnableName)) {
@@ -740,7 +829,8 @@ final class RunningContainers {
   }
 
   /**
-   * A helper class that overrides the debug port of the resources with the live info from the container controller.
+   * A helper class that overrides the debug port, log levels and launch timeline of the resources with the live info
+   * from the container controller.
    */
   private static final class DynamicTwillRunResources extends DefaultTwillRunResources {
 
@@ -754,13 +844,15 @@ final class RunningContainers {
       }
     };
     private final TwillContainerController controller;
+    private final LaunchTimeline launchTimeline;
     private Integer dynamicDebugPort = null;
 
     private DynamicTwillRunResources(int instanceId, String containerId,
                                      int cores, int memoryMB, int maxHeapMemoryMB, String host,
-                                     TwillContainerController controller) {
+                                     TwillContainerController controller, LaunchTimeline launchTimeline) {
       super(instanceId, containerId, cores, memoryMB, maxHeapMemoryMB, host, null);
       this.controller = controller;
+      this.launchTimeline = launchTimeline;
     }
 
     @Override
@@ -787,5 +879,15 @@ final class RunningContainers {
       }
       return Collections.emptyMap();
     }
+
+    @Override
+    public Map<LaunchPhase, Long> getLaunchTimeline() {
+      // Phases recorded by the container are merged with the ones recorded by the AM
+      ContainerLiveNodeData liveData = controller.getLiveNodeData();
+      if (liveData != null) {
+        launchTimeline.markAll(LaunchTimeline.fromNames(liveData.getLaunchTimeline()));
+      }
+      return launchTimeline.getPhases();
+    }
   }
 }
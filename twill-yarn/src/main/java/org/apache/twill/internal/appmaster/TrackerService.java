@@ -18,13 +18,18 @@
 package org.apache.twill.internal.appmaster;
 
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -48,12 +53,20 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
 import io.netty.util.CharsetUtil;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
 import org.apache.twill.api.ResourceReport;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.apache.twill.discovery.ServiceDiscovered;
+import org.apache.twill.internal.json.MetricsReportAdapter;
 import org.apache.twill.internal.json.ResourceReportAdapter;
+import org.apache.twill.internal.metrics.DefaultMetricsSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,40 +78,107 @@ import java.net.URI;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
 
 /**
  * Webservice that the Application Master will register back to the resource manager
- * for clients to track application progress.  Currently used purely for getting a
- * breakdown of resource usage as a {@link org.apache.twill.api.ResourceReport}.
+ * for clients to track application progress.  Currently used for getting a
+ * breakdown of resource usage as a {@link org.apache.twill.api.ResourceReport} and the metrics of each runnable.
+ * The metrics of the ZooKeeper client of the application master are served under {@link #ZK_METRICS_PATH}.
+ * <p/>
+ * It also serves the discoverables of services announced by the runnables under {@link #DISCOVERABLES_PATH},
+ * backed by the discovery cache of the application master, so that clients outside of the cluster can follow
+ * service membership without connecting to ZooKeeper. A client passes the {@code version} of the last response
+ * it received and the request is held until the membership changes or the {@code timeout} (in seconds) passes,
+ * in which case a {@code 304 Not Modified} is returned. The watch of a service is removed once no client has
+ * asked for it for a while, and the number of services watched at the same time is bounded. Responses are gzip
+ * compressed if the client accepts it and connections are kept alive as requested by the client.
  */
 public final class TrackerService extends AbstractIdleService {
 
   // TODO: This is temporary. When support more REST API, this would get moved.
   public static final String PATH = "/resources";
+  public static final String METRICS_PATH = "/metrics";
+  public static final String ZK_METRICS_PATH = "/metrics/zookeeper";
+  public static final String DISCOVERABLES_PATH = "/discoverables/";
 
   private static final Logger LOG  = LoggerFactory.getLogger(TrackerService.class);
   private static final int NUM_BOSS_THREADS = 1;
   private static final int NUM_WORKER_THREADS = 10;
   private static final int CLOSE_CHANNEL_TIMEOUT = 5;
   private static final int MAX_INPUT_SIZE = 100 * 1024 * 1024;
+  private static final long DEFAULT_POLL_TIMEOUT_SECONDS = 30;
+  private static final long MAX_POLL_TIMEOUT_SECONDS = 60;
+  private static final long DEFAULT_WATCH_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  private static final int DEFAULT_MAX_WATCHES = 1000;
+  private static final long DEFAULT_INITIAL_LOAD_MILLIS = TimeUnit.SECONDS.toMillis(2);
+  private static final Gson GSON = new Gson();
 
   private final Supplier<ResourceReport> resourceReport;
+  private final Supplier<Map<String, DefaultMetricsSnapshot>> metrics;
+  private final Supplier<DefaultMetricsSnapshot> zkMetrics;
+  private final DiscoveryServiceClient discoveryServiceClient;
+  private final ConcurrentMap<String, DiscoverablesWatch> discoverablesWatches;
+  private final long watchIdleMillis;
+  private final int maxWatches;
+  private final long initialLoadMillis;
 
   private String host;
   private ServerBootstrap bootstrap;
   private ChannelGroup channelGroup;
   private InetSocketAddress bindAddress;
   private URL url;
+  private ScheduledExecutorService discoveryExecutor;
 
   /**
    * Initialize the service.
    *
    * @param resourceReport live report that the service will return to clients.
+   * @param metrics live metrics of each runnable that the service will return to clients.
+   * @param zkMetrics live metrics of the ZooKeeper client of the application master.
+   * @param discoveryServiceClient client for discovering services announced by the runnables.
    */
-  TrackerService(Supplier<ResourceReport> resourceReport) {
+  TrackerService(Supplier<ResourceReport> resourceReport, Supplier<Map<String, DefaultMetricsSnapshot>> metrics,
+                 Supplier<DefaultMetricsSnapshot> zkMetrics, DiscoveryServiceClient discoveryServiceClient) {
+    this(resourceReport, metrics, zkMetrics, discoveryServiceClient,
+         DEFAULT_WATCH_IDLE_MILLIS, DEFAULT_MAX_WATCHES, DEFAULT_INITIAL_LOAD_MILLIS);
+  }
+
+  /**
+   * Initialize the service.
+   *
+   * @param resourceReport live report that the service will return to clients.
+   * @param metrics live metrics of each runnable that the service will return to clients.
+   * @param zkMetrics live metrics of the ZooKeeper client of the application master.
+   * @param discoveryServiceClient client for discovering services announced by the runnables.
+   * @param watchIdleMillis time in milliseconds after which the watch of a service that has no request
+   *                        waiting on it is removed.
+   * @param maxWatches maximum number of services that can be watched at the same time.
+   * @param initialLoadMillis maximum time in milliseconds that requests on a new watch wait for the discoverables
+   *                          to be loaded before being answered.
+   */
+  TrackerService(Supplier<ResourceReport> resourceReport, Supplier<Map<String, DefaultMetricsSnapshot>> metrics,
+                 Supplier<DefaultMetricsSnapshot> zkMetrics, DiscoveryServiceClient discoveryServiceClient,
+                 long watchIdleMillis, int maxWatches, long initialLoadMillis) {
     this.resourceReport = resourceReport;
+    this.metrics = metrics;
+    this.zkMetrics = zkMetrics;
+    this.discoveryServiceClient = discoveryServiceClient;
+    this.discoverablesWatches = new ConcurrentHashMap<>();
+    this.watchIdleMillis = watchIdleMillis;
+    this.maxWatches = maxWatches;
+    this.initialLoadMillis = initialLoadMillis;
   }
 
   /**
@@ -123,8 +203,23 @@ public final class TrackerService extends AbstractIdleService {
     return url;
   }
 
+  /**
+   * Returns the number of services that are currently being watched for serving discoverables.
+   */
+  int getDiscoverablesWatchCount() {
+    return discoverablesWatches.size();
+  }
+
   @Override
   protected void startUp() throws Exception {
+    discoveryExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("tracker-discovery").build());
+    discoveryExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        removeIdleWatches();
+      }
+    }, watchIdleMillis, watchIdleMillis, TimeUnit.MILLISECONDS);
     channelGroup = new DefaultChannelGroup(ImmediateEventExecutor.INSTANCE);
     EventLoopGroup bossGroup = new NioEventLoopGroup(NUM_BOSS_THREADS,
                                                      new ThreadFactoryBuilder()
@@ -159,7 +254,12 @@ public final class TrackerService extends AbstractIdleService {
 
   @Override
   protected void shutDown() throws Exception {
+    for (DiscoverablesWatch watch : discoverablesWatches.values()) {
+      watch.cancel();
+    }
+    discoverablesWatches.clear();
     channelGroup.close().awaitUninterruptibly();
+    discoveryExecutor.shutdownNow();
 
     List<Future<?>> futures = new ArrayList<>();
     futures.add(bootstrap.config().group().shutdownGracefully(0, CLOSE_CHANNEL_TIMEOUT, TimeUnit.SECONDS));
@@ -178,9 +278,11 @@ public final class TrackerService extends AbstractIdleService {
    */
   final class ReportHandler extends ChannelInboundHandlerAdapter {
     private final ResourceReportAdapter reportAdapter;
+    private final MetricsReportAdapter metricsAdapter;
 
     ReportHandler() {
       this.reportAdapter = ResourceReportAdapter.create();
+      this.metricsAdapter = MetricsReportAdapter.create();
     }
 
     @Override
@@ -203,7 +305,25 @@ public final class TrackerService extends AbstractIdleService {
           return;
         }
 
-        if (!PATH.equals(request.uri())) {
+        QueryStringDecoder decoder = new QueryStringDecoder(request.uri());
+        boolean keepAlive = HttpUtil.isKeepAlive(request);
+        if (METRICS_PATH.equals(decoder.path())) {
+          writeMetrics(ctx.channel(), keepAlive);
+          return;
+        }
+
+        if (ZK_METRICS_PATH.equals(decoder.path())) {
+          ByteBuf content = Unpooled.copiedBuffer(GSON.toJson(zkMetrics.get()), StandardCharsets.UTF_8);
+          writeJson(ctx.channel(), content, keepAlive);
+          return;
+        }
+
+        if (decoder.path().startsWith(DISCOVERABLES_PATH)) {
+          pollDiscoverables(ctx.channel(), decoder, keepAlive);
+          return;
+        }
+
+        if (!PATH.equals(decoder.path())) {
           // Redirect all GET call to the /resources path.
           HttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
                                                               HttpResponseStatus.TEMPORARY_REDIRECT);
@@ -213,7 +333,7 @@ public final class TrackerService extends AbstractIdleService {
           return;
         }
 
-        writeResourceReport(ctx.channel());
+        writeResourceReport(ctx.channel(), keepAlive);
       } finally {
         ReferenceCountUtil.release(msg);
       }
@@ -224,7 +344,7 @@ public final class TrackerService extends AbstractIdleService {
       ctx.channel().close();
     }
 
-    private void writeResourceReport(Channel channel) {
+    private void writeResourceReport(Channel channel, boolean keepAlive) {
       ByteBuf content = Unpooled.buffer();
       Writer writer = new OutputStreamWriter(new ByteBufOutputStream(content), CharsetUtil.UTF_8);
       try {
@@ -237,16 +357,359 @@ public final class TrackerService extends AbstractIdleService {
           Unpooled.copiedBuffer(e.getMessage(), StandardCharsets.UTF_8)));
         return;
       }
+      writeJson(channel, content, keepAlive);
+    }
+
+    private void writeMetrics(Channel channel, boolean keepAlive) {
+      ByteBuf content = Unpooled.buffer();
+      Writer writer = new OutputStreamWriter(new ByteBufOutputStream(content), CharsetUtil.UTF_8);
+      try {
+        metricsAdapter.toJson(metrics.get(), writer);
+        writer.close();
+      } catch (IOException e) {
+        LOG.error("error writing metrics", e);
+        writeAndClose(channel, new DefaultFullHttpResponse(
+          HttpVersion.HTTP_1_1, HttpResponseStatus.INTERNAL_SERVER_ERROR,
+          Unpooled.copiedBuffer(e.getMessage(), StandardCharsets.UTF_8)));
+        return;
+      }
+      writeJson(channel, content, keepAlive);
+    }
+
+    /**
+     * Responds with the discoverables of the service in the request path, or holds the request until they
+     * change if the request carries the version of the discoverables that the client already has.
+     */
+    private void pollDiscoverables(final Channel channel, QueryStringDecoder decoder, final boolean keepAlive) {
+      String service = decoder.path().substring(DISCOVERABLES_PATH.length());
+      if (service.isEmpty() || service.indexOf('/') >= 0) {
+        writeError(channel, HttpResponseStatus.NOT_FOUND, "Invalid service name: " + service);
+        return;
+      }
+
+      final Long version;
+      final long timeoutSeconds;
+      try {
+        String value = getParameter(decoder, "version");
+        version = value == null ? null : Long.parseLong(value);
+        value = getParameter(decoder, "timeout");
+        timeoutSeconds = value == null ? DEFAULT_POLL_TIMEOUT_SECONDS
+                                       : Math.max(0L, Math.min(MAX_POLL_TIMEOUT_SECONDS, Long.parseLong(value)));
+      } catch (NumberFormatException e) {
+        writeError(channel, HttpResponseStatus.BAD_REQUEST, "Invalid version or timeout: " + e.getMessage());
+        return;
+      }
+
+      final DiscoverablesWatch watch = getDiscoverablesWatch(service);
+      if (watch == null) {
+        writeError(channel, HttpResponseStatus.SERVICE_UNAVAILABLE, "Too many services being watched");
+        return;
+      }
+      // Don't answer from a new watch before the discoverables are loaded, otherwise an empty set would be returned
+      watch.whenLoaded(new Runnable() {
+        @Override
+        public void run() {
+          DiscoverablesState state = watch.getState();
+          if (version == null || version != state.version || timeoutSeconds == 0) {
+            writeDiscoverables(channel, state, version, keepAlive);
+            return;
+          }
+          watch.addPoll(new DiscoverablesPoll(channel, version, keepAlive), timeoutSeconds);
+        }
+      });
+    }
+
+    @Nullable
+    private String getParameter(QueryStringDecoder decoder, String name) {
+      List<String> values = decoder.parameters().get(name);
+      return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private void writeError(Channel channel, HttpResponseStatus status, String message) {
+      FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+                                                              Unpooled.copiedBuffer(message, StandardCharsets.UTF_8));
+      HttpUtil.setContentLength(response, response.content().readableBytes());
+      response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+      writeAndClose(channel, response);
+    }
+  }
+
+  /**
+   * Returns the watch of the given service, creating it if needed, or {@code null} if the maximum number
+   * of watches is reached.
+   */
+  @Nullable
+  private DiscoverablesWatch getDiscoverablesWatch(String service) {
+    synchronized (discoverablesWatches) {
+      DiscoverablesWatch watch = discoverablesWatches.get(service);
+      if (watch == null) {
+        if (discoverablesWatches.size() >= maxWatches) {
+          return null;
+        }
+        watch = new DiscoverablesWatch(discoveryServiceClient.discover(service));
+        discoverablesWatches.put(service, watch);
+      }
+      watch.lastAccess = System.currentTimeMillis();
+      return watch;
+    }
+  }
+
+  /**
+   * Removes the watches that have no request waiting on them and were not accessed within the idle time, so
+   * that requests for arbitrary service names do not keep watches on ZooKeeper forever.
+   */
+  private void removeIdleWatches() {
+    long idleTime = System.currentTimeMillis() - watchIdleMillis;
+    synchronized (discoverablesWatches) {
+      Iterator<DiscoverablesWatch> iterator = discoverablesWatches.values().iterator();
+      while (iterator.hasNext()) {
+        DiscoverablesWatch watch = iterator.next();
+        if (watch.isIdle() && watch.lastAccess < idleTime) {
+          iterator.remove();
+          watch.cancel();
+          LOG.debug("Removed idle discoverables watch for service {}", watch.service);
+        }
+      }
+    }
+  }
 
-      FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
-      HttpUtil.setContentLength(response, content.readableBytes());
+  /**
+   * Writes the given discoverables state to the channel. If the client already has the same version,
+   * a {@code 304 Not Modified} response without content is written instead.
+   */
+  private static void writeDiscoverables(Channel channel, DiscoverablesState state,
+                                         @Nullable Long clientVersion, boolean keepAlive) {
+    FullHttpResponse response;
+    if (clientVersion != null && clientVersion == state.version) {
+      response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_MODIFIED);
+      HttpUtil.setContentLength(response, 0);
+    } else {
+      // The encoded content is shared by all responses of the same version
+      response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                                             Unpooled.wrappedBuffer(state.content));
+      HttpUtil.setContentLength(response, state.content.length);
       response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=UTF-8");
+    }
+    response.headers().set(HttpHeaderNames.ETAG, Long.toString(state.version));
+    response.headers().set(HttpHeaderNames.CACHE_CONTROL, "no-cache");
+    writeJson(channel, response, keepAlive);
+  }
+
+  private static void writeJson(Channel channel, ByteBuf content, boolean keepAlive) {
+    FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
+    HttpUtil.setContentLength(response, content.readableBytes());
+    response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=UTF-8");
+    writeJson(channel, response, keepAlive);
+  }
+
+  private static void writeJson(Channel channel, FullHttpResponse response, boolean keepAlive) {
+    HttpUtil.setKeepAlive(response, keepAlive);
+    if (keepAlive) {
       channel.writeAndFlush(response);
+    } else {
+      writeAndClose(channel, response);
     }
+  }
 
-    private void writeAndClose(Channel channel, HttpResponse response) {
-      channel.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+  private static void writeAndClose(Channel channel, HttpResponse response) {
+    channel.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+  }
+
+  /**
+   * An immutable version of the discoverables of a service together with its JSON encoding.
+   */
+  private static final class DiscoverablesState {
+    private final long version;
+    private final Set<Discoverable> discoverables;
+    private final byte[] content;
+
+    DiscoverablesState(String service, long version, Set<Discoverable> discoverables) {
+      this.version = version;
+      this.discoverables = discoverables;
+      this.content = encode(service, version, discoverables);
+    }
+
+    private static byte[] encode(String service, long version, Set<Discoverable> discoverables) {
+      JsonArray array = new JsonArray();
+      for (Discoverable discoverable : discoverables) {
+        JsonObject json = new JsonObject();
+        json.addProperty("service", discoverable.getName());
+        json.addProperty("hostname", discoverable.getSocketAddress().getHostString());
+        json.addProperty("port", discoverable.getSocketAddress().getPort());
+        json.add("payload", GSON.toJsonTree(discoverable.getPayload()));
+        array.add(json);
+      }
+      JsonObject json = new JsonObject();
+      json.addProperty("service", service);
+      json.addProperty("version", version);
+      json.add("discoverables", array);
+      return GSON.toJson(json).getBytes(StandardCharsets.UTF_8);
     }
   }
-}
 
+  /**
+   * Keeps the latest {@link DiscoverablesState} of a service and completes the requests waiting for it to change.
+   *
+   * The discoverables of a newly discovered service are loaded asynchronously, so the first change notification,
+   * which is made right when the watch starts, may carry an empty set that is not loaded yet. The watch is
+   * considered loaded on a non-empty notification, on any later notification, or after the initial load time,
+   * and requests arriving before that are held until then.
+   */
+  private final class DiscoverablesWatch implements ServiceDiscovered.ChangeListener {
+
+    private final String service;
+    private final Set<DiscoverablesPoll> polls;
+    private final List<Runnable> pendingRequests;
+    private final Cancellable cancellable;
+    private volatile DiscoverablesState state;
+    private volatile long lastAccess;
+    private boolean notified;
+    private boolean loaded;
+
+    DiscoverablesWatch(ServiceDiscovered serviceDiscovered) {
+      this.service = serviceDiscovered.getName();
+      this.polls = Collections.newSetFromMap(new ConcurrentHashMap<DiscoverablesPoll, Boolean>());
+      this.pendingRequests = new ArrayList<>();
+      // Seed the version with the current time so that versions are not reused after application master restarts
+      this.state = new DiscoverablesState(service, System.currentTimeMillis(),
+                                          ImmutableSet.copyOf(serviceDiscovered));
+      this.cancellable = serviceDiscovered.watchChanges(this, discoveryExecutor);
+      discoveryExecutor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          setLoaded();
+        }
+      }, initialLoadMillis, TimeUnit.MILLISECONDS);
+    }
+
+    DiscoverablesState getState() {
+      return state;
+    }
+
+    /**
+     * Runs the given request once the discoverables are loaded, either right away in the calling thread
+     * or later in the discovery executor thread.
+     */
+    void whenLoaded(Runnable request) {
+      synchronized (this) {
+        if (!loaded) {
+          pendingRequests.add(request);
+          return;
+        }
+      }
+      request.run();
+    }
+
+    /**
+     * Returns {@code true} if there is no request waiting on this watch.
+     */
+    synchronized boolean isIdle() {
+      return pendingRequests.isEmpty() && polls.isEmpty();
+    }
+
+    @Override
+    public void onChange(ServiceDiscovered serviceDiscovered) {
+      // Always called from the single discovery executor thread, hence no race in updating the state
+      Set<Discoverable> discoverables = ImmutableSet.copyOf(serviceDiscovered);
+      boolean firstNotification = !notified;
+      notified = true;
+      DiscoverablesState current = state;
+      if (discoverables.equals(current.discoverables)) {
+        if (!firstNotification || !discoverables.isEmpty()) {
+          setLoaded();
+        }
+        return;
+      }
+      DiscoverablesState newState = new DiscoverablesState(service, current.version + 1, discoverables);
+      state = newState;
+      for (DiscoverablesPoll poll : polls) {
+        complete(poll, newState);
+      }
+      setLoaded();
+    }
+
+    /**
+     * Marks the discoverables as loaded and runs the requests held until then.
+     */
+    private void setLoaded() {
+      List<Runnable> requests;
+      synchronized (this) {
+        if (loaded) {
+          return;
+        }
+        loaded = true;
+        requests = new ArrayList<>(pendingRequests);
+        pendingRequests.clear();
+      }
+      for (Runnable request : requests) {
+        request.run();
+      }
+    }
+
+    /**
+     * Adds a request waiting for changes of the discoverables, which will be completed after the given timeout
+     * if there is no change.
+     */
+    void addPoll(final DiscoverablesPoll poll, long timeoutSeconds) {
+      polls.add(poll);
+      poll.channel.closeFuture().addListener(new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+          complete(poll, null);
+        }
+      });
+      poll.timeout = poll.channel.eventLoop().schedule(new Runnable() {
+        @Override
+        public void run() {
+          complete(poll, state);
+        }
+      }, timeoutSeconds, TimeUnit.SECONDS);
+
+      // Check the version again as the discoverables might have changed before the poll was added
+      DiscoverablesState current = state;
+      if (current.version != poll.version) {
+        complete(poll, current);
+      }
+    }
+
+    void cancel() {
+      cancellable.cancel();
+    }
+
+    /**
+     * Completes the given poll by writing the given state, or without writing if the state is {@code null}.
+     */
+    private void complete(DiscoverablesPoll poll, @Nullable DiscoverablesState state) {
+      if (!poll.completed.compareAndSet(false, true)) {
+        return;
+      }
+      polls.remove(poll);
+      ScheduledFuture<?> timeout = poll.timeout;
+      if (timeout != null) {
+        timeout.cancel(false);
+      }
+      if (state != null) {
+        writeDiscoverables(poll.channel, state, poll.version, poll.keepAlive);
+      }
+    }
+  }
+
+  /**
+   * A request waiting for the discoverables of a service to change from the version the client has.
+   */
+  private static final class DiscoverablesPoll {
+
+    private final Channel channel;
+    private final long version;
+    private final boolean keepAlive;
+    private final AtomicBoolean completed;
+    private volatile ScheduledFuture<?> timeout;
+
+    DiscoverablesPoll(Channel channel, long version, boolean keepAlive) {
+      this.channel = channel;
+      this.version = version;
+      this.keepAlive = keepAlive;
+      this.completed = new AtomicBoolean();
+    }
+  }
+}
@@ -32,6 +32,7 @@ import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.TwillRunnableSpecification;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.discovery.ZKDiscoveryService;
 import org.apache.twill.internal.Arguments;
 import org.apache.twill.internal.BasicTwillContext;
@@ -39,12 +40,14 @@ import org.apache.twill.internal.Constants;
 import org.apache.twill.internal.ContainerInfo;
 import org.apache.twill.internal.EnvContainerInfo;
 import org.apache.twill.internal.EnvKeys;
+import org.apache.twill.internal.JvmOptions;
 import org.apache.twill.internal.RunIds;
 import org.apache.twill.internal.ServiceMain;
 import org.apache.twill.internal.TwillRuntimeSpecification;
 import org.apache.twill.internal.json.ArgumentsCodec;
 import org.apache.twill.internal.json.TwillRuntimeSpecificationAdapter;
 import org.apache.twill.internal.logging.Loggings;
+import org.apache.twill.internal.metrics.DefaultMetricsMXBean;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKClientService;
 import org.apache.twill.zookeeper.ZKClients;
@@ -56,6 +59,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -66,6 +71,12 @@ public final class TwillContainerMain extends ServiceMain {
 
   private static final Logger LOG = LoggerFactory.getLogger(TwillContainerMain.class);
 
+  // Gauges of the service discovery change notifications delivered to listeners and coalesced
+  private static final String DISCOVERY_NOTIFICATIONS_DELIVERED = "twill.discovery.notifications.delivered";
+  private static final String DISCOVERY_NOTIFICATIONS_SUPPRESSED = "twill.discovery.notifications.suppressed";
+  // JMX name of the bean for the metrics of the ZooKeeper client of the container
+  private static final String ZK_METRICS_BEAN_NAME = "org.apache.twill:type=ZKClient";
+
   private final TwillRuntimeSpecification twillRuntimeSpec;
 
   /**
@@ -84,6 +95,8 @@ public final class TwillContainerMain extends ServiceMain {
   }
 
   private void doMain() throws Exception {
+    logJvmStartTime();
+
     // Try to load the secure store from localized file, which AM requested RM to localize it for this container.
     loadSecureStore();
     RunId appRunId = twillRuntimeSpec.getTwillAppRunId();
@@ -105,6 +118,7 @@ public final class TwillContainerMain extends ServiceMain {
     }
 
     ZKClientService zkClientService = createZKClient();
+    Cancellable zkMetricsBean = DefaultMetricsMXBean.register(ZK_METRICS_BEAN_NAME, getZKClientMetrics());
     ZKDiscoveryService discoveryService = new ZKDiscoveryService(zkClientService);
 
     ZKClient appRunZkClient = getAppRunZKClient(zkClientService, appRunId);
@@ -120,6 +134,8 @@ public final class TwillContainerMain extends ServiceMain {
       runnableSpec, instanceId, discoveryService, discoveryService, appRunZkClient,
       instanceCount, containerInfo.getMemoryMB(), containerInfo.getVirtualCores()
     );
+    context.getMetrics().gauge(DISCOVERY_NOTIFICATIONS_DELIVERED, discoveryService::getChangeNotificationsDelivered);
+    context.getMetrics().gauge(DISCOVERY_NOTIFICATIONS_SUPPRESSED, discoveryService::getChangeNotificationsSuppressed);
 
     ZKClient containerZKClient = getContainerZKClient(zkClientService, appRunId, runnableName);
     Configuration conf = new YarnConfiguration(new HdfsConfiguration(new Configuration()));
@@ -127,16 +143,47 @@ public final class TwillContainerMain extends ServiceMain {
                                                               runId, runnableSpec, getClassLoader(), conf,
                                                               createAppLocation(conf, twillRuntimeSpec.getFsUser(),
                                                                                 twillRuntimeSpec.getTwillAppDir()),
-                                                              defaultLogLevels, logLevels);
+                                                              defaultLogLevels, logLevels,
+                                                              twillRuntimeSpec.getMetricsReportIntervalSeconds());
     doMain(
       service,
       zkClientService,
       new LogFlushService(),
       new TwillZKPathService(containerZKClient, runId),
-      new CloseableServiceWrapper(discoveryService)
+      new CloseableServiceWrapper(discoveryService),
+      new CloseableServiceWrapper(zkMetricsBean::cancel)
     );
   }
 
+  /**
+   * Logs the time taken from JVM start until the container main is invoked, together with whether the class data
+   * sharing archive was in use, for comparing the container start time with and without the archive.
+   * The archive is only usable if this JVM is the same as the one that created it.
+   */
+  private static void logJvmStartTime() {
+    RuntimeMXBean runtimeMXBean = ManagementFactory.getRuntimeMXBean();
+    String archive = null;
+    for (String argument : runtimeMXBean.getInputArguments()) {
+      if (argument.startsWith("-XX:SharedArchiveFile=")) {
+        archive = argument.substring("-XX:SharedArchiveFile=".length());
+      }
+    }
+    String archiveVMVersion = System.getProperty(JvmOptions.ClassDataSharingOptions.VM_VERSION_PROPERTY);
+    if (archive != null && archiveVMVersion != null
+      && !new JvmOptions.ClassDataSharingOptions(archive, archiveVMVersion)
+      .isSupported(System.getProperty("java.specification.version"), System.getProperty("java.vm.version"))) {
+      LOG.warn("Class data sharing archive {} created by JVM {} cannot be used by the container JVM {}.",
+               archive, archiveVMVersion, System.getProperty("java.vm.version"));
+      archive = null;
+    }
+    if (archive == null) {
+      LOG.info("Container JVM started in {} ms without class data sharing archive.", runtimeMXBean.getUptime());
+    } else {
+      LOG.info("Container JVM started in {} ms with class data sharing archive {}.",
+               runtimeMXBean.getUptime(), archive);
+    }
+  }
+
   private static void loadSecureStore() throws IOException {
     if (!UserGroupInformation.isSecurityEnabled()) {
       return;
@@ -26,15 +26,20 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.twill.api.Command;
+import org.apache.twill.api.LaunchPhase;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.TwillRunnable;
 import org.apache.twill.api.TwillRunnableSpecification;
 import org.apache.twill.api.logging.LogEntry;
+import org.apache.twill.api.metrics.MetricsRegistry;
 import org.apache.twill.common.Threads;
 import org.apache.twill.filesystem.Location;
 import org.apache.twill.internal.BasicTwillContext;
 import org.apache.twill.internal.ContainerInfo;
 import org.apache.twill.internal.ContainerLiveNodeData;
+import org.apache.twill.internal.LaunchTimeline;
+import org.apache.twill.internal.metrics.DefaultMetricsSnapshot;
+import org.apache.twill.internal.metrics.ProcessCpuGauge;
 import org.apache.twill.internal.state.Message;
 import org.apache.twill.internal.state.SystemMessages;
 import org.apache.twill.internal.utils.Instances;
@@ -51,6 +56,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -64,24 +71,31 @@ public final class TwillContainerService extends AbstractYarnTwillService {
   private final ClassLoader classLoader;
   private final BasicTwillContext context;
   private final ContainerLiveNodeData containerLiveNodeData;
+  private final LaunchTimeline launchTimeline;
+  private final long metricsReportIntervalSeconds;
   private final Map<String, String> oldLogLevels;
   private final Map<String, String> defaultLogLevels;
   private ExecutorService commandExecutor;
+  private ScheduledExecutorService metricsReporter;
   private TwillRunnable runnable;
 
   TwillContainerService(BasicTwillContext context, ContainerInfo containerInfo, ZKClient zkClient,
                         RunId runId, TwillRunnableSpecification specification, ClassLoader classLoader,
                         Configuration config, Location applicationLocation,
-                        Map<String, String> defaultLogLevels, Map<String, String> logLevels) {
+                        Map<String, String> defaultLogLevels, Map<String, String> logLevels,
+                        long metricsReportIntervalSeconds) {
     super(zkClient, runId, config, applicationLocation);
 
     this.specification = specification;
     this.classLoader = classLoader;
     this.defaultLogLevels = ImmutableMap.copyOf(defaultLogLevels);
     this.oldLogLevels = new HashMap<>(defaultLogLevels);
+    this.launchTimeline = LaunchTimeline.forCurrentProcess();
     this.containerLiveNodeData = createLiveNodeData(
       containerInfo, isLoggerContext() ? logLevels : Collections.<String, String>emptyMap());
+    this.containerLiveNodeData.setLaunchTimeline(LaunchTimeline.toNames(launchTimeline.getPhases()));
     this.context = context;
+    this.metricsReportIntervalSeconds = metricsReportIntervalSeconds;
   }
 
   private ContainerLiveNodeData createLiveNodeData(ContainerInfo containerInfo,
@@ -213,8 +227,45 @@ public final class TwillContainerService extends AbstractYarnTwillService {
     Preconditions.checkArgument(TwillRunnable.class.isAssignableFrom(runnableClass),
                                 "Class %s is not instance of TwillRunnable.", specification.getClassName());
 
+    // Registers the CPU gauge before initializing the runnable, so that the runnable can replace it if needed
+    ProcessCpuGauge cpuGauge = ProcessCpuGauge.create(context.getVirtualCores());
+    if (cpuGauge != null) {
+      context.getMetrics().gauge(MetricsRegistry.CPU_PERCENT, cpuGauge);
+    }
+
     runnable = Instances.newInstance((Class<TwillRunnable>) runnableClass);
+    launchTimeline.mark(LaunchPhase.INITIALIZE_STARTED);
     runnable.initialize(context);
+    launchTimeline.mark(LaunchPhase.RUNNING);
+
+    containerLiveNodeData.setLaunchTimeline(LaunchTimeline.toNames(launchTimeline.getPhases()));
+    updateLiveNode();
+    LOG.info("Runnable {} started with launch timeline {}", specification.getName(), launchTimeline);
+
+    metricsReporter = Executors.newSingleThreadScheduledExecutor(
+      Threads.createDaemonThreadFactory("runnable-metrics-reporter"));
+    metricsReporter.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          reportMetrics();
+        } catch (Throwable t) {
+          LOG.warn("Failed to report metrics", t);
+        }
+      }
+    }, metricsReportIntervalSeconds, metricsReportIntervalSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Publishes the metrics of the runnable through the live node if they have changed since last published.
+   */
+  private synchronized void reportMetrics() {
+    DefaultMetricsSnapshot snapshot = context.getMetrics().snapshot();
+    if (snapshot.equals(containerLiveNodeData.getMetrics())) {
+      return;
+    }
+    containerLiveNodeData.setMetrics(snapshot);
+    updateLiveNode();
   }
 
   @Override
@@ -225,6 +276,9 @@ public final class TwillContainerService extends AbstractYarnTwillService {
   @Override
   protected void doStop() throws Exception {
     commandExecutor.shutdownNow();
+    if (metricsReporter != null) {
+      metricsReporter.shutdownNow();
+    }
     try {
       runnable.destroy();
     } catch (Throwable t) {
@@ -233,6 +287,12 @@ public final class TwillContainerService extends AbstractYarnTwillService {
       LOG.warn("Exception when calling runnable.destroy.", t);
     } finally {
       context.stop();
+      // Publish the final metrics before the live node is removed
+      try {
+        reportMetrics();
+      } catch (Throwable t) {
+        LOG.warn("Failed to report metrics on stop", t);
+      }
     }
   }
 
@@ -7,7 +7,7 @@
  * "License"); you may not use this file except in compliance
  * with the License.  You may obtain a copy of the License at
  *
- *      http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.apache.org/licenses/LICENSE-2.0
  *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
@@ -24,38 +24,76 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.twill.api.Configs;
 import org.apache.twill.common.Threads;
 import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationStatus;
+import org.apache.twill.filesystem.LocationStatusStream;
 import org.apache.twill.internal.io.LocationCache;
+import org.apache.twill.internal.io.LocationCacheManifest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 /**
  * Responsible for cleanup of {@link LocationCache}.
+ * <p/>
+ * Each cache directory under the cache base location belongs to one session of {@link YarnTwillRunnerService}.
+ * The entries of a cache directory are read from its {@link LocationCacheManifest}, which is only re-read
+ * when the modification time of the directory changes. Cache directories without a manifest are listed instead.
+ * Locations pending for cleanup are kept in a queue ordered by expire time, so that each cleanup cycle only
+ * touches the expired locations. Deletions of locations of the current session are reported to the removal
+ * listener, so that the cache can drop them from its manifest.
  */
 final class LocationCacheCleaner extends AbstractIdleService {
 
   private static final Logger LOG = LoggerFactory.getLogger(LocationCacheCleaner.class);
 
+  // Some file systems only have second granularity for the modification time. A cache directory modified within
+  // this period before the last refresh is refreshed again even if the modification time is unchanged.
+  private static final long MODIFICATION_TIME_GRANULARITY_MS = 2000L;
+
   private final Location cacheBaseLocation;
   private final String sessionId;
   private final long expiry;
   private final long antiqueExpiry;
   private final Predicate<Location> cleanupPredicate;
-  private final Set<PendingCleanup> pendingCleanups;
+  private final Consumer<Location> removalListener;
+  // Locations pending for cleanup ordered by expire time. When the expire time of a location is updated,
+  // a new entry is added to the queue and the old one is skipped when polled, as the expire time in
+  // pendingExpireTimes is authoritative.
+  private final PriorityQueue<PendingCleanup> pendingCleanups;
+  private final Map<Location, Long> pendingExpireTimes;
+  private final Map<String, CacheSession> sessions;
   private ScheduledExecutorService scheduler;
 
   LocationCacheCleaner(Configuration config, Location cacheBaseLocation,
                        String sessionId, Predicate<Location> cleanupPredicate) {
+    this(config, cacheBaseLocation, sessionId, cleanupPredicate, location -> { });
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param config the configuration for the expiry times
+   * @param cacheBaseLocation the base location that contains the cache directories of all sessions
+   * @param sessionId the id of the current session, which is the name of its cache directory
+   * @param cleanupPredicate predicate to tell whether a location can be deleted
+   * @param removalListener called with each location of the current session that is deleted
+   */
+  LocationCacheCleaner(Configuration config, Location cacheBaseLocation, String sessionId,
+                       Predicate<Location> cleanupPredicate, Consumer<Location> removalListener) {
     this.cacheBaseLocation = cacheBaseLocation;
     this.sessionId = sessionId;
     this.expiry = config.getLong(Configs.Keys.LOCATION_CACHE_EXPIRY_MS,
@@ -63,7 +101,15 @@ final class LocationCacheCleaner extends AbstractIdleService {
     this.antiqueExpiry = config.getLong(Configs.Keys.LOCATION_CACHE_ANTIQUE_EXPIRY_MS,
                                         Configs.Defaults.LOCATION_CACHE_ANTIQUE_EXPIRY_MS);
     this.cleanupPredicate = cleanupPredicate;
-    this.pendingCleanups = new HashSet<>();
+    this.removalListener = removalListener;
+    this.pendingCleanups = new PriorityQueue<>(11, new Comparator<PendingCleanup>() {
+      @Override
+      public int compare(PendingCleanup o1, PendingCleanup o2) {
+        return Long.compare(o1.getExpireTime(), o2.getExpireTime());
+      }
+    });
+    this.pendingExpireTimes = new HashMap<>();
+    this.sessions = new HashMap<>();
   }
 
   @Override
@@ -77,11 +123,10 @@ final class LocationCacheCleaner extends AbstractIdleService {
 
         // By default, run the cleanup at half of the expiry
         long scheduleDelay = expiry / 2;
-        for (PendingCleanup pendingCleanup : pendingCleanups) {
-          // If there is any pending cleanup that needs to be cleanup early, schedule the run earlier.
-          if (pendingCleanup.getExpireTime() - currentTime < scheduleDelay) {
-            scheduleDelay = pendingCleanup.getExpireTime() - currentTime;
-          }
+        PendingCleanup nextCleanup = pendingCleanups.peek();
+        // If there is any pending cleanup that needs to be cleanup early, schedule the run earlier.
+        if (nextCleanup != null && nextCleanup.getExpireTime() - currentTime < scheduleDelay) {
+          scheduleDelay = nextCleanup.getExpireTime() - currentTime;
         }
         scheduler.schedule(this, scheduleDelay, TimeUnit.MILLISECONDS);
       }
@@ -103,58 +148,168 @@ final class LocationCacheCleaner extends AbstractIdleService {
    */
   @VisibleForTesting
   void cleanup(long currentTime) {
-    // First go through the pending cleanup list and remove those that can be removed
-    Iterator<PendingCleanup> iterator = pendingCleanups.iterator();
-    while (iterator.hasNext()) {
-      PendingCleanup pendingCleanup = iterator.next();
+    // First update the pending cleanups from the cache directories that were modified
+    refreshSessions(currentTime);
 
-      // If rejected by the predicate, it means it is being used, hence remove it from the pending cleanup list.
-      if (!cleanupPredicate.test(pendingCleanup.getLocation())) {
-        iterator.remove();
-      } else {
-        try {
-          // If time is up for the pending entry, the location will be deleted,
-          // hence can be removed from the pending cleanup list.
-          // Otherwise retain it for the next cycle.
-          if (pendingCleanup.deleteIfExpired(currentTime)) {
-            iterator.remove();
+    // Then delete the expired locations, which are at the head of the queue
+    PendingCleanup pendingCleanup = pendingCleanups.peek();
+    while (pendingCleanup != null && pendingCleanup.getExpireTime() <= currentTime) {
+      pendingCleanups.poll();
+      Location location = pendingCleanup.getLocation();
+      CacheSession session = pendingCleanup.getSession();
+      Long expireTime = pendingExpireTimes.get(location);
+
+      if (expireTime != null && expireTime == pendingCleanup.getExpireTime()) {
+        if (!cleanupPredicate.test(location)) {
+          // If rejected by the predicate, it means it is being used, hence check it again after the expiry.
+          schedule(session, location, computeExpiry(currentTime, session.getExpiry()));
+        } else {
+          try {
+            if (location.delete()) {
+              LOG.debug("Cached location removed {}", location);
+            } else {
+              // It's ok to have delete returns false, e.g. if the location is removed by some other process
+              LOG.debug("Failed to delete cached location {}", location);
+            }
+            pendingExpireTimes.remove(location);
+            session.removePending(location);
+            if (session.isCurrent()) {
+              removalListener.accept(location);
+            }
+            if (!session.isCurrent() && !session.hasPending()) {
+              deleteSession(session);
+            }
+          } catch (IOException e) {
+            // Log and retry the deletion in the next cleanup cycle
+            LOG.warn("Failed to delete {}", location, e);
+            schedule(session, location, computeExpiry(currentTime, expiry / 2));
           }
-        } catch (IOException e) {
-          // Log and retain the entry so that another attempt on deletion will be made in next cleanup cycle
-          LOG.warn("Failed to delete {}", pendingCleanup.getLocation(), e);
         }
       }
+      pendingCleanup = pendingCleanups.peek();
     }
+  }
 
-    // Then collects the next set of locations to be removed
-    try {
-      for (Location cacheDir : cacheBaseLocation.list()) {
-        try {
-          boolean currentSession = cacheDir.getName().equals(sessionId);
-          List<Location> entries = cacheDir.list();
-          if (!currentSession && entries.isEmpty()) {
-            // Delete empty directory of old session
+  /**
+   * Lists the cache directories and refreshes the pending cleanups from the ones that were modified since
+   * the last refresh.
+   */
+  private void refreshSessions(long currentTime) {
+    Set<String> sessionNames = new HashSet<>();
+    try (LocationStatusStream cacheDirs = cacheBaseLocation.listStatus()) {
+      for (LocationStatus cacheDirStatus : cacheDirs) {
+        Location cacheDir = cacheDirStatus.getLocation();
+        String name = cacheDir.getName();
+        boolean currentSession = name.equals(sessionId);
+        if (!cacheDirStatus.isDirectory()) {
+          if (!currentSession) {
             cacheDir.delete();
-            continue;
           }
+          continue;
+        }
 
+        sessionNames.add(name);
+        CacheSession session = sessions.get(name);
+        if (session == null) {
           // If the cache entry is from different YarnTwillRunnerService session, use the anti expiry time.
-          long expireTime = computeExpiry(currentTime, currentSession ? expiry : antiqueExpiry);
-          for (Location location : entries) {
-            if (cleanupPredicate.test(location)) {
-              // If the location is already pending for cleanup, this won't update the expire time as
-              // the comparison of PendingCleanup is only by location.
-              if (pendingCleanups.add(new PendingCleanup(location, expireTime))) {
-                LOG.debug("Pending deletion of location {} with expiration time at {}", location, expireTime);
-              }
-            }
-          }
-        } catch (IOException e) {
-          LOG.warn("Failed to list cache content from {}", cacheDir, e);
+          session = new CacheSession(cacheDir, currentSession, currentSession ? expiry : antiqueExpiry);
+          sessions.put(name, session);
+        }
+        if (!session.isModified(cacheDirStatus.getLastModified())) {
+          continue;
+        }
+        long refreshTime = System.currentTimeMillis();
+        try {
+          refreshSession(session, currentTime);
+          session.setRefreshed(cacheDirStatus.getLastModified(), refreshTime);
+        } catch (IOException | UncheckedIOException e) {
+          LOG.warn("Failed to read cache content from {}", cacheDir, e);
         }
       }
-    } catch (IOException e) {
+    } catch (IOException | UncheckedIOException e) {
       LOG.warn("Failed to list cache directories from {}", cacheBaseLocation, e);
+      return;
+    }
+
+    // Forget about the cache directories that no longer exist
+    Iterator<Map.Entry<String, CacheSession>> iterator = sessions.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, CacheSession> entry = iterator.next();
+      if (!sessionNames.contains(entry.getKey())) {
+        for (Location location : entry.getValue().getPending()) {
+          pendingExpireTimes.remove(location);
+        }
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Adds the entries of the given cache directory to the pending cleanups. Entries in the manifest expire based on
+   * their last use time. For cache directory without manifest, its entries are listed and expire based on the
+   * current time. The directory is deleted if it is empty and is not from the current session.
+   */
+  private void refreshSession(CacheSession session, long currentTime) throws IOException {
+    Location cacheDir = session.getDirectory();
+    Map<String, LocationCacheManifest.Entry> manifest = LocationCacheManifest.read(cacheDir);
+    if (manifest != null) {
+      // Forget about the entries that were dropped from the manifest
+      session.retainLastUseTimes(manifest.keySet());
+      for (LocationCacheManifest.Entry entry : manifest.values()) {
+        Location location = cacheDir.append(entry.getName());
+        // Only update the expire time if the entry was used since the last refresh
+        if (session.updateLastUseTime(location, entry.getLastUseTime())) {
+          schedule(session, location, computeExpiry(entry.getLastUseTime(), session.getExpiry()));
+        }
+      }
+      if (!session.isCurrent() && !session.hasPending()) {
+        deleteSession(session);
+      }
+      return;
+    }
+
+    boolean empty = true;
+    try (LocationStatusStream entries = cacheDir.listStatus()) {
+      for (LocationStatus entry : entries) {
+        empty = false;
+        Location location = entry.getLocation();
+        // If the location is already pending for cleanup, this won't update the expire time.
+        if (!pendingExpireTimes.containsKey(location)) {
+          schedule(session, location, computeExpiry(currentTime, session.getExpiry()));
+        }
+      }
+    }
+    if (!session.isCurrent() && empty) {
+      // Delete empty directory of old session
+      cacheDir.delete();
+    }
+  }
+
+  /**
+   * Schedules the given location to be cleaned up at the given expire time.
+   */
+  private void schedule(CacheSession session, Location location, long expireTime) {
+    Long oldExpireTime = pendingExpireTimes.put(location, expireTime);
+    if (oldExpireTime == null || oldExpireTime != expireTime) {
+      pendingCleanups.add(new PendingCleanup(session, location, expireTime));
+      LOG.debug("Pending deletion of location {} with expiration time at {}", location, expireTime);
+    }
+    session.addPending(location);
+  }
+
+  /**
+   * Deletes the cache directory of an old session, which has no more pending cleanup.
+   */
+  private void deleteSession(CacheSession session) {
+    Location cacheDir = session.getDirectory();
+    try {
+      cacheDir.append(LocationCacheManifest.NAME).delete();
+      // Non-recursive delete, so that the directory is retained if something was added to it after the refresh.
+      if (cacheDir.delete()) {
+        LOG.debug("Cache directory removed {}", cacheDir);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to delete cache directory {}", cacheDir, e);
     }
   }
 
@@ -166,59 +321,115 @@ final class LocationCacheCleaner extends AbstractIdleService {
   }
 
   /**
-   * Class for holding information about cache location that is pending to be removed.
-   * The equality and hash code is only based on the location.
+   * Class for holding information about a cache directory of a session.
    */
-  private static final class PendingCleanup {
-    private final Location location;
-    private final long expireTime;
+  private static final class CacheSession {
+    private final Location directory;
+    private final boolean current;
+    private final long expiry;
+    private final Set<Location> pending;
+    private final Map<Location, Long> lastUseTimes;
+    private long lastModified;
+    private long lastRefreshTime;
 
-    PendingCleanup(Location location, long expireTime) {
-      this.location = location;
-      this.expireTime = expireTime;
+    CacheSession(Location directory, boolean current, long expiry) {
+      this.directory = directory;
+      this.current = current;
+      this.expiry = expiry;
+      this.pending = new HashSet<>();
+      this.lastUseTimes = new HashMap<>();
+      this.lastModified = -1L;
+      this.lastRefreshTime = -1L;
     }
 
-    Location getLocation() {
-      return location;
+    Location getDirectory() {
+      return directory;
     }
 
-    long getExpireTime() {
-      return expireTime;
+    boolean isCurrent() {
+      return current;
+    }
+
+    long getExpiry() {
+      return expiry;
+    }
+
+    Set<Location> getPending() {
+      return pending;
+    }
+
+    boolean hasPending() {
+      return !pending.isEmpty();
+    }
+
+    void addPending(Location location) {
+      pending.add(location);
+    }
+
+    void removePending(Location location) {
+      pending.remove(location);
     }
 
     /**
-     * Deletes the location in this class if it is expired according to the given current time.
+     * Updates the last use time of the given location.
      *
-     * @return true if expired and attempt was made to delete the location
+     * @return {@code true} if the last use time is different from the previous one
      */
-    boolean deleteIfExpired(long currentTime) throws IOException {
-      if (currentTime < expireTime) {
-        return false;
-      }
-      if (location.delete()) {
-        LOG.debug("Cached location removed {}", location);
-      } else {
-        // It's ok to have delete returns false, e.g. if the location is removed by some other process
-        LOG.debug("Failed to delete cached location {}", location);
-      }
-      return true;
+    boolean updateLastUseTime(Location location, long lastUseTime) {
+      Long oldLastUseTime = lastUseTimes.put(location, lastUseTime);
+      return oldLastUseTime == null || oldLastUseTime != lastUseTime;
     }
 
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null || getClass() != o.getClass()) {
-        return false;
+    /**
+     * Retains only the last use times of the entries with the given names.
+     */
+    void retainLastUseTimes(Set<String> names) {
+      Iterator<Location> iterator = lastUseTimes.keySet().iterator();
+      while (iterator.hasNext()) {
+        if (!names.contains(iterator.next().getName())) {
+          iterator.remove();
+        }
       }
-      PendingCleanup that = (PendingCleanup) o;
-      return location.equals(that.location);
     }
 
-    @Override
-    public int hashCode() {
-      return Objects.hash(location);
+    /**
+     * Returns {@code true} if the directory needs to be refreshed based on the given modification time.
+     */
+    boolean isModified(long modificationTime) {
+      return lastRefreshTime < 0 || modificationTime != lastModified
+        || modificationTime >= lastRefreshTime - MODIFICATION_TIME_GRANULARITY_MS;
+    }
+
+    void setRefreshed(long modificationTime, long refreshTime) {
+      this.lastModified = modificationTime;
+      this.lastRefreshTime = refreshTime;
+    }
+  }
+
+  /**
+   * Class for holding information about cache location that is pending to be removed.
+   */
+  private static final class PendingCleanup {
+    private final CacheSession session;
+    private final Location location;
+    private final long expireTime;
+
+    PendingCleanup(CacheSession session, Location location, long expireTime) {
+      this.session = session;
+      this.location = location;
+      this.expireTime = expireTime;
+    }
+
+    CacheSession getSession() {
+      return session;
+    }
+
+    Location getLocation() {
+      return location;
+    }
+
+    long getExpireTime() {
+      return expireTime;
     }
   }
 }
@@ -17,7 +17,11 @@
  */
 package org.apache.twill.yarn;
 
+import com.google.common.base.Function;
 import org.apache.twill.api.ResourceReport;
+import org.apache.twill.api.metrics.MetricsSnapshot;
+import org.apache.twill.internal.appmaster.TrackerService;
+import org.apache.twill.internal.json.MetricsReportAdapter;
 import org.apache.twill.internal.json.ResourceReportAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,33 +31,67 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.DeflaterInputStream;
 import java.util.zip.GZIPInputStream;
+import javax.annotation.Nullable;
 
 /**
- * Package private class to get {@link ResourceReport} from the application master.
+ * Package private class to get {@link ResourceReport} and metrics from the application master.
  */
 final class ResourceReportClient {
   private static final Logger LOG = LoggerFactory.getLogger(ResourceReportClient.class);
 
   private final ResourceReportAdapter reportAdapter;
-  private final List<URL> resourceUrls;
+  private final MetricsReportAdapter metricsAdapter;
+  private final List<URL> trackerUrls;
 
-  ResourceReportClient(List<URL> resourceUrls) {
-    this.resourceUrls = resourceUrls;
+  /**
+   * Creates an instance that fetches from the given tracker service base URLs, in order, until one succeeded.
+   */
+  ResourceReportClient(List<URL> trackerUrls) {
+    this.trackerUrls = trackerUrls;
     this.reportAdapter = ResourceReportAdapter.create();
+    this.metricsAdapter = MetricsReportAdapter.create();
   }
 
   /**
    * Returns the resource usage of the application fetched from the resource endpoint URL.
    * @return A {@link ResourceReport} or {@code null} if failed to fetch the report.
    */
+  @Nullable
   public ResourceReport get() {
-    for (URL url : resourceUrls) {
+    return fetch(TrackerService.PATH, new Function<Reader, ResourceReport>() {
+      @Override
+      public ResourceReport apply(Reader reader) {
+        return reportAdapter.fromJson(reader);
+      }
+    });
+  }
+
+  /**
+   * Returns the metrics of the application fetched from the metrics endpoint URL.
+   * @return A {@link Map} from runnable name to metrics or {@code null} if failed to fetch the metrics.
+   */
+  @Nullable
+  public Map<String, MetricsSnapshot> getMetrics() {
+    return fetch(TrackerService.METRICS_PATH, new Function<Reader, Map<String, MetricsSnapshot>>() {
+      @Override
+      public Map<String, MetricsSnapshot> apply(Reader reader) {
+        return metricsAdapter.fromJson(reader);
+      }
+    });
+  }
+
+  @Nullable
+  private <T> T fetch(String path, Function<Reader, T> decoder) {
+    for (URL trackerUrl : trackerUrls) {
       try {
+        URL url = resolve(trackerUrl, path);
         HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
         urlConn.setRequestProperty("Accept-Encoding", "gzip, deflate");
 
@@ -63,16 +101,23 @@ final class ResourceReportClient {
 
         try (Reader reader = new InputStreamReader(getInputStream(urlConn), StandardCharsets.UTF_8)) {
           LOG.trace("Report returned by {}", url);
-          return reportAdapter.fromJson(reader);
+          return decoder.apply(reader);
         }
       } catch (IOException e) {
         // Just log a trace as it's ok to not able to fetch resource report
-        LOG.trace("Exception raised when getting resource report from {}.", url, e);
+        LOG.trace("Exception raised when getting {} from {}.", path, trackerUrl, e);
       }
     }
     return null;
   }
 
+  private URL resolve(URL trackerUrl, String path) throws MalformedURLException {
+    String basePath = trackerUrl.getPath();
+    if (basePath.endsWith("/")) {
+      basePath = basePath.substring(0, basePath.length() - 1);
+    }
+    return new URL(trackerUrl.getProtocol(), trackerUrl.getHost(), trackerUrl.getPort(), basePath + path);
+  }
   private InputStream getInputStream(HttpURLConnection urlConn) throws IOException {
     InputStream is = urlConn.getInputStream();
     String contentEncoding = urlConn.getContentEncoding();
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.yarn;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.api.RunId;
+import org.apache.twill.internal.metrics.DefaultMetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renews the {@link org.apache.twill.api.SecureStore} of one application run. On failure, it is rescheduled with
+ * exponential backoff until the maximum number of attempts is reached.
+ * <p/>
+ * Per application metrics are recorded to the given {@link DefaultMetricsRegistry}. They should be removed
+ * with {@link #removeMetrics(DefaultMetricsRegistry, String)} once the application is no longer running.
+ */
+final class SecureStoreRenewalTask implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SecureStoreRenewalTask.class);
+
+  static final String LAG = "secure.store.renewal.lag.";
+  static final String RETRIES = "secure.store.renewal.retries.";
+  static final String FAILURES = "secure.store.renewal.failures.";
+
+  private final String application;
+  private final RunId runId;
+  private final Callable<?> renewal;
+  private final ScheduledExecutorService executor;
+  private final DefaultMetricsRegistry metrics;
+  private final int maxAttempts;
+  private final long baseDelayMillis;
+  private final long dueTime;
+  private final SettableFuture<Void> result;
+  private int attempts;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param application name of the application
+   * @param runId {@link RunId} of the application run
+   * @param renewal the renewal action to perform on each attempt
+   * @param executor the {@link ScheduledExecutorService} for running and rescheduling the renewal
+   * @param metrics the {@link DefaultMetricsRegistry} for recording metrics
+   * @param maxAttempts maximum number of attempts
+   * @param baseDelayMillis delay in milliseconds before the first retry. It is doubled on each subsequent retry.
+   * @param dueTime the time in milliseconds when the renewal is due, for computing the renewal lag
+   */
+  SecureStoreRenewalTask(String application, RunId runId, Callable<?> renewal, ScheduledExecutorService executor,
+                         DefaultMetricsRegistry metrics, int maxAttempts, long baseDelayMillis, long dueTime) {
+    this.application = application;
+    this.runId = runId;
+    this.renewal = renewal;
+    this.executor = executor;
+    this.metrics = metrics;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.baseDelayMillis = baseDelayMillis;
+    this.dueTime = dueTime;
+    this.result = SettableFuture.create();
+  }
+
+  /**
+   * Removes the metrics of the given application from the given registry.
+   */
+  static void removeMetrics(DefaultMetricsRegistry metrics, String application) {
+    metrics.remove(LAG + application);
+    metrics.remove(RETRIES + application);
+    metrics.remove(FAILURES + application);
+  }
+
+  /**
+   * Starts the renewal.
+   *
+   * @return a {@link ListenableFuture} that completes when the renewal succeeded or failed after all attempts
+   */
+  ListenableFuture<Void> start() {
+    try {
+      executor.execute(this);
+    } catch (RejectedExecutionException e) {
+      result.setException(e);
+    }
+    return result;
+  }
+
+  @Override
+  public void run() {
+    if (result.isDone()) {
+      return;
+    }
+    attempts++;
+    try {
+      renewal.call();
+      metrics.timer(LAG + application).record(System.currentTimeMillis() - dueTime, TimeUnit.MILLISECONDS);
+      result.set(null);
+    } catch (Exception e) {
+      if (attempts >= maxAttempts) {
+        LOG.warn("Failed to renew secure store for {}:{} after {} attempts", application, runId, attempts, e);
+        metrics.counter(FAILURES + application).increment();
+        result.setException(e);
+        return;
+      }
+
+      long delay = baseDelayMillis << (attempts - 1);
+      LOG.debug("Failed to renew secure store for {}:{}. Retry in {} ms", application, runId, delay, e);
+      metrics.counter(RETRIES + application).increment();
+      try {
+        executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException ree) {
+        result.setException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.yarn;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the applications that have the secure store updated during a renewal round and sends the
+ * {@link org.apache.twill.internal.state.SystemMessages#SECURE_STORE_UPDATED} message to them.
+ * <p/>
+ * Notifications are coalesced per renewal round. An application is notified at most once per round, even if
+ * its secure store is written multiple times, for example by a renewer that writes more than once or by renewal
+ * attempts that are retried. All pending notifications are sent together when {@link #flush()} is called at the
+ * end of the round.
+ *
+ * @param <T> type of the notification target
+ */
+final class SecureStoreUpdateNotifier<T> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SecureStoreUpdateNotifier.class);
+
+  private final Function<T, ? extends ListenableFuture<?>> sender;
+  private final Set<T> pending;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param sender function to send the notification to one target
+   */
+  SecureStoreUpdateNotifier(Function<T, ? extends ListenableFuture<?>> sender) {
+    this.sender = sender;
+    this.pending = new LinkedHashSet<>();
+  }
+
+  /**
+   * Adds a target to be notified on the next {@link #flush()}.
+   */
+  synchronized void add(T target) {
+    pending.add(target);
+  }
+
+  /**
+   * Sends notification to all pending targets.
+   *
+   * @return a {@link ListenableFuture} that completes when all notifications sent in this flush are completed
+   */
+  synchronized ListenableFuture<?> flush() {
+    final int size = pending.size();
+    List<ListenableFuture<?>> futures = new ArrayList<>(size);
+    for (T target : pending) {
+      futures.add(sender.apply(target));
+    }
+    pending.clear();
+
+    ListenableFuture<List<Object>> future = Futures.successfulAsList(futures);
+    if (size > 0) {
+      Futures.addCallback(future, new FutureCallback<List<Object>>() {
+        @Override
+        public void onSuccess(List<Object> result) {
+          LOG.debug("Secure store updated notification sent to {} applications.", size);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          LOG.warn("Failed to send secure store updated notification.", t);
+        }
+      });
+    }
+    return future;
+  }
+}
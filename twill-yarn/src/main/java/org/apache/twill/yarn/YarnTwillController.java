@@ -29,11 +29,11 @@ import org.apache.twill.api.ResourceReport;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.TwillController;
 import org.apache.twill.api.logging.LogHandler;
+import org.apache.twill.api.metrics.MetricsSnapshot;
 import org.apache.twill.internal.AbstractTwillController;
 import org.apache.twill.internal.Constants;
 import org.apache.twill.internal.ProcessController;
 import org.apache.twill.internal.appmaster.ApplicationMasterLiveNodeData;
-import org.apache.twill.internal.appmaster.TrackerService;
 import org.apache.twill.internal.state.SystemMessages;
 import org.apache.twill.internal.yarn.YarnAppClient;
 import org.apache.twill.internal.yarn.YarnApplicationReport;
@@ -49,6 +49,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -339,8 +340,18 @@ final class YarnTwillController extends AbstractTwillController implements Twill
     return (resourcesClient == null) ? null : resourcesClient.get();
   }
 
+  @Override
+  public Map<String, MetricsSnapshot> getMetrics() {
+    // Only has metrics if the app is running.
+    if (state() != State.RUNNING) {
+      return null;
+    }
+    ResourceReportClient resourcesClient = getResourcesClient();
+    return (resourcesClient == null) ? null : resourcesClient.getMetrics();
+  }
+
   /**
-   * Returns the {@link ResourceReportClient} for fetching resource report from the AM.
+   * Returns the {@link ResourceReportClient} for fetching resource report and metrics from the AM.
    * It first consults the RM for the tracking URL and get the resource report from there.
    */
   @Nullable
@@ -353,13 +364,7 @@ final class YarnTwillController extends AbstractTwillController implements Twill
     for (String url : Arrays.asList(report.getTrackingUrl(), report.getOriginalTrackingUrl())) {
       if (url != null && !url.equals("N/A")) {
         try {
-          URL trackingUrl = new URL(url);
-          String path = trackingUrl.getPath();
-          if (path.endsWith("/")) {
-            path = path.substring(0, path.length() - 1);
-          }
-          urls.add(new URL(trackingUrl.getProtocol(), trackingUrl.getHost(),
-                           trackingUrl.getPort(), path + TrackerService.PATH));
+          urls.add(new URL(url));
         } catch (MalformedURLException e) {
           LOG.debug("Invalid tracking URL {} from YARN application report for {}:{}", url, appName, getRunId());
         }
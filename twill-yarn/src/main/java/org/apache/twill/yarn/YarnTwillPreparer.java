@@ -22,6 +22,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -32,6 +33,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
@@ -48,6 +50,7 @@ import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.twill.api.ClassAcceptor;
 import org.apache.twill.api.Configs;
 import org.apache.twill.api.EventHandlerSpecification;
+import org.apache.twill.api.LaunchPhase;
 import org.apache.twill.api.LocalFile;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.RuntimeSpecification;
@@ -57,7 +60,10 @@ import org.apache.twill.api.TwillPreparer;
 import org.apache.twill.api.TwillSpecification;
 import org.apache.twill.api.logging.LogEntry;
 import org.apache.twill.api.logging.LogHandler;
+import org.apache.twill.filesystem.LocalLocationFactory;
 import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
+import org.apache.twill.filesystem.Locations;
 import org.apache.twill.internal.ApplicationBundler;
 import org.apache.twill.internal.Arguments;
 import org.apache.twill.internal.Constants;
@@ -66,6 +72,7 @@ import org.apache.twill.internal.DefaultRuntimeSpecification;
 import org.apache.twill.internal.DefaultTwillSpecification;
 import org.apache.twill.internal.EnvKeys;
 import org.apache.twill.internal.JvmOptions;
+import org.apache.twill.internal.LaunchTimeline;
 import org.apache.twill.internal.LogOnlyEventHandler;
 import org.apache.twill.internal.ProcessController;
 import org.apache.twill.internal.ProcessLauncher;
@@ -84,25 +91,31 @@ import org.apache.twill.internal.yarn.VersionDetectYarnAppClientFactory;
 import org.apache.twill.internal.yarn.YarnAppClient;
 import org.apache.twill.internal.yarn.YarnApplicationReport;
 import org.apache.twill.internal.yarn.YarnUtils;
+import org.apache.twill.launcher.ClassDataSharingTrainer;
 import org.apache.twill.launcher.FindFreePort;
 import org.apache.twill.launcher.TwillLauncher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -112,6 +125,7 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -388,6 +402,8 @@ final class YarnTwillPreparer implements TwillPreparer {
         new Callable<ProcessController<YarnApplicationReport>>() {
           @Override
           public ProcessController<YarnApplicationReport> call() throws Exception {
+            LaunchTimeline launchTimeline = new LaunchTimeline().mark(LaunchPhase.PREPARE_STARTED);
+
             // Local files needed by AM
             Map<String, LocalFile> localFiles = Maps.newHashMap();
 
@@ -395,6 +411,7 @@ final class YarnTwillPreparer implements TwillPreparer {
             createTwillJar(createBundler(classAcceptor), yarnAppClient, localFiles);
             createApplicationJar(createBundler(classAcceptor), localFiles);
             createResourcesJar(createBundler(classAcceptor), localFiles);
+            JvmOptions.ClassDataSharingOptions cdsOptions = createClassDataSharingArchive(localFiles);
 
             TwillRuntimeSpecification twillRuntimeSpec;
             JvmOptions jvmOptions;
@@ -404,7 +421,7 @@ final class YarnTwillPreparer implements TwillPreparer {
               twillRuntimeSpec = saveSpecification(twillSpec, runtimeConfigDir.resolve(Constants.Files.TWILL_SPEC));
               saveLogback(runtimeConfigDir.resolve(Constants.Files.LOGBACK_TEMPLATE));
               saveClassPaths(runtimeConfigDir);
-              jvmOptions = saveJvmOptions(runtimeConfigDir.resolve(Constants.Files.JVM_OPTIONS));
+              jvmOptions = saveJvmOptions(runtimeConfigDir.resolve(Constants.Files.JVM_OPTIONS), cdsOptions);
               saveArguments(new Arguments(arguments, runnableArgs),
                             runtimeConfigDir.resolve(Constants.Files.ARGUMENTS));
               saveEnvironments(runtimeConfigDir.resolve(Constants.Files.ENVIRONMENTS));
@@ -414,6 +431,7 @@ final class YarnTwillPreparer implements TwillPreparer {
             }
 
             createLocalizeFilesJson(localFiles);
+            launchTimeline.mark(LaunchPhase.BUNDLE_COMPLETED);
 
             LOG.debug("Submit AM container spec: {}", appMasterInfo);
             // java -Djava.io.tmpdir=tmp -cp launcher.jar:$HADOOP_CONF_DIR -XmxMemory
@@ -424,8 +442,11 @@ final class YarnTwillPreparer implements TwillPreparer {
             int memory = Resources.computeMaxHeapSize(appMasterInfo.getMemoryMB(),
                                                       twillRuntimeSpec.getAMReservedMemory(),
                                                       twillRuntimeSpec.getAMMinHeapRatio());
-            return launcher.prepareLaunch(ImmutableMap.<String, String>of(), localFiles.values(),
-                                          createSubmissionCredentials())
+            Credentials submissionCredentials = createSubmissionCredentials();
+            launchTimeline.mark(LaunchPhase.SUBMITTED);
+            LOG.debug("Launch timeline before submission: {}", launchTimeline);
+            return launcher.prepareLaunch(ImmutableMap.of(EnvKeys.TWILL_LAUNCH_TIMELINE, launchTimeline.encode()),
+                                          localFiles.values(), submissionCredentials)
               .addCommand(
                 "$JAVA_HOME/bin/java",
                 "-Djava.io.tmpdir=tmp",
@@ -625,6 +646,173 @@ final class YarnTwillPreparer implements TwillPreparer {
     localFiles.put(Constants.Files.RESOURCES_JAR, createLocalFile(Constants.Files.RESOURCES_JAR, location, true));
   }
 
+  /**
+   * Creates the class data sharing archive for the runnable containers if it is enabled. The archive is created by
+   * a training run of the container classpath with the local JVM.
+   *
+   * @return the {@link JvmOptions.ClassDataSharingOptions} for using the archive in the runnable containers or
+   *         {@code null} if no archive was created
+   */
+  @Nullable
+  private JvmOptions.ClassDataSharingOptions createClassDataSharingArchive(Map<String, LocalFile> localFiles) {
+    if (!config.getBoolean(Configs.Keys.JAVA_CDS_ENABLED, Configs.Defaults.JAVA_CDS_ENABLED)) {
+      return null;
+    }
+    String javaSpecVersion = System.getProperty("java.specification.version");
+    if (!JvmOptions.ClassDataSharingOptions.isDynamicArchiveSupported(javaSpecVersion)) {
+      LOG.warn("Class data sharing archive is not supported by Java {}. No archive is created.", javaSpecVersion);
+      return null;
+    }
+
+    final LocalFile launcherJar = localFiles.get(Constants.Files.LAUNCHER_JAR);
+    final LocalFile twillJar = localFiles.get(Constants.Files.TWILL_JAR);
+    final LocalFile applicationJar = localFiles.get(Constants.Files.APPLICATION_JAR);
+
+    // The archive content depends on the jars being trained on as well as the JVM that creates it
+    String vmVersion = System.getProperty("java.vm.version");
+    Hasher hasher = Hashing.md5().newHasher();
+    for (LocalFile localFile : Arrays.asList(launcherJar, twillJar, applicationJar)) {
+      hasher.putString(localFile.getURI().toString()).putLong(localFile.getLastModified());
+    }
+    hasher.putString(vmVersion);
+    String name = hasher.hash().toString() + "-" + Constants.Files.CDS_ARCHIVE;
+
+    LOG.debug("Create and copy {}", Constants.Files.CDS_ARCHIVE);
+    Location location;
+    try {
+      location = locationCache.get(name, new LocationCache.Loader() {
+        @Override
+        public void load(String name, Location targetLocation) throws IOException {
+          trainClassDataSharingArchive(launcherJar, twillJar, applicationJar, targetLocation);
+        }
+      });
+      localFiles.put(Constants.Files.CDS_ARCHIVE, createLocalFile(Constants.Files.CDS_ARCHIVE, location));
+    } catch (IOException e) {
+      // The archive is only an optimization, hence failure in creating it shouldn't fail the application launch
+      LOG.warn("Failed to create class data sharing archive. Containers will be started without it.", e);
+      return null;
+    }
+    LOG.debug("Done {}", Constants.Files.CDS_ARCHIVE);
+    return new JvmOptions.ClassDataSharingOptions(Constants.Files.CDS_ARCHIVE, vmVersion);
+  }
+
+  /**
+   * Performs the class data sharing training run in a local directory that has the same layout as the container
+   * and copies the resulting archive to the given target location. The archive is dumped in a run of its own, followed
+   * by one run without and one run with the archive, so that the reported JVM start times don't include the dumping.
+   * The run with the archive also verifies that the archive is usable.
+   */
+  private void trainClassDataSharingArchive(LocalFile launcherJar, LocalFile twillJar, LocalFile applicationJar,
+                                            Location targetLocation) throws IOException {
+    LocationFactory locationFactory = appLocation.getLocationFactory();
+    Path trainingDir = Files.createTempDirectory(getLocalStagingDir().toPath(), Constants.Files.CDS_ARCHIVE);
+    try {
+      try (InputStream is = locationFactory.create(launcherJar.getURI()).getInputStream()) {
+        Files.copy(is, trainingDir.resolve(Constants.Files.LAUNCHER_JAR));
+      }
+      expandJar(locationFactory.create(twillJar.getURI()), trainingDir.resolve(Constants.Files.TWILL_JAR));
+      expandJar(locationFactory.create(applicationJar.getURI()),
+                trainingDir.resolve(Constants.Files.APPLICATION_JAR));
+      Path runtimeConfigDir = Files.createDirectories(trainingDir.resolve(Constants.Files.RUNTIME_CONFIG_JAR));
+      Files.write(runtimeConfigDir.resolve(Constants.Files.APPLICATION_CLASSPATH), new byte[0]);
+
+      runClassDataSharingTrainer(trainingDir, "-XX:ArchiveClassesAtExit=" + Constants.Files.CDS_ARCHIVE);
+      Path archive = trainingDir.resolve(Constants.Files.CDS_ARCHIVE);
+      if (!Files.isRegularFile(archive)) {
+        throw new IOException("Class data sharing archive was not created by the training run in " + trainingDir);
+      }
+      long withoutArchive = runClassDataSharingTrainer(trainingDir);
+      long withArchive = runClassDataSharingTrainer(trainingDir,
+                                                    "-XX:SharedArchiveFile=" + Constants.Files.CDS_ARCHIVE,
+                                                    "-Xshare:on");
+      LOG.info("Class data sharing archive of {} bytes created. " +
+                 "JVM start time is {} ms without the archive and {} ms with the archive.",
+               Files.size(archive), withoutArchive, withArchive);
+
+      try (FileChannel input = FileChannel.open(archive, StandardOpenOption.READ);
+           WritableByteChannel output = targetLocation.getWriteChannel()) {
+        Locations.copy(input, output);
+      }
+    } finally {
+      Paths.deleteRecursively(trainingDir);
+    }
+  }
+
+  /**
+   * Runs the {@link ClassDataSharingTrainer} through the {@link TwillLauncher} in a new JVM.
+   *
+   * @return the JVM start time in milliseconds as reported by the trainer, which is the time from the JVM start until
+   *         all classes are loaded
+   */
+  private long runClassDataSharingTrainer(Path dir, String... jvmOptions) throws IOException {
+    Path startTimeFile = dir.resolve("cds-start-time.txt");
+    Files.deleteIfExists(startTimeFile);
+
+    List<String> command = Lists.newArrayList(new File(System.getProperty("java.home"), "bin/java").getPath());
+    command.addAll(Arrays.asList(jvmOptions));
+    command.addAll(Arrays.asList("-cp", Constants.Files.LAUNCHER_JAR,
+                                 TwillLauncher.class.getName(),
+                                 ClassDataSharingTrainer.class.getName(),
+                                 Boolean.FALSE.toString(),
+                                 startTimeFile.getFileName().toString()));
+
+    long timeout = config.getLong(Configs.Keys.JAVA_CDS_TRAINING_TIMEOUT_SECONDS,
+                                  Configs.Defaults.JAVA_CDS_TRAINING_TIMEOUT_SECONDS);
+    Path outputFile = dir.resolve("cds-training.log");
+    Process process = new ProcessBuilder(command)
+      .directory(dir.toFile())
+      .redirectErrorStream(true)
+      .redirectOutput(outputFile.toFile())
+      .start();
+    try {
+      if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+        process.destroyForcibly();
+        throw new IOException("Class data sharing training run timed out after " + timeout + " seconds");
+      }
+    } catch (InterruptedException e) {
+      process.destroyForcibly();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the class data sharing training run");
+    }
+
+    String output = new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8);
+    if (process.exitValue() != 0 || !Files.isRegularFile(startTimeFile)) {
+      throw new IOException("Class data sharing training run " + command + " failed with exit code "
+                              + process.exitValue() + ". Output: " + output);
+    }
+    long startTime;
+    try {
+      startTime = Long.parseLong(new String(Files.readAllBytes(startTimeFile), StandardCharsets.UTF_8).trim());
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid JVM start time reported by class data sharing training run " + command, e);
+    }
+    LOG.debug("Class data sharing training run {} completed with JVM start time {} ms. Output: {}",
+              command, startTime, output);
+    return startTime;
+  }
+
+  /**
+   * Expands the jar file in the given {@link Location} into the given directory.
+   */
+  private void expandJar(Location jarLocation, Path targetDir) throws IOException {
+    try (JarInputStream jarInput = new JarInputStream(jarLocation.getInputStream())) {
+      JarEntry entry = jarInput.getNextJarEntry();
+      while (entry != null) {
+        Path path = targetDir.resolve(entry.getName()).normalize();
+        if (!path.startsWith(targetDir)) {
+          throw new IOException("Jar entry " + entry.getName() + " is outside of the target directory " + targetDir);
+        }
+        if (entry.isDirectory()) {
+          Files.createDirectories(path);
+        } else {
+          Files.createDirectories(path.getParent());
+          Files.copy(jarInput, path);
+        }
+        entry = jarInput.getNextJarEntry();
+      }
+    }
+  }
+
   private void createRuntimeConfigJar(Path dir, Map<String, LocalFile> localFiles) throws IOException {
     LOG.debug("Create and copy {}", Constants.Files.RUNTIME_CONFIG_JAR);
 
@@ -654,23 +842,49 @@ final class YarnTwillPreparer implements TwillPreparer {
     Multimap<String, LocalFile> localFiles = HashMultimap.create();
 
     LOG.debug("Populating Runnable LocalFiles");
-    for (Map.Entry<String, RuntimeSpecification> entry: twillSpec.getRunnables().entrySet()) {
-      String runnableName = entry.getKey();
-      for (LocalFile localFile : entry.getValue().getLocalFiles()) {
-        Location location;
-
+    // Local files to be copied, keyed by the source URI and the local file name, so that the same local file used by
+    // multiple runnables only gets copied once. The copies are done in parallel with Locations.copyAll.
+    Table<URI, String, Location> locations = HashBasedTable.create();
+    Map<Location, Location> copies = new HashMap<>();
+    LocationFactory localLocationFactory = new LocalLocationFactory();
+
+    for (RuntimeSpecification spec : twillSpec.getRunnables().values()) {
+      for (LocalFile localFile : spec.getLocalFiles()) {
         URI uri = localFile.getURI();
+        if (locations.contains(uri, localFile.getName())) {
+          continue;
+        }
         if (appLocation.toURI().getScheme().equals(uri.getScheme())) {
           // If the source file location is having the same scheme as the target location, no need to copy
-          location = appLocation.getLocationFactory().create(uri);
+          locations.put(uri, localFile.getName(), appLocation.getLocationFactory().create(uri));
+          continue;
+        }
+
+        URL url = uri.toURL();
+        // Preserves original suffix for expansion.
+        Location target = createTempLocation(Paths.addExtension(url.getFile(), localFile.getName()));
+        if ("file".equals(uri.getScheme())) {
+          copies.put(localLocationFactory.create(uri), target);
         } else {
-          URL url = uri.toURL();
-          LOG.debug("Create and copy {} : {}", runnableName, url);
-          // Preserves original suffix for expansion.
-          location = copyFromURL(url, createTempLocation(Paths.addExtension(url.getFile(), localFile.getName())));
-          LOG.debug("Done {} : {}", runnableName, url);
+          LOG.debug("Create and copy {}", url);
+          copyFromURL(url, target);
+          LOG.debug("Done {}", url);
         }
+        locations.put(uri, localFile.getName(), target);
+      }
+    }
+
+    if (!copies.isEmpty()) {
+      LOG.debug("Copying {} local files", copies.size());
+      long bytes = Locations.copyAll(copies, config.getInt(Configs.Keys.STAGING_COPY_PARALLELISM,
+                                                           Configs.Defaults.STAGING_COPY_PARALLELISM));
+      LOG.debug("Done copying {} local files with {} bytes", copies.size(), bytes);
+    }
 
+    for (Map.Entry<String, RuntimeSpecification> entry: twillSpec.getRunnables().entrySet()) {
+      String runnableName = entry.getKey();
+      for (LocalFile localFile : entry.getValue().getLocalFiles()) {
+        Location location = locations.get(localFile.getURI(), localFile.getName());
         localFiles.put(runnableName,
                        new DefaultLocalFile(localFile.getName(), location.toURI(), location.lastModified(),
                                             location.length(), localFile.isArchive(), localFile.getPattern()));
@@ -689,7 +903,8 @@ final class YarnTwillPreparer implements TwillPreparer {
         @Override
         public RuntimeSpecification transformEntry(String key, RuntimeSpecification value) {
           return new DefaultRuntimeSpecification(value.getName(), value.getRunnableSpecification(),
-                                                 value.getResourceSpecification(), runnableLocalFiles.get(key));
+                                                 value.getResourceSpecification(), runnableLocalFiles.get(key),
+                                                 value.getAutoscalePolicy());
         }
       });
 
@@ -762,7 +977,7 @@ final class YarnTwillPreparer implements TwillPreparer {
               }
               return true;
             }
-          }, TwillLauncher.class.getName(), FindFreePort.class.getName());
+          }, TwillLauncher.class.getName(), FindFreePort.class.getName(), ClassDataSharingTrainer.class.getName());
         }
       }
     });
@@ -779,7 +994,8 @@ final class YarnTwillPreparer implements TwillPreparer {
                 Joiner.on(':').join(classPaths).getBytes(StandardCharsets.UTF_8));
   }
 
-  private JvmOptions saveJvmOptions(final Path targetPath) throws IOException {
+  private JvmOptions saveJvmOptions(final Path targetPath,
+                                    @Nullable JvmOptions.ClassDataSharingOptions cdsOptions) throws IOException {
     // Append runnable specific extra options.
     Map<String, String> runnableExtraOptions = Maps.newHashMap(
       Maps.transformValues(this.runnableExtraOptions, new Function<String, String>() {
@@ -790,16 +1006,16 @@ final class YarnTwillPreparer implements TwillPreparer {
       }));
 
     String globalOptions = addClassLoaderClassName(extraOptions);
-    JvmOptions jvmOptions = new JvmOptions(globalOptions, runnableExtraOptions, debugOptions);
+    JvmOptions jvmOptions = new JvmOptions(globalOptions, runnableExtraOptions, debugOptions, cdsOptions);
     if (globalOptions.isEmpty() && runnableExtraOptions.isEmpty()
-      && JvmOptions.DebugOptions.NO_DEBUG.equals(debugOptions)) {
+      && JvmOptions.DebugOptions.NO_DEBUG.equals(debugOptions) && cdsOptions == null) {
       // If no vm options, no need to localize the file.
       return jvmOptions;
     }
 
     LOG.debug("Creating {}", targetPath);
     try (Writer writer = Files.newBufferedWriter(targetPath, StandardCharsets.UTF_8)) {
-      new Gson().toJson(new JvmOptions(globalOptions, runnableExtraOptions, debugOptions), writer);
+      new Gson().toJson(jvmOptions, writer);
     }
     LOG.debug("Done {}", targetPath);
     return jvmOptions;
@@ -848,10 +1064,10 @@ final class YarnTwillPreparer implements TwillPreparer {
 
   private Location copyFromURL(URL url, Location target) throws IOException {
     try (
-      InputStream is = url.openStream();
-      OutputStream os = new BufferedOutputStream(target.getOutputStream())
+      ReadableByteChannel input = Channels.newChannel(url.openStream());
+      WritableByteChannel output = target.getWriteChannel()
     ) {
-      ByteStreams.copy(is, os);
+      Locations.copy(input, output);
     }
     return target;
   }
@@ -26,17 +26,16 @@ import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Service;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileContext;
@@ -57,6 +56,7 @@ import org.apache.twill.api.TwillRunnable;
 import org.apache.twill.api.TwillRunnerService;
 import org.apache.twill.api.TwillSpecification;
 import org.apache.twill.api.logging.LogHandler;
+import org.apache.twill.api.metrics.MetricsSnapshot;
 import org.apache.twill.api.security.SecureStoreRenewer;
 import org.apache.twill.api.security.SecureStoreWriter;
 import org.apache.twill.common.Cancellable;
@@ -72,12 +72,13 @@ import org.apache.twill.internal.appmaster.ApplicationMasterLiveNodeData;
 import org.apache.twill.internal.io.BasicLocationCache;
 import org.apache.twill.internal.io.LocationCache;
 import org.apache.twill.internal.io.NoCachingLocationCache;
+import org.apache.twill.internal.metrics.DefaultMetricsRegistry;
 import org.apache.twill.internal.yarn.VersionDetectYarnAppClientFactory;
 import org.apache.twill.internal.yarn.YarnAppClient;
 import org.apache.twill.internal.yarn.YarnApplicationReport;
-import org.apache.twill.zookeeper.NodeChildren;
 import org.apache.twill.zookeeper.NodeData;
 import org.apache.twill.zookeeper.RetryStrategies;
+import org.apache.twill.zookeeper.TreeCache;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKClientService;
 import org.apache.twill.zookeeper.ZKClientServices;
@@ -99,12 +100,14 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
 
 /**
  * An implementation of {@link org.apache.twill.api.TwillRunnerService} that runs application on a YARN cluster.
@@ -113,12 +116,7 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
 
   private static final Logger LOG = LoggerFactory.getLogger(YarnTwillRunnerService.class);
   private static final int ZK_TIMEOUT = 10000;
-  private static final Function<String, RunId> STRING_TO_RUN_ID = new Function<String, RunId>() {
-    @Override
-    public RunId apply(String input) {
-      return RunIds.fromString(input);
-    }
-  };
+  private static final long SECURE_STORE_RENEWAL_RETRY_BASE_DELAY_MS = 1000L;
   private static final Function<YarnTwillController, TwillController> CAST_CONTROLLER =
     new Function<YarnTwillController, TwillController>() {
     @Override
@@ -135,7 +133,10 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
   private final Service serviceDelegate;
   private LocationCache locationCache;
   private LocationCacheCleaner locationCacheCleaner;
+  private final DefaultMetricsRegistry secureStoreRenewalMetrics;
+  private final DefaultMetricsRegistry locationCacheMetrics;
   private ScheduledExecutorService secureStoreScheduler;
+  private ScheduledExecutorService secureStoreRenewalExecutor;
 
   private Iterable<LiveInfo> liveInfos;
   private Cancellable watchCancellable;
@@ -163,8 +164,11 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
   public YarnTwillRunnerService(YarnConfiguration config, String zkConnect, LocationFactory locationFactory) {
     this.yarnConfig = config;
     this.locationFactory = locationFactory;
-    this.zkClientService = getZKClientService(zkConnect);
+    this.zkClientService = getZKClientService(zkConnect, config.getInt(Configs.Keys.ZK_CLIENT_SHARDS,
+                                                                       Configs.Defaults.ZK_CLIENT_SHARDS));
     this.controllers = HashBasedTable.create();
+    this.secureStoreRenewalMetrics = new DefaultMetricsRegistry();
+    this.locationCacheMetrics = new DefaultMetricsRegistry();
     this.serviceDelegate = new AbstractIdleService() {
       @Override
       protected void startUp() throws Exception {
@@ -211,6 +215,25 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
     return jvmOptions;
   }
 
+  /**
+   * Returns the metrics of secure store renewals. For each application there is a timer of the renewal lag, which
+   * is the time from when a renewal is due until the secure store of the application is written, and counters of
+   * the number of retries and failures.
+   */
+  public MetricsSnapshot getSecureStoreRenewalMetrics() {
+    return secureStoreRenewalMetrics.snapshot();
+  }
+
+  /**
+   * Returns the metrics of the location cache, which has the counters of cache hits and misses, and the timer of
+   * the time spent in loading the cache content. The metrics are empty if the location cache is not enabled.
+   *
+   * @see BasicLocationCache
+   */
+  public MetricsSnapshot getLocationCacheMetrics() {
+    return locationCacheMetrics.snapshot();
+  }
+
   @Override
   public Cancellable scheduleSecureStoreUpdate(final SecureStoreUpdater updater,
                                                long initialDelay, long delay, TimeUnit unit) {
@@ -230,11 +253,16 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
           liveApps = HashBasedTable.create(controllers);
         }
 
-        // Update the secure store with merging = true
+        // Update the secure store with merging = true. The deprecated updater is not required to be thread-safe,
+        // hence calls to it are serialized while renewals of different applications still run in parallel.
         renewSecureStore(liveApps, new SecureStoreRenewer() {
           @Override
           public void renew(String application, RunId runId, SecureStoreWriter secureStoreWriter) throws IOException {
-            secureStoreWriter.write(updater.update(application, runId));
+            SecureStore secureStore;
+            synchronized (updater) {
+              secureStore = updater.update(application, runId);
+            }
+            secureStoreWriter.write(secureStore);
           }
         }, true);
       }
@@ -309,10 +337,8 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
                                         Callable<ProcessController<YarnApplicationReport>> startUp,
                                         long startTimeout, TimeUnit startTimeoutUnit) {
         ZKClient zkClient = ZKClients.namespace(zkClientService, "/" + appName);
-        YarnTwillController controller = listenController(new YarnTwillController(appName, runId, zkClient,
-                                                                                  logCollectionEnabled,
-                                                                                  logHandlers, startUp,
-                                                                                  startTimeout, startTimeoutUnit));
+        YarnTwillController controller = listenController(appName, new YarnTwillController(
+          appName, runId, zkClient, logCollectionEnabled, logHandlers, startUp, startTimeout, startTimeoutUnit));
         synchronized (YarnTwillRunnerService.this) {
           Preconditions.checkArgument(!controllers.contains(appName, runId),
                                       "Application %s with runId %s is already running.", appName, runId);
@@ -387,8 +413,9 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
         cacheLocation.mkdirs();
         cacheLocation.setPermissions("775");
 
-        locationCache = new BasicLocationCache(cacheLocation);
-        locationCacheCleaner = startLocationCacheCleaner(cacheBase, sessionId);
+        BasicLocationCache cache = new BasicLocationCache(cacheLocation, locationCacheMetrics);
+        locationCache = cache;
+        locationCacheCleaner = startLocationCacheCleaner(cacheBase, sessionId, cache);
       } catch (IOException e) {
         LOG.warn("Failed to create location cache directory. Location cache cannot be enabled.", e);
       }
@@ -403,7 +430,8 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
     locationCacheCleaner.forceCleanup(currentTime);
   }
 
-  private LocationCacheCleaner startLocationCacheCleaner(final Location cacheBase, final String sessionId) {
+  private LocationCacheCleaner startLocationCacheCleaner(final Location cacheBase, final String sessionId,
+                                                         final BasicLocationCache cache) {
     LocationCacheCleaner cleaner = new LocationCacheCleaner(
       yarnConfig, cacheBase, sessionId, location -> {
         // Collects all the locations that is being used by any live applications
@@ -430,7 +458,7 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
         }
 
         return !activeLocations.contains(location);
-      });
+      }, location -> cache.removed(location.getName()));
     cleaner.startAndWait();
     return cleaner;
   }
@@ -447,81 +475,50 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
       if (secureStoreScheduler != null) {
         secureStoreScheduler.shutdownNow();
       }
+      if (secureStoreRenewalExecutor != null) {
+        secureStoreRenewalExecutor.shutdownNow();
+      }
     }
     watchCancellable.cancel();
     zkClientService.stopAndWait();
   }
 
   private Cancellable watchLiveApps() {
-    final Map<String, Cancellable> watched = Maps.newConcurrentMap();
-
     final AtomicBoolean cancelled = new AtomicBoolean(false);
-    // Watch child changes in the root, which gives all application names.
-    final Cancellable cancellable = ZKOperations.watchChildren(zkClientService, "/",
-                                                               new ZKOperations.ChildrenCallback() {
+
+    // Cache the children of the /<app>/instances nodes, without watching any data. Each live node is read once
+    // when it is added, instead of re-listing the instances of every application on each change.
+    final Cancellable cancellable = ZKOperations.cacheTree(zkClientService, "/", 3, new Predicate<String>() {
       @Override
-      public void updated(NodeChildren nodeChildren) {
-        if (cancelled.get()) {
+      public boolean apply(String path) {
+        // Only /<app>/instances is needed under each application node.
+        String[] parts = path.substring(1).split("/");
+        return parts.length != 2 || "instances".equals(parts[1]);
+      }
+    }, false, new TreeCache.Listener() {
+      @Override
+      public void nodeChanged(TreeCache.EventType type, String path, @Nullable NodeData nodeData) {
+        // Removal of controller from controllers table is done in the state listener attached to the controller.
+        if (cancelled.get() || type == TreeCache.EventType.REMOVED) {
           return;
         }
-
-        Set<String> apps = ImmutableSet.copyOf(nodeChildren.getChildren());
-
-        // For each for the application name, watch for ephemeral nodes under /instances.
-        for (final String appName : apps) {
-          if (watched.containsKey(appName)) {
-            continue;
-          }
-
-          final String instancePath = String.format("/%s/instances", appName);
-          watched.put(appName,
-                      ZKOperations.watchChildren(zkClientService, instancePath, new ZKOperations.ChildrenCallback() {
-            @Override
-            public void updated(NodeChildren nodeChildren) {
-              if (cancelled.get()) {
-                return;
-              }
-              if (nodeChildren.getChildren().isEmpty()) {     // No more child, means no live instances
-                Cancellable removed = watched.remove(appName);
-                if (removed != null) {
-                  removed.cancel();
-                }
-                return;
-              }
-              synchronized (YarnTwillRunnerService.this) {
-                // For each of the children, which the node name is the runId,
-                // fetch the application Id and construct TwillController.
-                for (final RunId runId : Iterables.transform(nodeChildren.getChildren(), STRING_TO_RUN_ID)) {
-                  if (controllers.contains(appName, runId)) {
-                    continue;
-                  }
-                  updateController(appName, runId, cancelled);
-                }
-              }
-            }
-          }));
-        }
-
-        // Remove app watches for apps that are gone. Removal of controller from controllers table is done
-        // in the state listener attached to the twill controller.
-        for (String removeApp : Sets.difference(watched.keySet(), apps)) {
-          watched.remove(removeApp).cancel();
+        String[] parts = path.substring(1).split("/");
+        if (parts.length == 3) {
+          updateController(parts[0], RunIds.fromString(parts[2]), cancelled);
         }
       }
     });
+
     return new Cancellable() {
       @Override
       public void cancel() {
         cancelled.set(true);
         cancellable.cancel();
-        for (Cancellable c : watched.values()) {
-          c.cancel();
-        }
       }
     };
   }
 
-  private YarnTwillController listenController(final YarnTwillController controller) {
+  private YarnTwillController listenController(final String appName, final YarnTwillController controller) {
     controller.onTerminated(new Runnable() {
       @Override
       public void run() {
@@ -532,18 +529,25 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
               return input == controller;
             }
           });
+          // Drops the renewal metrics once the last run of the application is gone
+          if (!controllers.containsRow(appName)) {
+            SecureStoreRenewalTask.removeMetrics(secureStoreRenewalMetrics, appName);
+          }
         }
       }
     }, Threads.SAME_THREAD_EXECUTOR);
     return controller;
   }
 
-  private ZKClientService getZKClientService(String zkConnect) {
+  private ZKClientService getZKClientService(String zkConnect, int shards) {
+    ZKClientService.Builder builder = ZKClientService.Builder.of(zkConnect).setSessionTimeout(ZK_TIMEOUT);
+    // With multiple shards, all nodes of an application are under "/<appName>", hence routed to the same session
+    ZKClientService clientService = shards > 1
+      ? ZKClientServices.sharded(builder, shards, ZKClientServices.pathPrefix(1))
+      : builder.build();
     return ZKClientServices.delegate(
       ZKClients.reWatchOnExpire(
-        ZKClients.retryOnFailure(ZKClientService.Builder.of(zkConnect)
-                                   .setSessionTimeout(ZK_TIMEOUT)
-                                   .build(), RetryStrategies.exponentialDelay(100, 2000, TimeUnit.MILLISECONDS))));
+        ZKClients.retryOnFailure(clientService, RetryStrategies.decorrelatedJitter(100, 2000, TimeUnit.MILLISECONDS))));
   }
 
   private Iterable<LiveInfo> createLiveInfos() {
@@ -577,6 +581,11 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
   }
 
   private void updateController(final String appName, final RunId runId, final AtomicBoolean cancelled) {
+    synchronized (this) {
+      if (controllers.contains(appName, runId)) {
+        return;
+      }
+    }
     String instancePath = String.format("/%s/instances/%s", appName, runId.getId());
 
     // Fetch the content node.
@@ -598,7 +607,7 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
             YarnAppClient yarnAppClient = new VersionDetectYarnAppClientFactory().create(new Configuration(yarnConfig));
 
             YarnTwillController controller = listenController(
-              new YarnTwillController(appName, runId, zkClient, amLiveNodeData, yarnAppClient));
+              appName, new YarnTwillController(appName, runId, zkClient, amLiveNodeData, yarnAppClient));
             controllers.put(appName, runId, controller);
             controller.start();
           }
@@ -689,7 +698,9 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
   }
 
   /**
-   * Renews the {@link SecureStore} for all the running applications.
+   * Renews the {@link SecureStore} for all the running applications. Renewals are executed in parallel by the
+   * secure store renewal executor, with each application retried with exponential backoff on failure. This method
+   * blocks until all renewals are completed.
    *
    * @param liveApps set of running applications that need to have secure store renewal
    * @param renewer the {@link SecureStoreRenewer} for renewal
@@ -699,24 +710,68 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
   private Multimap<String, RunId> renewSecureStore(Table<String, RunId, YarnTwillController> liveApps,
                                                    SecureStoreRenewer renewer, boolean mergeCredentials) {
     Multimap<String, RunId> failureRenews = HashMultimap.create();
+    if (liveApps.isEmpty()) {
+      return failureRenews;
+    }
+
+    ScheduledExecutorService executor = getSecureStoreRenewalExecutor();
+    SecureStoreUpdateNotifier<YarnTwillController> notifier =
+      new SecureStoreUpdateNotifier<>(YarnTwillController::secureStoreUpdated);
+    int maxAttempts = yarnConfig.getInt(Configs.Keys.SECURE_STORE_RENEWAL_MAX_ATTEMPTS,
+                                        Configs.Defaults.SECURE_STORE_RENEWAL_MAX_ATTEMPTS);
+    long dueTime = System.currentTimeMillis();
 
-    // Renew the secure store for each running application
+    // Starts the renewal for each running application
+    Map<Table.Cell<String, RunId, YarnTwillController>, ListenableFuture<Void>> renewals = Maps.newHashMap();
     for (Table.Cell<String, RunId, YarnTwillController> liveApp : liveApps.cellSet()) {
       String application = liveApp.getRowKey();
       RunId runId = liveApp.getColumnKey();
-      YarnTwillController controller = liveApp.getValue();
+      SecureStoreWriter writer = new YarnSecureStoreWriter(application, runId, liveApp.getValue(),
+                                                           mergeCredentials, notifier);
+      SecureStoreRenewalTask renewal = new SecureStoreRenewalTask(application, runId, () -> {
+        renewer.renew(application, runId, writer);
+        return null;
+      }, executor, secureStoreRenewalMetrics, maxAttempts, SECURE_STORE_RENEWAL_RETRY_BASE_DELAY_MS, dueTime);
+      renewals.put(liveApp, renewal.start());
+    }
 
-      try {
-        renewer.renew(application, runId, new YarnSecureStoreWriter(application, runId, controller, mergeCredentials));
-      } catch (Exception e) {
-        LOG.warn("Failed to renew secure store for {}:{}", application, runId, e);
-        failureRenews.put(application, runId);
+    try {
+      for (Table.Cell<String, RunId, YarnTwillController> liveApp : renewals.keySet()) {
+        try {
+          renewals.get(liveApp).get();
+        } catch (ExecutionException e) {
+          failureRenews.put(liveApp.getRowKey(), liveApp.getColumnKey());
+        }
+      }
+    } catch (InterruptedException e) {
+      // The renewal is being stopped. Cancel all pending renewals.
+      for (ListenableFuture<Void> future : renewals.values()) {
+        future.cancel(false);
       }
+      Thread.currentThread().interrupt();
+    } finally {
+      // Notifies applications that have the secure store written in this round
+      notifier.flush();
     }
 
+    LOG.debug("Secure store renewal of {} applications completed in {} ms with {} failures.",
+              renewals.size(), System.currentTimeMillis() - dueTime, failureRenews.size());
     return failureRenews;
   }
 
+  /**
+   * Returns the {@link ScheduledExecutorService} for executing secure store renewals, creating it if necessary.
+   */
+  private synchronized ScheduledExecutorService getSecureStoreRenewalExecutor() {
+    if (secureStoreRenewalExecutor == null) {
+      int threads = yarnConfig.getInt(Configs.Keys.SECURE_STORE_RENEWAL_THREADS,
+                                      Configs.Defaults.SECURE_STORE_RENEWAL_THREADS);
+      secureStoreRenewalExecutor = Executors.newScheduledThreadPool(
+        Math.max(1, threads), Threads.createDaemonThreadFactory("secure-store-renewal-%d"));
+    }
+    return secureStoreRenewalExecutor;
+  }
+
   private static LocationFactory createDefaultLocationFactory(Configuration configuration) {
     try {
       FileContext fc = FileContext.getFileContext(configuration);
@@ -737,13 +792,15 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
     private final RunId runId;
     private final YarnTwillController controller;
     private final boolean mergeCredentials;
+    private final SecureStoreUpdateNotifier<YarnTwillController> notifier;
 
-    private YarnSecureStoreWriter(String application, RunId runId,
-                                  YarnTwillController controller, boolean mergeCredentials) {
+    private YarnSecureStoreWriter(String application, RunId runId, YarnTwillController controller,
+                                  boolean mergeCredentials, SecureStoreUpdateNotifier<YarnTwillController> notifier) {
       this.application = application;
       this.runId = runId;
       this.controller = controller;
       this.mergeCredentials = mergeCredentials;
+      this.notifier = notifier;
     }
 
     @Override
@@ -787,7 +844,7 @@ public final class YarnTwillRunnerService implements TwillRunnerService {
       tmpLocation.renameTo(credentialsLocation);
 
       // Notify the application that the credentials has been updated
-      controller.secureStoreUpdated();
+      notifier.add(controller);
 
       LOG.debug("Secure store for {} {} saved to {}.", application, runId, credentialsLocation);
     }
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.filesystem;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.twill.internal.utils.Paths;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for comparing copying a bundle jar between {@link Location}s through streams, which is how bundles
+ * were copied before, and through channels with {@link Location#transferTo(Location)}.
+ * <p/>
+ * Usage: {@code LocationCopyBenchmark [size in MB, default 500] [iterations, default 3]}
+ */
+public final class LocationCopyBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    File baseDir = Files.createTempDir();
+    Configuration conf = new Configuration();
+    conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, new File(baseDir, "dfs").getAbsolutePath());
+    MiniDFSCluster dfsCluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      LocationFactory localFactory = new LocalLocationFactory(new File(baseDir, "local"));
+      LocationFactory hdfsFactory = new FileContextLocationFactory(dfsCluster.getFileSystem().getConf(), "/bench");
+
+      Location bundle = localFactory.create("bundle.jar");
+      createBundle(bundle, sizeMB);
+      Location hdfsBundle = hdfsFactory.create("bundle.jar");
+      bundle.transferTo(hdfsBundle);
+
+      System.out.printf("Copying %d MB bundle, best of %d iterations%n", sizeMB, iterations);
+      run("local -> local", bundle, localFactory.create("copy.jar"), iterations, sizeMB);
+      run("local -> hdfs", bundle, hdfsFactory.create("copy.jar"), iterations, sizeMB);
+      run("hdfs -> local", hdfsBundle, localFactory.create("copy2.jar"), iterations, sizeMB);
+    } finally {
+      dfsCluster.shutdown();
+      Paths.deleteRecursively(baseDir.toPath());
+    }
+  }
+
+  private static void run(String name, Location source, Location target,
+                          int iterations, int sizeMB) throws IOException {
+    long streamNanos = Long.MAX_VALUE;
+    long channelNanos = Long.MAX_VALUE;
+    for (int i = 0; i < iterations; i++) {
+      long startTime = System.nanoTime();
+      try (InputStream is = source.getInputStream();
+           OutputStream os = new BufferedOutputStream(target.getOutputStream())) {
+        ByteStreams.copy(is, os);
+      }
+      streamNanos = Math.min(streamNanos, System.nanoTime() - startTime);
+
+      startTime = System.nanoTime();
+      source.transferTo(target);
+      channelNanos = Math.min(channelNanos, System.nanoTime() - startTime);
+    }
+    System.out.printf("%-16s stream: %6d ms (%7.1f MB/s)   channel: %6d ms (%7.1f MB/s)%n", name,
+                      TimeUnit.NANOSECONDS.toMillis(streamNanos), throughput(sizeMB, streamNanos),
+                      TimeUnit.NANOSECONDS.toMillis(channelNanos), throughput(sizeMB, channelNanos));
+  }
+
+  private static double throughput(int sizeMB, long nanos) {
+    return sizeMB * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+  }
+
+  /**
+   * Creates a file of the given size with random content, which is not compressible, similar to a jar file.
+   */
+  private static void createBundle(Location bundle, int sizeMB) throws IOException {
+    Random random = new Random();
+    byte[] buffer = new byte[1024 * 1024];
+    try (OutputStream os = bundle.getOutputStream()) {
+      for (int i = 0; i < sizeMB; i++) {
+        random.nextBytes(buffer);
+        os.write(buffer);
+      }
+    }
+  }
+
+  private LocationCopyBenchmark() {
+  }
+}
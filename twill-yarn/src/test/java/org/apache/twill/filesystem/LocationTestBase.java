@@ -21,6 +21,7 @@ import com.google.common.base.Charsets;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.CharStreams;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.UserGroupInformation;
@@ -31,13 +32,27 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base class for defining {@link Location} and {@link LocationFactory} tests.
@@ -190,6 +205,218 @@ public abstract class LocationTestBase {
     }
   }
 
+  @Test
+  public void testListStatus() throws IOException {
+    LocationFactory factory = locationFactoryCache.getUnchecked("listStatus");
+
+    Location dir = factory.create("dir");
+    Assert.assertTrue(dir.mkdirs());
+
+    // Should have nothing inside
+    try (LocationStatusStream stream = dir.listStatus()) {
+      Assert.assertFalse(stream.iterator().hasNext());
+    }
+
+    // Create a file and a sub-directory inside the directory
+    Location file = dir.append("file");
+    try (Writer writer = new OutputStreamWriter(file.getOutputStream("644"), Charsets.UTF_8)) {
+      writer.write("Testing");
+    }
+    Location subDir = dir.append("subdir");
+    Assert.assertTrue(subDir.mkdirs());
+
+    Map<Location, LocationStatus> statuses = new HashMap<>();
+    try (LocationStatusStream stream = dir.listStatus()) {
+      for (LocationStatus status : stream) {
+        statuses.put(status.getLocation(), status);
+      }
+
+      // The stream can only be iterated once
+      try {
+        stream.iterator();
+        Assert.fail("Stream should only be iterated once.");
+      } catch (IllegalStateException e) {
+        // Expected
+      }
+    }
+    Assert.assertEquals(ImmutableSet.of(file, subDir), statuses.keySet());
+
+    // The status should carry the same metadata as the location
+    LocationStatus fileStatus = statuses.get(file);
+    Assert.assertFalse(fileStatus.isDirectory());
+    Assert.assertEquals(file.length(), fileStatus.getLength());
+    // Some file systems only provide the last modified time in seconds through the java.io.File API
+    Assert.assertTrue(Math.abs(file.lastModified() - fileStatus.getLastModified()) < 1000);
+    Assert.assertEquals(file.getPermissions(), fileStatus.getPermissions());
+    Assert.assertTrue(statuses.get(subDir).isDirectory());
+
+    // List status on file should gives empty stream
+    try (LocationStatusStream stream = file.listStatus()) {
+      Assert.assertFalse(stream.iterator().hasNext());
+    }
+
+    // List status on a non-exist location would throw exception
+    try {
+      dir.append("nonExist").listStatus();
+      Assert.fail("List status should fail on non-exist location.");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testChannels() throws IOException {
+    LocationFactory factory = locationFactoryCache.getUnchecked("channels");
+
+    byte[] content = new byte[200000];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+
+    Location location = factory.create("dir/file");
+    try (WritableByteChannel channel = location.getWriteChannel()) {
+      ByteBuffer buffer = ByteBuffer.wrap(content);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    Assert.assertEquals(content.length, location.length());
+
+    try (LocationReadChannel channel = location.getReadChannel()) {
+      verifyReadChannel(channel, content);
+    }
+
+    // The default channel implementation of Location, which reads through the InputStream
+    try (LocationReadChannel channel = new InputStreamReadChannel(location)) {
+      verifyReadChannel(channel, content);
+    }
+
+    // Copy within the same file system
+    Location copy = factory.create("copy/file");
+    Assert.assertEquals(content.length, location.transferTo(copy));
+    Assert.assertArrayEquals(content, readFully(copy));
+
+    // Copy between local file system and the file system under test
+    LocationFactory localFactory = new LocalLocationFactory(tmpFolder.newFolder());
+    Location local = localFactory.create("local");
+    Assert.assertEquals(content.length, local.transferFrom(location));
+    Assert.assertArrayEquals(content, readFully(local));
+
+    Location target = factory.create("fromLocal");
+    Assert.assertEquals(content.length, local.transferTo(target));
+    Assert.assertArrayEquals(content, readFully(target));
+
+    // Copy to itself shouldn't change the content
+    Assert.assertEquals(content.length, target.transferTo(target));
+    Assert.assertArrayEquals(content, readFully(target));
+  }
+
+  private void verifyReadChannel(LocationReadChannel channel, byte[] content) throws IOException {
+    Assert.assertEquals(content.length, channel.size());
+
+    // Sequential read into a direct buffer
+    Assert.assertArrayEquals(content, readFully(channel, ByteBuffer.allocateDirect(content.length)));
+    Assert.assertEquals(content.length, channel.position());
+    Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+
+    // Positional read doesn't change the position
+    ByteBuffer buffer = ByteBuffer.allocate(10);
+    Assert.assertTrue(channel.read(buffer, 1000) > 0);
+    Assert.assertEquals(content[1000], buffer.get(0));
+    Assert.assertEquals(content.length, channel.position());
+    Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1), content.length));
+
+    // Seek and read
+    channel.position(5000);
+    buffer = ByteBuffer.allocate(1);
+    Assert.assertEquals(1, channel.read(buffer));
+    Assert.assertEquals(content[5000], buffer.get(0));
+    Assert.assertEquals(5001, channel.position());
+
+    // Seek backward and read
+    channel.position(10);
+    buffer = ByteBuffer.allocate(1);
+    Assert.assertEquals(1, channel.read(buffer));
+    Assert.assertEquals(content[10], buffer.get(0));
+    Assert.assertEquals(11, channel.position());
+  }
+
+  @Test
+  public void testCopyAll() throws Exception {
+    LocationFactory factory = locationFactoryCache.getUnchecked("copyAll");
+    LocationFactory localFactory = new LocalLocationFactory(tmpFolder.newFolder());
+
+    // Copy files from local and from the file system under test
+    Map<Location, Location> copies = new HashMap<>();
+    Map<Location, byte[]> contents = new HashMap<>();
+    for (int i = 0; i < 5; i++) {
+      byte[] content = new byte[i * 10000];
+      for (int j = 0; j < content.length; j++) {
+        content[j] = (byte) (i + j);
+      }
+      Location source = (i % 2 == 0 ? localFactory : factory).create("source" + i);
+      try (OutputStream os = source.getOutputStream()) {
+        os.write(content);
+      }
+      Location target = factory.create("target/" + i);
+      copies.put(source, target);
+      contents.put(target, content);
+    }
+
+    long totalBytes = 0;
+    for (byte[] content : contents.values()) {
+      totalBytes += content.length;
+    }
+    Assert.assertEquals(totalBytes, Locations.copyAll(copies, 3));
+    for (Map.Entry<Location, byte[]> entry : contents.entrySet()) {
+      Assert.assertArrayEquals(entry.getValue(), readFully(entry.getKey()));
+    }
+    // There should be no temp file left
+    Assert.assertEquals(copies.size(), factory.create("target").list().size());
+
+    // Copy again should skip all of them
+    Assert.assertEquals(0L, Locations.copyAll(copies, 3));
+
+    // Change one of the source, only that one should get copied
+    Location source = factory.create("source1");
+    try (OutputStream os = source.getOutputStream()) {
+      os.write(new byte[10000]);
+    }
+    Assert.assertEquals(10000L, Locations.copyAll(copies, 3));
+    Assert.assertArrayEquals(new byte[10000], readFully(copies.get(source)));
+
+    // Copy from non-existing source should fail
+    try {
+      Locations.copyAll(Collections.singletonMap(factory.create("nonExist"), factory.create("target/nonExist")), 3);
+      Assert.fail("Copy should fail for non-existing source.");
+    } catch (IOException e) {
+      // Expected
+    }
+    Assert.assertEquals(copies.size(), factory.create("target").list().size());
+
+    // Failure with copies still queued should return without waiting for the queued copies
+    final Map<Location, Location> failedCopies = new LinkedHashMap<>();
+    failedCopies.put(factory.create("nonExist"), factory.create("failed/nonExist"));
+    for (int i = 0; i < 5; i++) {
+      failedCopies.put(factory.create("source" + i), factory.create("failed/" + i));
+    }
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Long> future = executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() throws Exception {
+          return Locations.copyAll(failedCopies, 1);
+        }
+      });
+      future.get(30, TimeUnit.SECONDS);
+      Assert.fail("Copy should fail for non-existing source.");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   @Test
   public void testOwnerGroup() throws Exception {
     final LocationFactory factory = locationFactoryCache.getUnchecked("ownergroup");
@@ -375,6 +602,24 @@ public abstract class LocationTestBase {
     });
   }
 
+  private byte[] readFully(Location location) throws IOException {
+    try (LocationReadChannel channel = location.getReadChannel()) {
+      return readFully(channel, ByteBuffer.allocate((int) channel.size()));
+    }
+  }
+
+  private byte[] readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        break;
+      }
+    }
+    buffer.flip();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
   /**
    * Create a location factory rooted at a given path.
    */
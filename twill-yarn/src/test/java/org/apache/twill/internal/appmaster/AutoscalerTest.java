@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.appmaster;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.twill.api.AbstractTwillRunnable;
+import org.apache.twill.api.RuntimeSpecification;
+import org.apache.twill.api.TwillSpecification;
+import org.apache.twill.api.autoscale.AutoscaleInput;
+import org.apache.twill.api.autoscale.AutoscalePolicy;
+import org.apache.twill.api.autoscale.AutoscalePolicySpecification;
+import org.apache.twill.api.autoscale.StepAutoscalePolicy;
+import org.apache.twill.api.autoscale.TargetTrackingAutoscalePolicy;
+import org.apache.twill.api.metrics.MetricsRegistry;
+import org.apache.twill.internal.RunIds;
+import org.apache.twill.internal.TwillRuntimeSpecification;
+import org.apache.twill.internal.json.TwillRuntimeSpecificationAdapter;
+import org.apache.twill.internal.metrics.DefaultMetricsSnapshot;
+import org.apache.twill.internal.metrics.DefaultTimerSnapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link Autoscaler} and the autoscale policies.
+ */
+public class AutoscalerTest {
+
+  private static final long SCALE_OUT_COOLDOWN = TimeUnit.MINUTES.toMillis(1);
+  private static final long SCALE_IN_COOLDOWN = TimeUnit.MINUTES.toMillis(5);
+
+  @Test
+  public void testTargetTracking() throws Exception {
+    Autoscaler autoscaler = createAutoscaler(new TargetTrackingAutoscalePolicy(MetricsRegistry.CPU_PERCENT, 50)
+                                               .setInstancesBounds(2, 10), 0L);
+
+    // Within tolerance
+    Assert.assertEquals(4, autoscaler.evaluate("r", 4, gauges(MetricsRegistry.CPU_PERCENT, 50, 54, 48, 52), 0L));
+    // Average of 75 against target of 50
+    Assert.assertEquals(6, autoscaler.evaluate("r", 4, gauges(MetricsRegistry.CPU_PERCENT, 80, 70, 75, 75), 0L));
+    // Bounded by the max instances
+    Assert.assertEquals(10, autoscaler.evaluate("r", 4, gauges(MetricsRegistry.CPU_PERCENT, 200, 200), 0L));
+    // No metrics reported yet
+    Assert.assertEquals(4, autoscaler.evaluate("r", 4, Collections.<DefaultMetricsSnapshot>emptyList(), 0L));
+
+    // Scale in is blocked until the scale in cooldown has passed since start
+    List<DefaultMetricsSnapshot> idle = gauges(MetricsRegistry.CPU_PERCENT, 5, 5, 5, 5);
+    Assert.assertEquals(4, autoscaler.evaluate("r", 4, idle, SCALE_IN_COOLDOWN - 1));
+    // Bounded by the min instances
+    Assert.assertEquals(2, autoscaler.evaluate("r", 4, idle, SCALE_IN_COOLDOWN));
+  }
+
+  @Test
+  public void testStep() throws Exception {
+    Autoscaler autoscaler = createAutoscaler(new StepAutoscalePolicy("queue")
+                                               .addStep(200, Double.POSITIVE_INFINITY, 2)
+                                               .addStep(100, 200, 1)
+                                               .addStep(Double.NEGATIVE_INFINITY, 10, -1), 0L);
+    long now = SCALE_IN_COOLDOWN;
+
+    Assert.assertEquals(5, autoscaler.evaluate("r", 3, gauges("queue", 300, 250, 200), now));
+    Assert.assertEquals(4, autoscaler.evaluate("r", 3, gauges("queue", 100, 150, 120), now));
+    Assert.assertEquals(3, autoscaler.evaluate("r", 3, gauges("queue", 50, 60, 70), now));
+    Assert.assertEquals(2, autoscaler.evaluate("r", 3, gauges("queue", 0, 5, 10), now));
+    // No instance reported the gauge
+    Assert.assertEquals(3, autoscaler.evaluate("r", 3, gauges("other", 500), now));
+    // Bounded by the default min instances
+    Assert.assertEquals(1, autoscaler.evaluate("r", 1, gauges("queue", 0), now));
+  }
+
+  @Test
+  public void testCooldowns() throws Exception {
+    Autoscaler autoscaler = createAutoscaler(new TargetTrackingAutoscalePolicy("queue", 100)
+                                               .setCooldowns(SCALE_OUT_COOLDOWN, SCALE_IN_COOLDOWN,
+                                                             TimeUnit.MILLISECONDS), 0L);
+    List<DefaultMetricsSnapshot> busy = gauges("queue", 200);
+    List<DefaultMetricsSnapshot> idle = gauges("queue", 10);
+
+    long now = 1000L;
+    Assert.assertEquals(2, autoscaler.evaluate("r", 1, busy, now));
+    autoscaler.scaled("r", 1, 2, now);
+
+    // Scale out blocked by the scale out cooldown
+    Assert.assertEquals(2, autoscaler.evaluate("r", 2, busy, now + SCALE_OUT_COOLDOWN - 1));
+    Assert.assertEquals(4, autoscaler.evaluate("r", 2, busy, now + SCALE_OUT_COOLDOWN));
+
+    // Scale in blocked by the scale in cooldown, which also starts on scale out
+    Assert.assertEquals(2, autoscaler.evaluate("r", 2, idle, now + SCALE_IN_COOLDOWN - 1));
+    Assert.assertEquals(1, autoscaler.evaluate("r", 2, idle, now + SCALE_IN_COOLDOWN));
+    autoscaler.scaled("r", 2, 1, now + SCALE_IN_COOLDOWN);
+
+    // Scale in doesn't block scale out
+    Assert.assertEquals(2, autoscaler.evaluate("r", 1, busy, now + SCALE_IN_COOLDOWN));
+  }
+
+  @Test
+  public void testFailingPolicy() throws Exception {
+    Autoscaler autoscaler = createAutoscaler(new FailingPolicy(), 0L);
+    Assert.assertEquals(3, autoscaler.evaluate("r", 3, gauges("queue", 0), SCALE_IN_COOLDOWN));
+    // Runnable without policy
+    Assert.assertEquals(3, autoscaler.evaluate("unknown", 3, gauges("queue", 0), SCALE_IN_COOLDOWN));
+  }
+
+  @Test
+  public void testSpecificationCodec() {
+    TwillSpecification spec = createSpecification(new StepAutoscalePolicy("queue")
+                                                    .addStep(100, Double.POSITIVE_INFINITY, 1)
+                                                    .setInstancesBounds(2, 5));
+    TwillRuntimeSpecification runtimeSpec = new TwillRuntimeSpecification(
+      spec, "user", URI.create("hdfs://localhost/twill"), "localhost:2181", RunIds.generate(), "app", null,
+      Collections.<String, Map<String, String>>emptyMap(), Collections.<String, Integer>emptyMap(),
+      Collections.<String, String>emptyMap(), Collections.<String, Map<String, String>>emptyMap());
+
+    TwillRuntimeSpecificationAdapter adapter = TwillRuntimeSpecificationAdapter.create();
+    TwillRuntimeSpecification decoded = adapter.fromJson(adapter.toJson(runtimeSpec));
+
+    AutoscalePolicySpecification expected = spec.getRunnables().get("r").getAutoscalePolicy();
+    AutoscalePolicySpecification actual = decoded.getTwillSpecification().getRunnables().get("r").getAutoscalePolicy();
+    Assert.assertNotNull(actual);
+    Assert.assertEquals(StepAutoscalePolicy.class.getName(), actual.getClassName());
+    Assert.assertEquals(expected.getConfigs(), actual.getConfigs());
+    Assert.assertEquals(2, actual.getMinInstances());
+    Assert.assertEquals(5, actual.getMaxInstances());
+    Assert.assertEquals(expected.getScaleOutCooldown(), actual.getScaleOutCooldown());
+    Assert.assertEquals(expected.getScaleInCooldown(), actual.getScaleInCooldown());
+
+    // Runnable without policy
+    Assert.assertNull(decoded.getTwillSpecification().getRunnables().get("s").getAutoscalePolicy());
+  }
+
+  @Test
+  public void testMissingPolicyClass() throws Exception {
+    // A policy class that cannot be loaded only disables autoscaling of the runnable
+    ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {
+      @Override
+      protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (name.equals(FailingPolicy.class.getName())) {
+          throw new ClassNotFoundException(name);
+        }
+        return super.loadClass(name, resolve);
+      }
+    };
+    Autoscaler autoscaler = createAutoscaler(new FailingPolicy(), classLoader, 0L);
+    Assert.assertEquals(Collections.singleton("r"), autoscaler.getRunnables());
+    Assert.assertEquals(3, autoscaler.evaluate("r", 3, gauges("queue", 0), SCALE_IN_COOLDOWN));
+    Assert.assertEquals(3, autoscaler.evaluate("r", 3, gauges("queue", 0), SCALE_IN_COOLDOWN));
+  }
+
+  private Autoscaler createAutoscaler(AutoscalePolicy policy, long startTime) {
+    return createAutoscaler(policy, getClass().getClassLoader(), startTime);
+  }
+
+  private Autoscaler createAutoscaler(AutoscalePolicy policy, ClassLoader classLoader, long startTime) {
+    // Goes through the specification, so that the policy is recreated from its configurations as in the AM
+    List<RuntimeSpecification> runtimeSpecs = new ArrayList<>(createSpecification(policy).getRunnables().values());
+    return new Autoscaler(runtimeSpecs, classLoader, startTime);
+  }
+
+  private TwillSpecification createSpecification(AutoscalePolicy policy) {
+    return TwillSpecification.Builder.with()
+      .setName("Autoscale")
+      .withRunnable()
+      .add("r", new DummyRunnable()).withAutoscalePolicy(policy).noLocalFiles()
+      .add("s", new DummyRunnable()).noLocalFiles()
+      .anyOrder()
+      .build();
+  }
+
+  private List<DefaultMetricsSnapshot> gauges(String name, long... values) {
+    ImmutableList.Builder<DefaultMetricsSnapshot> builder = ImmutableList.builder();
+    for (long value : values) {
+      builder.add(new DefaultMetricsSnapshot(ImmutableMap.<String, Long>of(), ImmutableMap.of(name, value),
+                                             ImmutableMap.<String, DefaultTimerSnapshot>of()));
+    }
+    return builder.build();
+  }
+
+  /**
+   * A policy that always fails.
+   */
+  public static final class FailingPolicy extends AutoscalePolicy {
+
+    @Override
+    public int evaluate(AutoscaleInput input) {
+      throw new IllegalStateException("Failure");
+    }
+  }
+
+  /**
+   * Dummy for test.
+   */
+  public static final class DummyRunnable extends AbstractTwillRunnable {
+
+    @Override
+    public void stop() {
+      // no-op
+    }
+
+    @Override
+    public void run() {
+      // no-op
+    }
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.appmaster;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.twill.api.ResourceReport;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.apache.twill.discovery.InMemoryDiscoveryService;
+import org.apache.twill.discovery.ServiceDiscovered;
+import org.apache.twill.internal.metrics.DefaultMetricsSnapshot;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Unit test for the discoverables endpoint of {@link TrackerService}.
+ */
+public class TrackerServiceTest {
+
+  private static final long WATCH_IDLE_MILLIS = 500;
+  private static final long INITIAL_LOAD_MILLIS = 200;
+
+  private InMemoryDiscoveryService discoveryService;
+  private TrackerService trackerService;
+  private ExecutorService executor;
+
+  @Before
+  public void init() {
+    discoveryService = new InMemoryDiscoveryService();
+    trackerService = startTrackerService(discoveryService, INITIAL_LOAD_MILLIS);
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void finish() {
+    executor.shutdownNow();
+    trackerService.stopAndWait();
+  }
+
+  @Test
+  public void testLongPoll() throws Exception {
+    discoveryService.register(new Discoverable("service", new InetSocketAddress("localhost", 1234)));
+
+    try (Socket socket = connect()) {
+      Response response = get(socket, "/discoverables/service");
+      Assert.assertEquals(200, response.status);
+      JsonObject json = response.getJson();
+      long version = json.get("version").getAsLong();
+      Assert.assertEquals(String.valueOf(version), response.headers.get("etag"));
+      Assert.assertEquals(1, json.getAsJsonArray("discoverables").size());
+
+      // Polling with the current version holds the request until there is a change
+      Future<Response> poll = poll(socket, "/discoverables/service?version=" + version + "&timeout=30");
+      try {
+        poll.get(500, TimeUnit.MILLISECONDS);
+        Assert.fail("Expected the poll to be held until the discoverables change");
+      } catch (TimeoutException e) {
+        // Expected
+      }
+      Cancellable cancellable = discoveryService.register(
+        new Discoverable("service", new InetSocketAddress("localhost", 5678)));
+      response = poll.get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(200, response.status);
+      json = response.getJson();
+      Assert.assertEquals(version + 1, json.get("version").getAsLong());
+      Assert.assertEquals(2, json.getAsJsonArray("discoverables").size());
+
+      // An outdated version is answered right away
+      response = get(socket, "/discoverables/service?version=" + version);
+      Assert.assertEquals(200, response.status);
+      Assert.assertEquals(version + 1, response.getJson().get("version").getAsLong());
+
+      // Removal is a change as well
+      poll = poll(socket, "/discoverables/service?version=" + (version + 1) + "&timeout=30");
+      cancellable.cancel();
+      response = poll.get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(version + 2, response.getJson().get("version").getAsLong());
+      Assert.assertEquals(1, response.getJson().getAsJsonArray("discoverables").size());
+    }
+  }
+
+  @Test
+  public void testInitialLoad() throws Exception {
+    // A discovery client that loads the discoverables asynchronously, like the ZooKeeper based one
+    final ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor();
+    DiscoveryServiceClient asyncClient = new DiscoveryServiceClient() {
+      @Override
+      public ServiceDiscovered discover(final String name) {
+        ServiceDiscovered serviceDiscovered = discoveryService.discover(name);
+        loader.schedule(new Runnable() {
+          @Override
+          public void run() {
+            discoveryService.register(new Discoverable(name, new InetSocketAddress("127.0.0.1", 1234)));
+          }
+        }, 500, TimeUnit.MILLISECONDS);
+        return serviceDiscovered;
+      }
+    };
+
+    trackerService.stopAndWait();
+    trackerService = startTrackerService(asyncClient, TimeUnit.SECONDS.toMillis(10));
+    try (Socket socket = connect()) {
+      // The first request is answered only after the discoverables are loaded
+      Response response = get(socket, "/discoverables/service");
+      Assert.assertEquals(200, response.status);
+      JsonArray discoverables = response.getJson().getAsJsonArray("discoverables");
+      Assert.assertEquals(1, discoverables.size());
+      // The host is returned as it was registered, without reverse lookup
+      Assert.assertEquals("127.0.0.1", discoverables.get(0).getAsJsonObject().get("hostname").getAsString());
+    } finally {
+      loader.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testNotModified() throws Exception {
+    try (Socket socket = connect()) {
+      Response response = get(socket, "/discoverables/service");
+      Assert.assertEquals(200, response.status);
+      long version = response.getJson().get("version").getAsLong();
+      Assert.assertEquals(0, response.getJson().getAsJsonArray("discoverables").size());
+
+      // Without a change, the poll is answered with 304 after the timeout
+      long startTime = System.nanoTime();
+      response = poll(socket, "/discoverables/service?version=" + version + "&timeout=1").get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(304, response.status);
+      Assert.assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(900));
+      Assert.assertEquals(String.valueOf(version), response.headers.get("etag"));
+      Assert.assertEquals(0, response.body.length);
+
+      // A zero timeout is answered right away
+      response = get(socket, "/discoverables/service?version=" + version + "&timeout=0");
+      Assert.assertEquals(304, response.status);
+
+      // The connection is still usable after the 304 responses
+      Assert.assertEquals(200, get(socket, "/discoverables/service").status);
+    }
+  }
+
+  @Test
+  public void testKeepAlive() throws Exception {
+    try (Socket socket = connect()) {
+      // All requests are served on the same connection
+      for (int i = 0; i < 5; i++) {
+        Response response = get(socket, "/discoverables/service" + (i % 2));
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("service" + (i % 2), response.getJson().get("service").getAsString());
+      }
+    }
+
+    // Connection is closed if the client asks for it
+    try (Socket socket = connect()) {
+      write(socket, "/discoverables/service0", "close");
+      Response response = read(socket.getInputStream());
+      Assert.assertEquals(200, response.status);
+      Assert.assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  @Test
+  public void testInvalidRequests() throws Exception {
+    try (Socket socket = connect()) {
+      Assert.assertEquals(404, get(socket, "/discoverables/a/b").status);
+    }
+    try (Socket socket = connect()) {
+      Assert.assertEquals(400, get(socket, "/discoverables/service?version=abc").status);
+    }
+  }
+
+  @Test
+  public void testIdleWatches() throws Exception {
+    try (Socket socket = connect()) {
+      Assert.assertEquals(200, get(socket, "/discoverables/service1").status);
+      Assert.assertEquals(200, get(socket, "/discoverables/service2").status);
+    }
+    Assert.assertEquals(2, trackerService.getDiscoverablesWatchCount());
+
+    // No more watch is created once the limit is reached
+    try (Socket socket = connect()) {
+      Assert.assertEquals(503, get(socket, "/discoverables/service3").status);
+    }
+    Assert.assertEquals(2, trackerService.getDiscoverablesWatchCount());
+
+    // A watch with a pending poll is not removed
+    try (Socket socket = connect()) {
+      long version = get(socket, "/discoverables/service1").getJson().get("version").getAsLong();
+      Future<Response> poll = poll(socket, "/discoverables/service1?version=" + version + "&timeout=30");
+      waitForWatchCount(1);
+      TimeUnit.MILLISECONDS.sleep(WATCH_IDLE_MILLIS * 3);
+      Assert.assertEquals(1, trackerService.getDiscoverablesWatchCount());
+
+      discoveryService.register(new Discoverable("service1", new InetSocketAddress("localhost", 1234)));
+      Assert.assertEquals(200, poll.get(10, TimeUnit.SECONDS).status);
+    }
+
+    // Idle watches are removed after the poll completed
+    waitForWatchCount(0);
+    try (Socket socket = connect()) {
+      Assert.assertEquals(200, get(socket, "/discoverables/service3").status);
+    }
+  }
+
+  private void waitForWatchCount(int count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (trackerService.getDiscoverablesWatchCount() != count && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+    Assert.assertEquals(count, trackerService.getDiscoverablesWatchCount());
+  }
+
+  private TrackerService startTrackerService(DiscoveryServiceClient discoveryServiceClient, long initialLoadMillis) {
+    TrackerService service = new TrackerService(Suppliers.<ResourceReport>ofInstance(null),
+                                                Suppliers.<Map<String, DefaultMetricsSnapshot>>ofInstance(
+                                                  ImmutableMap.<String, DefaultMetricsSnapshot>of()),
+                                                Suppliers.<DefaultMetricsSnapshot>ofInstance(null),
+                                                discoveryServiceClient, WATCH_IDLE_MILLIS, 2, initialLoadMillis);
+    service.setHost("localhost");
+    service.startAndWait();
+    return service;
+  }
+
+  private Socket connect() throws IOException {
+    InetSocketAddress address = trackerService.getBindAddress();
+    Socket socket = new Socket(address.getHostName(), address.getPort());
+    socket.setSoTimeout(60000);
+    return socket;
+  }
+
+  private Response get(Socket socket, String path) throws IOException {
+    write(socket, path, "keep-alive");
+    return read(socket.getInputStream());
+  }
+
+  private Future<Response> poll(final Socket socket, String path) throws IOException {
+    write(socket, path, "keep-alive");
+    return executor.submit(new Callable<Response>() {
+      @Override
+      public Response call() throws Exception {
+        return read(socket.getInputStream());
+      }
+    });
+  }
+
+  private void write(Socket socket, String path, String connection) throws IOException {
+    OutputStream os = socket.getOutputStream();
+    os.write(String.format("GET %s HTTP/1.1\r\nHost: localhost\r\nConnection: %s\r\n\r\n", path, connection)
+               .getBytes(StandardCharsets.UTF_8));
+    os.flush();
+  }
+
+  private Response read(InputStream is) throws IOException {
+    String statusLine = readLine(is);
+    int status = Integer.parseInt(statusLine.split(" ")[1]);
+    Map<String, String> headers = new HashMap<>();
+    String line = readLine(is);
+    while (!line.isEmpty()) {
+      int idx = line.indexOf(':');
+      headers.put(line.substring(0, idx).trim().toLowerCase(), line.substring(idx + 1).trim());
+      line = readLine(is);
+    }
+    byte[] body = new byte[Integer.parseInt(headers.get("content-length"))];
+    int offset = 0;
+    while (offset < body.length) {
+      int len = is.read(body, offset, body.length - offset);
+      if (len < 0) {
+        throw new IOException("Unexpected end of stream");
+      }
+      offset += len;
+    }
+    return new Response(status, headers, body);
+  }
+
+  private String readLine(InputStream is) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    int b = is.read();
+    while (b != '\n') {
+      if (b < 0) {
+        throw new IOException("Unexpected end of stream");
+      }
+      if (b != '\r') {
+        os.write(b);
+      }
+      b = is.read();
+    }
+    return new String(os.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static final class Response {
+    private final int status;
+    private final Map<String, String> headers;
+    private final byte[] body;
+
+    Response(int status, Map<String, String> headers, byte[] body) {
+      this.status = status;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    JsonObject getJson() {
+      return new JsonParser().parse(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+  }
+}
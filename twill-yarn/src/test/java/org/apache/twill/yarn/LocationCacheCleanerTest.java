@@ -17,12 +17,16 @@
  */
 package org.apache.twill.yarn;
 
+import com.google.common.collect.ImmutableSet;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.twill.api.Configs;
 import org.apache.twill.filesystem.LocalLocationFactory;
 import org.apache.twill.filesystem.Location;
 import org.apache.twill.filesystem.LocationFactory;
 import org.apache.twill.internal.io.BasicLocationCache;
 import org.apache.twill.internal.io.LocationCache;
+import org.apache.twill.internal.io.LocationCacheManifest;
+import org.apache.twill.internal.metrics.DefaultMetricsRegistry;
 import org.junit.Assert;
 import org.junit.ClassRule;
 import org.junit.Test;
@@ -31,6 +35,8 @@ import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Unit test for {@link LocationCacheCleaner}.
@@ -40,19 +46,19 @@ public class LocationCacheCleanerTest {
   @ClassRule
   public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
 
+  private final LocationCache.Loader cacheLoader = new LocationCache.Loader() {
+    @Override
+    public void load(String name, Location targetLocation) throws IOException {
+      try (PrintStream printer = new PrintStream(targetLocation.getOutputStream(), true, "UTF-8")) {
+        printer.println(name);
+      }
+    }
+  };
+
   @Test
   public void testCleanup() throws IOException {
     LocationFactory lf = new LocalLocationFactory(TEMP_FOLDER.newFolder());
     Location cacheBase = lf.create("cache");
-    LocationCache.Loader cacheLoader = new LocationCache.Loader() {
-      @Override
-      public void load(String name, Location targetLocation) throws IOException {
-        try (PrintStream printer = new PrintStream(targetLocation.getOutputStream(), true, "UTF-8")) {
-          printer.println(name);
-        }
-      }
-    };
-
     // Create a cache with a session
     LocationCache cache = new BasicLocationCache(cacheBase.append("old"));
     cache.get("old", cacheLoader);
@@ -72,7 +78,70 @@ public class LocationCacheCleanerTest {
 
     // The cache directory should only have the new session directory
     Assert.assertEquals(Collections.singletonList(cacheBase.append(sessionId)), cacheBase.list());
-    // The new session cache directory should be empty
-    Assert.assertTrue(cacheBase.append(sessionId).list().isEmpty());
+    // The new session cache directory should only have the manifest
+    Assert.assertEquals(Collections.singletonList(cacheBase.append(sessionId).append(LocationCacheManifest.NAME)),
+                        cacheBase.append(sessionId).list());
+  }
+
+  @Test
+  public void testManifestExpiry() throws Exception {
+    LocationFactory lf = new LocalLocationFactory(TEMP_FOLDER.newFolder());
+    Location cacheBase = lf.create("cache");
+    String sessionId = "current";
+    Location cacheDir = cacheBase.append(sessionId);
+    // Writes the manifest on every cache hit
+    BasicLocationCache cache = new BasicLocationCache(cacheDir, new DefaultMetricsRegistry(), 0L);
+
+    cache.get("a", cacheLoader);
+    cache.get("b", cacheLoader);
+    Map<String, LocationCacheManifest.Entry> manifest = LocationCacheManifest.read(cacheDir);
+    Assert.assertNotNull(manifest);
+    Assert.assertEquals(ImmutableSet.of("a", "b"), manifest.keySet());
+
+    // Use "a" again later. The creation time should be retained.
+    TimeUnit.MILLISECONDS.sleep(10);
+    cache.get("a", cacheLoader);
+    Map<String, LocationCacheManifest.Entry> newManifest = LocationCacheManifest.read(cacheDir);
+    Assert.assertNotNull(newManifest);
+    Assert.assertEquals(manifest.get("a").getCreationTime(), newManifest.get("a").getCreationTime());
+    Assert.assertTrue(newManifest.get("a").getLastUseTime() > manifest.get("b").getLastUseTime());
+
+    // Create a cache directory of an old session without manifest
+    Location legacyDir = cacheBase.append("legacy");
+    try (PrintStream printer = new PrintStream(legacyDir.append("legacy").getOutputStream(), true, "UTF-8")) {
+      printer.println("legacy");
+    }
+
+    long expiry = TimeUnit.HOURS.toMillis(1);
+    Configuration config = new Configuration();
+    config.setLong(Configs.Keys.LOCATION_CACHE_EXPIRY_MS, expiry);
+    LocationCacheCleaner cleaner = new LocationCacheCleaner(config, cacheBase, sessionId, location -> true,
+                                                            location -> cache.removed(location.getName()));
+
+    // Only "b" expires based on its last use time
+    long bExpireTime = manifest.get("b").getLastUseTime() + expiry;
+    cleaner.cleanup(bExpireTime);
+    Assert.assertTrue(cacheDir.append("a").exists());
+    Assert.assertFalse(cacheDir.append("b").exists());
+
+    // The removed entry is dropped from the manifest on the next write
+    cache.get("a", cacheLoader);
+    manifest = LocationCacheManifest.read(cacheDir);
+    Assert.assertNotNull(manifest);
+    Assert.assertEquals(Collections.singleton("a"), manifest.keySet());
+    // The entry in the legacy directory expires based on the time when it is first seen
+    Assert.assertTrue(legacyDir.append("legacy").exists());
+
+    // Cleanup with time after the expiry of all entries. The legacy directory should be removed.
+    cleaner.cleanup(bExpireTime + expiry);
+    Assert.assertFalse(cacheDir.append("a").exists());
+    Assert.assertFalse(legacyDir.exists());
+    Assert.assertEquals(Collections.singletonList(cacheDir), cacheBase.list());
+
+    // Load "b" again, it should be picked up by the cleaner
+    cache.get("b", cacheLoader);
+    Assert.assertTrue(cacheDir.append("b").exists());
+    cleaner.cleanup(Long.MAX_VALUE);
+    Assert.assertFalse(cacheDir.append("b").exists());
   }
 }
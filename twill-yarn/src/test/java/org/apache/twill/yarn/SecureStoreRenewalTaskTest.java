@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.yarn;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.api.RunId;
+import org.apache.twill.api.metrics.MetricsSnapshot;
+import org.apache.twill.internal.RunIds;
+import org.apache.twill.internal.metrics.DefaultMetricsRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for {@link SecureStoreRenewalTask} and {@link SecureStoreUpdateNotifier}.
+ */
+public class SecureStoreRenewalTaskTest {
+
+  private RecordingExecutor executor;
+
+  @Before
+  public void init() {
+    executor = new RecordingExecutor();
+  }
+
+  @After
+  public void finish() {
+    executor.shutdownNow();
+  }
+
+  @Test(timeout = 10000)
+  public void testRetryWithBackoff() throws Exception {
+    DefaultMetricsRegistry metrics = new DefaultMetricsRegistry();
+    AtomicInteger calls = new AtomicInteger();
+
+    // Fails three times before success
+    SecureStoreRenewalTask task = new SecureStoreRenewalTask("app", RunIds.generate(), failing(calls, 3),
+                                                             executor, metrics, 5, 10L, System.currentTimeMillis());
+    task.start().get();
+
+    Assert.assertEquals(4, calls.get());
+    Assert.assertEquals(Arrays.asList(10L, 20L, 40L), executor.getDelays());
+
+    MetricsSnapshot snapshot = metrics.snapshot();
+    Assert.assertEquals(3L, snapshot.getCounters().get(SecureStoreRenewalTask.RETRIES + "app").longValue());
+    Assert.assertNull(snapshot.getCounters().get(SecureStoreRenewalTask.FAILURES + "app"));
+    Assert.assertEquals(1L, snapshot.getTimers().get(SecureStoreRenewalTask.LAG + "app").getCount());
+  }
+
+  @Test(timeout = 10000)
+  public void testFailure() throws Exception {
+    DefaultMetricsRegistry metrics = new DefaultMetricsRegistry();
+    AtomicInteger calls = new AtomicInteger();
+
+    SecureStoreRenewalTask task = new SecureStoreRenewalTask("app", RunIds.generate(),
+                                                             failing(calls, Integer.MAX_VALUE),
+                                                             executor, metrics, 3, 1L, System.currentTimeMillis());
+    try {
+      task.start().get();
+      Assert.fail("Expected renewal failure");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+
+    Assert.assertEquals(3, calls.get());
+    Assert.assertEquals(Arrays.asList(1L, 2L), executor.getDelays());
+
+    MetricsSnapshot snapshot = metrics.snapshot();
+    Assert.assertEquals(2L, snapshot.getCounters().get(SecureStoreRenewalTask.RETRIES + "app").longValue());
+    Assert.assertEquals(1L, snapshot.getCounters().get(SecureStoreRenewalTask.FAILURES + "app").longValue());
+    Assert.assertNull(snapshot.getTimers().get(SecureStoreRenewalTask.LAG + "app"));
+
+    // Metrics of the application are gone after removal
+    SecureStoreRenewalTask.removeMetrics(metrics, "app");
+    snapshot = metrics.snapshot();
+    Assert.assertTrue(snapshot.getCounters().isEmpty());
+    Assert.assertTrue(snapshot.getTimers().isEmpty());
+  }
+
+  @Test(timeout = 10000)
+  public void testNotifier() throws Exception {
+    final List<String> notified = new ArrayList<>();
+    SecureStoreUpdateNotifier<String> notifier = new SecureStoreUpdateNotifier<>(
+      new Function<String, ListenableFuture<?>>() {
+        @Override
+        public ListenableFuture<?> apply(String target) {
+          notified.add(target);
+          return Futures.immediateFuture(target);
+        }
+      });
+
+    // Nothing is sent until the end of the round, and duplicated targets are only notified once
+    notifier.add("a");
+    notifier.add("b");
+    notifier.add("a");
+    notifier.add("c");
+    notifier.add("b");
+    Assert.assertTrue(notified.isEmpty());
+
+    notifier.flush().get();
+    Assert.assertEquals(Arrays.asList("a", "b", "c"), notified);
+
+    // The next round notifies again
+    notifier.add("a");
+    notifier.flush().get();
+    Assert.assertEquals(Arrays.asList("a", "b", "c", "a"), notified);
+
+    // Flush with nothing pending sends nothing
+    notifier.flush().get();
+    Assert.assertEquals(4, notified.size());
+  }
+
+  private Callable<Void> failing(final AtomicInteger calls, final int failures) {
+    return new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        if (calls.incrementAndGet() <= failures) {
+          throw new IOException("Renewal failure " + calls.get());
+        }
+        return null;
+      }
+    };
+  }
+
+  /**
+   * A {@link ScheduledThreadPoolExecutor} that records the delays of delayed tasks.
+   */
+  private static final class RecordingExecutor extends ScheduledThreadPoolExecutor {
+
+    private final List<Long> delays = new ArrayList<>();
+
+    RecordingExecutor() {
+      super(1);
+    }
+
+    @Override
+    public synchronized ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+      // ScheduledThreadPoolExecutor.execute() schedules with zero delay, which is not a retry
+      if (delay > 0) {
+        delays.add(unit.toMillis(delay));
+      }
+      return super.schedule(command, delay, unit);
+    }
+
+    synchronized List<Long> getDelays() {
+      return new ArrayList<>(delays);
+    }
+  }
+}
@@ -25,6 +25,13 @@ import org.apache.twill.api.TwillController;
 import org.apache.twill.api.TwillRunner;
 import org.apache.twill.api.logging.PrinterLogHandler;
 import org.apache.twill.common.Threads;
+import org.apache.twill.internal.zookeeper.KillZKSession;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.apache.twill.zookeeper.ZKClientServices;
+import org.apache.twill.zookeeper.ZKClients;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.jmx.MBeanRegistry;
 import org.apache.zookeeper.server.ConnectionMXBean;
 import org.junit.Assert;
@@ -33,11 +40,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.management.MBeanServer;
 import javax.management.MBeanServerInvocationHandler;
 import javax.management.ObjectName;
@@ -85,6 +94,65 @@ public class SessionExpireTestRun extends BaseYarnTest {
     controller.terminate().get(120, TimeUnit.SECONDS);
   }
 
+  @Test
+  public void testRewatchManyWatches() throws Exception {
+    final CountDownLatch expireReconnectLatch = new CountDownLatch(1);
+    final AtomicBoolean expired = new AtomicBoolean(false);
+    ZKClientService zkClient = ZKClientServices.delegate(ZKClients.reWatchOnExpire(
+      ZKClientService.Builder.of(getZKConnectionString()).setConnectionWatcher(new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+          if (event.getState() == Event.KeeperState.Expired) {
+            expired.set(true);
+          } else if (event.getState() == Event.KeeperState.SyncConnected && expired.get()) {
+            expireReconnectLatch.countDown();
+          }
+        }
+      }).build()));
+    zkClient.startAndWait();
+
+    try {
+      // 10k watches on 1000 nodes, which need to be re-set after the session expired
+      int nodes = 1000;
+      int watchesPerNode = 10;
+      final CountDownLatch changedLatch = new CountDownLatch(nodes * watchesPerNode);
+      Watcher watcher = new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+          if (event.getType() == Event.EventType.NodeDataChanged) {
+            changedLatch.countDown();
+          }
+        }
+      };
+      for (int i = 0; i < nodes; i++) {
+        String path = "/rewatch/node" + i;
+        zkClient.create(path, null, CreateMode.PERSISTENT).get();
+        for (int j = 0; j < watchesPerNode; j++) {
+          zkClient.getData(path, watcher).get();
+        }
+      }
+
+      KillZKSession.kill(zkClient.getZooKeeperSupplier().get(), getZKConnectionString(), 10000);
+      Assert.assertTrue(expireReconnectLatch.await(60, TimeUnit.SECONDS));
+
+      // Keep changing the nodes until all watches are triggered, as re-watch could still be in progress
+      Stopwatch stopwatch = new Stopwatch().start();
+      int round = 0;
+      while (changedLatch.getCount() > 0 && stopwatch.elapsedTime(TimeUnit.SECONDS) < 60) {
+        for (int i = 0; i < nodes && changedLatch.getCount() > 0; i++) {
+          zkClient.setData("/rewatch/node" + i, Integer.toString(round).getBytes(StandardCharsets.UTF_8)).get();
+        }
+        round++;
+        changedLatch.await(1, TimeUnit.SECONDS);
+      }
+      LOG.info("All {} watches triggered after session expiry in {} ms",
+               nodes * watchesPerNode, stopwatch.elapsedTime(TimeUnit.MILLISECONDS));
+      Assert.assertEquals(0, changedLatch.getCount());
+    } finally {
+      zkClient.stopAndWait();
+    }
+  }
+
   private boolean expireAppMasterZKSession(TwillController controller, long timeout, TimeUnit timeoutUnit) {
     MBeanServer mbeanServer = MBeanRegistry.getInstance().getPlatformMBeanServer();
     QueryExp query = Query.isInstanceOf(new StringValueExp(ConnectionMXBean.class.getName()));
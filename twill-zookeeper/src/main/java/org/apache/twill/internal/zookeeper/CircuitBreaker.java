@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A circuit breaker for a {@link FailureRetryZKClient}. After a number of consecutive retryable failures, which
+ * happen when the ensemble is unavailable, the circuit opens and operations fail fast without going to ZooKeeper.
+ * After the open period, a single operation is let through as a probe. The circuit closes if the probe succeeds,
+ * otherwise it opens again.
+ */
+final class CircuitBreaker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  static final int DEFAULT_FAILURE_THRESHOLD = 20;
+  static final long DEFAULT_OPEN_MILLIS = 1000L;
+
+  /**
+   * States of the circuit.
+   */
+  enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openNanos;
+  private State state;
+  private int consecutiveFailures;
+  private long openUntilNanos;
+  private boolean probing;
+
+  /**
+   * Creates a {@link CircuitBreaker} with the default settings.
+   */
+  static CircuitBreaker create() {
+    return new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param failureThreshold number of consecutive failures to open the circuit
+   * @param openTime time to keep the circuit open before probing
+   * @param unit unit of the open time
+   */
+  CircuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+    Preconditions.checkArgument(failureThreshold > 0, "Failure threshold must be > 0");
+    Preconditions.checkArgument(openTime >= 0, "Open time must be >= 0");
+    this.failureThreshold = failureThreshold;
+    this.openNanos = unit.toNanos(openTime);
+    this.state = State.CLOSED;
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * Returns {@code true} if an operation can be sent to ZooKeeper. When the circuit is half open, only the
+   * first caller is allowed as the probe.
+   */
+  synchronized boolean allowRequest() {
+    if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+      state = State.HALF_OPEN;
+      probing = false;
+    }
+    if (state == State.HALF_OPEN && !probing) {
+      probing = true;
+      return true;
+    }
+    return state == State.CLOSED;
+  }
+
+  /**
+   * Returns the number of milliseconds until operations may be let through again, or {@code 0} if the circuit
+   * is closed. While a probe is in progress, it is the open time.
+   */
+  synchronized long getRetryDelayMillis() {
+    switch (state) {
+      case OPEN:
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(openUntilNanos - System.nanoTime()));
+      case HALF_OPEN:
+        return TimeUnit.NANOSECONDS.toMillis(openNanos);
+      default:
+        return 0L;
+    }
+  }
+
+  /**
+   * Records an operation that reached ZooKeeper, including the ones that failed with non-retryable errors.
+   */
+  synchronized void onSuccess() {
+    consecutiveFailures = 0;
+    if (state != State.CLOSED) {
+      LOG.info("ZooKeeper is available again. Closing circuit.");
+      state = State.CLOSED;
+    }
+  }
+
+  /**
+   * Records an operation that failed with retryable error.
+   */
+  synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+      if (state == State.CLOSED) {
+        LOG.warn("ZooKeeper operations failed {} times in a row. Failing fast for {} ms.",
+                 consecutiveFailures, TimeUnit.NANOSECONDS.toMillis(openNanos));
+      }
+      state = State.OPEN;
+      openUntilNanos = System.nanoTime() + openNanos;
+    }
+  }
+}
@@ -0,0 +1,726 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.api.metrics.Counter;
+import org.apache.twill.api.metrics.Gauge;
+import org.apache.twill.api.metrics.MetricsRegistry;
+import org.apache.twill.common.Threads;
+import org.apache.twill.zookeeper.ACLData;
+import org.apache.twill.zookeeper.ForwardingZKClient;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.OperationFuture;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link ZKClient} that compresses node data larger than a threshold and splits data that is still larger than
+ * the chunk size across child nodes, so that payloads above the ZooKeeper {@code jute.maxbuffer} limit can be stored.
+ * <p/>
+ * Data that is written as is doesn't carry any header, hence it is compatible with clients not using this class.
+ * Encoded data starts with a header of the {@link #MAGIC} bytes, the format version, flags and the length of the
+ * original data. Data read without the header is returned as is. For data stored in chunks, the header also carries
+ * the generation and the number of chunks, which are stored in persistent child nodes named
+ * {@code _chunk-<generation>-<index>}. Chunks of a new generation are written before the header, so that readers
+ * and watchers of the node always see complete data. Chunk nodes are hidden from {@link #getChildren}. A node
+ * created with chunks first carries a pending header until its chunks are written, and is read as not existing
+ * until then. The watch set by such a read is triggered once the header is set. If writing the chunks or the header
+ * fails, the node is deleted.
+ * <p/>
+ * An update of a node that has children reads the current header first and replaces it with a conditional set on
+ * the version read, so that only the chunks of the generation referenced by the replaced header are deleted
+ * afterwards. Chunks written by concurrent writers that haven't set their header yet are left untouched. For a node
+ * without children, hence without chunks, only the version is read. An update without a version is retried with
+ * the new header, up to a limited number of times, if another writer updated the node in between.
+ * <p/>
+ * Ephemeral and sequential nodes cannot be chunked, as ephemeral nodes cannot have children and the path of a
+ * sequential node is unknown before it is created. The {@link Stat} returned by operations describes the
+ * encoded data.
+ */
+public final class CompressingZKClient extends ForwardingZKClient {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CompressingZKClient.class);
+
+  public static final int DEFAULT_COMPRESS_THRESHOLD = 1024;
+  public static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+
+  public static final String RAW_BYTES = "zk.compression.bytes.raw";
+  public static final String ENCODED_BYTES = "zk.compression.bytes.encoded";
+  public static final String RATIO_PERCENT = "zk.compression.ratio.percent";
+
+  // Starts with a zero byte, which doesn't appear in text data
+  static final byte[] MAGIC = new byte[] { 0, 'T', 'Z', 'C' };
+  static final String CHUNK_PREFIX = "_chunk-";
+
+  private static final byte VERSION = 1;
+  private static final byte FLAG_DEFLATE = 1;
+  private static final byte FLAG_CHUNKED = 2;
+  private static final byte FLAG_PENDING = 4;
+  private static final int HEADER_SIZE = MAGIC.length + 2 + 4;
+  private static final int CHUNKED_HEADER_SIZE = HEADER_SIZE + 8 + 4;
+  private static final int MAX_READ_ATTEMPTS = 3;
+  private static final int MAX_SET_ATTEMPTS = 10;
+
+  private static final Predicate<String> ALL_CHUNKS = new Predicate<String>() {
+    @Override
+    public boolean apply(String name) {
+      return name.startsWith(CHUNK_PREFIX);
+    }
+  };
+
+  private final int compressThreshold;
+  private final int chunkSize;
+  private final AtomicLong rawBytes;
+  private final AtomicLong encodedBytes;
+  private final Counter rawBytesCounter;
+  private final Counter encodedBytesCounter;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param delegate the {@link ZKClient} for operations delegation
+   * @param compressThreshold data larger than this number of bytes is compressed
+   * @param chunkSize maximum number of bytes stored in a node before the data is split into chunks
+   * @param registry optional {@link MetricsRegistry} for reporting the number of bytes encoded and the ratio
+   */
+  public CompressingZKClient(ZKClient delegate, int compressThreshold, int chunkSize,
+                             @Nullable MetricsRegistry registry) {
+    super(delegate);
+    Preconditions.checkArgument(compressThreshold >= 0, "Compress threshold must be >= 0");
+    Preconditions.checkArgument(chunkSize > CHUNKED_HEADER_SIZE, "Chunk size must be > %s", CHUNKED_HEADER_SIZE);
+    this.compressThreshold = compressThreshold;
+    this.chunkSize = chunkSize;
+    this.rawBytes = new AtomicLong();
+    this.encodedBytes = new AtomicLong();
+    this.rawBytesCounter = registry == null ? null : registry.counter(RAW_BYTES);
+    this.encodedBytesCounter = registry == null ? null : registry.counter(ENCODED_BYTES);
+    if (registry != null) {
+      registry.gauge(RATIO_PERCENT, new Gauge() {
+        @Override
+        public long getValue() {
+          return Math.round(getCompressionRatio() * 100);
+        }
+      });
+    }
+  }
+
+  /**
+   * Returns the ratio between the number of bytes written and the number of bytes given for the data that is
+   * encoded by this client, or {@code 1} if nothing has been encoded.
+   */
+  public double getCompressionRatio() {
+    long raw = rawBytes.get();
+    return raw == 0 ? 1d : (double) encodedBytes.get() / raw;
+  }
+
+  @Override
+  public OperationFuture<String> create(String path, @Nullable byte[] data, CreateMode createMode,
+                                        boolean createParent, final Iterable<ACL> acl) {
+    final Encoded encoded = encode(data);
+    if (encoded.chunks.isEmpty()) {
+      return super.create(path, encoded.head, createMode, createParent, acl);
+    }
+
+    final SettableOperationFuture<String> result = SettableOperationFuture.create(path, Threads.SAME_THREAD_EXECUTOR);
+    if (createMode.isEphemeral() || createMode.isSequential()) {
+      result.setException(new IllegalArgumentException(
+        "Data of " + data.length + " bytes is too large for " + createMode + " node " + path));
+      return result;
+    }
+
+    // Create the node with a pending header, as chunks are created under it before the header is set.
+    ByteBuffer pending = ByteBuffer.allocate(HEADER_SIZE);
+    writeHeader(pending, FLAG_PENDING, 0);
+    Futures.addCallback(super.create(path, pending.array(), createMode, createParent, acl),
+                        new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String createdPath) {
+        writeChunks(createdPath, encoded, acl, 0, true, result, createdPath);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        result.setException(t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+    return result;
+  }
+
+  @Override
+  public OperationFuture<Stat> setData(final String dataPath, byte[] data, final int version) {
+    final Encoded encoded = encode(data);
+    final SettableOperationFuture<Stat> result = SettableOperationFuture.create(dataPath, Threads.SAME_THREAD_EXECUTOR);
+    if (encoded.chunks.isEmpty()) {
+      setHeader(dataPath, encoded, version, result, null, 1);
+      return result;
+    }
+
+    // Chunks are created with the same ACL as the node
+    Futures.addCallback(super.getACL(dataPath), new FutureCallback<ACLData>() {
+      @Override
+      public void onSuccess(ACLData aclData) {
+        writeChunks(dataPath, encoded, aclData.getACL(), version, false, result, null);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        result.setException(t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+    return result;
+  }
+
+  @Override
+  public OperationFuture<NodeData> getData(final String path, @Nullable Watcher watcher) {
+    final SettableOperationFuture<NodeData> result = SettableOperationFuture.create(path, Threads.SAME_THREAD_EXECUTOR);
+    Futures.addCallback(super.getData(path, watcher), new FutureCallback<NodeData>() {
+      @Override
+      public void onSuccess(NodeData nodeData) {
+        decode(path, nodeData, result, 1);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        result.setException(t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+    return result;
+  }
+
+  @Override
+  public OperationFuture<NodeChildren> getChildren(String path, @Nullable Watcher watcher) {
+    final SettableOperationFuture<NodeChildren> result = SettableOperationFuture.create(path,
+                                                                                        Threads.SAME_THREAD_EXECUTOR);
+    Futures.addCallback(super.getChildren(path, watcher), new FutureCallback<NodeChildren>() {
+      @Override
+      public void onSuccess(NodeChildren nodeChildren) {
+        List<String> children = new ArrayList<>(nodeChildren.getChildren().size());
+        for (String child : nodeChildren.getChildren()) {
+          if (!ALL_CHUNKS.apply(child)) {
+            children.add(child);
+          }
+        }
+        result.set(children.size() == nodeChildren.getChildren().size()
+                     ? nodeChildren : new BasicNodeChildren(children, nodeChildren.getStat()));
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        result.setException(t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+    return result;
+  }
+
+  @Override
+  public OperationFuture<String> delete(final String deletePath, final int version) {
+    final SettableOperationFuture<String> result = SettableOperationFuture.create(deletePath,
+                                                                                  Threads.SAME_THREAD_EXECUTOR);
+    Futures.addCallback(super.delete(deletePath, version), new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String path) {
+        result.set(path);
+      }
+
+      @Override
+      public void onFailure(final Throwable notEmpty) {
+        if (!(notEmpty instanceof KeeperException.NotEmptyException)) {
+          result.setException(notEmpty);
+          return;
+        }
+        // The node may have chunks. Delete them and try again, but only if chunks are the only children.
+        OperationFuture<NodeChildren> childrenFuture = CompressingZKClient.super.getChildren(deletePath, null);
+        Futures.addCallback(childrenFuture, new FutureCallback<NodeChildren>() {
+          @Override
+          public void onSuccess(NodeChildren nodeChildren) {
+            for (String child : nodeChildren.getChildren()) {
+              if (!ALL_CHUNKS.apply(child)) {
+                result.setException(notEmpty);
+                return;
+              }
+            }
+            deleteChunksAndNode(deletePath, version, result);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            result.setException(t);
+          }
+        }, Threads.SAME_THREAD_EXECUTOR);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+    return result;
+  }
+
+  /**
+   * Deletes all the chunks of the given node and then the node itself.
+   */
+  private void deleteChunksAndNode(final String path, final int version, final SettableOperationFuture<String> result) {
+    Futures.addCallback(deleteChunks(path, ALL_CHUNKS), new FutureCallback<Object>() {
+      @Override
+      public void onSuccess(Object ignored) {
+        Futures.addCallback(CompressingZKClient.super.delete(path, version), new FutureCallback<String>() {
+          @Override
+          public void onSuccess(String deletedPath) {
+            result.set(deletedPath);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            result.setException(t);
+          }
+        }, Threads.SAME_THREAD_EXECUTOR);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        result.setException(t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+
+  /**
+   * Creates the chunks of the encoded data and then sets the header to the node. The new chunks are deleted if
+   * setting the header failed.
+   *
+   * @param acl ACL of the chunk nodes
+   * @param created {@code true} if the node was just created with a pending header by this client
+   * @param value value to complete the result with, or {@code null} to complete it with the {@link Stat} of the node
+   */
+  private <V> void writeChunks(final String path, final Encoded encoded, Iterable<ACL> acl, final int version,
+                               final boolean created, final SettableOperationFuture<V> result,
+                               @Nullable final V value) {
+    List<ListenableFuture<String>> futures = new ArrayList<>(encoded.chunks.size());
+    for (int i = 0; i < encoded.chunks.size(); i++) {
+      String chunkPath = path + "/" + chunkName(encoded.generation, i);
+      futures.add(super.create(chunkPath, encoded.chunks.get(i), CreateMode.PERSISTENT, false, acl));
+    }
+
+    Futures.addCallback(Futures.allAsList(futures), new FutureCallback<List<String>>() {
+      @Override
+      public void onSuccess(List<String> chunkPaths) {
+        if (created) {
+          // Nothing to replace in a node just created, hence no need to read it
+          replaceHeader(path, encoded, version, version, null, true, result, value, 1);
+        } else {
+          setHeader(path, encoded, version, result, value, 1);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        failed(path, encoded, created, result, t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+
+  /**
+   * Reads the current version of the node and replaces its header with the header of the encoded data. The current
+   * header is only read if the node has children, as a node without children cannot have chunks to delete.
+   *
+   * @param version the expected version of the node, or {@code -1} to replace any version
+   * @param value value to complete the result with, or {@code null} to complete it with the {@link Stat} of the node
+   * @param attempt the number of attempts made to set the header, starting from {@code 1}
+   */
+  private <V> void setHeader(final String path, final Encoded encoded, final int version,
+                             final SettableOperationFuture<V> result, @Nullable final V value, final int attempt) {
+    Futures.addCallback(super.exists(path, null), new FutureCallback<Stat>() {
+      @Override
+      public void onSuccess(@Nullable Stat stat) {
+        if (stat == null) {
+          failed(path, encoded, false, result, KeeperException.create(KeeperException.Code.NONODE, path));
+          return;
+        }
+        if (stat.getNumChildren() == 0) {
+          replaceHeader(path, encoded, version, version == -1 ? stat.getVersion() : version,
+                        null, false, result, value, attempt);
+          return;
+        }
+        Futures.addCallback(CompressingZKClient.super.getData(path, null), new FutureCallback<NodeData>() {
+          @Override
+          public void onSuccess(NodeData nodeData) {
+            replaceHeader(path, encoded, version, version == -1 ? nodeData.getStat().getVersion() : version,
+                          getChunkGeneration(nodeData.getData()), false, result, value, attempt);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            failed(path, encoded, false, result, t);
+          }
+        }, Threads.SAME_THREAD_EXECUTOR);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        failed(path, encoded, false, result, t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+
+  /**
+   * Replaces the header of the node with the header of the encoded data, conditioned on the given version. After
+   * the header is set, the chunks of the replaced generation are deleted. If the node was updated in between and
+   * no version is given, it is retried with the new header. On failure, the chunks of the encoded data, if any,
+   * are deleted.
+   *
+   * @param version the expected version given by the caller, or {@code -1} to replace any version
+   * @param expectedVersion the version of the node to replace
+   * @param replacedGeneration the chunk generation of the header to replace, or {@code null} if it has no chunks
+   * @param created {@code true} if the node was just created with a pending header by this client
+   */
+  private <V> void replaceHeader(final String path, final Encoded encoded, final int version, int expectedVersion,
+                                 @Nullable final Long replacedGeneration, final boolean created,
+                                 final SettableOperationFuture<V> result, @Nullable final V value,
+                                 final int attempt) {
+    Futures.addCallback(super.setData(path, encoded.head, expectedVersion), new FutureCallback<Stat>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public void onSuccess(Stat stat) {
+        if (replacedGeneration != null && replacedGeneration != encoded.generation) {
+          deleteChunks(path, chunksOf(replacedGeneration));
+        }
+        result.set(value == null ? (V) stat : value);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (version == -1 && t instanceof KeeperException.BadVersionException && attempt < MAX_SET_ATTEMPTS) {
+          // Updated by another writer after the header was read
+          setHeader(path, encoded, version, result, value, attempt + 1);
+          return;
+        }
+        failed(path, encoded, created, result, t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+
+  /**
+   * Fails the given result after deleting the chunks of the encoded data, or the whole node if it was just
+   * created by this client.
+   */
+  private <V> void failed(String path, Encoded encoded, boolean created,
+                          SettableOperationFuture<V> result, Throwable t) {
+    if (created) {
+      deleteChunksAndNode(path, -1, SettableOperationFuture.<String>create(path, Threads.SAME_THREAD_EXECUTOR));
+    } else if (!encoded.chunks.isEmpty()) {
+      deleteChunks(path, chunksOf(encoded.generation));
+    }
+    result.setException(t);
+  }
+
+  /**
+   * Deletes the chunk nodes under the given path with names accepted by the given filter. Failures in deleting
+   * individual chunks are ignored.
+   *
+   * @return a future that completes when all the deletions are completed
+   */
+  private ListenableFuture<?> deleteChunks(final String path, final Predicate<String> filter) {
+    final SettableOperationFuture<Object> result = SettableOperationFuture.create(path, Threads.SAME_THREAD_EXECUTOR);
+    Futures.addCallback(super.getChildren(path, null), new FutureCallback<NodeChildren>() {
+      @Override
+      public void onSuccess(NodeChildren nodeChildren) {
+        List<ListenableFuture<String>> futures = new ArrayList<>();
+        for (String child : nodeChildren.getChildren()) {
+          if (filter.apply(child)) {
+            futures.add(CompressingZKClient.super.delete(path + "/" + child, -1));
+          }
+        }
+        Futures.addCallback(Futures.successfulAsList(futures), new FutureCallback<List<String>>() {
+          @Override
+          public void onSuccess(List<String> deleted) {
+            result.set(deleted);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            result.setException(t);
+          }
+        }, Threads.SAME_THREAD_EXECUTOR);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.debug("Failed to list chunks of {}", path, t);
+        result.setException(t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+    return result;
+  }
+
+  /**
+   * Decodes the given node data and completes the result with it. If the data is stored in chunks and a chunk is
+   * missing because of a concurrent update, the node is read again.
+   */
+  private void decode(final String path, NodeData nodeData, final SettableOperationFuture<NodeData> result,
+                      final int attempt) {
+    final byte[] data = nodeData.getData();
+    if (!hasHeader(data)) {
+      result.set(nodeData);
+      return;
+    }
+
+    try {
+      final ByteBuffer header = ByteBuffer.wrap(data, MAGIC.length, data.length - MAGIC.length);
+      byte version = header.get();
+      if (version > VERSION) {
+        throw new IllegalStateException("Unsupported encoding version " + version + " of node " + path);
+      }
+      final byte flags = header.get();
+      final int length = header.getInt();
+      if ((flags & FLAG_PENDING) != 0) {
+        // The chunks of a node being created are not written yet
+        result.setException(KeeperException.create(KeeperException.Code.NONODE, path));
+        return;
+      }
+      if ((flags & FLAG_CHUNKED) == 0) {
+        result.set(new BasicNodeData(decodePayload(data, HEADER_SIZE, data.length - HEADER_SIZE, flags, length),
+                                     nodeData.getStat()));
+        return;
+      }
+
+      final Stat stat = nodeData.getStat();
+      long generation = header.getLong();
+      int chunkCount = header.getInt();
+      List<ListenableFuture<NodeData>> futures = new ArrayList<>(chunkCount);
+      for (int i = 0; i < chunkCount; i++) {
+        futures.add(super.getData(path + "/" + chunkName(generation, i), null));
+      }
+      Futures.addCallback(Futures.allAsList(futures), new FutureCallback<List<NodeData>>() {
+        @Override
+        public void onSuccess(List<NodeData> chunks) {
+          try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream(chunks.size() * chunkSize);
+            for (NodeData chunk : chunks) {
+              os.write(chunk.getData(), 0, chunk.getData().length);
+            }
+            byte[] payload = os.toByteArray();
+            result.set(new BasicNodeData(decodePayload(payload, 0, payload.length, flags, length), stat));
+          } catch (Exception e) {
+            result.setException(e);
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          if (!(t instanceof KeeperException.NoNodeException) || attempt >= MAX_READ_ATTEMPTS) {
+            result.setException(t);
+            return;
+          }
+          // Chunks were replaced by a newer generation after the header was read. The watch, if any, was set
+          // with the first read and will be triggered by the update, hence the node is read again without watch.
+          LOG.debug("Chunk missing for node {}. Read again.", path);
+          Futures.addCallback(CompressingZKClient.super.getData(path, null), new FutureCallback<NodeData>() {
+            @Override
+            public void onSuccess(NodeData nodeData) {
+              decode(path, nodeData, result, attempt + 1);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              result.setException(t);
+            }
+          }, Threads.SAME_THREAD_EXECUTOR);
+        }
+      }, Threads.SAME_THREAD_EXECUTOR);
+    } catch (Exception e) {
+      result.setException(e);
+    }
+  }
+
+  /**
+   * Encodes the given data based on its size.
+   */
+  Encoded encode(@Nullable byte[] data) {
+    // Small data is written as is, unless it happens to start with the magic bytes
+    if (data == null || (data.length <= compressThreshold && data.length + HEADER_SIZE <= chunkSize
+                         && !hasHeader(data))) {
+      return new Encoded(data, 0L, Collections.<byte[]>emptyList());
+    }
+
+    byte flags = 0;
+    byte[] payload = data;
+    if (data.length > compressThreshold) {
+      byte[] deflated = deflate(data);
+      if (deflated.length < data.length) {
+        flags |= FLAG_DEFLATE;
+        payload = deflated;
+      }
+    }
+
+    Encoded encoded;
+    if (HEADER_SIZE + payload.length <= chunkSize) {
+      ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+      writeHeader(head, flags, data.length);
+      head.put(payload);
+      encoded = new Encoded(head.array(), 0L, Collections.<byte[]>emptyList());
+    } else {
+      flags |= FLAG_CHUNKED;
+      long generation = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+      List<byte[]> chunks = new ArrayList<>();
+      for (int offset = 0; offset < payload.length; offset += chunkSize) {
+        int size = Math.min(chunkSize, payload.length - offset);
+        byte[] chunk = new byte[size];
+        System.arraycopy(payload, offset, chunk, 0, size);
+        chunks.add(chunk);
+      }
+      ByteBuffer head = ByteBuffer.allocate(CHUNKED_HEADER_SIZE);
+      writeHeader(head, flags, data.length);
+      head.putLong(generation).putInt(chunks.size());
+      encoded = new Encoded(head.array(), generation, chunks);
+    }
+
+    long encodedSize = encoded.head.length + (encoded.chunks.isEmpty() ? 0 : payload.length);
+    rawBytes.addAndGet(data.length);
+    encodedBytes.addAndGet(encodedSize);
+    if (rawBytesCounter != null) {
+      rawBytesCounter.increment(data.length);
+      encodedBytesCounter.increment(encodedSize);
+    }
+    return encoded;
+  }
+
+  /**
+   * Returns the original data of the given encoded payload.
+   */
+  private static byte[] decodePayload(byte[] payload, int offset, int size, byte flags,
+                                      int length) throws DataFormatException {
+    byte[] data = new byte[length];
+    if ((flags & FLAG_DEFLATE) == 0) {
+      if (size != length) {
+        throw new DataFormatException("Expected " + length + " bytes, but got " + size);
+      }
+      System.arraycopy(payload, offset, data, 0, length);
+      return data;
+    }
+
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(payload, offset, size);
+      int inflated = 0;
+      while (inflated < length && !inflater.finished()) {
+        int n = inflater.inflate(data, inflated, length - inflated);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        inflated += n;
+      }
+      if (inflated != length || !inflater.finished()) {
+        throw new DataFormatException("Expected " + length + " bytes, but got " + inflated);
+      }
+      return data;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream os = new ByteArrayOutputStream(data.length / 2 + 16);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        os.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return os.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static void writeHeader(ByteBuffer buffer, byte flags, int length) {
+    buffer.put(MAGIC).put(VERSION).put(flags).putInt(length);
+  }
+
+  private static boolean hasHeader(@Nullable byte[] data) {
+    if (data == null || data.length < HEADER_SIZE) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (data[i] != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the chunk generation of the given node data, or {@code null} if the data is not stored in chunks.
+   */
+  @Nullable
+  private static Long getChunkGeneration(@Nullable byte[] data) {
+    if (!hasHeader(data) || data.length < CHUNKED_HEADER_SIZE || (data[MAGIC.length + 1] & FLAG_CHUNKED) == 0) {
+      return null;
+    }
+    return ByteBuffer.wrap(data, HEADER_SIZE, 8).getLong();
+  }
+
+  private static String chunkName(long generation, int index) {
+    return CHUNK_PREFIX + Long.toHexString(generation) + "-" + index;
+  }
+
+  private static Predicate<String> chunksOf(long generation) {
+    final String prefix = CHUNK_PREFIX + Long.toHexString(generation) + "-";
+    return new Predicate<String>() {
+      @Override
+      public boolean apply(String name) {
+        return name.startsWith(prefix);
+      }
+    };
+  }
+
+  /**
+   * The encoded form of node data, with the data to store in the node and the chunks to store in child nodes.
+   */
+  static final class Encoded {
+    final byte[] head;
+    final long generation;
+    final List<byte[]> chunks;
+
+    Encoded(@Nullable byte[] head, long generation, List<byte[]> chunks) {
+      this.head = head;
+      this.generation = generation;
+      this.chunks = chunks;
+    }
+  }
+}
@@ -30,6 +30,7 @@ import org.apache.twill.zookeeper.RetryStrategy;
 import org.apache.twill.zookeeper.RetryStrategy.OperationType;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.data.ACL;
 import org.apache.zookeeper.data.Stat;
@@ -46,16 +47,30 @@ import javax.annotation.Nullable;
  * and listen for the result. If the result is a failure, and is
  * {@link RetryUtils#canRetry(org.apache.zookeeper.KeeperException.Code) retryable}, the given {@link RetryStrategy}
  * will be called to determine the next retry time, or give up, depending on the value returned by the strategy.
+ * <p/>
+ * Retries are further limited by a {@link RetryBudget}, which delays retries when they are too many relative to the
+ * number of requests, and by a {@link CircuitBreaker}, which fails operations fast without going to ZooKeeper
+ * while the ensemble is unavailable. Retries are scheduled on multiple threads, selected by the operation path.
  */
 public final class FailureRetryZKClient extends ForwardingZKClient {
 
-  private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
-                                                                Threads.createDaemonThreadFactory("retry-zkclient"));
+  private static final ScheduledExecutorService[] SCHEDULERS = createSchedulers(
+    Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())));
+
   private final RetryStrategy retryStrategy;
+  private final RetryBudget retryBudget;
+  private final CircuitBreaker circuitBreaker;
 
   public FailureRetryZKClient(ZKClient delegate, RetryStrategy retryStrategy) {
+    this(delegate, retryStrategy, RetryBudget.create(), CircuitBreaker.create());
+  }
+
+  FailureRetryZKClient(ZKClient delegate, RetryStrategy retryStrategy,
+                       RetryBudget retryBudget, CircuitBreaker circuitBreaker) {
     super(delegate);
     this.retryStrategy = retryStrategy;
+    this.retryBudget = retryBudget;
+    this.circuitBreaker = circuitBreaker;
   }
 
   @Override
@@ -67,28 +82,26 @@ public final class FailureRetryZKClient extends ForwardingZKClient {
     }
 
     final SettableOperationFuture<String> result = SettableOperationFuture.create(path, Threads.SAME_THREAD_EXECUTOR);
-    Futures.addCallback(super.create(path, data, createMode, createParent, acl),
-                        new OperationFutureCallback<String>(OperationType.CREATE, System.currentTimeMillis(),
-                                                            path, result, new Supplier<OperationFuture<String>>() {
-                          @Override
-                          public OperationFuture<String> get() {
-                            return FailureRetryZKClient.super.create(path, data, createMode, createParent, acl);
-                          }
-                        }));
+    new OperationFutureCallback<String>(OperationType.CREATE, System.currentTimeMillis(), path, result,
+                                        new Supplier<OperationFuture<String>>() {
+      @Override
+      public OperationFuture<String> get() {
+        return FailureRetryZKClient.super.create(path, data, createMode, createParent, acl);
+      }
+    }).start();
     return result;
   }
 
   @Override
   public OperationFuture<Stat> exists(final String path, final Watcher watcher) {
     final SettableOperationFuture<Stat> result = SettableOperationFuture.create(path, Threads.SAME_THREAD_EXECUTOR);
-    Futures.addCallback(super.exists(path, watcher),
-                        new OperationFutureCallback<Stat>(OperationType.EXISTS, System.currentTimeMillis(),
-                                                          path, result, new Supplier<OperationFuture<Stat>>() {
-                          @Override
-                          public OperationFuture<Stat> get() {
-                            return FailureRetryZKClient.super.exists(path, watcher);
-                          }
-                        }));
+    new OperationFutureCallback<Stat>(OperationType.EXISTS, System.currentTimeMillis(), path, result,
+                                      new Supplier<OperationFuture<Stat>>() {
+      @Override
+      public OperationFuture<Stat> get() {
+        return FailureRetryZKClient.super.exists(path, watcher);
+      }
+    }).start();
     return result;
   }
 
@@ -96,43 +109,39 @@ public final class FailureRetryZKClient extends ForwardingZKClient {
   public OperationFuture<NodeChildren> getChildren(final String path, final Watcher watcher) {
     final SettableOperationFuture<NodeChildren> result = SettableOperationFuture.create(path,
                                                                                         Threads.SAME_THREAD_EXECUTOR);
-    Futures.addCallback(super.getChildren(path, watcher),
-                        new OperationFutureCallback<NodeChildren>(OperationType.GET_CHILDREN,
-                                                                  System.currentTimeMillis(), path, result,
-                                                                  new Supplier<OperationFuture<NodeChildren>>() {
-                          @Override
-                          public OperationFuture<NodeChildren> get() {
-                            return FailureRetryZKClient.super.getChildren(path, watcher);
-                          }
-                        }));
+    new OperationFutureCallback<NodeChildren>(OperationType.GET_CHILDREN, System.currentTimeMillis(), path, result,
+                                              new Supplier<OperationFuture<NodeChildren>>() {
+      @Override
+      public OperationFuture<NodeChildren> get() {
+        return FailureRetryZKClient.super.getChildren(path, watcher);
+      }
+    }).start();
     return result;
   }
 
   @Override
   public OperationFuture<NodeData> getData(final String path, final Watcher watcher) {
     final SettableOperationFuture<NodeData> result = SettableOperationFuture.create(path, Threads.SAME_THREAD_EXECUTOR);
-    Futures.addCallback(super.getData(path, watcher),
-                        new OperationFutureCallback<NodeData>(OperationType.GET_DATA, System.currentTimeMillis(),
-                                                              path, result, new Supplier<OperationFuture<NodeData>>() {
-                          @Override
-                          public OperationFuture<NodeData> get() {
-                            return FailureRetryZKClient.super.getData(path, watcher);
-                          }
-                        }));
+    new OperationFutureCallback<NodeData>(OperationType.GET_DATA, System.currentTimeMillis(), path, result,
+                                          new Supplier<OperationFuture<NodeData>>() {
+      @Override
+      public OperationFuture<NodeData> get() {
+        return FailureRetryZKClient.super.getData(path, watcher);
+      }
+    }).start();
     return result;
   }
 
   @Override
   public OperationFuture<Stat> setData(final String dataPath, final byte[] data, final int version) {
     final SettableOperationFuture<Stat> result = SettableOperationFuture.create(dataPath, Threads.SAME_THREAD_EXECUTOR);
-    Futures.addCallback(super.setData(dataPath, data, version),
-                        new OperationFutureCallback<Stat>(OperationType.SET_DATA, System.currentTimeMillis(),
-                                                          dataPath, result, new Supplier<OperationFuture<Stat>>() {
-                          @Override
-                          public OperationFuture<Stat> get() {
-                            return FailureRetryZKClient.super.setData(dataPath, data, version);
-                          }
-                        }));
+    new OperationFutureCallback<Stat>(OperationType.SET_DATA, System.currentTimeMillis(), dataPath, result,
+                                      new Supplier<OperationFuture<Stat>>() {
+      @Override
+      public OperationFuture<Stat> get() {
+        return FailureRetryZKClient.super.setData(dataPath, data, version);
+      }
+    }).start();
     return result;
   }
 
@@ -140,43 +149,39 @@ public final class FailureRetryZKClient extends ForwardingZKClient {
   public OperationFuture<String> delete(final String deletePath, final int version) {
     final SettableOperationFuture<String> result = SettableOperationFuture.create(deletePath,
                                                                                   Threads.SAME_THREAD_EXECUTOR);
-    Futures.addCallback(super.delete(deletePath, version),
-                        new OperationFutureCallback<String>(OperationType.DELETE, System.currentTimeMillis(),
-                                                            deletePath, result, new Supplier<OperationFuture<String>>
-                          () {
-                          @Override
-                          public OperationFuture<String> get() {
-                            return FailureRetryZKClient.super.delete(deletePath, version);
-                          }
-                        }));
+    new OperationFutureCallback<String>(OperationType.DELETE, System.currentTimeMillis(), deletePath, result,
+                                        new Supplier<OperationFuture<String>>() {
+      @Override
+      public OperationFuture<String> get() {
+        return FailureRetryZKClient.super.delete(deletePath, version);
+      }
+    }).start();
     return result;
   }
 
   @Override
   public OperationFuture<ACLData> getACL(final String path) {
     final SettableOperationFuture<ACLData> result = SettableOperationFuture.create(path, Threads.SAME_THREAD_EXECUTOR);
-    Futures.addCallback(super.getACL(path),
-                        new OperationFutureCallback<ACLData>(OperationType.GET_ACL, System.currentTimeMillis(),
-                                                          path, result, new Supplier<OperationFuture<ACLData>>() {
-                          @Override
-                          public OperationFuture<ACLData> get() {
-                            return FailureRetryZKClient.super.getACL(path);
-                          }
-                        }));
+    new OperationFutureCallback<ACLData>(OperationType.GET_ACL, System.currentTimeMillis(), path, result,
+                                         new Supplier<OperationFuture<ACLData>>() {
+      @Override
+      public OperationFuture<ACLData> get() {
+        return FailureRetryZKClient.super.getACL(path);
+      }
+    }).start();
     return result;
   }
 
   @Override
   public OperationFuture<Stat> setACL(final String path, final Iterable<ACL> acl, final int version) {
     final SettableOperationFuture<Stat> result = SettableOperationFuture.create(path, Threads.SAME_THREAD_EXECUTOR);
-    Futures.addCallback(super.setACL(path, acl, version),
-                        new OperationFutureCallback<Stat>(OperationType.SET_ACL, System.currentTimeMillis(),
-                                                          path, result, new Supplier<OperationFuture<Stat>>() {
-                          @Override
-                          public OperationFuture<Stat> get() {
-                            return FailureRetryZKClient.super.setACL(path, acl, version);
-                          }
-                        }));
+    new OperationFutureCallback<Stat>(OperationType.SET_ACL, System.currentTimeMillis(), path, result,
+                                      new Supplier<OperationFuture<Stat>>() {
+      @Override
+      public OperationFuture<Stat> get() {
+        return FailureRetryZKClient.super.setACL(path, acl, version);
+      }
+    }).start();
     return result;
   }
 
@@ -203,19 +208,51 @@ public final class FailureRetryZKClient extends ForwardingZKClient {
       this.failureCount = new AtomicInteger(0);
     }
 
+    /**
+     * Performs the first attempt of the operation.
+     */
+    void start() {
+      retryBudget.deposit();
+      attempt();
+    }
+
+    /**
+     * Performs the operation, or fails it right away if the circuit is open.
+     */
+    private void attempt() {
+      if (!circuitBreaker.allowRequest()) {
+        onFailure(KeeperException.create(KeeperException.Code.CONNECTIONLOSS, path), false);
+        return;
+      }
+      Futures.addCallback(retryAction.get(), this);
+    }
+
     @Override
     public void onSuccess(V result) {
+      circuitBreaker.onSuccess();
       this.result.set(result);
     }
 
     @Override
     public void onFailure(Throwable t) {
-      if (!doRetry(t)) {
+      onFailure(t, true);
+    }
+
+    private void onFailure(Throwable t, boolean attempted) {
+      if (attempted) {
+        // Non-retryable errors come from the server, hence ZooKeeper is available.
+        if (RetryUtils.canRetry(t)) {
+          circuitBreaker.onFailure();
+        } else {
+          circuitBreaker.onSuccess();
+        }
+      }
+      if (!doRetry(t, attempted)) {
         result.setException(t);
       }
     }
 
-    private boolean doRetry(Throwable t) {
+    private boolean doRetry(Throwable t, boolean attempted) {
       if (!RetryUtils.canRetry(t)) {
         return false;
       }
@@ -225,16 +262,27 @@ public final class FailureRetryZKClient extends ForwardingZKClient {
       if (nextRetry < 0) {
         return false;
       }
+      // Only retries that go to ZooKeeper take from the budget. Failed fast ones wait for the circuit instead.
+      nextRetry = Math.max(nextRetry, attempted ? retryBudget.reserve() : circuitBreaker.getRetryDelayMillis());
 
       // Schedule the retry.
-      SCHEDULER.schedule(new Runnable() {
+      SCHEDULERS[(path.hashCode() & Integer.MAX_VALUE) % SCHEDULERS.length].schedule(new Runnable() {
         @Override
         public void run() {
-          Futures.addCallback(retryAction.get(), OperationFutureCallback.this);
+          attempt();
         }
       }, nextRetry, TimeUnit.MILLISECONDS);
 
       return true;
     }
   }
+
+  private static ScheduledExecutorService[] createSchedulers(int count) {
+    ScheduledExecutorService[] schedulers = new ScheduledExecutorService[count];
+    for (int i = 0; i < count; i++) {
+      schedulers[i] = Executors.newSingleThreadScheduledExecutor(
+        Threads.createDaemonThreadFactory("retry-zkclient-" + i));
+    }
+    return schedulers;
+  }
 }
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.apache.twill.api.metrics.Counter;
+import org.apache.twill.api.metrics.Gauge;
+import org.apache.twill.api.metrics.MetricsRegistry;
+import org.apache.twill.api.metrics.Timer;
+import org.apache.twill.common.Threads;
+import org.apache.twill.zookeeper.ACLData;
+import org.apache.twill.zookeeper.ForwardingZKClient;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.OperationFuture;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link ZKClient} that records metrics of the operations performed through it to a {@link MetricsRegistry}.
+ * <p/>
+ * The following metrics are recorded:
+ * <ul>
+ *   <li>{@code zk.<operation>.latency}: timer of the time from issuing an operation until its result is available,
+ *   which includes the time the result is queued behind other callbacks in the ZooKeeper event thread</li>
+ *   <li>{@code zk.errors.<code>}: counter of failed operations by {@link KeeperException.Code}</li>
+ *   <li>{@code zk.inflight}: gauge of the number of outstanding operations</li>
+ *   <li>{@code zk.bytes.read} and {@code zk.bytes.written}: counters of node data bytes read and written</li>
+ *   <li>{@code zk.watch.fired}: counter of watches triggered</li>
+ *   <li>{@code zk.watch.process}: timer of the time spent in watchers, during which no other callbacks and
+ *   watches can be delivered</li>
+ * </ul>
+ */
+public final class InstrumentedZKClient extends ForwardingZKClient {
+
+  public static final String PREFIX = "zk.";
+  public static final String INFLIGHT = PREFIX + "inflight";
+  public static final String BYTES_READ = PREFIX + "bytes.read";
+  public static final String BYTES_WRITTEN = PREFIX + "bytes.written";
+  public static final String WATCH_FIRED = PREFIX + "watch.fired";
+  public static final String WATCH_PROCESS = PREFIX + "watch.process";
+
+  private static final String ERRORS = PREFIX + "errors.";
+
+  private final MetricsRegistry registry;
+  private final AtomicInteger inflight;
+  private final Counter bytesRead;
+  private final Counter bytesWritten;
+  private final Counter watchFired;
+  private final Timer watchProcess;
+
+  public InstrumentedZKClient(ZKClient delegate, MetricsRegistry registry) {
+    super(delegate);
+    this.registry = registry;
+    this.inflight = new AtomicInteger();
+    this.bytesRead = registry.counter(BYTES_READ);
+    this.bytesWritten = registry.counter(BYTES_WRITTEN);
+    this.watchFired = registry.counter(WATCH_FIRED);
+    this.watchProcess = registry.timer(WATCH_PROCESS);
+    registry.gauge(INFLIGHT, new Gauge() {
+      @Override
+      public long getValue() {
+        return inflight.get();
+      }
+    });
+  }
+
+  @Override
+  public OperationFuture<String> create(String path, @Nullable byte[] data,
+                                        CreateMode createMode, boolean createParent, Iterable<ACL> acl) {
+    if (data != null) {
+      bytesWritten.increment(data.length);
+    }
+    return record("create", super.create(path, data, createMode, createParent, acl));
+  }
+
+  @Override
+  public OperationFuture<Stat> exists(String path, @Nullable Watcher watcher) {
+    return record("exists", super.exists(path, wrap(watcher)));
+  }
+
+  @Override
+  public OperationFuture<NodeChildren> getChildren(String path, @Nullable Watcher watcher) {
+    return record("getChildren", super.getChildren(path, wrap(watcher)));
+  }
+
+  @Override
+  public OperationFuture<NodeData> getData(String path, @Nullable Watcher watcher) {
+    OperationFuture<NodeData> future = record("getData", super.getData(path, wrap(watcher)));
+    Futures.addCallback(future, new FutureCallback<NodeData>() {
+      @Override
+      public void onSuccess(NodeData result) {
+        byte[] data = result.getData();
+        if (data != null) {
+          bytesRead.increment(data.length);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        // Failure is already recorded
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+    return future;
+  }
+
+  @Override
+  public OperationFuture<Stat> setData(String dataPath, byte[] data, int version) {
+    if (data != null) {
+      bytesWritten.increment(data.length);
+    }
+    return record("setData", super.setData(dataPath, data, version));
+  }
+
+  @Override
+  public OperationFuture<String> delete(String deletePath, int version) {
+    return record("delete", super.delete(deletePath, version));
+  }
+
+  @Override
+  public OperationFuture<ACLData> getACL(String path) {
+    return record("getACL", super.getACL(path));
+  }
+
+  @Override
+  public OperationFuture<Stat> setACL(String path, Iterable<ACL> acl, int version) {
+    return record("setACL", super.setACL(path, acl, version));
+  }
+
+  /**
+   * Records the latency and the outcome of the given operation future.
+   */
+  private <V> OperationFuture<V> record(String operation, OperationFuture<V> future) {
+    final long startTime = System.nanoTime();
+    final Timer latency = registry.timer(PREFIX + operation + ".latency");
+    inflight.incrementAndGet();
+    Futures.addCallback(future, new FutureCallback<V>() {
+      @Override
+      public void onSuccess(V result) {
+        completed();
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        completed();
+        String code = t instanceof KeeperException ? ((KeeperException) t).code().name() : "OTHER";
+        registry.counter(ERRORS + code).increment();
+      }
+
+      private void completed() {
+        inflight.decrementAndGet();
+        latency.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+    return future;
+  }
+
+  @Nullable
+  private Watcher wrap(@Nullable Watcher watcher) {
+    return watcher == null ? null : new InstrumentedWatcher(watcher, watchFired, watchProcess);
+  }
+
+  /**
+   * A {@link Watcher} that records watch metrics. It is equal to the watcher it wraps, so that setting the same
+   * watcher multiple times on the same path only triggers it once, as it is without the instrumentation.
+   */
+  private static final class InstrumentedWatcher implements Watcher {
+
+    private final Watcher delegate;
+    private final Counter watchFired;
+    private final Timer watchProcess;
+
+    InstrumentedWatcher(Watcher delegate, Counter watchFired, Timer watchProcess) {
+      this.delegate = delegate;
+      this.watchFired = watchFired;
+      this.watchProcess = watchProcess;
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+      if (event.getType() != Event.EventType.None) {
+        watchFired.increment();
+      }
+      long startTime = System.nanoTime();
+      try {
+        delegate.process(event);
+      } finally {
+        watchProcess.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      return delegate.equals(((InstrumentedWatcher) o).delegate);
+    }
+
+    @Override
+    public int hashCode() {
+      return delegate.hashCode();
+    }
+  }
+}
@@ -41,15 +41,18 @@ import org.slf4j.LoggerFactory;
 import java.net.InetAddress;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
 
 /**
  * Performs leader election as specified in
  * <a href="http://zookeeper.apache.org/doc/trunk/recipes.html#sc_leaderElection">Zookeeper recipes</a>.
  *
  * It will enter the leader election process when {@link #start()} is called and leave the process when
- * {@link #stop()} is invoked.
+ * {@link #stop()} is invoked. Elections created through a {@link LeaderElectionManager} share the threads,
+ * connection watcher and children listing with other elections of the same manager.
  */
 public final class LeaderElection extends AbstractService {
 
@@ -67,31 +70,44 @@ public final class LeaderElection extends AbstractService {
   private final ZKClient zkClient;
   private final String zkFolderPath;
   private final ElectionHandler handler;
+  private final LeaderElectionManager manager;
 
-  private ExecutorService executor;
+  private Executor executor;
   private String zkNodePath;
   private State state;
   private Cancellable watcherCancellable;
+  private long electionStartNanos;
 
   public LeaderElection(ZKClient zkClient, String prefix, ElectionHandler handler) {
+    this(zkClient, prefix, handler, null);
+  }
+
+  LeaderElection(ZKClient zkClient, String prefix, ElectionHandler handler, @Nullable LeaderElectionManager manager) {
     this.guid = UUID.randomUUID().toString();
     this.zkClient = zkClient;
     this.zkFolderPath = prefix.startsWith("/") ? prefix : "/" + prefix;
     this.handler = handler;
+    this.manager = manager;
   }
 
   @Override
   protected void doStart() {
     LOG.info("Start leader election on {}{} with guid {}", zkClient.getConnectString(), zkFolderPath, guid);
 
-    executor = Executors.newSingleThreadExecutor(
-      Threads.createDaemonThreadFactory("leader-election" + zkFolderPath.replace('/', '-')));
+    if (manager == null) {
+      executor = Executors.newSingleThreadExecutor(
+        Threads.createDaemonThreadFactory("leader-election" + zkFolderPath.replace('/', '-')));
+    } else {
+      executor = manager.createExecutor();
+    }
 
     executor.execute(new Runnable() {
       @Override
       public void run() {
         register();
-        watcherCancellable = zkClient.addConnectionWatcher(wrapWatcher(new ConnectionWatcher()));
+        Watcher watcher = wrapWatcher(new ConnectionWatcher());
+        watcherCancellable = manager == null ? zkClient.addConnectionWatcher(watcher)
+                                             : manager.addConnectionWatcher(watcher);
       }
     });
     notifyStarted();
@@ -106,7 +122,7 @@ public final class LeaderElection extends AbstractService {
         try {
           notifyStopped();
         } finally {
-          executor.shutdown();
+          shutdownExecutor();
         }
       }
 
@@ -115,7 +131,7 @@ public final class LeaderElection extends AbstractService {
         try {
           notifyFailed(t);
         } finally {
-          executor.shutdown();
+          shutdownExecutor();
         }
       }
     }, Threads.SAME_THREAD_EXECUTOR);
@@ -138,6 +154,13 @@ public final class LeaderElection extends AbstractService {
     });
   }
 
+  private void shutdownExecutor() {
+    // The executor from the manager runs on shared threads, which are not owned by this election
+    if (executor instanceof ExecutorService) {
+      ((ExecutorService) executor).shutdown();
+    }
+  }
+
   private byte[] getNodeData() {
     String hostname;
     try {
@@ -152,6 +175,7 @@ public final class LeaderElection extends AbstractService {
   private void register() {
     state = State.IN_PROGRESS;
     zkNodePath = null;
+    startTiming();
 
     // Register for election
     final String path = String.format("%s/%s-", zkFolderPath, guid);
@@ -186,8 +210,10 @@ public final class LeaderElection extends AbstractService {
 
   private void runElection() {
     LOG.debug("Running election for {}", zkNodePath);
+    startTiming();
 
-    OperationFuture<NodeChildren> childrenFuture = zkClient.getChildren(zkFolderPath);
+    ListenableFuture<NodeChildren> childrenFuture = manager == null ? zkClient.getChildren(zkFolderPath)
+                                                                    : manager.getChildren(zkFolderPath);
     Futures.addCallback(childrenFuture, new FutureCallback<NodeChildren>() {
       @Override
       public void onSuccess(NodeChildren result) {
@@ -229,6 +255,7 @@ public final class LeaderElection extends AbstractService {
 
   private void becomeLeader() {
     state = State.LEADER;
+    stopTiming();
     LOG.debug("Become leader for {}.", zkNodePath);
     try {
       handler.leader();
@@ -240,6 +267,7 @@ public final class LeaderElection extends AbstractService {
 
   private void becomeFollower() {
     state = State.FOLLOWER;
+    stopTiming();
     LOG.debug("Become follower for {}", zkNodePath);
     try {
       handler.follower();
@@ -249,6 +277,25 @@ public final class LeaderElection extends AbstractService {
     }
   }
 
+  /**
+   * Marks the start of an election round, if not already in one.
+   */
+  private void startTiming() {
+    if (electionStartNanos == 0) {
+      electionStartNanos = System.nanoTime();
+    }
+  }
+
+  /**
+   * Records the time taken by the current election round to the manager, if there is one.
+   */
+  private void stopTiming() {
+    if (electionStartNanos != 0 && manager != null) {
+      manager.electionCompleted(System.nanoTime() - electionStartNanos);
+    }
+    electionStartNanos = 0;
+  }
+
   /**
    * Starts watching for the max. of smaller node.
    */
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.api.ElectionHandler;
+import org.apache.twill.api.metrics.Counter;
+import org.apache.twill.api.metrics.MetricsRegistry;
+import org.apache.twill.api.metrics.Timer;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Manages many {@link LeaderElection LeaderElections} on the same {@link ZKClient}, such that they share
+ * resources that would otherwise be allocated per election:
+ * <ul>
+ *   <li>A single connection watcher is added to the {@link ZKClient}, which dispatches connection events to
+ *   all elections. It is removed from the {@link ZKClient} when all elections are stopped.</li>
+ *   <li>Elections run on a small shared thread pool instead of a thread each. Events of an election are still
+ *   processed one at a time and in order.</li>
+ *   <li>Listing of the election nodes is coalesced per election path, such that requests made while a listing is
+ *   in progress are served by a single listing issued after it. Only listings of the same path are coalesced, as
+ *   each path needs its own request. Listings of different paths are not batched, but the number of concurrent
+ *   listings is bounded. This avoids bursts of requests when all elections run again after reconnection.</li>
+ * </ul>
+ * Each participant still only watches the node before its own, hence there is no herd effect when the leader
+ * leaves. If a {@link MetricsRegistry} is provided, the time taken to decide between leader and follower is
+ * recorded in the {@link #LATENCY} timer, with the number of listings issued and coalesced in counters.
+ */
+public final class LeaderElectionManager {
+
+  public static final String LATENCY = "zk.election.latency";
+  public static final String CHILDREN_FETCHED = "zk.election.children.fetched";
+  public static final String CHILDREN_COALESCED = "zk.election.children.coalesced";
+
+  private static final int DEFAULT_THREADS = 4;
+  private static final int DEFAULT_MAX_CONCURRENT_FETCHES = 32;
+
+  private final ZKClient zkClient;
+  private final int maxConcurrentFetches;
+  private final ThreadPoolExecutor threadPool;
+  private final List<Watcher> connectionWatchers;
+  private final Map<String, ChildrenFetch> fetches;
+  private final Queue<ChildrenFetch> pendingFetches;
+  private final Timer latency;
+  private final Counter fetched;
+  private final Counter coalesced;
+  private Cancellable connectionWatcherCancellable;
+  private int activeFetches;
+
+  public LeaderElectionManager(ZKClient zkClient, @Nullable MetricsRegistry metrics) {
+    this(zkClient, metrics, DEFAULT_THREADS, DEFAULT_MAX_CONCURRENT_FETCHES);
+  }
+
+  LeaderElectionManager(ZKClient zkClient, @Nullable MetricsRegistry metrics,
+                        int threads, int maxConcurrentFetches) {
+    Preconditions.checkArgument(threads > 0, "Number of threads must be > 0");
+    Preconditions.checkArgument(maxConcurrentFetches > 0, "Maximum concurrent fetches must be > 0");
+    this.zkClient = zkClient;
+    this.maxConcurrentFetches = maxConcurrentFetches;
+    this.threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                             new LinkedBlockingQueue<Runnable>(),
+                                             Threads.createDaemonThreadFactory("leader-election-%d"));
+    this.threadPool.allowCoreThreadTimeOut(true);
+    this.connectionWatchers = new CopyOnWriteArrayList<>();
+    this.fetches = new HashMap<>();
+    this.pendingFetches = new ArrayDeque<>();
+    this.latency = metrics == null ? null : metrics.timer(LATENCY);
+    this.fetched = metrics == null ? null : metrics.counter(CHILDREN_FETCHED);
+    this.coalesced = metrics == null ? null : metrics.counter(CHILDREN_COALESCED);
+  }
+
+  /**
+   * Starts a {@link LeaderElection} under the given path.
+   *
+   * @param path path of the election
+   * @param handler the {@link ElectionHandler} to handle leader and follower transitions
+   * @return the started {@link LeaderElection}
+   */
+  public LeaderElection elect(String path, ElectionHandler handler) {
+    LeaderElection election = new LeaderElection(zkClient, path, handler, this);
+    election.start();
+    return election;
+  }
+
+  /**
+   * Starts {@link LeaderElection LeaderElections} for all the given paths.
+   *
+   * @param handlers map from election path to the {@link ElectionHandler} of the election
+   * @return map from election path to the started {@link LeaderElection}
+   */
+  public Map<String, LeaderElection> elect(Map<String, ? extends ElectionHandler> handlers) {
+    Map<String, LeaderElection> elections = new HashMap<>();
+    for (Map.Entry<String, ? extends ElectionHandler> entry : handlers.entrySet()) {
+      elections.put(entry.getKey(), elect(entry.getKey(), entry.getValue()));
+    }
+    return elections;
+  }
+
+  /**
+   * Returns an {@link Executor} that executes tasks one at a time in submission order on the shared threads.
+   */
+  Executor createExecutor() {
+    return new SerialExecutor(threadPool);
+  }
+
+  /**
+   * Adds a watcher for connection events of the {@link ZKClient}. A single watcher is added to the {@link ZKClient}
+   * while there is at least one watcher added through this method, and it is removed when the last one is cancelled.
+   */
+  Cancellable addConnectionWatcher(final Watcher watcher) {
+    synchronized (this) {
+      if (connectionWatchers.isEmpty()) {
+        connectionWatcherCancellable = zkClient.addConnectionWatcher(new Watcher() {
+          @Override
+          public void process(WatchedEvent event) {
+            for (Watcher watcher : connectionWatchers) {
+              watcher.process(event);
+            }
+          }
+        });
+      }
+      connectionWatchers.add(watcher);
+    }
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        removeConnectionWatcher(watcher);
+      }
+    };
+  }
+
+  /**
+   * Returns the children of the given path. The result is fetched after this method is called, but it can be
+   * shared with other calls for the same path.
+   */
+  ListenableFuture<NodeChildren> getChildren(String path) {
+    ChildrenFetch fetch;
+    SettableFuture<NodeChildren> result;
+    synchronized (this) {
+      fetch = fetches.get(path);
+      if (fetch == null) {
+        fetch = new ChildrenFetch(path);
+        fetches.put(path, fetch);
+      }
+      if (fetch.next != null) {
+        // The next fetch hasn't started yet, hence it will see all changes made before this call
+        if (coalesced != null) {
+          coalesced.increment();
+        }
+        return fetch.next;
+      }
+      fetch.next = SettableFuture.create();
+      if (fetch.current != null) {
+        // Started when the current fetch completes
+        return fetch.next;
+      }
+      if (activeFetches >= maxConcurrentFetches) {
+        // Started when a fetch of another path completes
+        pendingFetches.add(fetch);
+        return fetch.next;
+      }
+      activeFetches++;
+      result = fetch.next;
+      fetch.current = result;
+      fetch.next = null;
+    }
+    startFetch(fetch, result);
+    return result;
+  }
+
+  /**
+   * Removes a watcher added by {@link #addConnectionWatcher(Watcher)}, and the watcher on the {@link ZKClient} if
+   * it was the last one.
+   */
+  private void removeConnectionWatcher(Watcher watcher) {
+    Cancellable cancellable = null;
+    synchronized (this) {
+      if (connectionWatchers.remove(watcher) && connectionWatchers.isEmpty()) {
+        cancellable = connectionWatcherCancellable;
+        connectionWatcherCancellable = null;
+      }
+    }
+    if (cancellable != null) {
+      cancellable.cancel();
+    }
+  }
+
+  /**
+   * Records the time taken for an election to complete.
+   */
+  void electionCompleted(long nanos) {
+    if (latency != null) {
+      latency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void startFetch(final ChildrenFetch fetch, final SettableFuture<NodeChildren> result) {
+    if (fetched != null) {
+      fetched.increment();
+    }
+    Futures.addCallback(zkClient.getChildren(fetch.path), new FutureCallback<NodeChildren>() {
+      @Override
+      public void onSuccess(NodeChildren children) {
+        fetchCompleted(fetch);
+        result.set(children);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        fetchCompleted(fetch);
+        result.setException(t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+
+  /**
+   * Starts the next fetch of the given path if there are calls waiting for it, otherwise starts the next pending
+   * fetch of other paths.
+   */
+  private void fetchCompleted(ChildrenFetch fetch) {
+    ChildrenFetch nextFetch;
+    SettableFuture<NodeChildren> result;
+    synchronized (this) {
+      fetch.current = null;
+      if (fetch.next != null) {
+        nextFetch = fetch;
+      } else {
+        fetches.remove(fetch.path);
+        nextFetch = pendingFetches.poll();
+        if (nextFetch == null) {
+          activeFetches--;
+          return;
+        }
+      }
+      result = nextFetch.next;
+      nextFetch.current = result;
+      nextFetch.next = null;
+    }
+    startFetch(nextFetch, result);
+  }
+
+  /**
+   * State of listing children of a path. It is guarded by the {@link LeaderElectionManager} instance.
+   */
+  private static final class ChildrenFetch {
+    private final String path;
+    // Result of the fetch in progress
+    private SettableFuture<NodeChildren> current;
+    // Result of the fetch to be started after the current one completed
+    private SettableFuture<NodeChildren> next;
+
+    ChildrenFetch(String path) {
+      this.path = path;
+    }
+  }
+
+  /**
+   * An {@link Executor} that executes tasks one at a time in submission order using another {@link Executor}.
+   */
+  private static final class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks;
+    private boolean running;
+
+    SerialExecutor(Executor executor) {
+      this.executor = executor;
+      this.tasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      synchronized (this) {
+        tasks.add(command);
+        if (running) {
+          return;
+        }
+        running = true;
+      }
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          runTasks();
+        }
+      });
+    }
+
+    private void runTasks() {
+      while (true) {
+        Runnable task;
+        synchronized (this) {
+          task = tasks.poll();
+          if (task == null) {
+            running = false;
+            return;
+          }
+        }
+        try {
+          task.run();
+        } catch (Throwable t) {
+          Thread thread = Thread.currentThread();
+          thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+
+/**
+ * A reentrant distributed lock that holds the ZooKeeper lock node as a lease across lock and unlock calls.
+ * <p/>
+ * All threads using the same instance queue on a local lock and share one participant in the ZooKeeper
+ * lock recipe, which is the same as the one used by {@link ReentrantDistributedLock}, hence both can be used on the
+ * same path. Once the lock node is acquired, it is not deleted on unlock. It is only released when another
+ * participant creates a node under the lock path, or when the lock is not used for the idle timeout.
+ * As long as the lease is held, uncontended lock and unlock calls don't involve any ZooKeeper operation.
+ * <p/>
+ * The lease is dropped when the ZooKeeper session is disconnected, so that no local lock is granted based on a lock
+ * node that might have expired.
+ */
+public final class LeasedDistributedLock implements Lock {
+
+  /**
+   * Default time of no lock usage before the lease is released.
+   */
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10000L;
+
+  private static final Logger LOG = LoggerFactory.getLogger(LeasedDistributedLock.class);
+
+  private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+    Threads.createDaemonThreadFactory("leased-lock-release"));
+
+  private final ZKClient zkClient;
+  private final String path;
+  private final long idleTimeoutMillis;
+  private final ReentrantDistributedLock recipe;
+  private final ReentrantLock lock;
+  private final Cancellable connectionWatcherCancellable;
+
+  // All fields below are guarded by this instance
+  private String leaseNode;
+  private boolean held;
+  private boolean contended;
+  private boolean connected;
+  private ScheduledFuture<?> idleRelease;
+
+  /**
+   * Creates a leased distributed lock instance with the {@link #DEFAULT_IDLE_TIMEOUT_MILLIS}.
+   *
+   * @param zkClient the {@link ZKClient} to interact with the ZooKeeper used for the lock coordination
+   * @param path the path in ZooKeeper where the lock coordination happens
+   */
+  public LeasedDistributedLock(ZKClient zkClient, String path) {
+    this(zkClient, path, DEFAULT_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates a leased distributed lock instance.
+   *
+   * @param zkClient the {@link ZKClient} to interact with the ZooKeeper used for the lock coordination
+   * @param path the path in ZooKeeper where the lock coordination happens
+   * @param idleTimeout time of no lock usage before the lease is released
+   * @param unit unit for the idle timeout
+   */
+  public LeasedDistributedLock(ZKClient zkClient, String path, long idleTimeout, TimeUnit unit) {
+    this.zkClient = zkClient;
+    this.path = path.startsWith("/") ? path : "/" + path;
+    this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+    this.recipe = new ReentrantDistributedLock(zkClient, this.path);
+    this.lock = new ReentrantLock();
+    this.connected = true;
+    this.connectionWatcherCancellable = zkClient.addConnectionWatcher(new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        connectionChanged(event.getState());
+      }
+    });
+  }
+
+  @Override
+  public void lock() {
+    lock.lock();
+    try {
+      acquire(false, true);
+    } catch (Exception e) {
+      lock.unlock();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Override
+  public void lockInterruptibly() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      acquire(true, true);
+    } catch (Exception e) {
+      lock.unlock();
+      Throwables.propagateIfInstanceOf(e, InterruptedException.class);
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Override
+  public boolean tryLock() {
+    if (!lock.tryLock()) {
+      return false;
+    }
+    try {
+      if (acquire(false, false)) {
+        return true;
+      }
+      lock.unlock();
+      return false;
+    } catch (Exception e) {
+      lock.unlock();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Override
+  public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+    long startTime = System.nanoTime();
+    if (!lock.tryLock(time, unit)) {
+      return false;
+    }
+    long timeoutNano = unit.toNanos(time) - (System.nanoTime() - startTime);
+    try {
+      if (acquire(true, true, timeoutNano, TimeUnit.NANOSECONDS)) {
+        return true;
+      }
+      lock.unlock();
+      return false;
+    } catch (ExecutionException e) {
+      lock.unlock();
+      throw Throwables.propagate(e.getCause());
+    } catch (TimeoutException e) {
+      lock.unlock();
+      return false;
+    }
+  }
+
+  @Override
+  public void unlock() {
+    if (!lock.isHeldByCurrentThread()) {
+      throw new IllegalStateException("Cannot unlock without holding a lock by thread " + Thread.currentThread());
+    }
+
+    try {
+      if (lock.getHoldCount() == 1) {
+        synchronized (this) {
+          held = false;
+          if (contended || !connected) {
+            releaseLease();
+          } else if (leaseNode != null) {
+            scheduleIdleRelease();
+          }
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Currently not supported and will always throw {@link UnsupportedOperationException}.
+   */
+  @Override
+  public Condition newCondition() {
+    throw new UnsupportedOperationException("Condition not supported.");
+  }
+
+  /**
+   * Releases the lease if it is not used by any thread and stops watching for connection changes. The lock
+   * can still be used after this method returned, but it should only be called when the lock is no longer needed.
+   */
+  public synchronized void close() {
+    connectionWatcherCancellable.cancel();
+    if (!held) {
+      releaseLease();
+    }
+  }
+
+  /**
+   * Returns {@code true} if this instance is currently holding the lock node in ZooKeeper.
+   */
+  synchronized boolean hasLease() {
+    return leaseNode != null;
+  }
+
+  private boolean acquire(boolean interruptible, boolean waitForLock) throws InterruptedException, ExecutionException {
+    try {
+      return acquire(interruptible, waitForLock, Long.MAX_VALUE, TimeUnit.SECONDS);
+    } catch (TimeoutException e) {
+      // Should never happen
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Acquires the distributed lock. If the lease is being held, it returns immediately, otherwise it acquires
+   * a new lease through ZooKeeper.
+   */
+  private boolean acquire(boolean interruptible, boolean waitForLock,
+                          long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+                                                              TimeoutException {
+    if (lock.getHoldCount() > 1) {
+      // Already owner of the lock, simply return.
+      return true;
+    }
+
+    synchronized (this) {
+      if (leaseNode != null && connected) {
+        cancelIdleRelease();
+        held = true;
+        return true;
+      }
+      // Release a lease that cannot be trusted anymore before acquiring a new one.
+      releaseLease();
+    }
+
+    // Only one thread can be here since it is holding the local lock
+    String lockNode = recipe.acquireNode(interruptible, waitForLock, timeout, unit);
+    if (lockNode == null) {
+      return false;
+    }
+    synchronized (this) {
+      leaseNode = lockNode;
+      held = true;
+      contended = false;
+    }
+    watchContention(lockNode);
+    return true;
+  }
+
+  /**
+   * Watches the children of the lock path for any other participant while the given lease node is being held.
+   */
+  private void watchContention(final String lockNode) {
+    Futures.addCallback(zkClient.getChildren(path, new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getType() == Event.EventType.NodeChildrenChanged && isLease(lockNode)) {
+          watchContention(lockNode);
+        }
+      }
+    }), new FutureCallback<NodeChildren>() {
+      @Override
+      public void onSuccess(NodeChildren result) {
+        if (result.getChildren().size() > 1) {
+          contend(lockNode);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        // Without the watch, there is no way to tell other participants, hence give up the lease on next unlock.
+        LOG.warn("Failed to watch for lock contention on {}", path, t);
+        contend(lockNode);
+      }
+    });
+  }
+
+  private synchronized boolean isLease(String lockNode) {
+    return lockNode.equals(leaseNode);
+  }
+
+  /**
+   * Marks the lease as contended. The lease is released immediately if the lock is not held,
+   * otherwise it will be released on unlock.
+   */
+  private synchronized void contend(String lockNode) {
+    if (!lockNode.equals(leaseNode)) {
+      return;
+    }
+    contended = true;
+    if (!held) {
+      releaseLease();
+    }
+  }
+
+  private synchronized void connectionChanged(Watcher.Event.KeeperState state) {
+    switch (state) {
+      case SyncConnected:
+        connected = true;
+        break;
+      case Disconnected:
+        connected = false;
+        break;
+      case Expired:
+        // The ephemeral lock node is gone with the session.
+        leaseNode = null;
+        cancelIdleRelease();
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Deletes the lock node of the current lease, if there is one. Must be called while holding the monitor of
+   * this instance.
+   */
+  private void releaseLease() {
+    cancelIdleRelease();
+    contended = false;
+    final String lockNode = leaseNode;
+    if (lockNode == null) {
+      return;
+    }
+    leaseNode = null;
+    Futures.addCallback(zkClient.delete(lockNode), new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String result) {
+        LOG.debug("Lock lease released at {}", lockNode);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (!(t instanceof KeeperException.NoNodeException)) {
+          // The node will be gone when the session is closed.
+          LOG.warn("Failed to release lock lease at {}", lockNode, t);
+        }
+      }
+    });
+  }
+
+  private void scheduleIdleRelease() {
+    cancelIdleRelease();
+    final String lockNode = leaseNode;
+    idleRelease = SCHEDULER.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (LeasedDistributedLock.this) {
+          if (!held && lockNode.equals(leaseNode)) {
+            releaseLease();
+          }
+        }
+      }
+    }, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void cancelIdleRelease() {
+    if (idleRelease != null) {
+      idleRelease.cancel(false);
+      idleRelease = null;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that limits the rate of retries of a {@link FailureRetryZKClient} relative to the number of
+ * requests. Every request deposits a fraction of a token and every retry takes one token. Tokens are also refilled
+ * at a minimum rate, so that retries can progress when no new request is made, e.g. while the ensemble is down.
+ * <p/>
+ * When the bucket is empty, retries are not dropped but delayed until a token is available, which caps the
+ * retry rate of a client without failing operations that are expected to be retried.
+ */
+final class RetryBudget {
+
+  static final double DEFAULT_RETRY_RATIO = 0.1d;
+  static final double DEFAULT_MIN_RETRIES_PER_SECOND = 100d;
+  static final double DEFAULT_MAX_TOKENS = 1000d;
+
+  private final double retryRatio;
+  private final double minRetriesPerNano;
+  private final double maxTokens;
+  private double tokens;
+  private long lastRefillNanos;
+
+  /**
+   * Creates a {@link RetryBudget} with the default settings.
+   */
+  static RetryBudget create() {
+    return new RetryBudget(DEFAULT_RETRY_RATIO, DEFAULT_MIN_RETRIES_PER_SECOND, DEFAULT_MAX_TOKENS);
+  }
+
+  /**
+   * Creates a new instance, with the bucket being full.
+   *
+   * @param retryRatio number of retries allowed per request
+   * @param minRetriesPerSecond number of retries allowed per second regardless of the number of requests
+   * @param maxTokens maximum number of tokens kept in the bucket, which is the size of a burst of retries
+   */
+  RetryBudget(double retryRatio, double minRetriesPerSecond, double maxTokens) {
+    Preconditions.checkArgument(retryRatio >= 0, "Retry ratio must be >= 0");
+    Preconditions.checkArgument(minRetriesPerSecond > 0, "Minimum retries per second must be > 0");
+    Preconditions.checkArgument(maxTokens >= 1, "Maximum tokens must be >= 1");
+    this.retryRatio = retryRatio;
+    this.minRetriesPerNano = minRetriesPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.maxTokens = maxTokens;
+    this.tokens = maxTokens;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Deposits tokens for a new request.
+   */
+  synchronized void deposit() {
+    refill();
+    tokens = Math.min(maxTokens, tokens + retryRatio);
+  }
+
+  /**
+   * Takes a token for a retry.
+   *
+   * @return number of milliseconds to wait until the token is available, or {@code 0} if it is available now
+   */
+  synchronized long reserve() {
+    refill();
+    tokens -= 1d;
+    if (tokens >= 0) {
+      return 0L;
+    }
+    return (long) Math.ceil(-tokens / minRetriesPerNano / TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(maxTokens, tokens + (now - lastRefillNanos) * minRetriesPerNano);
+    lastRefillNanos = now;
+  }
+}
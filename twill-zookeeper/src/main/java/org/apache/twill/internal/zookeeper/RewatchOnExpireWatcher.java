@@ -17,11 +17,8 @@
  */
 package org.apache.twill.internal.zookeeper;
 
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.Futures;
 import org.apache.twill.zookeeper.NodeChildren;
 import org.apache.twill.zookeeper.NodeData;
-import org.apache.twill.zookeeper.ZKClient;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
@@ -33,6 +30,8 @@ import java.util.concurrent.atomic.AtomicMarkableReference;
 
 /**
  * A wrapper for {@link Watcher} that will re-set the watch automatically until it is successful.
+ * The watch is re-set through the {@link RewatchScheduler} when the session expired, and the difference between
+ * the last known result and the result after re-watch is delivered to the delegate as a watch event.
  */
 final class RewatchOnExpireWatcher implements Watcher {
 
@@ -44,20 +43,28 @@ final class RewatchOnExpireWatcher implements Watcher {
     DATA
   }
 
-  private final ZKClient client;
+  private final RewatchScheduler scheduler;
   private final ActionType actionType;
   private final String path;
   private final Watcher delegate;
   private final AtomicMarkableReference<Object> lastResult;
 
-  RewatchOnExpireWatcher(ZKClient client, ActionType actionType, String path, Watcher delegate) {
-    this.client = client;
+  RewatchOnExpireWatcher(RewatchScheduler scheduler, ActionType actionType, String path, Watcher delegate) {
+    this.scheduler = scheduler;
     this.actionType = actionType;
     this.path = path;
     this.delegate = delegate;
     this.lastResult = new AtomicMarkableReference<Object>(null, false);
   }
 
+  ActionType getActionType() {
+    return actionType;
+  }
+
+  String getPath() {
+    return path;
+  }
+
   /**
    * Sets the result from the operation that causes this watcher to be set.
    */
@@ -75,133 +82,89 @@ final class RewatchOnExpireWatcher implements Watcher {
       }
     }
 
-    if (event.getState() != Event.KeeperState.Expired) {
-      return;
+    if (event.getState() == Event.KeeperState.Expired) {
+      scheduler.rewatch(this);
     }
+  }
+
+  /**
+   * Called by {@link RewatchScheduler} when the watch is re-set successfully.
+   *
+   * @param result result of the operation that re-set the watch
+   */
+  void rewatched(Object result) {
+    // Since we know all callbacks and watcher are triggered from single event thread, there is no race condition.
+    Object oldResult = lastResult.getReference();
+    // Remember the new result for comparison in the next re-watch, as the watch is now set by the scheduler.
+    lastResult.set(result, true);
+
     switch (actionType) {
       case EXISTS:
-        exists();
+        existsRewatched((Stat) result, oldResult);
         break;
       case CHILDREN:
-        children();
+        childrenRewatched((NodeChildren) result, oldResult);
         break;
       case DATA:
-        data();
+        dataRewatched((NodeData) result, oldResult);
         break;
     }
   }
 
-  private void exists() {
-    Futures.addCallback(client.exists(path, this), new FutureCallback<Stat>() {
-      @Override
-      public void onSuccess(Stat stat) {
-        // Since we know all callbacks and watcher are triggered from single event thread, there is no race condition.
-        Object oldResult = lastResult.getReference();
-        lastResult.compareAndSet(oldResult, null, true, false);
-
-        if (stat != oldResult && (stat == null || !stat.equals(oldResult))) {
-          if (stat == null) {
-            // previous stat is not null, means node deleted
-            process(new WatchedEvent(Event.EventType.NodeDeleted, Event.KeeperState.SyncConnected, path));
-          } else if (oldResult == null) {
-            // previous stat is null, means node created
-            process(new WatchedEvent(Event.EventType.NodeCreated, Event.KeeperState.SyncConnected, path));
-          } else {
-            // Otherwise, something changed on the node
-            process(new WatchedEvent(Event.EventType.NodeDataChanged, Event.KeeperState.SyncConnected, path));
-          }
-        }
+  /**
+   * Called by {@link RewatchScheduler} when the watch cannot be re-set due to non-retryable failure.
+   */
+  void rewatchFailed(Throwable t) {
+    lastResult.set(null, false);
+    if (actionType != ActionType.EXISTS && t instanceof KeeperException) {
+      KeeperException.Code code = ((KeeperException) t).code();
+      if (code == KeeperException.Code.NONODE) {
+        // Node deleted
+        process(new WatchedEvent(Event.EventType.NodeDeleted, Event.KeeperState.SyncConnected, path));
+        return;
       }
+    }
+    LOG.error("Fail to re-set watch on " + actionType + " for path " + path, t);
+  }
 
-      @Override
-      public void onFailure(Throwable t) {
-        if (RetryUtils.canRetry(t)) {
-          exists();
-        } else {
-          lastResult.set(null, false);
-          LOG.error("Fail to re-set watch on exists for path " + path, t);
-        }
+  private void existsRewatched(Stat stat, Object oldResult) {
+    if (stat != oldResult && (stat == null || !stat.equals(oldResult))) {
+      if (stat == null) {
+        // previous stat is not null, means node deleted
+        process(new WatchedEvent(Event.EventType.NodeDeleted, Event.KeeperState.SyncConnected, path));
+      } else if (oldResult == null) {
+        // previous stat is null, means node created
+        process(new WatchedEvent(Event.EventType.NodeCreated, Event.KeeperState.SyncConnected, path));
+      } else {
+        // Otherwise, something changed on the node
+        process(new WatchedEvent(Event.EventType.NodeDataChanged, Event.KeeperState.SyncConnected, path));
       }
-    });
+    }
   }
 
-  private void children() {
-    Futures.addCallback(client.getChildren(path, this), new FutureCallback<NodeChildren>() {
-      @Override
-      public void onSuccess(NodeChildren result) {
-        Object oldResult = lastResult.getReference();
-        lastResult.compareAndSet(oldResult, null, true, false);
-
-        if (result.equals(oldResult)) {
-          return;
-        }
-
-        if (!(oldResult instanceof NodeChildren)) {
-          // Something very wrong
-          LOG.error("The same watcher has been used for different event type.");
-          return;
-        }
-
-        NodeChildren oldNodeChildren = (NodeChildren) oldResult;
-        if (!result.getChildren().equals(oldNodeChildren.getChildren())) {
-          process(new WatchedEvent(Event.EventType.NodeChildrenChanged, Event.KeeperState.SyncConnected, path));
-        } else {
-          process(new WatchedEvent(Event.EventType.NodeDataChanged, Event.KeeperState.SyncConnected, path));
-        }
-      }
+  private void childrenRewatched(NodeChildren result, Object oldResult) {
+    if (result.equals(oldResult)) {
+      return;
+    }
 
-      @Override
-      public void onFailure(Throwable t) {
-        if (RetryUtils.canRetry(t)) {
-          children();
-          return;
-        }
-
-        lastResult.set(null, false);
-        if (t instanceof KeeperException) {
-          KeeperException.Code code = ((KeeperException) t).code();
-          if (code == KeeperException.Code.NONODE) {
-            // Node deleted
-            process(new WatchedEvent(Event.EventType.NodeDeleted, Event.KeeperState.SyncConnected, path));
-            return;
-          }
-        }
-        LOG.error("Fail to re-set watch on getChildren for path " + path, t);
-      }
-    });
-  }
+    if (!(oldResult instanceof NodeChildren)) {
+      // Something very wrong
+      LOG.error("The same watcher has been used for different event type.");
+      return;
+    }
 
-  private void data() {
-    Futures.addCallback(client.getData(path, this), new FutureCallback<NodeData>() {
-      @Override
-      public void onSuccess(NodeData result) {
-        Object oldResult = lastResult.getReference();
-        lastResult.compareAndSet(oldResult, null, true, false);
-
-        if (!result.equals(oldResult)) {
-          // Whenever something changed, treated it as data changed.
-          process(new WatchedEvent(Event.EventType.NodeDataChanged, Event.KeeperState.SyncConnected, path));
-        }
-      }
+    NodeChildren oldNodeChildren = (NodeChildren) oldResult;
+    if (!result.getChildren().equals(oldNodeChildren.getChildren())) {
+      process(new WatchedEvent(Event.EventType.NodeChildrenChanged, Event.KeeperState.SyncConnected, path));
+    } else {
+      process(new WatchedEvent(Event.EventType.NodeDataChanged, Event.KeeperState.SyncConnected, path));
+    }
+  }
 
-      @Override
-      public void onFailure(Throwable t) {
-        if (RetryUtils.canRetry(t)) {
-          data();
-          return;
-        }
-
-        lastResult.set(null, false);
-        if (t instanceof KeeperException) {
-          KeeperException.Code code = ((KeeperException) t).code();
-          if (code == KeeperException.Code.NONODE) {
-            // Node deleted
-            process(new WatchedEvent(Event.EventType.NodeDeleted, Event.KeeperState.SyncConnected, path));
-            return;
-          }
-        }
-        LOG.error("Fail to re-set watch on getData for path " + path, t);
-      }
-    });
+  private void dataRewatched(NodeData result, Object oldResult) {
+    if (!result.equals(oldResult)) {
+      // Whenever something changed, treated it as data changed.
+      process(new WatchedEvent(Event.EventType.NodeDataChanged, Event.KeeperState.SyncConnected, path));
+    }
   }
 }
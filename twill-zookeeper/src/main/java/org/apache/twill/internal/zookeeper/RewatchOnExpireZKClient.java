@@ -30,12 +30,24 @@ import org.apache.zookeeper.data.Stat;
 
 /**
  * A {@link ZKClient} that will rewatch automatically when session expired and reconnect.
- * The rewatch logic is mainly done in {@link RewatchOnExpireWatcher}.
+ * The rewatch logic is mainly done in {@link RewatchOnExpireWatcher} and {@link RewatchScheduler}.
  */
 public final class RewatchOnExpireZKClient extends ForwardingZKClient {
 
+  private final RewatchScheduler scheduler;
+
   public RewatchOnExpireZKClient(ZKClient delegate) {
     super(delegate);
+    this.scheduler = new RewatchScheduler(delegate, RewatchScheduler.DEFAULT_MAX_CONCURRENCY,
+                                          RewatchScheduler.DEFAULT_BATCH_DELAY_MILLIS);
+  }
+
+  /**
+   * Returns the time in milliseconds it took to re-watch all watches after the last session expiration, or
+   * {@code -1} if there was no re-watch completed.
+   */
+  long getLastRewatchMillis() {
+    return scheduler.getLastRewatchMillis();
   }
 
   @Override
@@ -43,7 +55,8 @@ public final class RewatchOnExpireZKClient extends ForwardingZKClient {
     if (watcher == null) {
       return super.exists(path, null);
     }
-    final RewatchOnExpireWatcher wrappedWatcher = new RewatchOnExpireWatcher(this, ActionType.EXISTS, path, watcher);
+    final RewatchOnExpireWatcher wrappedWatcher =
+      new RewatchOnExpireWatcher(scheduler, ActionType.EXISTS, path, watcher);
     OperationFuture<Stat> result = super.exists(path, wrappedWatcher);
     Futures.addCallback(result, new FutureCallback<Stat>() {
       @Override
@@ -64,7 +77,8 @@ public final class RewatchOnExpireZKClient extends ForwardingZKClient {
     if (watcher == null) {
       return super.getChildren(path, null);
     }
-    final RewatchOnExpireWatcher wrappedWatcher = new RewatchOnExpireWatcher(this, ActionType.CHILDREN, path, watcher);
+    final RewatchOnExpireWatcher wrappedWatcher =
+      new RewatchOnExpireWatcher(scheduler, ActionType.CHILDREN, path, watcher);
     OperationFuture<NodeChildren> result = super.getChildren(path, wrappedWatcher);
     Futures.addCallback(result, new FutureCallback<NodeChildren>() {
       @Override
@@ -85,7 +99,8 @@ public final class RewatchOnExpireZKClient extends ForwardingZKClient {
     if (watcher == null) {
       return super.getData(path, null);
     }
-    final RewatchOnExpireWatcher wrappedWatcher = new RewatchOnExpireWatcher(this, ActionType.DATA, path, watcher);
+    final RewatchOnExpireWatcher wrappedWatcher =
+      new RewatchOnExpireWatcher(scheduler, ActionType.DATA, path, watcher);
     OperationFuture<NodeData> result = super.getData(path, wrappedWatcher);
     Futures.addCallback(result, new FutureCallback<NodeData>() {
       @Override
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.common.Threads;
+import org.apache.twill.internal.zookeeper.RewatchOnExpireWatcher.ActionType;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Re-sets the watches of {@link RewatchOnExpireWatcher} after session expiration in bulk.
+ * <p/>
+ * Expired watchers are collected for a short period of time and grouped by path and action type, so that only one
+ * operation is made for each group, with a watcher that forwards to all watchers in the group. Groups are
+ * re-watched with bounded concurrency. Watches on sequential nodes, which are the ones used by leader election and
+ * locks, are re-watched first, followed by exists, children and data watches.
+ */
+final class RewatchScheduler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RewatchScheduler.class);
+
+  static final int DEFAULT_MAX_CONCURRENCY = 100;
+  static final long DEFAULT_BATCH_DELAY_MILLIS = 100L;
+
+  // Sequential node names end with a ten digits counter
+  private static final Pattern SEQUENTIAL_NODE = Pattern.compile(".*\\d{10}$");
+  private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+    Threads.createDaemonThreadFactory("zk-rewatch"));
+
+  private final ZKClient zkClient;
+  private final int maxConcurrency;
+  private final long batchDelayMillis;
+  private final Map<String, RewatchGroup> pending;
+  private final Queue<RewatchGroup> queue;
+  private final Runnable drainTask;
+  private long sequence;
+  private int inFlight;
+  private boolean drainScheduled;
+  private long startNanos;
+  private int groupCount;
+  private int watcherCount;
+  private volatile long lastRewatchMillis;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param zkClient the client for setting the watches, which should not be a {@link RewatchOnExpireZKClient}
+   * @param maxConcurrency maximum number of outstanding operations
+   * @param batchDelayMillis time to collect expired watchers before re-watching them
+   */
+  RewatchScheduler(ZKClient zkClient, int maxConcurrency, long batchDelayMillis) {
+    this.zkClient = zkClient;
+    this.maxConcurrency = maxConcurrency;
+    this.batchDelayMillis = batchDelayMillis;
+    this.pending = new HashMap<>();
+    this.queue = new PriorityQueue<>(16, new Comparator<RewatchGroup>() {
+      @Override
+      public int compare(RewatchGroup o1, RewatchGroup o2) {
+        if (o1.priority != o2.priority) {
+          return o1.priority < o2.priority ? -1 : 1;
+        }
+        return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+      }
+    });
+    this.drainTask = new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    };
+    this.startNanos = -1L;
+    this.lastRewatchMillis = -1L;
+  }
+
+  /**
+   * Returns the time in milliseconds it took to re-watch all expired watchers the last time, or {@code -1} if
+   * no re-watch has been completed yet.
+   */
+  long getLastRewatchMillis() {
+    return lastRewatchMillis;
+  }
+
+  /**
+   * Schedules re-watching of the given watcher.
+   */
+  void rewatch(RewatchOnExpireWatcher watcher) {
+    synchronized (this) {
+      String key = RewatchGroup.key(watcher.getActionType(), watcher.getPath());
+      RewatchGroup group = pending.get(key);
+      if (group == null) {
+        group = new RewatchGroup(watcher.getActionType(), watcher.getPath(), sequence++);
+        pending.put(key, group);
+        queue.add(group);
+      }
+      group.members.add(watcher);
+      if (startNanos < 0) {
+        startNanos = System.nanoTime();
+      }
+      watcherCount++;
+      scheduleDrain();
+    }
+  }
+
+  private void scheduleDrain() {
+    if (!drainScheduled) {
+      drainScheduled = true;
+      SCHEDULER.schedule(drainTask, batchDelayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Starts re-watching queued groups up to the maximum concurrency.
+   */
+  private void drain() {
+    List<RewatchGroup> groups = new ArrayList<>();
+    synchronized (this) {
+      drainScheduled = false;
+      while (inFlight < maxConcurrency && !queue.isEmpty()) {
+        RewatchGroup group = queue.poll();
+        pending.remove(group.getKey());
+        groups.add(group);
+        inFlight++;
+      }
+    }
+    for (RewatchGroup group : groups) {
+      start(group);
+    }
+  }
+
+  private void start(final RewatchGroup group) {
+    ListenableFuture<?> future;
+    switch (group.actionType) {
+      case EXISTS:
+        future = zkClient.exists(group.path, group);
+        break;
+      case CHILDREN:
+        future = zkClient.getChildren(group.path, group);
+        break;
+      default:
+        future = zkClient.getData(group.path, group);
+    }
+
+    Futures.addCallback(future, new FutureCallback<Object>() {
+      @Override
+      public void onSuccess(Object result) {
+        for (RewatchOnExpireWatcher watcher : group.members) {
+          watcher.rewatched(result);
+        }
+        completed(group, false);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (RetryUtils.canRetry(t)) {
+          completed(group, true);
+          return;
+        }
+        for (RewatchOnExpireWatcher watcher : group.members) {
+          watcher.rewatchFailed(t);
+        }
+        completed(group, false);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+
+  private void completed(RewatchGroup group, boolean retry) {
+    synchronized (this) {
+      inFlight--;
+      if (retry) {
+        // Put the whole group back for the next drain, merging with watchers expired since the group started.
+        RewatchGroup existing = pending.get(group.getKey());
+        if (existing == null) {
+          pending.put(group.getKey(), group);
+          queue.add(group);
+        } else {
+          existing.members.addAll(group.members);
+        }
+      } else {
+        groupCount++;
+      }
+
+      if (!queue.isEmpty()) {
+        // Retries are delayed, while the rest of the queue continues right away.
+        if (retry) {
+          scheduleDrain();
+        } else if (!drainScheduled) {
+          drainScheduled = true;
+          SCHEDULER.execute(drainTask);
+        }
+      } else if (inFlight == 0 && startNanos >= 0) {
+        lastRewatchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        LOG.info("Re-watched {} watchers on {} paths in {} ms", watcherCount, groupCount, lastRewatchMillis);
+        startNanos = -1L;
+        groupCount = 0;
+        watcherCount = 0;
+      }
+    }
+  }
+
+  /**
+   * A group of watchers of the same path and action type, which are re-watched by one operation.
+   */
+  private static final class RewatchGroup implements Watcher {
+
+    private final ActionType actionType;
+    private final String path;
+    private final long sequence;
+    private final int priority;
+    private final List<RewatchOnExpireWatcher> members;
+
+    RewatchGroup(ActionType actionType, String path, long sequence) {
+      this.actionType = actionType;
+      this.path = path;
+      this.sequence = sequence;
+      this.priority = SEQUENTIAL_NODE.matcher(path).matches() ? -1 : actionType.ordinal();
+      this.members = new ArrayList<>();
+    }
+
+    static String key(ActionType actionType, String path) {
+      return actionType + ":" + path;
+    }
+
+    String getKey() {
+      return key(actionType, path);
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+      for (RewatchOnExpireWatcher watcher : members) {
+        watcher.process(event);
+      }
+    }
+  }
+}
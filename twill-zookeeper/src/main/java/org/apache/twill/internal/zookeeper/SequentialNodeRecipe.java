@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.OperationFuture;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+
+/**
+ * Base class for coordination recipes that are built on ephemeral sequential nodes, as described in
+ *
+ * http://zookeeper.apache.org/doc/trunk/recipes.html
+ *
+ * Each participant creates a node named {@code <type>-<guid>-<sequence>}, or {@code <guid>-<sequence>} if there is
+ * no type, under the recipe path. Sub-classes decide from the ordered list of nodes whether a node is granted and
+ * which node to watch otherwise, such that a participant is only notified about the node it is waiting for.
+ * <p/>
+ * A node is re-evaluated when the node it watches is deleted or its data is changed. Sub-classes that need waiters
+ * to be notified when the node they watch is granted return {@code true} from {@link #isMarkedOnGrant()}, which
+ * sets data on each node once it is granted.
+ */
+abstract class SequentialNodeRecipe {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SequentialNodeRecipe.class);
+  private static final byte[] GRANTED = new byte[] { 1 };
+
+  /**
+   * Orders node names by the sequence number appended by ZooKeeper.
+   */
+  private static final Comparator<String> SEQUENCE_ORDER = new Comparator<String>() {
+    @Override
+    public int compare(String o1, String o2) {
+      return Long.compare(getSequence(o1), getSequence(o2));
+    }
+  };
+
+  protected final ZKClient zkClient;
+  protected final String path;
+
+  protected SequentialNodeRecipe(ZKClient zkClient, String path) {
+    this.zkClient = zkClient;
+    this.path = path.startsWith("/") ? path : "/" + path;
+  }
+
+  /**
+   * Returns {@code true} if the node at the given index is granted.
+   *
+   * @param nodes names of all nodes under the recipe path, ordered by sequence
+   * @param index index of the node of the participant
+   */
+  protected abstract boolean isGranted(List<String> nodes, int index);
+
+  /**
+   * Returns the name of the node to watch for a node that is not granted, or {@code null} to watch for
+   * any change in the children of the recipe path.
+   *
+   * @param nodes names of all nodes under the recipe path, ordered by sequence
+   * @param index index of the node of the participant
+   */
+  @Nullable
+  protected abstract String findNodeToWatch(List<String> nodes, int index);
+
+  /**
+   * Returns {@code true} to set data on a node once it is granted, so that a participant watching it is notified.
+   * The default implementation returns {@code false}.
+   */
+  protected boolean isMarkedOnGrant() {
+    return false;
+  }
+
+  /**
+   * Returns the type of the given node name.
+   */
+  protected static String getType(String node) {
+    int idx = node.indexOf('-');
+    return idx < 0 ? node : node.substring(0, idx);
+  }
+
+  private static long getSequence(String node) {
+    return Long.parseLong(node.substring(node.lastIndexOf('-') + 1));
+  }
+
+  /**
+   * Creates a node of the given type and waits until it is granted.
+   *
+   * @param type type of the node or {@code null} to name the node by the guid only
+   * @param interruptible true if the waiting can be interrupted
+   * @param wait true to wait for the node to be granted, false to give up immediately if it is not
+   * @param timeout time to wait for the node to be granted before giving up
+   * @param unit unit for the timeout
+   * @return path of the node granted or {@code null} if it is not granted and {@code wait} is {@code false}
+   * @throws InterruptedException if {@code interruptible} is set to {@code true} and the current thread is interrupted
+   *                              while waiting
+   * @throws ExecutionException if there is failure while creating the node or waiting for it to be granted
+   * @throws TimeoutException if the node is not granted within the given timeout
+   */
+  @Nullable
+  protected final String acquire(@Nullable String type, boolean interruptible, final boolean wait,
+                                 long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException {
+
+    // When the completion future is completed successfully, it contains the path of the node granted.
+    // If it is cancelled, it means to abort the acquisition logic (due to timeout / interrupt / not waiting).
+    final SettableFuture<String> completion = SettableFuture.create();
+
+    // If the connection expired, fail the acquisition if it is still in progress
+    final Cancellable watcherCancellable = zkClient.addConnectionWatcher(new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getState() == Event.KeeperState.Expired) {
+          completion.setException(new IllegalStateException("ZK session expired"));
+        }
+      }
+    });
+    completion.addListener(new Runnable() {
+      @Override
+      public void run() {
+        watcherCancellable.cancel();
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+
+    final String prefix = (type == null ? "" : type + "-") + UUID.randomUUID().toString() + "-";
+    final String nodePath = path + "/" + prefix;
+    Futures.addCallback(zkClient.create(nodePath, null, CreateMode.EPHEMERAL_SEQUENTIAL, true),
+                        new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String node) {
+        deleteNodeOnFailure(completion, node);
+        if (!completion.isDone()) {
+          doAcquire(completion, wait, prefix, node);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (t instanceof KeeperException.ConnectionLossException) {
+          // The node may or may not be created, find it by the guid in next step.
+          doAcquire(completion, wait, prefix, null);
+        } else {
+          LOG.error("Exception raised when creating node at {}", nodePath, t);
+          completion.setException(t);
+        }
+      }
+    });
+
+    try {
+      if (interruptible) {
+        return completion.get(timeout, unit);
+      }
+      return Uninterruptibles.getUninterruptibly(completion, timeout, unit);
+    } catch (InterruptedException | TimeoutException e) {
+      completion.cancel(true);
+      throw e;
+    } catch (CancellationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Deletes the given node.
+   *
+   * @throws ExecutionException if failed to delete the node
+   */
+  protected final void release(String node) throws ExecutionException {
+    Uninterruptibles.getUninterruptibly(zkClient.delete(node));
+  }
+
+  /**
+   * Determines if the node is granted and watches for the node it depends on otherwise.
+   */
+  private void doAcquire(final SettableFuture<String> completion, final boolean wait,
+                         final String prefix, @Nullable final String nodePath) {
+    Futures.addCallback(zkClient.getChildren(path), new FutureCallback<NodeChildren>() {
+      @Override
+      public void onSuccess(NodeChildren result) {
+        List<String> nodes = new ArrayList<>(result.getChildren());
+        Collections.sort(nodes, SEQUENCE_ORDER);
+
+        int index = -1;
+        for (int i = 0; i < nodes.size() && index < 0; i++) {
+          if (nodes.get(i).startsWith(prefix)) {
+            index = i;
+          }
+        }
+        if (index < 0) {
+          completion.setException(new IllegalStateException("Failed to find node with prefix " + prefix));
+          return;
+        }
+
+        final String node = path + "/" + nodes.get(index);
+        if (nodePath == null) {
+          // The node path was not known due to connection loss on creation.
+          deleteNodeOnFailure(completion, node);
+        }
+
+        if (isGranted(nodes, index)) {
+          if (isMarkedOnGrant()) {
+            markGranted(node);
+          }
+          completion.set(node);
+        } else if (!wait) {
+          completion.cancel(true);
+        }
+        if (completion.isDone()) {
+          return;
+        }
+
+        Watcher watcher = new Watcher() {
+          @Override
+          public void process(WatchedEvent event) {
+            if (!completion.isDone()) {
+              doAcquire(completion, wait, prefix, node);
+            }
+          }
+        };
+
+        // Use getData() instead of exists() to avoid leaking watches on the server if the node is already gone.
+        String nodeToWatch = findNodeToWatch(nodes, index);
+        OperationFuture<?> watchFuture = nodeToWatch == null
+          ? zkClient.getChildren(path, watcher)
+          : zkClient.getData(path + "/" + nodeToWatch, watcher);
+
+        Futures.addCallback(watchFuture, new FutureCallback<Object>() {
+          @Override
+          public void onSuccess(Object result) {
+            // The watcher will trigger re-evaluation, unless the watched node was already granted before watching.
+            if (result instanceof NodeData && ((NodeData) result).getData() != null && !completion.isDone()) {
+              doAcquire(completion, wait, prefix, node);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (t instanceof KeeperException.NoNodeException && !completion.isDone()) {
+              doAcquire(completion, wait, prefix, node);
+            } else {
+              completion.setException(t);
+            }
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (nodePath != null) {
+          completion.setException(t);
+        } else {
+          doAcquire(completion, wait, prefix, null);
+        }
+      }
+    });
+  }
+
+  /**
+   * Sets data on the given granted node to notify the participant watching it.
+   */
+  private void markGranted(final String node) {
+    Futures.addCallback(zkClient.setData(node, GRANTED), new FutureCallback<Stat>() {
+      @Override
+      public void onSuccess(Stat result) {
+        // No-op
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        // The node may already be released
+        if (!(t instanceof KeeperException.NoNodeException)) {
+          LOG.warn("Failed to mark node {} as granted", node, t);
+        }
+      }
+    });
+  }
+
+  /**
+   * Deletes the given node if the given future failed.
+   */
+  private void deleteNodeOnFailure(final ListenableFuture<?> future, final String node) {
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          future.get();
+        } catch (Exception e) {
+          zkClient.delete(node);
+        }
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractService;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Service;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.zookeeper.ACLData;
+import org.apache.twill.zookeeper.AbstractZKClient;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.OperationFuture;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link ZKClientService} that spreads operations over multiple {@link ZKClientService ZKClientServices}, each with
+ * its own ZooKeeper session and connection, so that a process with many independent users of ZooKeeper is not limited
+ * by the throughput of a single connection and its event thread.
+ * <p/>
+ * Each operation is sent to the shard selected by the hash of the routing key given by the path router for the path
+ * of the operation. All operations on paths with the same routing key go through the same session, hence they are
+ * ordered, and watches and ephemeral nodes under them follow the same session. Operations with a {@code null} routing
+ * key go to the first shard, which is also the one used for {@link #getSessionId()} and
+ * {@link #getZooKeeperSupplier()}. The session of the shard of a given path is returned by
+ * {@link #getSessionId(String)}.
+ * <p/>
+ * Connection watchers receive the aggregated connection state of all shards: {@code Disconnected} when the first shard
+ * disconnects and {@code SyncConnected} when all shards are connected again. As the session of each shard expires
+ * independently, {@code Expired} is only delivered to them when the session of the first shard expires. Users that
+ * recreate their ephemeral nodes on session expiration, such as the ZooKeeper discovery service, and compare the
+ * session id with the owner of those nodes, should keep their nodes under paths routed to the same shard and use the
+ * {@link ZKClient} returned by {@link #getShard(String)} for those paths, which reports the session and connection
+ * events of that shard only.
+ * <p/>
+ * Connection watchers are called without holding any lock, one event at a time and in the order of the aggregated
+ * state changes.
+ */
+public final class ShardedZKClientService extends AbstractZKClient implements ZKClientService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ShardedZKClientService.class);
+
+  private final List<ZKClientService> shards;
+  private final Function<String, String> pathRouter;
+  private final List<Watcher> connectionWatchers;
+  private final boolean[] disconnected;
+  private final Queue<WatchedEvent> pendingEvents;
+  private final Service serviceDelegate;
+  private int disconnectedCount;
+  private boolean notifying;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param shards the {@link ZKClientService} of each shard, which will be started and stopped by this service
+   * @param pathRouter function to provide the routing key of a path
+   */
+  public ShardedZKClientService(List<? extends ZKClientService> shards, Function<String, String> pathRouter) {
+    Preconditions.checkArgument(!shards.isEmpty(), "There must be at least one shard.");
+    this.shards = ImmutableList.copyOf(shards);
+    this.pathRouter = pathRouter;
+    this.connectionWatchers = new CopyOnWriteArrayList<>();
+    this.disconnected = new boolean[shards.size()];
+    this.pendingEvents = new ArrayDeque<>();
+    this.serviceDelegate = new ServiceDelegate();
+
+    // Shards are not connected until started
+    for (int i = 0; i < disconnected.length; i++) {
+      disconnected[i] = true;
+    }
+    this.disconnectedCount = disconnected.length;
+    for (int i = 0; i < this.shards.size(); i++) {
+      final int shard = i;
+      this.shards.get(i).addConnectionWatcher(new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+          connectionEvent(shard, event);
+        }
+      });
+    }
+  }
+
+  /**
+   * Returns the {@link ZKClient} of the shard that the given path is routed to. Its connection watchers receive the
+   * connection events of that shard only, including the expiration of its session.
+   */
+  public ZKClient getShard(String path) {
+    String key = pathRouter.apply(path);
+    return key == null ? shards.get(0) : shards.get((key.hashCode() & Integer.MAX_VALUE) % shards.size());
+  }
+
+  /**
+   * Returns the session id of the first shard. Use {@link #getSessionId(String)} for the session that owns the
+   * ephemeral nodes created under a given path.
+   */
+  @Override
+  public Long getSessionId() {
+    return shards.get(0).getSessionId();
+  }
+
+  /**
+   * Returns the session id of the shard that the given path is routed to, or {@code null} if that shard is not
+   * connected.
+   */
+  @Nullable
+  public Long getSessionId(String path) {
+    return getShard(path).getSessionId();
+  }
+
+  @Override
+  public String getConnectString() {
+    return shards.get(0).getConnectString();
+  }
+
+  @Override
+  public Cancellable addConnectionWatcher(final Watcher watcher) {
+    if (watcher == null) {
+      return new Cancellable() {
+        @Override
+        public void cancel() {
+          // No-op
+        }
+      };
+    }
+
+    connectionWatchers.add(watcher);
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        connectionWatchers.remove(watcher);
+      }
+    };
+  }
+
+  @Override
+  public OperationFuture<String> create(String path, @Nullable byte[] data, CreateMode createMode,
+                                        boolean createParent, Iterable<ACL> acl) {
+    return getShard(path).create(path, data, createMode, createParent, acl);
+  }
+
+  @Override
+  public OperationFuture<Stat> exists(String path, @Nullable Watcher watcher) {
+    return getShard(path).exists(path, watcher);
+  }
+
+  @Override
+  public OperationFuture<NodeChildren> getChildren(String path, @Nullable Watcher watcher) {
+    return getShard(path).getChildren(path, watcher);
+  }
+
+  @Override
+  public OperationFuture<NodeData> getData(String path, @Nullable Watcher watcher) {
+    return getShard(path).getData(path, watcher);
+  }
+
+  @Override
+  public OperationFuture<Stat> setData(String dataPath, byte[] data, int version) {
+    return getShard(dataPath).setData(dataPath, data, version);
+  }
+
+  @Override
+  public OperationFuture<String> delete(String deletePath, int version) {
+    return getShard(deletePath).delete(deletePath, version);
+  }
+
+  @Override
+  public OperationFuture<ACLData> getACL(String path) {
+    return getShard(path).getACL(path);
+  }
+
+  @Override
+  public OperationFuture<Stat> setACL(String path, Iterable<ACL> acl, int version) {
+    return getShard(path).setACL(path, acl, version);
+  }
+
+  @Override
+  public Supplier<ZooKeeper> getZooKeeperSupplier() {
+    return shards.get(0).getZooKeeperSupplier();
+  }
+
+  @Override
+  public ListenableFuture<State> start() {
+    return serviceDelegate.start();
+  }
+
+  @Override
+  public State startAndWait() {
+    return serviceDelegate.startAndWait();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return serviceDelegate.isRunning();
+  }
+
+  @Override
+  public State state() {
+    return serviceDelegate.state();
+  }
+
+  @Override
+  public ListenableFuture<State> stop() {
+    return serviceDelegate.stop();
+  }
+
+  @Override
+  public State stopAndWait() {
+    return serviceDelegate.stopAndWait();
+  }
+
+  @Override
+  public void addListener(Listener listener, Executor executor) {
+    serviceDelegate.addListener(listener, executor);
+  }
+
+  /**
+   * Updates the connection state of the given shard and notifies connection watchers if the aggregated state
+   * changed.
+   */
+  private void connectionEvent(int shard, WatchedEvent event) {
+    synchronized (this) {
+      switch (event.getState()) {
+        case Disconnected:
+          if (!disconnected[shard]) {
+            disconnected[shard] = true;
+            if (disconnectedCount++ == 0) {
+              pendingEvents.add(event);
+            }
+          }
+          break;
+        case Expired:
+          LOG.info("ZK session expired for shard {} of {}", shard, getConnectString());
+          if (!disconnected[shard]) {
+            disconnected[shard] = true;
+            disconnectedCount++;
+          }
+          // Sessions of other shards are not affected, hence only the expiration of the first shard is delivered
+          if (shard == 0) {
+            pendingEvents.add(event);
+          }
+          break;
+        case SyncConnected:
+          if (disconnected[shard]) {
+            disconnected[shard] = false;
+            if (--disconnectedCount == 0) {
+              pendingEvents.add(event);
+            }
+          }
+          break;
+        default:
+          pendingEvents.add(event);
+      }
+      if (notifying) {
+        // The thread that is notifying delivers the event after the ones queued before
+        return;
+      }
+      notifying = true;
+    }
+    notifyConnectionWatchers();
+  }
+
+  /**
+   * Delivers the pending events to connection watchers without holding the lock, so that watchers can call this
+   * client. Only one thread delivers events at a time, hence events are delivered in the order they were queued.
+   */
+  private void notifyConnectionWatchers() {
+    while (true) {
+      WatchedEvent event;
+      synchronized (this) {
+        event = pendingEvents.poll();
+        if (event == null) {
+          notifying = false;
+          return;
+        }
+      }
+      for (Watcher watcher : connectionWatchers) {
+        try {
+          watcher.process(event);
+        } catch (Throwable t) {
+          LOG.error("Watcher throws exception.", t);
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts and stops all the shards.
+   */
+  private final class ServiceDelegate extends AbstractService {
+
+    @Override
+    protected void doStart() {
+      List<ListenableFuture<State>> futures = new ArrayList<>(shards.size());
+      for (ZKClientService shard : shards) {
+        futures.add(shard.start());
+      }
+      Futures.addCallback(Futures.allAsList(futures), new FutureCallback<List<State>>() {
+        @Override
+        public void onSuccess(List<State> result) {
+          notifyStarted();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          // Stop the shards that started successfully
+          for (ZKClientService shard : shards) {
+            shard.stop();
+          }
+          notifyFailed(t);
+        }
+      }, Threads.SAME_THREAD_EXECUTOR);
+    }
+
+    @Override
+    protected void doStop() {
+      List<ListenableFuture<State>> futures = new ArrayList<>(shards.size());
+      for (ZKClientService shard : shards) {
+        futures.add(shard.stop());
+      }
+      // Use successfulAsList so that all shards are stopped before this service is terminated
+      Futures.addCallback(Futures.successfulAsList(futures), new FutureCallback<List<State>>() {
+        @Override
+        public void onSuccess(List<State> result) {
+          notifyStopped();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          notifyFailed(t);
+        }
+      }, Threads.SAME_THREAD_EXECUTOR);
+    }
+  }
+}
@@ -0,0 +1,663 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.apache.twill.api.PartitionAssignment;
+import org.apache.twill.api.PartitionListener;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link PartitionAssignment} that uses ZooKeeper for membership and partition ownership.
+ * <p/>
+ * Each participant registers an ephemeral node under {@code <path>/members}. Every participant computes the same
+ * assignment from the member list with rendezvous hashing with bounded load. A partition is ranked by the hash of
+ * the partition and each member, and goes to the highest ranked member unless that member is over capacity, in
+ * which case it goes to the next ranked member that still has capacity. Capacity is the average load times
+ * {@link #LOAD_FACTOR}. Adding or removing a member only moves the partitions that rank the changed member first,
+ * plus the few partitions that overflow the capacity of their highest ranked member.
+ * <p/>
+ * Ownership of a partition is an ephemeral node at {@code <path>/owners/<partition>}. A participant deletes the
+ * owner node only after its listeners are notified of the release. A new owner can only create the node after
+ * that, so no two participants own the same partition at the same time.
+ * <p/>
+ * Similar to a leader stepping down in {@link LeaderElection}, all partitions are released to the listeners as soon
+ * as the connection to ZooKeeper is lost, as this participant cannot tell whether it still owns them. The owner nodes
+ * are kept, so that no other participant acquires the partitions while the session may still be alive. After
+ * reconnecting with the same session, the partitions are acquired again from the kept owner nodes. If the session
+ * expired, the owner nodes are gone and the participant registers again.
+ */
+public final class ZKPartitionAssignment implements PartitionAssignment {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ZKPartitionAssignment.class);
+
+  /**
+   * The maximum load of a member relative to the average load.
+   */
+  static final double LOAD_FACTOR = 1.25d;
+
+  private static final long RETRY_DELAY_MILLIS = 1000L;
+
+  private final ZKClient zkClient;
+  private final String name;
+  private final String membersPath;
+  private final String ownersPath;
+  private final String memberId;
+  private final int numPartitions;
+  private final List<PartitionListener> listeners;
+  private final ScheduledExecutorService executor;
+  private final Executor callbackExecutor;
+  private final AtomicBoolean cancelled;
+
+  // All fields below are only accessed from the executor thread
+  private final Set<Integer> desired;
+  private final Set<Integer> acquiring;
+  private final Set<Integer> justAcquired;
+  private final Set<Integer> kept;
+  private Cancellable connectionWatcherCancellable;
+  private boolean suspended;
+  private volatile Set<Integer> owned;
+
+  /**
+   * Creates an instance and joins the partition assignment.
+   *
+   * @param zkClient the {@link ZKClient} to interact with the ZooKeeper used for the coordination
+   * @param path the path in ZooKeeper where the coordination happens
+   * @param memberId unique id of this participant
+   * @param numPartitions total number of partitions, which should be the same for all participants
+   */
+  public ZKPartitionAssignment(ZKClient zkClient, String path, String memberId, int numPartitions) {
+    Preconditions.checkArgument(numPartitions > 0, "Number of partitions must be positive: %s", numPartitions);
+    String basePath = path.startsWith("/") ? path : "/" + path;
+    this.zkClient = zkClient;
+    this.name = basePath.substring(basePath.lastIndexOf('/') + 1);
+    this.membersPath = basePath + "/members";
+    this.ownersPath = basePath + "/owners";
+    this.memberId = memberId;
+    this.numPartitions = numPartitions;
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+      Threads.createDaemonThreadFactory("partition-assignment" + basePath.replace('/', '-')));
+    // Callbacks arriving after the executor is shutdown on cancel are ignored
+    this.callbackExecutor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        try {
+          executor.execute(command);
+        } catch (RejectedExecutionException e) {
+          LOG.trace("Ignore callback for cancelled partition assignment {}", membersPath);
+        }
+      }
+    };
+    this.cancelled = new AtomicBoolean();
+    this.desired = new HashSet<>();
+    this.acquiring = new HashSet<>();
+    this.justAcquired = new TreeSet<>();
+    this.kept = new HashSet<>();
+    this.owned = ImmutableSet.of();
+
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        connectionWatcherCancellable = zkClient.addConnectionWatcher(new Watcher() {
+          @Override
+          public void process(final WatchedEvent event) {
+            callbackExecutor.execute(new Runnable() {
+              @Override
+              public void run() {
+                switch (event.getState()) {
+                  case Disconnected:
+                    disconnected();
+                    break;
+                  case SyncConnected:
+                    connected();
+                    break;
+                  case Expired:
+                    sessionExpired();
+                    break;
+                  default:
+                    break;
+                }
+              }
+            });
+          }
+        });
+        register();
+      }
+    });
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public int getNumPartitions() {
+    return numPartitions;
+  }
+
+  @Override
+  public Set<Integer> getPartitions() {
+    return owned;
+  }
+
+  @Override
+  public Cancellable addListener(final PartitionListener listener) {
+    callbackExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        listeners.add(listener);
+        // Partitions just acquired are notified to all listeners, including this one, by the pending batch
+        Set<Integer> partitions = ImmutableSet.copyOf(Sets.difference(owned, justAcquired));
+        if (!partitions.isEmpty()) {
+          notifyListener(listener, partitions, true);
+        }
+      }
+    });
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        listeners.remove(listener);
+      }
+    };
+  }
+
+  /**
+   * Returns {@code true} if {@link #cancel()} has been called.
+   */
+  public boolean isCancelled() {
+    return cancelled.get();
+  }
+
+  @Override
+  public void cancel() {
+    if (!cancelled.compareAndSet(false, true)) {
+      return;
+    }
+    callbackExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (connectionWatcherCancellable != null) {
+          connectionWatcherCancellable.cancel();
+        }
+        desired.clear();
+        release(owned);
+        for (Integer partition : kept) {
+          zkClient.delete(ownersPath + "/" + partition);
+        }
+        kept.clear();
+        zkClient.delete(membersPath + "/" + memberId);
+        executor.shutdown();
+      }
+    });
+  }
+
+  /**
+   * Computes the assignment of partitions to the given members. Each partition first goes to its highest ranked
+   * member. A member that gets more than the capacity keeps the partitions it ranks highest and only the overflow
+   * moves, in partition order, to the next ranked member that still has capacity. Hence a partition only changes
+   * owner if its highest ranked member changed, or if it overflows before or after the membership change.
+   *
+   * @return a map from member to the set of partitions assigned to it
+   */
+  static Map<String, Set<Integer>> assign(Collection<String> members, int numPartitions) {
+    Map<String, Set<Integer>> assignment = new HashMap<>();
+    if (members.isEmpty()) {
+      return assignment;
+    }
+    List<String> memberList = new ArrayList<>(members);
+    Collections.sort(memberList);
+    for (String member : memberList) {
+      assignment.put(member, new TreeSet<Integer>());
+    }
+
+    int capacity = (int) Math.ceil(LOAD_FACTOR * numPartitions / memberList.size());
+    long[][] weights = new long[numPartitions][memberList.size()];
+    List<List<Integer>> preferred = new ArrayList<>();
+    for (int i = 0; i < memberList.size(); i++) {
+      preferred.add(new ArrayList<Integer>());
+    }
+    for (int partition = 0; partition < numPartitions; partition++) {
+      for (int i = 0; i < memberList.size(); i++) {
+        weights[partition][i] = weight(memberList.get(i), partition);
+      }
+      preferred.get(rank(weights[partition])[0]).add(partition);
+    }
+
+    // Each member keeps the preferred partitions it ranks highest, up to the capacity
+    Set<Integer> overflow = new TreeSet<>();
+    for (int i = 0; i < memberList.size(); i++) {
+      final int member = i;
+      final long[][] partitionWeights = weights;
+      List<Integer> partitions = preferred.get(i);
+      Collections.sort(partitions, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          return Long.compare(partitionWeights[o2][member], partitionWeights[o1][member]);
+        }
+      });
+      int keep = Math.min(capacity, partitions.size());
+      assignment.get(memberList.get(i)).addAll(partitions.subList(0, keep));
+      overflow.addAll(partitions.subList(keep, partitions.size()));
+    }
+
+    // Move the overflow to the next ranked member with capacity
+    for (Integer partition : overflow) {
+      for (int idx : rank(weights[partition])) {
+        Set<Integer> partitions = assignment.get(memberList.get(idx));
+        if (partitions.size() < capacity) {
+          partitions.add(partition);
+          break;
+        }
+      }
+    }
+    return assignment;
+  }
+
+  /**
+   * Returns the highest ranked member of the given partition, which owns it unless the member is over capacity.
+   */
+  static String getPreferredMember(Collection<String> members, int partition) {
+    String preferred = null;
+    long maxWeight = Long.MIN_VALUE;
+    for (String member : members) {
+      long weight = weight(member, partition);
+      if (preferred == null || weight > maxWeight || (weight == maxWeight && member.compareTo(preferred) < 0)) {
+        preferred = member;
+        maxWeight = weight;
+      }
+    }
+    return preferred;
+  }
+
+  private static long weight(String member, int partition) {
+    return Hashing.murmur3_128().newHasher().putString(member, Charsets.UTF_8).putInt(partition).hash().asLong();
+  }
+
+  /**
+   * Returns the indices of the given weights ordered from the highest weight to the lowest.
+   */
+  private static int[] rank(final long[] weights) {
+    Integer[] order = new Integer[weights.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Long.compare(weights[o2], weights[o1]);
+      }
+    });
+    int[] result = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      result[i] = order[i];
+    }
+    return result;
+  }
+
+  /**
+   * Registers this participant and starts watching for membership changes.
+   */
+  private void register() {
+    Futures.addCallback(zkClient.create(membersPath + "/" + memberId, null, CreateMode.EPHEMERAL, true),
+                        new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String result) {
+        watchMembers();
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (t instanceof KeeperException.NodeExistsException) {
+          // Either created by previous attempt on connection loss, or the node of an expired session.
+          watchMembers();
+          return;
+        }
+        LOG.warn("Failed to register partition member {} at {}. Retrying.", memberId, membersPath, t);
+        schedule(new Runnable() {
+          @Override
+          public void run() {
+            register();
+          }
+        });
+      }
+    }, callbackExecutor);
+  }
+
+  /**
+   * Fetches the members and rebalances the partitions, leaving a watch for the next membership change.
+   */
+  private void watchMembers() {
+    if (cancelled.get() || suspended) {
+      return;
+    }
+    Futures.addCallback(zkClient.getChildren(membersPath, new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getType() == Event.EventType.NodeChildrenChanged) {
+          callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              watchMembers();
+            }
+          });
+        }
+      }
+    }), new FutureCallback<NodeChildren>() {
+      @Override
+      public void onSuccess(NodeChildren result) {
+        rebalance(result.getChildren());
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.warn("Failed to get partition members at {}. Retrying.", membersPath, t);
+        schedule(new Runnable() {
+          @Override
+          public void run() {
+            watchMembers();
+          }
+        });
+      }
+    }, callbackExecutor);
+  }
+
+  private void rebalance(Collection<String> members) {
+    if (cancelled.get() || suspended) {
+      return;
+    }
+    Set<Integer> assigned = members.contains(memberId)
+      ? assign(members, numPartitions).get(memberId) : Collections.<Integer>emptySet();
+
+    desired.clear();
+    desired.addAll(assigned);
+
+    // Owner nodes kept over a disconnect are acquired again below if still desired, otherwise deleted.
+    for (Integer partition : Sets.difference(kept, desired)) {
+      zkClient.delete(ownersPath + "/" + partition);
+    }
+    kept.clear();
+
+    // Release first, so that other members can acquire them as soon as possible.
+    release(Sets.difference(owned, desired));
+    for (Integer partition : desired) {
+      if (!owned.contains(partition) && !acquiring.contains(partition)) {
+        acquire(partition);
+      }
+    }
+  }
+
+  /**
+   * Releases the given partitions. Listeners are notified before the owner nodes are deleted.
+   */
+  private void release(Set<Integer> partitions) {
+    if (partitions.isEmpty()) {
+      return;
+    }
+    Set<Integer> released = ImmutableSet.copyOf(partitions);
+    owned = ImmutableSet.copyOf(Sets.difference(owned, released));
+
+    // Listeners are not notified for partitions that they are not yet notified as acquired
+    Set<Integer> notifyReleased = ImmutableSet.copyOf(Sets.difference(released, justAcquired));
+    justAcquired.removeAll(released);
+    if (!notifyReleased.isEmpty()) {
+      for (PartitionListener listener : listeners) {
+        notifyListener(listener, notifyReleased, false);
+      }
+    }
+    for (Integer partition : released) {
+      zkClient.delete(ownersPath + "/" + partition);
+    }
+    LOG.debug("Released partitions {} of {}", released, membersPath);
+  }
+
+  /**
+   * Tries to create the owner node of the given partition. If the partition is still owned by another member,
+   * it waits until the owner node is deleted.
+   */
+  private void acquire(final Integer partition) {
+    acquiring.add(partition);
+    final String ownerPath = ownersPath + "/" + partition;
+    Futures.addCallback(zkClient.create(ownerPath, memberId.getBytes(Charsets.UTF_8), CreateMode.EPHEMERAL, true),
+                        new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String result) {
+        acquired(partition);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (t instanceof KeeperException.NodeExistsException) {
+          waitForOwner(partition, ownerPath);
+          return;
+        }
+        LOG.warn("Failed to acquire partition {} at {}. Retrying.", partition, ownerPath, t);
+        retryAcquire(partition);
+      }
+    }, callbackExecutor);
+  }
+
+  /**
+   * Waits for the current owner node of the given partition to be deleted.
+   */
+  private void waitForOwner(final Integer partition, final String ownerPath) {
+    Futures.addCallback(zkClient.getData(ownerPath, new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getType() == Event.EventType.NodeDeleted || event.getType() == Event.EventType.NodeDataChanged) {
+          callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              retryAcquire(partition);
+            }
+          });
+        }
+      }
+    }), new FutureCallback<NodeData>() {
+      @Override
+      public void onSuccess(NodeData result) {
+        byte[] data = result.getData();
+        Stat stat = result.getStat();
+        Long sessionId = zkClient.getSessionId();
+        if (data != null && memberId.equals(new String(data, Charsets.UTF_8))
+          && sessionId != null && stat.getEphemeralOwner() == sessionId) {
+          // Created by this member in a previous attempt that failed with connection loss.
+          acquired(partition);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        // The owner node is gone, or failed to watch it. Either way, try again.
+        retryAcquire(partition, !(t instanceof KeeperException.NoNodeException));
+      }
+    }, callbackExecutor);
+  }
+
+  private void retryAcquire(Integer partition) {
+    retryAcquire(partition, false);
+  }
+
+  private void retryAcquire(final Integer partition, boolean delay) {
+    if (!acquiring.remove(partition) || cancelled.get()
+      || !desired.contains(partition) || owned.contains(partition)) {
+      return;
+    }
+    if (!delay) {
+      acquire(partition);
+      return;
+    }
+    acquiring.add(partition);
+    schedule(new Runnable() {
+      @Override
+      public void run() {
+        retryAcquire(partition);
+      }
+    });
+  }
+
+  private void acquired(Integer partition) {
+    if (suspended) {
+      // The owner node is kept and acquired again after reconnecting.
+      kept.add(partition);
+      return;
+    }
+    if (!acquiring.remove(partition)) {
+      if (!owned.contains(partition)) {
+        // A late success of an acquisition that was abandoned, e.g. due to session expiry.
+        zkClient.delete(ownersPath + "/" + partition);
+      }
+      return;
+    }
+    if (cancelled.get() || !desired.contains(partition)) {
+      // No longer needed while being acquired.
+      zkClient.delete(ownersPath + "/" + partition);
+      return;
+    }
+    owned = ImmutableSet.<Integer>builder().addAll(owned).add(partition).build();
+
+    // Notify listeners in batch for partitions acquired around the same time.
+    if (justAcquired.isEmpty()) {
+      callbackExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          if (justAcquired.isEmpty()) {
+            return;
+          }
+          Set<Integer> partitions = ImmutableSet.copyOf(justAcquired);
+          justAcquired.clear();
+          LOG.debug("Acquired partitions {} of {}", partitions, membersPath);
+          for (PartitionListener listener : listeners) {
+            notifyListener(listener, partitions, true);
+          }
+        }
+      });
+    }
+    justAcquired.add(partition);
+  }
+
+  /**
+   * Releases all partitions to the listeners, as the ownership cannot be verified without a connection.
+   */
+  private void disconnected() {
+    if (cancelled.get() || suspended) {
+      return;
+    }
+    LOG.info("Disconnected from ZK. Releasing all partitions of {}", membersPath);
+    suspended = true;
+    kept.addAll(owned);
+    kept.addAll(acquiring);
+    releaseAll();
+  }
+
+  /**
+   * Acquires the partitions again after reconnecting with the same session.
+   */
+  private void connected() {
+    if (cancelled.get() || !suspended) {
+      return;
+    }
+    LOG.info("Reconnected to ZK. Acquiring partitions of {}", membersPath);
+    suspended = false;
+    watchMembers();
+  }
+
+  private void sessionExpired() {
+    if (cancelled.get()) {
+      return;
+    }
+    // All ephemeral nodes are gone with the session, hence all partitions are lost.
+    LOG.warn("ZK session expired. Releasing all partitions of {}", membersPath);
+    suspended = false;
+    kept.clear();
+    releaseAll();
+    register();
+  }
+
+  /**
+   * Notifies the listeners about the release of all partitions, without deleting the owner nodes.
+   */
+  private void releaseAll() {
+    Set<Integer> lost = ImmutableSet.copyOf(Sets.difference(owned, justAcquired));
+    owned = ImmutableSet.of();
+    justAcquired.clear();
+    acquiring.clear();
+    if (!lost.isEmpty()) {
+      for (PartitionListener listener : listeners) {
+        notifyListener(listener, lost, false);
+      }
+    }
+  }
+
+  private void notifyListener(PartitionListener listener, Set<Integer> partitions, boolean acquired) {
+    try {
+      if (acquired) {
+        listener.acquired(partitions);
+      } else {
+        listener.released(partitions);
+      }
+    } catch (Throwable t) {
+      LOG.error("Exception raised when calling {} on partition listener {}",
+                acquired ? "acquired" : "released", listener, t);
+    }
+  }
+
+  private void schedule(Runnable runnable) {
+    if (!cancelled.get()) {
+      executor.schedule(runnable, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+}
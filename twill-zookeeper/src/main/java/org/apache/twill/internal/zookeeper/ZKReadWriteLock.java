@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.base.Throwables;
+import org.apache.twill.zookeeper.ZKClient;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+
+/**
+ * A reentrant distributed read-write lock implementation that uses ZooKeeper. It uses the recipe described in
+ *
+ * http://zookeeper.apache.org/doc/trunk/recipes.html#Shared+Locks
+ *
+ * A reader only watches the nearest writer node before its own node and a writer only watches the node right
+ * before its own node, hence there is no herd effect when a lock is released.
+ * <p/>
+ * The read lock can be acquired by the thread holding the write lock, in which case it is granted locally.
+ * Releasing the write lock while still holding such read lock downgrades the write lock to the read lock: the write
+ * node is kept until the read lock is released, so that no writer can take over in between, at the cost of other
+ * readers staying blocked until then. Upgrading from the read lock to the write lock is not supported and will
+ * block forever.
+ */
+public final class ZKReadWriteLock implements ReadWriteLock {
+
+  private static final String READ = "read";
+  private static final String WRITE = "write";
+
+  private final Recipe recipe;
+  private final ReadLock readLock;
+  private final WriteLock writeLock;
+
+  /**
+   * Creates a distributed read-write lock instance.
+   *
+   * @param zkClient the {@link ZKClient} to interact with the ZooKeeper used for the lock coordination
+   * @param path the path in ZooKeeper where the lock coordination happens
+   */
+  public ZKReadWriteLock(ZKClient zkClient, String path) {
+    this.recipe = new Recipe(zkClient, path);
+    this.readLock = new ReadLock();
+    this.writeLock = new WriteLock();
+  }
+
+  @Override
+  public Lock readLock() {
+    return readLock;
+  }
+
+  @Override
+  public Lock writeLock() {
+    return writeLock;
+  }
+
+  /**
+   * The recipe for granting read and write nodes.
+   */
+  private static final class Recipe extends SequentialNodeRecipe {
+
+    Recipe(ZKClient zkClient, String path) {
+      super(zkClient, path);
+    }
+
+    @Override
+    protected boolean isGranted(List<String> nodes, int index) {
+      if (WRITE.equals(getType(nodes.get(index)))) {
+        return index == 0;
+      }
+      return findPrecedingWrite(nodes, index) == null;
+    }
+
+    @Nullable
+    @Override
+    protected String findNodeToWatch(List<String> nodes, int index) {
+      if (WRITE.equals(getType(nodes.get(index)))) {
+        return nodes.get(index - 1);
+      }
+      return findPrecedingWrite(nodes, index);
+    }
+
+    @Nullable
+    private String findPrecedingWrite(List<String> nodes, int index) {
+      for (int i = index - 1; i >= 0; i--) {
+        if (WRITE.equals(getType(nodes.get(i)))) {
+          return nodes.get(i);
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Base class for the read and write lock, which implements the different variants of locking on top of
+   * the {@link #acquire(boolean, boolean, long, TimeUnit)} method.
+   */
+  private abstract static class AbstractLock implements Lock {
+
+    @Override
+    public final void lock() {
+      try {
+        acquire(false, true, Long.MAX_VALUE, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    @Override
+    public final void lockInterruptibly() throws InterruptedException {
+      try {
+        acquire(true, true, Long.MAX_VALUE, TimeUnit.SECONDS);
+      } catch (ExecutionException | TimeoutException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    @Override
+    public final boolean tryLock() {
+      try {
+        return acquire(false, false, Long.MAX_VALUE, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    @Override
+    public final boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+      try {
+        return acquire(true, true, time, unit);
+      } catch (ExecutionException e) {
+        throw Throwables.propagate(e.getCause());
+      } catch (TimeoutException e) {
+        return false;
+      }
+    }
+
+    /**
+     * Currently not supported and will always throw {@link UnsupportedOperationException}.
+     */
+    @Override
+    public final Condition newCondition() {
+      throw new UnsupportedOperationException("Condition not supported.");
+    }
+
+    /**
+     * Acquires the lock.
+     *
+     * @return {@code true} if the lock is acquired, {@code false} if {@code wait} is {@code false} and the lock
+     *         is not available
+     */
+    protected abstract boolean acquire(boolean interruptible, boolean wait, long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException;
+  }
+
+  /**
+   * The read lock. Each thread holding the read lock has its own node in ZooKeeper.
+   */
+  private final class ReadLock extends AbstractLock {
+
+    private final ThreadLocal<ReadHolder> holder = new ThreadLocal<>();
+
+    @Override
+    protected boolean acquire(boolean interruptible, boolean wait, long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+      ReadHolder readHolder = holder.get();
+      if (readHolder != null) {
+        readHolder.count++;
+        return true;
+      }
+      if (writeLock.isHeldByCurrentThread()) {
+        // Granted locally, as the thread is holding the write lock.
+        holder.set(new ReadHolder(null));
+        return true;
+      }
+      String node = recipe.acquire(READ, interruptible, wait, timeout, unit);
+      if (node == null) {
+        return false;
+      }
+      holder.set(new ReadHolder(node));
+      return true;
+    }
+
+    @Override
+    public void unlock() {
+      ReadHolder readHolder = holder.get();
+      if (readHolder == null) {
+        throw new IllegalStateException("Cannot unlock without holding a read lock by thread "
+                                          + Thread.currentThread());
+      }
+      if (--readHolder.count > 0) {
+        return;
+      }
+      holder.remove();
+      if (readHolder.node != null) {
+        try {
+          recipe.release(readHolder.node);
+        } catch (ExecutionException e) {
+          throw Throwables.propagate(e.getCause());
+        }
+      }
+    }
+
+    boolean isLocallyGranted() {
+      ReadHolder readHolder = holder.get();
+      return readHolder != null && readHolder.node == null;
+    }
+
+    /**
+     * Makes the read lock granted locally to the current thread own the given write node, which is deleted
+     * when the read lock is released.
+     */
+    void downgrade(String writeNode) {
+      holder.get().node = writeNode;
+    }
+  }
+
+  /**
+   * The write lock. Threads in the same process are serialized by a local lock before going to ZooKeeper.
+   */
+  private final class WriteLock extends AbstractLock {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private String node;
+
+    @Override
+    protected boolean acquire(boolean interruptible, boolean wait, long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+      long startTime = System.nanoTime();
+      if (interruptible) {
+        if (!lock.tryLock(timeout, unit)) {
+          return false;
+        }
+      } else if (wait) {
+        lock.lock();
+      } else if (!lock.tryLock()) {
+        return false;
+      }
+
+      if (lock.getHoldCount() > 1) {
+        return true;
+      }
+      try {
+        long remaining = unit.toNanos(timeout) - (System.nanoTime() - startTime);
+        node = recipe.acquire(WRITE, interruptible, wait, remaining, TimeUnit.NANOSECONDS);
+        if (node != null) {
+          return true;
+        }
+      } catch (Exception e) {
+        lock.unlock();
+        throw e;
+      }
+      lock.unlock();
+      return false;
+    }
+
+    @Override
+    public void unlock() {
+      if (!lock.isHeldByCurrentThread()) {
+        throw new IllegalStateException("Cannot unlock without holding a write lock by thread "
+                                          + Thread.currentThread());
+      }
+      try {
+        if (lock.getHoldCount() == 1 && readLock.isLocallyGranted()) {
+          // Downgrade to the read lock by handing over the write node
+          readLock.downgrade(node);
+          node = null;
+        } else if (lock.getHoldCount() == 1) {
+          String writeNode = node;
+          node = null;
+          recipe.release(writeNode);
+        }
+      } catch (ExecutionException e) {
+        throw Throwables.propagate(e.getCause());
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    boolean isHeldByCurrentThread() {
+      return lock.isHeldByCurrentThread();
+    }
+  }
+
+  /**
+   * Holds the read lock node and the reentrant count of a thread.
+   */
+  private static final class ReadHolder {
+    private String node;
+    private int count;
+
+    ReadHolder(@Nullable String node) {
+      this.node = node;
+      this.count = 1;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import org.apache.twill.api.DistributedSemaphore;
+import org.apache.twill.zookeeper.ZKClient;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+
+/**
+ * A distributed counting semaphore implementation that uses ZooKeeper. Each permit acquired is represented by an
+ * ephemeral sequential node, and a permit is granted if its node is among the first {@code permits} nodes.
+ * <p/>
+ * Since any of the nodes holding a permit can release it, only the first waiting participant watches the children
+ * of the semaphore path. Every other waiting participant watches the node right before its own, which is deleted
+ * if that participant gives up, or marked once it is granted, in which case the next participant becomes the first
+ * waiting one. Hence releasing a permit or joining the queue notifies at most one waiting participant.
+ */
+public final class ZKSemaphore implements DistributedSemaphore {
+
+  private static final String PERMIT = "permit";
+
+  private final int permits;
+  private final SequentialNodeRecipe recipe;
+  private final Deque<String> acquiredNodes;
+
+  /**
+   * Creates a distributed semaphore instance.
+   *
+   * @param zkClient the {@link ZKClient} to interact with the ZooKeeper used for the coordination
+   * @param path the path in ZooKeeper where the coordination happens
+   * @param permits number of permits of the semaphore, which should be the same for all participants
+   */
+  public ZKSemaphore(ZKClient zkClient, String path, final int permits) {
+    Preconditions.checkArgument(permits > 0, "Number of permits must be positive: %s", permits);
+    this.permits = permits;
+    this.recipe = new SequentialNodeRecipe(zkClient, path) {
+      @Override
+      protected boolean isGranted(List<String> nodes, int index) {
+        return index < permits;
+      }
+
+      @Nullable
+      @Override
+      protected String findNodeToWatch(List<String> nodes, int index) {
+        return index == permits ? null : nodes.get(index - 1);
+      }
+
+      @Override
+      protected boolean isMarkedOnGrant() {
+        return true;
+      }
+    };
+    this.acquiredNodes = new ConcurrentLinkedDeque<>();
+  }
+
+  @Override
+  public int getPermits() {
+    return permits;
+  }
+
+  @Override
+  public void acquire() throws InterruptedException {
+    try {
+      acquire(true, true, Long.MAX_VALUE, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (TimeoutException e) {
+      // Should never happen
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Override
+  public boolean tryAcquire() {
+    try {
+      return acquire(false, false, Long.MAX_VALUE, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Override
+  public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+    try {
+      return acquire(true, true, timeout, unit);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (TimeoutException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void release() {
+    String node = acquiredNodes.pollLast();
+    if (node == null) {
+      throw new IllegalStateException("No permit acquired through this semaphore");
+    }
+    try {
+      recipe.release(node);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private boolean acquire(boolean interruptible, boolean wait, long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException {
+    String node = recipe.acquire(PERMIT, interruptible, wait, timeout, unit);
+    if (node == null) {
+      return false;
+    }
+    acquiredNodes.add(node);
+    return true;
+  }
+}
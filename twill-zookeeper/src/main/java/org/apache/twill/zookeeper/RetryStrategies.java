@@ -19,6 +19,7 @@ package org.apache.twill.zookeeper;
 
 import com.google.common.base.Preconditions;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -92,6 +93,56 @@ public final class RetryStrategies {
     };
   }
 
+  /**
+   * Creates a {@link RetryStrategy} with decorrelated jitter, so that clients failing at the same time don't
+   * retry in lockstep. The delay is chosen randomly between the base delay and three times the upper bound of
+   * the previous delay, capped by the max delay. As the strategy doesn't keep state between retries, the upper
+   * bound for the n-th retry is {@code baseDelay * 3^(n-1)}.
+   * @param baseDelay minimum delay.
+   * @param maxDelay cap of the delay.
+   * @param delayUnit {@link TimeUnit} for the delays.
+   * @return A {@link RetryStrategy}.
+   */
+  public static RetryStrategy decorrelatedJitter(final long baseDelay, final long maxDelay, final TimeUnit delayUnit) {
+    Preconditions.checkArgument(baseDelay >= 0, "base delay must be >= 0");
+    Preconditions.checkArgument(maxDelay >= baseDelay, "max delay must be >= base delay");
+    final long baseMs = TimeUnit.MILLISECONDS.convert(baseDelay, delayUnit);
+    final long maxMs = TimeUnit.MILLISECONDS.convert(maxDelay, delayUnit);
+    return new RetryStrategy() {
+      @Override
+      public long nextRetry(int failureCount, long startTime, OperationType type, String path) {
+        long upper = Math.max(baseMs, 1L);
+        for (int i = 1; i < failureCount && upper < maxMs; i++) {
+          upper *= 3;
+        }
+        upper = Math.min(upper, maxMs);
+        return upper <= baseMs ? baseMs : baseMs + ThreadLocalRandom.current().nextLong(upper - baseMs + 1);
+      }
+    };
+  }
+
+  /**
+   * Creates a {@link RetryStrategy} that randomizes the delay of another {@link RetryStrategy}, by
+   * adding or subtracting up to the given ratio of the delay.
+   * @param ratio maximum ratio of the delay to add or subtract, between 0 and 1.
+   * @param strategy strategy for determining the delay to randomize.
+   * @return A {@link RetryStrategy}.
+   */
+  public static RetryStrategy jitter(final double ratio, final RetryStrategy strategy) {
+    Preconditions.checkArgument(ratio >= 0 && ratio <= 1, "ratio must be between 0 and 1");
+    return new RetryStrategy() {
+      @Override
+      public long nextRetry(int failureCount, long startTime, OperationType type, String path) {
+        long delay = strategy.nextRetry(failureCount, startTime, type, path);
+        if (delay <= 0) {
+          return delay;
+        }
+        double factor = 1d + ratio * (ThreadLocalRandom.current().nextDouble() * 2d - 1d);
+        return Math.round(delay * factor);
+      }
+    };
+  }
+
   /**
    * Creates a {@link RetryStrategy} that will retry until maximum amount of time has been passed since the request,
    * with the actual delay behavior delegated to another {@link RetryStrategy}.
@@ -0,0 +1,530 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.zookeeper;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+
+/**
+ * An in-memory mirror of a ZooKeeper subtree up to a given depth, created through
+ * {@link ZKOperations#cacheTree(ZKClient, String, int, Listener)}.
+ * <p/>
+ * Each cached node has one data watch, and one children watch if it is above the maximum depth. In children only
+ * mode, created through {@link ZKOperations#cacheTree(ZKClient, String, int, Predicate, boolean, Listener)}, no data
+ * is read or watched, hence changes in the data of nodes don't cause any read, and only {@link EventType#ADDED}
+ * and {@link EventType#REMOVED} events are reported, without data. When a watch
+ * fires, only the changed node is read again. The difference from the cached state is reported to the
+ * {@link Listener} as {@link EventType#ADDED}, {@link EventType#UPDATED} and {@link EventType#REMOVED} events. After
+ * the session expires, only the nodes whose watches are lost are read again, and only the actual differences are
+ * reported. Watches that are re-set by the client itself, such as by {@link ZKClients#reWatchOnExpire(ZKClient)},
+ * are not set again.
+ * <p/>
+ * Events are delivered one at a time in the order the cache is updated. A parent node is always added before its
+ * children and removed after its children.
+ */
+public final class TreeCache implements Cancellable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TreeCache.class);
+
+  /**
+   * Types of change in the cached tree.
+   */
+  public enum EventType {
+    ADDED,
+    UPDATED,
+    REMOVED
+  }
+
+  /**
+   * Listener for receiving changes in the cached tree.
+   */
+  public interface Listener {
+
+    /**
+     * Invoked when a node in the cached tree changed.
+     *
+     * @param type type of the change
+     * @param path path of the node
+     * @param nodeData data of the node, or the last known data if the node is removed, or {@code null} in
+     *                 children only mode
+     */
+    void nodeChanged(EventType type, String path, @Nullable NodeData nodeData);
+  }
+
+  private final ZKClient zkClient;
+  private final String rootPath;
+  private final int maxDepth;
+  private final Predicate<String> filter;
+  private final boolean cacheData;
+  private final Listener listener;
+  private final Map<String, Node> nodes;
+  private final Queue<Runnable> tasks;
+  private final AtomicBoolean draining;
+  private final AtomicBoolean cancelled;
+  private final Cancellable connectionWatcherCancellable;
+
+  TreeCache(ZKClient zkClient, String path, int maxDepth,
+            Predicate<String> filter, boolean cacheData, Listener listener) {
+    this.zkClient = zkClient;
+    this.rootPath = path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    this.maxDepth = maxDepth;
+    this.filter = filter;
+    this.cacheData = cacheData;
+    this.listener = listener;
+    this.nodes = new HashMap<>();
+    this.tasks = new ConcurrentLinkedQueue<>();
+    this.draining = new AtomicBoolean();
+    this.cancelled = new AtomicBoolean();
+    this.connectionWatcherCancellable = zkClient.addConnectionWatcher(new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getState() == Event.KeeperState.Expired) {
+          execute(new Runnable() {
+            @Override
+            public void run() {
+              rebuild();
+            }
+          });
+        }
+      }
+    });
+  }
+
+  /**
+   * Starts populating the cache.
+   */
+  void start() {
+    execute(new Runnable() {
+      @Override
+      public void run() {
+        addNode(rootPath, 0);
+      }
+    });
+  }
+
+  /**
+   * Returns the cached data of the given node, or {@code null} if the node is not in the cache or the cache is
+   * in children only mode.
+   */
+  @Nullable
+  public synchronized NodeData getData(String path) {
+    Node node = nodes.get(path);
+    return node == null ? null : node.data;
+  }
+
+  /**
+   * Returns the names of the cached children of the given node, or an empty set if the node is not in the cache.
+   */
+  public synchronized Set<String> getChildren(String path) {
+    Node node = nodes.get(path);
+    return node == null ? ImmutableSet.<String>of() : ImmutableSet.copyOf(node.children);
+  }
+
+  @Override
+  public void cancel() {
+    if (cancelled.compareAndSet(false, true)) {
+      connectionWatcherCancellable.cancel();
+    }
+  }
+
+  /**
+   * Adds a node to the cache and reads its data and children.
+   */
+  private void addNode(String path, int depth) {
+    Node node = nodes.get(path);
+    if (node == null) {
+      node = new Node(path, depth);
+      synchronized (this) {
+        nodes.put(path, node);
+      }
+      if (!cacheData && depth > 0) {
+        // Listed by the parent, hence it exists
+        setAdded(node);
+      }
+    }
+    if (!node.dataWatched) {
+      refreshData(node);
+    }
+    if (!node.childrenWatched) {
+      refreshChildren(node);
+    }
+  }
+
+  /**
+   * Re-reads the cached nodes that have no watch after the session expired. Nodes with a watch at the time of
+   * expiry are read again when the loss of the watch is notified to the watcher of the node.
+   */
+  private void rebuild() {
+    for (Node node : new ArrayList<>(nodes.values())) {
+      if (!node.dataWatched) {
+        refreshData(node);
+      }
+      if (!node.childrenWatched) {
+        refreshChildren(node);
+      }
+    }
+  }
+
+  /**
+   * Reads the data of the given node and sets a new data watch on it, which replaces the current one.
+   */
+  private void refreshData(final Node node) {
+    if (cancelled.get() || !cacheData) {
+      return;
+    }
+    final int generation = ++node.dataGeneration;
+    node.dataWatched = true;
+    Futures.addCallback(zkClient.getData(node.path, new NodeWatcher(node, generation, false)),
+                        new FutureCallback<NodeData>() {
+      @Override
+      public void onSuccess(final NodeData result) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            applyData(node, result);
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(final Throwable t) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            if (generation == node.dataGeneration) {
+              node.dataWatched = false;
+              handleFailure(node, t, false);
+            }
+          }
+        });
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+
+  /**
+   * Reads the children of the given node and sets a new children watch on it, which replaces the current one.
+   */
+  private void refreshChildren(final Node node) {
+    if (cancelled.get() || node.depth >= maxDepth) {
+      return;
+    }
+    final int generation = ++node.childrenGeneration;
+    node.childrenWatched = true;
+    Futures.addCallback(zkClient.getChildren(node.path, new NodeWatcher(node, generation, true)),
+                        new FutureCallback<NodeChildren>() {
+      @Override
+      public void onSuccess(final NodeChildren result) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            applyChildren(node, result.getChildren());
+          }
+        });
+      }
+
+      @Override
+      public void onFailure(final Throwable t) {
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            if (generation == node.childrenGeneration) {
+              node.childrenWatched = false;
+              handleFailure(node, t, true);
+            }
+          }
+        });
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+
+  private void handleFailure(Node node, Throwable t, boolean children) {
+    if (nodes.get(node.path) != node) {
+      return;
+    }
+    if (t instanceof KeeperException.NoNodeException) {
+      removeNode(node);
+      return;
+    }
+    if (t instanceof KeeperException.SessionExpiredException) {
+      // The read was made with the expired session. Read again with the new session.
+      if (children) {
+        refreshChildren(node);
+      } else {
+        refreshData(node);
+      }
+      return;
+    }
+    LOG.warn("Failed to read node {} for tree cache at {}", node.path, rootPath, t);
+  }
+
+  private void applyData(Node node, NodeData nodeData) {
+    if (nodes.get(node.path) != node) {
+      // The node was removed
+      return;
+    }
+    Stat stat = nodeData.getStat();
+    if (node.data == null) {
+      synchronized (this) {
+        node.data = nodeData;
+      }
+      setAdded(node);
+    } else if (stat != null && node.data.getStat() != null && stat.getMzxid() > node.data.getStat().getMzxid()) {
+      synchronized (this) {
+        node.data = nodeData;
+      }
+      notifyListener(EventType.UPDATED, node.path, nodeData);
+    }
+  }
+
+  private void applyChildren(Node node, List<String> children) {
+    if (nodes.get(node.path) != node) {
+      return;
+    }
+    if (!node.added && !cacheData) {
+      // The root node exists as its children are read
+      setAdded(node);
+    }
+    Set<String> accepted = new HashSet<>();
+    for (String child : children) {
+      if (filter.apply(childPath(node.path, child))) {
+        accepted.add(child);
+      }
+    }
+    Set<String> removed = ImmutableSet.copyOf(Sets.difference(node.children, accepted));
+    Set<String> added = ImmutableSet.copyOf(Sets.difference(accepted, node.children));
+    synchronized (this) {
+      node.children.clear();
+      node.children.addAll(accepted);
+    }
+    for (String child : removed) {
+      Node childNode = nodes.get(childPath(node.path, child));
+      if (childNode != null) {
+        removeNode(childNode);
+      }
+    }
+    for (String child : added) {
+      addNode(childPath(node.path, child), node.depth + 1);
+    }
+  }
+
+  /**
+   * Removes the given node and all its descendants from the cache. For the root node, it watches for its creation.
+   */
+  private void removeNode(Node node) {
+    if (nodes.get(node.path) != node) {
+      return;
+    }
+    for (String child : ImmutableSet.copyOf(node.children)) {
+      Node childNode = nodes.get(childPath(node.path, child));
+      if (childNode != null) {
+        removeNode(childNode);
+      }
+    }
+    synchronized (this) {
+      nodes.remove(node.path);
+      Node parent = node.depth == 0 ? null : nodes.get(parentPath(node.path));
+      if (parent != null) {
+        parent.children.remove(node.path.substring(node.path.lastIndexOf('/') + 1));
+      }
+    }
+    if (node.added) {
+      notifyListener(EventType.REMOVED, node.path, node.data);
+    }
+    if (node.depth == 0) {
+      watchRootCreation();
+    }
+  }
+
+  private void watchRootCreation() {
+    if (cancelled.get()) {
+      return;
+    }
+    Futures.addCallback(zkClient.exists(rootPath, new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getType() == Event.EventType.NodeCreated) {
+          start();
+        } else if (event.getType() != Event.EventType.None || event.getState() == Event.KeeperState.Expired) {
+          // Watch again if the watch fired for other changes or was lost with the session
+          watchRootCreation();
+        }
+      }
+    }), new FutureCallback<Stat>() {
+      @Override
+      public void onSuccess(Stat result) {
+        if (result != null) {
+          start();
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (t instanceof KeeperException.SessionExpiredException) {
+          watchRootCreation();
+          return;
+        }
+        LOG.warn("Failed to watch for creation of {}", rootPath, t);
+      }
+    }, Threads.SAME_THREAD_EXECUTOR);
+  }
+
+  private void setAdded(Node node) {
+    node.added = true;
+    notifyListener(EventType.ADDED, node.path, node.data);
+  }
+
+  private void notifyListener(EventType type, String path, @Nullable NodeData nodeData) {
+    if (cancelled.get()) {
+      return;
+    }
+    try {
+      listener.nodeChanged(type, path, nodeData);
+    } catch (Throwable t) {
+      LOG.error("Exception raised from tree cache listener {} on {} {}", listener, type, path, t);
+    }
+  }
+
+  /**
+   * Executes the given task after all previously submitted tasks are completed. Tasks are executed by the thread
+   * that submitted a task while no other thread is executing tasks, hence the cache state is only modified by one
+   * thread at a time.
+   */
+  private void execute(Runnable task) {
+    tasks.add(task);
+    while (!tasks.isEmpty() && draining.compareAndSet(false, true)) {
+      try {
+        Runnable next = tasks.poll();
+        while (next != null) {
+          if (!cancelled.get()) {
+            next.run();
+          }
+          next = tasks.poll();
+        }
+      } finally {
+        draining.set(false);
+      }
+    }
+  }
+
+  private static String childPath(String parent, String child) {
+    return "/".equals(parent) ? "/" + child : parent + "/" + child;
+  }
+
+  private static String parentPath(String path) {
+    int idx = path.lastIndexOf('/');
+    return idx == 0 ? "/" : path.substring(0, idx);
+  }
+
+  /**
+   * A node in the cache. Every read of the node sets a new watch with the next generation of the node, and only
+   * the watcher of the latest generation acts on events. A watch that is replaced by a newer one, such as a watch
+   * re-set by the client after session expiry while the node is read again, is ignored when it fires, hence
+   * the node is read once for every change. The state of a node is only accessed by tasks run through
+   * {@link #execute(Runnable)}.
+   */
+  private static final class Node {
+    private final String path;
+    private final int depth;
+    private final Set<String> children;
+    private NodeData data;
+    private boolean added;
+    private int dataGeneration;
+    private int childrenGeneration;
+    private boolean dataWatched;
+    private boolean childrenWatched;
+
+    Node(String path, int depth) {
+      this.path = path;
+      this.depth = depth;
+      this.children = new HashSet<>();
+    }
+  }
+
+  /**
+   * Watcher for the data or the children of a node, set with the given generation of the node.
+   */
+  private final class NodeWatcher implements Watcher {
+    private final Node node;
+    private final int generation;
+    private final boolean children;
+
+    NodeWatcher(Node node, int generation, boolean children) {
+      this.node = node;
+      this.generation = generation;
+      this.children = children;
+    }
+
+    @Override
+    public void process(final WatchedEvent event) {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          if (nodes.get(node.path) != node
+            || generation != (children ? node.childrenGeneration : node.dataGeneration)) {
+            // The node is removed, or the watch is replaced by a newer one
+            return;
+          }
+          Event.EventType type = event.getType();
+          if (type == Event.EventType.None && event.getState() != Event.KeeperState.Expired) {
+            // The watch is kept by ZooKeeper across disconnects
+            return;
+          }
+          if (children) {
+            // Either the children changed, or the watch is lost with the session
+            node.childrenWatched = false;
+            if (type != Event.EventType.NodeDeleted) {
+              refreshChildren(node);
+            } else if (!cacheData) {
+              // Without data watch, the children watch is the one notified about the deletion
+              removeNode(node);
+            }
+          } else {
+            node.dataWatched = false;
+            if (type == Event.EventType.NodeDeleted) {
+              removeNode(node);
+            } else {
+              refreshData(node);
+            }
+          }
+        }
+      });
+    }
+  }
+}
@@ -17,12 +17,17 @@
  */
 package org.apache.twill.zookeeper;
 
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import org.apache.twill.common.Cancellable;
+import org.apache.twill.internal.zookeeper.ShardedZKClientService;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.data.ACL;
 import org.apache.zookeeper.data.Stat;
 
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.Nullable;
 
 /**
@@ -119,6 +124,61 @@ public final class ZKClientServices {
     };
   }
 
+  /**
+   * Creates a {@link ZKClientService} that routes operations to one of the given number of ZooKeeper sessions
+   * based on the routing key returned by the given path router for the path of each operation.
+   *
+   * @param connectString The ZooKeeper connection string.
+   * @param shards Number of ZooKeeper sessions.
+   * @param pathRouter Function to provide the routing key of a path, e.g. {@link #pathPrefix(int)}.
+   * @return A {@link ZKClientService}.
+   * @see ShardedZKClientService
+   */
+  public static ZKClientService sharded(String connectString, int shards, Function<String, String> pathRouter) {
+    return sharded(ZKClientService.Builder.of(connectString), shards, pathRouter);
+  }
+
+  /**
+   * Creates a {@link ZKClientService} same as {@link #sharded(String, int, Function)}, with the ZooKeeper session
+   * of each shard created by the given {@link ZKClientService.Builder}.
+   *
+   * @param builder The {@link ZKClientService.Builder} for creating the {@link ZKClientService} of each shard.
+   * @param shards Number of ZooKeeper sessions.
+   * @param pathRouter Function to provide the routing key of a path, e.g. {@link #pathPrefix(int)}.
+   * @return A {@link ZKClientService}.
+   */
+  public static ZKClientService sharded(ZKClientService.Builder builder, int shards,
+                                        Function<String, String> pathRouter) {
+    Preconditions.checkArgument(shards > 0, "Number of shards must be > 0");
+    List<ZKClientService> clientServices = new ArrayList<>(shards);
+    for (int i = 0; i < shards; i++) {
+      clientServices.add(builder.build());
+    }
+    return new ShardedZKClientService(clientServices, pathRouter);
+  }
+
+  /**
+   * Returns a path router for {@link #sharded(String, int, Function)} that uses the first {@code depth} path
+   * components as the routing key. For example, with depth {@code 1}, all paths under {@code /app} are routed
+   * to the same shard.
+   *
+   * @param depth Number of path components used as the routing key.
+   * @return A {@link Function} from path to routing key.
+   */
+  public static Function<String, String> pathPrefix(final int depth) {
+    Preconditions.checkArgument(depth > 0, "Depth must be > 0");
+    return new Function<String, String>() {
+      @Override
+      public String apply(String path) {
+        int idx = 0;
+        for (int i = 0; i < depth && idx >= 0; i++) {
+          idx = path.indexOf('/', idx + 1);
+        }
+        return idx < 0 ? path : path.substring(0, idx);
+      }
+    };
+  }
+
   private ZKClientServices() {
   }
 }
@@ -17,7 +17,10 @@
  */
 package org.apache.twill.zookeeper;
 
+import org.apache.twill.api.metrics.MetricsRegistry;
+import org.apache.twill.internal.zookeeper.CompressingZKClient;
 import org.apache.twill.internal.zookeeper.FailureRetryZKClient;
+import org.apache.twill.internal.zookeeper.InstrumentedZKClient;
 import org.apache.twill.internal.zookeeper.NamespaceZKClient;
 import org.apache.twill.internal.zookeeper.RewatchOnExpireZKClient;
 
@@ -62,6 +65,46 @@ public final class ZKClients {
     return new NamespaceZKClient(zkClient, namespace);
   }
 
+  /**
+   * Creates a {@link ZKClient} that records latency, errors, in-flight operations, data size and watch
+   * processing time of all operations to the given {@link MetricsRegistry}. To measure the actual ZooKeeper
+   * operations, it should be placed directly on top of the {@link ZKClientService}, below any retry or re-watch.
+   *
+   * @param client The {@link ZKClient} for operations delegation.
+   * @param registry The {@link MetricsRegistry} for recording metrics.
+   * @return A {@link ZKClient} that records metrics of operations.
+   */
+  public static ZKClient instrumented(ZKClient client, MetricsRegistry registry) {
+    return new InstrumentedZKClient(client, registry);
+  }
+
+  /**
+   * Creates a {@link ZKClient} that compresses node data larger than
+   * {@link CompressingZKClient#DEFAULT_COMPRESS_THRESHOLD} bytes and splits data still larger than
+   * {@link CompressingZKClient#DEFAULT_CHUNK_SIZE} bytes across child nodes. Node data written without
+   * compression is read as is. Nodes with encoded data can only be read through a compressing {@link ZKClient}.
+   *
+   * @param client The {@link ZKClient} for operations delegation.
+   * @return A {@link ZKClient} that compresses and chunks large node data.
+   */
+  public static ZKClient compressing(ZKClient client) {
+    return new CompressingZKClient(client, CompressingZKClient.DEFAULT_COMPRESS_THRESHOLD,
+                                   CompressingZKClient.DEFAULT_CHUNK_SIZE, null);
+  }
+
+  /**
+   * Creates a {@link ZKClient} same as {@link #compressing(ZKClient)}, which also reports the number of bytes
+   * before and after encoding and the compression ratio to the given {@link MetricsRegistry}.
+   *
+   * @param client The {@link ZKClient} for operations delegation.
+   * @param registry The {@link MetricsRegistry} for reporting the compression ratio.
+   * @return A {@link ZKClient} that compresses and chunks large node data.
+   */
+  public static ZKClient compressing(ZKClient client, MetricsRegistry registry) {
+    return new CompressingZKClient(client, CompressingZKClient.DEFAULT_COMPRESS_THRESHOLD,
+                                   CompressingZKClient.DEFAULT_CHUNK_SIZE, registry);
+  }
+
   private ZKClients() {
   }
 }
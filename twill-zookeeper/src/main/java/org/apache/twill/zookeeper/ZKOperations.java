@@ -17,6 +17,9 @@
  */
 package org.apache.twill.zookeeper;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -174,6 +177,60 @@ public final class ZKOperations {
     };
   }
 
+  /**
+   * Keeps an in-memory mirror of the subtree of the given path. Same as calling
+   * {@link #cacheTree(ZKClient, String, int, Predicate, TreeCache.Listener)} with a filter that accepts all nodes.
+   *
+   * @param zkClient The {@link ZKClient} for the operation
+   * @param path Path of the root of the subtree
+   * @param depth Maximum depth of nodes to cache, with {@code 0} for the root node only
+   * @param listener Listener to be invoked when nodes are added, updated or removed
+   * @return A {@link TreeCache} for accessing the cached nodes and to cancel the caching
+   */
+  public static TreeCache cacheTree(ZKClient zkClient, String path, int depth, TreeCache.Listener listener) {
+    return cacheTree(zkClient, path, depth, Predicates.<String>alwaysTrue(), listener);
+  }
+
+  /**
+   * Keeps an in-memory mirror of the subtree of the given path. The root node is watched for creation if it
+   * doesn't exist. Nodes are added to the cache if they are within the given depth and are accepted by
+   * the filter, together with all their ancestors. Changes to the cached nodes are delivered to the listener.
+   *
+   * @param zkClient The {@link ZKClient} for the operation
+   * @param path Path of the root of the subtree
+   * @param depth Maximum depth of nodes to cache, with {@code 0} for the root node only
+   * @param filter Filter on the path of nodes under the root node to cache
+   * @param listener Listener to be invoked when nodes are added, updated or removed
+   * @return A {@link TreeCache} for accessing the cached nodes and to cancel the caching
+   */
+  public static TreeCache cacheTree(ZKClient zkClient, String path, int depth,
+                                    Predicate<String> filter, TreeCache.Listener listener) {
+    return cacheTree(zkClient, path, depth, filter, true, listener);
+  }
+
+  /**
+   * Keeps an in-memory mirror of the subtree of the given path, optionally without the data of the nodes.
+   * Without data, only the children of the nodes above the given depth are watched, hence updates of the data
+   * of nodes don't cause any read. It is the same as nested {@link #watchChildren(ZKClient, String, ChildrenCallback)}
+   * calls, except that only the additions and removals of nodes are delivered to the listener.
+   *
+   * @param zkClient The {@link ZKClient} for the operation
+   * @param path Path of the root of the subtree
+   * @param depth Maximum depth of nodes to cache, with {@code 0} for the root node only
+   * @param filter Filter on the path of nodes under the root node to cache
+   * @param cacheData {@code true} to cache and watch the data of the nodes, {@code false} for the children only
+   * @param listener Listener to be invoked when nodes are added, updated or removed
+   * @return A {@link TreeCache} for accessing the cached nodes and to cancel the caching
+   */
+  public static TreeCache cacheTree(ZKClient zkClient, String path, int depth, Predicate<String> filter,
+                                    boolean cacheData, TreeCache.Listener listener) {
+    Preconditions.checkArgument(depth >= 0, "Depth must not be negative: %s", depth);
+    Preconditions.checkArgument(cacheData || depth > 0, "Depth must be positive without caching data: %s", depth);
+    TreeCache cache = new TreeCache(zkClient, path, depth, filter, cacheData, listener);
+    cache.start();
+    return cache;
+  }
+
   /**
    * Returns a new {@link OperationFuture} that the result will be the same as the given future, except that when
    * the source future is having an exception matching the giving exception type, the errorResult will be set
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.apache.twill.zookeeper.ZKClients;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Unit test for {@link CompressingZKClient}.
+ */
+public class CompressingZKClientTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static InMemoryZKServer zkServer;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    zkServer = InMemoryZKServer.builder().setDataDir(TMP_FOLDER.newFolder()).build();
+    zkServer.startAndWait();
+  }
+
+  @AfterClass
+  public static void finish() {
+    zkServer.stopAndWait();
+  }
+
+  @Test(timeout = 20000)
+  public void testCompress() throws Exception {
+    ZKClientService zkClient = createZKClient();
+    try {
+      CompressingZKClient client = new CompressingZKClient(zkClient, 100, 4096, null);
+
+      // Small data is stored as is, hence readable without the compressing client
+      byte[] small = "small".getBytes("UTF-8");
+      client.create("/compress/small", small, CreateMode.PERSISTENT).get();
+      Assert.assertArrayEquals(small, zkClient.getData("/compress/small").get().getData());
+      Assert.assertArrayEquals(small, client.getData("/compress/small").get().getData());
+
+      // Data written without the compressing client is read as is
+      byte[] legacy = repeat("legacy", 100);
+      zkClient.create("/compress/legacy", legacy, CreateMode.PERSISTENT).get();
+      Assert.assertArrayEquals(legacy, client.getData("/compress/legacy").get().getData());
+
+      // Compressible data is stored compressed
+      byte[] large = repeat("compressible", 300);
+      client.setData("/compress/small", large).get();
+      byte[] stored = zkClient.getData("/compress/small").get().getData();
+      Assert.assertTrue(stored.length < large.length);
+      Assert.assertArrayEquals(large, client.getData("/compress/small").get().getData());
+      Assert.assertTrue(client.getCompressionRatio() < 0.1d);
+
+      // Data that starts with the magic bytes is always encoded
+      byte[] magic = Arrays.copyOf(CompressingZKClient.MAGIC, 20);
+      client.setData("/compress/small", magic).get();
+      Assert.assertArrayEquals(magic, client.getData("/compress/small").get().getData());
+    } finally {
+      zkClient.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testChunks() throws Exception {
+    ZKClientService zkClient = createZKClient();
+    try {
+      ZKClient client = new CompressingZKClient(zkClient, 100, 1024, null);
+
+      // Random data doesn't compress, hence it is split into chunks
+      byte[] data = new byte[10000];
+      new Random().nextBytes(data);
+      client.create("/chunks/node", data, CreateMode.PERSISTENT).get();
+      client.create("/chunks/node/child", null, CreateMode.PERSISTENT).get();
+      Assert.assertArrayEquals(data, client.getData("/chunks/node").get().getData());
+
+      // Chunks are hidden from children
+      NodeChildren children = client.getChildren("/chunks/node").get();
+      Assert.assertEquals(Collections.singletonList("child"), children.getChildren());
+      Assert.assertEquals(11, zkClient.getChildren("/chunks/node").get().getChildren().size());
+
+      // Chunks of the previous data are removed on update
+      new Random().nextBytes(data);
+      client.setData("/chunks/node", data).get();
+      Assert.assertArrayEquals(data, client.getData("/chunks/node").get().getData());
+      client.setData("/chunks/node", "small".getBytes("UTF-8")).get();
+      Assert.assertEquals("small", new String(client.getData("/chunks/node").get().getData(), "UTF-8"));
+      for (int i = 0; i < 50 && zkClient.getChildren("/chunks/node").get().getChildren().size() > 1; i++) {
+        Thread.sleep(100);
+      }
+      Assert.assertEquals(Collections.singletonList("child"),
+                          zkClient.getChildren("/chunks/node").get().getChildren());
+
+      // Chunks are kept when deleting a node that has other children
+      client.setData("/chunks/node", data).get();
+      try {
+        client.delete("/chunks/node").get();
+        Assert.fail("Expected failure in deleting node with children");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof KeeperException.NotEmptyException);
+      }
+      Assert.assertArrayEquals(data, client.getData("/chunks/node").get().getData());
+
+      // Delete of a node with chunks
+      client.delete("/chunks/node/child").get();
+      client.delete("/chunks/node").get();
+      Assert.assertNull(zkClient.exists("/chunks/node").get());
+
+      // A node with a pending header, which is being created with chunks, is read as not existing
+      ByteBuffer pending = ByteBuffer.allocate(CompressingZKClient.MAGIC.length + 6);
+      pending.put(CompressingZKClient.MAGIC).put((byte) 1).put((byte) 4).putInt(0);
+      zkClient.create("/chunks/pending", pending.array(), CreateMode.PERSISTENT).get();
+      try {
+        client.getData("/chunks/pending").get();
+        Assert.fail("Expected failure in reading node with pending header");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof KeeperException.NoNodeException);
+      }
+
+      // Ephemeral node cannot have chunks
+      try {
+        client.create("/chunks/ephemeral", data, CreateMode.EPHEMERAL).get();
+        Assert.fail("Expected failure in creating ephemeral node with chunks");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+      }
+    } finally {
+      zkClient.stopAndWait();
+    }
+  }
+
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    ZKClientService zkClient = createZKClient();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final ZKClient client = new CompressingZKClient(zkClient, 100, 1024, null);
+      final Set<String> written = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      client.create("/concurrent", createData(written), CreateMode.PERSISTENT).get();
+
+      // Writers update the chunked node concurrently, while a reader checks that the data is always complete
+      final AtomicBoolean stopped = new AtomicBoolean();
+      List<Future<?>> writers = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        writers.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < 20; j++) {
+              client.setData("/concurrent", createData(written)).get();
+            }
+            return null;
+          }
+        }));
+      }
+      Future<Integer> reader = executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          int reads = 0;
+          while (!stopped.get()) {
+            byte[] data = client.getData("/concurrent").get().getData();
+            Assert.assertTrue(written.contains(Arrays.toString(data)));
+            reads++;
+          }
+          return reads;
+        }
+      });
+
+      for (Future<?> writer : writers) {
+        writer.get(60, TimeUnit.SECONDS);
+      }
+      stopped.set(true);
+      Assert.assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+
+      // Only the chunks referenced by the current header are left
+      byte[] data = client.getData("/concurrent").get().getData();
+      Assert.assertTrue(written.contains(Arrays.toString(data)));
+      for (int i = 0; i < 50 && getChunkGenerations(zkClient, "/concurrent").size() > 1; i++) {
+        TimeUnit.MILLISECONDS.sleep(100);
+      }
+      Assert.assertEquals(1, getChunkGenerations(zkClient, "/concurrent").size());
+      Assert.assertEquals(data.length / 1024 + 1, zkClient.getChildren("/concurrent").get().getChildren().size());
+    } finally {
+      executor.shutdownNow();
+      zkClient.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testFactory() throws Exception {
+    ZKClientService zkClient = createZKClient();
+    try {
+      ZKClient client = ZKClients.compressing(zkClient);
+      byte[] data = repeat("factory", 1000);
+      client.create("/factory", data, CreateMode.PERSISTENT).get();
+      Assert.assertArrayEquals(data, client.getData("/factory").get().getData());
+    } finally {
+      zkClient.stopAndWait();
+    }
+  }
+
+  private Set<String> getChunkGenerations(ZKClient zkClient, String path) throws Exception {
+    Set<String> generations = new HashSet<>();
+    for (String child : zkClient.getChildren(path).get().getChildren()) {
+      generations.add(child.substring(0, child.lastIndexOf('-')));
+    }
+    return generations;
+  }
+
+  /**
+   * Creates random data that doesn't compress and adds it to the given set.
+   */
+  private byte[] createData(Set<String> written) {
+    byte[] data = new byte[5000];
+    new Random().nextBytes(data);
+    written.add(Arrays.toString(data));
+    return data;
+  }
+
+  private byte[] repeat(String str, int times) throws IOException {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      builder.append(str);
+    }
+    return builder.toString().getBytes("UTF-8");
+  }
+
+  private ZKClientService createZKClient() {
+    ZKClientService zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+    return zkClient;
+  }
+}
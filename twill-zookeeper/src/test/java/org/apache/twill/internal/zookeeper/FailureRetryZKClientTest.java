@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the {@link RetryBudget} and {@link CircuitBreaker} used by {@link FailureRetryZKClient}.
+ */
+public class FailureRetryZKClientTest {
+
+  @Test
+  public void testRetryBudget() {
+    // 10 tokens to start with, one retry per second when the bucket is empty
+    RetryBudget budget = new RetryBudget(0.5d, 1d, 10d);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(0L, budget.reserve());
+    }
+
+    // Empty bucket delays retries, with longer delay the more retries are waiting
+    long delay = budget.reserve();
+    Assert.assertTrue(delay > 0L && delay <= 1000L);
+    Assert.assertTrue(budget.reserve() > 1000L);
+
+    // Requests deposit tokens
+    budget = new RetryBudget(0.5d, 1d, 1d);
+    Assert.assertEquals(0L, budget.reserve());
+    budget.deposit();
+    budget.deposit();
+    Assert.assertEquals(0L, budget.reserve());
+  }
+
+  @Test
+  public void testCircuitBreaker() throws InterruptedException {
+    CircuitBreaker breaker = new CircuitBreaker(3, 200, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(breaker.allowRequest());
+
+    // Success resets the failure count
+    breaker.onFailure();
+    breaker.onFailure();
+    breaker.onSuccess();
+    breaker.onFailure();
+    breaker.onFailure();
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    Assert.assertEquals(0L, breaker.getRetryDelayMillis());
+
+    breaker.onFailure();
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertFalse(breaker.allowRequest());
+    Assert.assertTrue(breaker.getRetryDelayMillis() > 0L);
+
+    // After the open time, only one probe is allowed. Failed probe opens the circuit again.
+    TimeUnit.MILLISECONDS.sleep(250);
+    Assert.assertTrue(breaker.allowRequest());
+    Assert.assertFalse(breaker.allowRequest());
+    breaker.onFailure();
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertFalse(breaker.allowRequest());
+
+    // Successful probe closes the circuit
+    TimeUnit.MILLISECONDS.sleep(250);
+    Assert.assertTrue(breaker.allowRequest());
+    breaker.onSuccess();
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    Assert.assertTrue(breaker.allowRequest());
+    Assert.assertTrue(breaker.allowRequest());
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.base.Supplier;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link InstrumentedZKClient}.
+ */
+public class InstrumentedZKClientTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static InMemoryZKServer zkServer;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    zkServer = InMemoryZKServer.builder().setDataDir(TMP_FOLDER.newFolder()).build();
+    zkServer.startAndWait();
+  }
+
+  @AfterClass
+  public static void finish() {
+    zkServer.stopAndWait();
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    ZKClientService zkClientService = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClientService.startAndWait();
+    try {
+      final TestMetricsRegistry registry = new TestMetricsRegistry();
+      ZKClient zkClient = new InstrumentedZKClient(zkClientService, registry);
+
+      byte[] data = "data".getBytes(StandardCharsets.UTF_8);
+      zkClient.create("/instrumented", data, CreateMode.PERSISTENT).get();
+      waitFor(1L, new Supplier<Long>() {
+        @Override
+        public Long get() {
+          return registry.timer("zk.create.latency").getCount();
+        }
+      });
+      Assert.assertEquals(data.length, registry.counter(InstrumentedZKClient.BYTES_WRITTEN).getCount());
+
+      // Reads record the bytes read, and watches record when they fire
+      final CountDownLatch watchLatch = new CountDownLatch(1);
+      zkClient.getData("/instrumented", new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+          watchLatch.countDown();
+        }
+      }).get();
+      waitFor(1L, new Supplier<Long>() {
+        @Override
+        public Long get() {
+          return registry.timer("zk.getData.latency").getCount();
+        }
+      });
+      Assert.assertEquals(data.length, registry.counter(InstrumentedZKClient.BYTES_READ).getCount());
+      Assert.assertEquals(0L, registry.counter(InstrumentedZKClient.WATCH_FIRED).getCount());
+
+      byte[] newData = "newData".getBytes(StandardCharsets.UTF_8);
+      zkClient.setData("/instrumented", newData).get();
+      Assert.assertTrue(watchLatch.await(10, TimeUnit.SECONDS));
+      waitFor(1L, new Supplier<Long>() {
+        @Override
+        public Long get() {
+          return registry.timer(InstrumentedZKClient.WATCH_PROCESS).getCount();
+        }
+      });
+      Assert.assertEquals(1L, registry.counter(InstrumentedZKClient.WATCH_FIRED).getCount());
+      Assert.assertEquals(data.length + newData.length,
+                          registry.counter(InstrumentedZKClient.BYTES_WRITTEN).getCount());
+
+      // Failed operations are counted by error code and still record the latency
+      try {
+        zkClient.create("/instrumented", null, CreateMode.PERSISTENT).get();
+        Assert.fail("Expected NodeExistsException");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof KeeperException.NodeExistsException);
+      }
+      try {
+        zkClient.getData("/missing").get();
+        Assert.fail("Expected NoNodeException");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof KeeperException.NoNodeException);
+      }
+      waitFor(1L, new Supplier<Long>() {
+        @Override
+        public Long get() {
+          return registry.counter("zk.errors.NONODE").getCount();
+        }
+      });
+      Assert.assertEquals(1L, registry.counter("zk.errors.NODEEXISTS").getCount());
+      Assert.assertEquals(2L, registry.timer("zk.create.latency").getCount());
+      Assert.assertEquals(2L, registry.timer("zk.getData.latency").getCount());
+      Assert.assertEquals(1L, registry.timer("zk.setData.latency").getCount());
+      Assert.assertEquals(data.length, registry.counter(InstrumentedZKClient.BYTES_READ).getCount());
+
+      // Nothing is outstanding after all operations completed
+      Assert.assertEquals(0L, registry.getGauge(InstrumentedZKClient.INFLIGHT).getValue());
+    } finally {
+      zkClientService.stopAndWait();
+    }
+  }
+
+  private void waitFor(long expected, Supplier<Long> supplier) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (supplier.get() != expected && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    Assert.assertEquals(expected, (long) supplier.get());
+  }
+}
@@ -22,7 +22,11 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.twill.api.ElectionHandler;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.zookeeper.ForwardingZKClient;
+import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKClientService;
+import org.apache.zookeeper.Watcher;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -34,7 +38,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
@@ -327,6 +333,209 @@ public class LeaderElectionTest {
     }
   }
 
+  @Test(timeout = 150000)
+  public void testManager() throws InterruptedException {
+    int electionCount = 50;
+    List<ZKClientService> zkClients = Lists.newArrayList();
+    try {
+      List<Semaphore> leaderSems = Lists.newArrayList();
+      List<Semaphore> followerSems = Lists.newArrayList();
+      List<Map<String, LeaderElection>> elections = Lists.newArrayList();
+
+      // Two participants, each joining all elections through its own manager
+      for (int i = 0; i < 2; i++) {
+        ZKClientService zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+        zkClient.startAndWait();
+        zkClients.add(zkClient);
+
+        final Semaphore leaderSem = new Semaphore(0);
+        final Semaphore followerSem = new Semaphore(0);
+        Map<String, ElectionHandler> handlers = new HashMap<>();
+        for (int j = 0; j < electionCount; j++) {
+          handlers.put("/testManager/" + j, new ElectionHandler() {
+            @Override
+            public void leader() {
+              leaderSem.release();
+            }
+
+            @Override
+            public void follower() {
+              followerSem.release();
+            }
+          });
+        }
+        leaderSems.add(leaderSem);
+        followerSems.add(followerSem);
+        elections.add(new LeaderElectionManager(zkClient, null).elect(handlers));
+
+        // The first participant becomes leader of all elections before the second one joins
+        if (i == 0) {
+          Assert.assertTrue(leaderSem.tryAcquire(electionCount, 20, TimeUnit.SECONDS));
+        }
+      }
+
+      Assert.assertTrue(followerSems.get(1).tryAcquire(electionCount, 20, TimeUnit.SECONDS));
+      Assert.assertFalse(leaderSems.get(1).tryAcquire(1, TimeUnit.SECONDS));
+
+      // Leaving all elections makes the second participant leader of all of them
+      for (LeaderElection election : elections.get(0).values()) {
+        election.stopAndWait();
+      }
+      Assert.assertTrue(leaderSems.get(1).tryAcquire(electionCount, 20, TimeUnit.SECONDS));
+
+      for (LeaderElection election : elections.get(1).values()) {
+        election.stopAndWait();
+      }
+    } finally {
+      for (ZKClientService zkClient : zkClients) {
+        zkClient.stopAndWait();
+      }
+    }
+  }
+
+  @Test(timeout = 150000)
+  public void testManagerStorm() throws Exception {
+    int electionCount = 20;
+    ZKClientService zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+    try {
+      // Many participants of the same election share the manager, which only lists one path at a time
+      TestMetricsRegistry metrics = new TestMetricsRegistry();
+      LeaderElectionManager manager = new LeaderElectionManager(zkClient, metrics, 4, 1);
+      final Semaphore leaderSem = new Semaphore(0);
+      final Semaphore followerSem = new Semaphore(0);
+      List<LeaderElection> elections = Lists.newArrayList();
+      for (int i = 0; i < electionCount; i++) {
+        elections.add(manager.elect("/testManagerStorm", new ElectionHandler() {
+          @Override
+          public void leader() {
+            leaderSem.release();
+          }
+
+          @Override
+          public void follower() {
+            followerSem.release();
+          }
+        }));
+      }
+      Assert.assertTrue(leaderSem.tryAcquire(1, 20, TimeUnit.SECONDS));
+      Assert.assertTrue(followerSem.tryAcquire(electionCount - 1, 20, TimeUnit.SECONDS));
+
+      long coalescedBefore = metrics.counter(LeaderElectionManager.CHILDREN_COALESCED).getCount();
+      long fetchedBefore = metrics.counter(LeaderElectionManager.CHILDREN_FETCHED).getCount();
+      long latencyBefore = metrics.timer(LeaderElectionManager.LATENCY).getCount();
+      Assert.assertTrue(latencyBefore >= electionCount);
+
+      // Session expiry makes all participants run the election again at the same time
+      KillZKSession.kill(zkClient.getZooKeeperSupplier().get(), zkClient.getConnectString(), 20000);
+      Assert.assertTrue(leaderSem.tryAcquire(1, 60, TimeUnit.SECONDS));
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (metrics.timer(LeaderElectionManager.LATENCY).getCount() < latencyBefore + electionCount
+        && System.nanoTime() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(50);
+      }
+
+      // Listings requested during the storm are coalesced, hence fewer listings than elections
+      long coalesced = metrics.counter(LeaderElectionManager.CHILDREN_COALESCED).getCount() - coalescedBefore;
+      long fetched = metrics.counter(LeaderElectionManager.CHILDREN_FETCHED).getCount() - fetchedBefore;
+      LOG.info("Re-election after expiry listed children {} times, coalesced {} requests", fetched, coalesced);
+      Assert.assertTrue(coalesced > 0);
+      Assert.assertTrue(fetched < electionCount);
+      Assert.assertTrue(metrics.timer(LeaderElectionManager.LATENCY).getCount() >= latencyBefore + electionCount);
+
+      for (LeaderElection election : elections) {
+        election.stopAndWait();
+      }
+    } finally {
+      zkClient.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 150000)
+  public void testManagerPaths() throws Exception {
+    int pathCount = 5;
+    int participantCount = 5;
+    final ZKClientService zkClientService = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClientService.startAndWait();
+    try {
+      // Counts the connection watchers added to the ZKClient and not yet removed
+      final AtomicInteger connectionWatchers = new AtomicInteger();
+      ZKClient zkClient = new ForwardingZKClient(zkClientService) {
+        @Override
+        public Cancellable addConnectionWatcher(Watcher watcher) {
+          connectionWatchers.incrementAndGet();
+          final Cancellable cancellable = super.addConnectionWatcher(watcher);
+          return new Cancellable() {
+            @Override
+            public void cancel() {
+              connectionWatchers.decrementAndGet();
+              cancellable.cancel();
+            }
+          };
+        }
+      };
+
+      // Participants of different elections share the manager, which only lists one path at a time
+      TestMetricsRegistry metrics = new TestMetricsRegistry();
+      LeaderElectionManager manager = new LeaderElectionManager(zkClient, metrics, 4, 1);
+      final Semaphore leaderSem = new Semaphore(0);
+      final Semaphore followerSem = new Semaphore(0);
+      List<LeaderElection> elections = Lists.newArrayList();
+      for (int i = 0; i < pathCount; i++) {
+        for (int j = 0; j < participantCount; j++) {
+          elections.add(manager.elect("/testManagerPaths/" + i, new ElectionHandler() {
+            @Override
+            public void leader() {
+              leaderSem.release();
+            }
+
+            @Override
+            public void follower() {
+              followerSem.release();
+            }
+          }));
+        }
+      }
+      int electionCount = elections.size();
+      Assert.assertTrue(leaderSem.tryAcquire(pathCount, 20, TimeUnit.SECONDS));
+      Assert.assertTrue(followerSem.tryAcquire(electionCount - pathCount, 20, TimeUnit.SECONDS));
+      Assert.assertEquals(1, connectionWatchers.get());
+
+      long coalescedBefore = metrics.counter(LeaderElectionManager.CHILDREN_COALESCED).getCount();
+      long fetchedBefore = metrics.counter(LeaderElectionManager.CHILDREN_FETCHED).getCount();
+      long latencyBefore = metrics.timer(LeaderElectionManager.LATENCY).getCount();
+
+      // Session expiry makes all participants of all elections run the election again at the same time
+      KillZKSession.kill(zkClientService.getZooKeeperSupplier().get(), zkClientService.getConnectString(), 20000);
+      Assert.assertTrue(leaderSem.tryAcquire(pathCount, 60, TimeUnit.SECONDS));
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (metrics.timer(LeaderElectionManager.LATENCY).getCount() < latencyBefore + electionCount
+        && System.nanoTime() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(50);
+      }
+
+      // Listings are only coalesced within the same path, hence each path is listed at least once
+      long coalesced = metrics.counter(LeaderElectionManager.CHILDREN_COALESCED).getCount() - coalescedBefore;
+      long fetched = metrics.counter(LeaderElectionManager.CHILDREN_FETCHED).getCount() - fetchedBefore;
+      LOG.info("Re-election of {} paths listed children {} times, coalesced {} requests", pathCount, fetched,
+               coalesced);
+      Assert.assertTrue(coalesced > 0);
+      Assert.assertTrue(fetched >= pathCount);
+      Assert.assertTrue(fetched < electionCount);
+      Assert.assertTrue(metrics.timer(LeaderElectionManager.LATENCY).getCount() >= latencyBefore + electionCount);
+
+      // The connection watcher is removed from the ZKClient when all elections are stopped
+      for (LeaderElection election : elections) {
+        election.stopAndWait();
+      }
+      Assert.assertEquals(0, connectionWatchers.get());
+    } finally {
+      zkClientService.stopAndWait();
+    }
+  }
+
   @BeforeClass
   public static void init() throws IOException {
     zkServer = InMemoryZKServer.builder().setDataDir(tmpFolder.newFolder()).build();
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.twill.internal.zookeeper;
+
+import org.apache.twill.zookeeper.ZKClientService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for {@link LeasedDistributedLock}.
+ */
+public class LeasedDistributedLockTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static InMemoryZKServer zkServer;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    zkServer = InMemoryZKServer.builder().setDataDir(TMP_FOLDER.newFolder()).build();
+    zkServer.startAndWait();
+  }
+
+  @AfterClass
+  public static void finish() {
+    zkServer.stopAndWait();
+  }
+
+  @Test(timeout = 20000)
+  public void testLeaseKept() throws Exception {
+    ZKClientService zkClient = createZKClient();
+    try {
+      LeasedDistributedLock lock = new LeasedDistributedLock(zkClient, "leaseKept", 1, TimeUnit.MINUTES);
+      lock.lock();
+      try {
+        // Reentrant
+        Assert.assertTrue(lock.tryLock());
+        lock.unlock();
+      } finally {
+        lock.unlock();
+      }
+
+      // The lease is kept after unlock, hence subsequent lock is local and there is only one node in ZK
+      Assert.assertTrue(lock.hasLease());
+      for (int i = 0; i < 10; i++) {
+        lock.lock();
+        lock.unlock();
+      }
+      Assert.assertEquals(1, zkClient.getChildren("/leaseKept").get().getChildren().size());
+
+      // The lease is released on close
+      lock.close();
+      Assert.assertFalse(lock.hasLease());
+      waitForChildren(zkClient, "/leaseKept", 0);
+    } finally {
+      zkClient.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testIdleRelease() throws Exception {
+    ZKClientService zkClient = createZKClient();
+    try {
+      LeasedDistributedLock lock = new LeasedDistributedLock(zkClient, "idleRelease", 200, TimeUnit.MILLISECONDS);
+      lock.lock();
+      lock.unlock();
+      Assert.assertTrue(lock.hasLease());
+      waitForChildren(zkClient, "/idleRelease", 0);
+      Assert.assertFalse(lock.hasLease());
+
+      // The lock can be acquired again after the lease is released
+      Assert.assertTrue(lock.tryLock(5, TimeUnit.SECONDS));
+      lock.unlock();
+      lock.close();
+    } finally {
+      zkClient.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testMultiThreads() throws Exception {
+    // Threads sharing the same lock instance should be mutually exclusive
+    ZKClientService zkClient = createZKClient();
+    try {
+      final LeasedDistributedLock lock = new LeasedDistributedLock(zkClient, "multiThreads");
+      final AtomicInteger holders = new AtomicInteger();
+      final AtomicInteger violations = new AtomicInteger();
+      Thread[] threads = new Thread[5];
+      for (int i = 0; i < threads.length; i++) {
+        threads[i] = new Thread() {
+          @Override
+          public void run() {
+            for (int j = 0; j < 100; j++) {
+              lock.lock();
+              try {
+                if (holders.incrementAndGet() != 1) {
+                  violations.incrementAndGet();
+                }
+                holders.decrementAndGet();
+              } finally {
+                lock.unlock();
+              }
+            }
+          }
+        };
+        threads[i].start();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+      Assert.assertEquals(0, violations.get());
+      lock.close();
+    } finally {
+      zkClient.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testContention() throws Exception {
+    // The lease should be given up when there is another participant
+    ZKClientService zkClient1 = createZKClient();
+    ZKClientService zkClient2 = createZKClient();
+    try {
+      LeasedDistributedLock lock1 = new LeasedDistributedLock(zkClient1, "contention", 1, TimeUnit.MINUTES);
+      final ReentrantDistributedLock lock2 = new ReentrantDistributedLock(zkClient2, "contention");
+
+      lock1.lock();
+      final CountDownLatch acquired = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      Thread t = new Thread() {
+        @Override
+        public void run() {
+          lock2.lock();
+          try {
+            acquired.countDown();
+            release.await();
+          } catch (InterruptedException e) {
+            // Just release the lock
+          } finally {
+            lock2.unlock();
+          }
+        }
+      };
+      t.start();
+
+      // Shouldn't be able to acquire while lock1 is being held
+      Assert.assertFalse(acquired.await(1, TimeUnit.SECONDS));
+
+      // Unlock should release the lease since lock2 is waiting
+      lock1.unlock();
+      Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+      Assert.assertFalse(lock1.hasLease());
+
+      // Now lock1 cannot be acquired until lock2 is released
+      Assert.assertFalse(lock1.tryLock(500, TimeUnit.MILLISECONDS));
+      release.countDown();
+      Assert.assertTrue(lock1.tryLock(5, TimeUnit.SECONDS));
+      lock1.unlock();
+      t.join();
+
+      // Without other participant, the lease is kept
+      Assert.assertTrue(lock1.hasLease());
+      lock1.close();
+    } finally {
+      zkClient1.stopAndWait();
+      zkClient2.stopAndWait();
+    }
+  }
+
+  private void waitForChildren(ZKClientService zkClient, String path, int count) throws Exception {
+    while (zkClient.getChildren(path).get().getChildren().size() != count) {
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+  }
+
+  private ZKClientService createZKClient() {
+    ZKClientService zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+    return zkClient;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import org.apache.twill.zookeeper.ZKClientService;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Unit test for {@link RewatchOnExpireZKClient}.
+ */
+public class RewatchOnExpireZKClientTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static InMemoryZKServer zkServer;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    zkServer = InMemoryZKServer.builder().setDataDir(TMP_FOLDER.newFolder()).setTickTime(1000).build();
+    zkServer.startAndWait();
+  }
+
+  @AfterClass
+  public static void finish() {
+    zkServer.stopAndWait();
+  }
+
+  @Test(timeout = 120000)
+  public void testBulkRewatch() throws Exception {
+    final CountDownLatch expireReconnectLatch = new CountDownLatch(1);
+    final AtomicBoolean expired = new AtomicBoolean(false);
+    ZKClientService zkClientService = ZKClientService.Builder.of(zkServer.getConnectionStr())
+      .setSessionTimeout(2000)
+      .setConnectionWatcher(new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+          if (event.getState() == Event.KeeperState.Expired) {
+            expired.set(true);
+          } else if (event.getState() == Event.KeeperState.SyncConnected && expired.get()) {
+            expireReconnectLatch.countDown();
+          }
+        }
+      }).build();
+    zkClientService.startAndWait();
+
+    try {
+      RewatchOnExpireZKClient zkClient = new RewatchOnExpireZKClient(zkClientService);
+      Assert.assertEquals(-1L, zkClient.getLastRewatchMillis());
+
+      // Multiple watchers on the same paths, which should be re-watched with one operation per path
+      int nodes = 500;
+      int watchersPerNode = 4;
+      final CountDownLatch changedLatch = new CountDownLatch(nodes * watchersPerNode);
+      Watcher watcher = new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+          if (event.getType() == Event.EventType.NodeDataChanged) {
+            changedLatch.countDown();
+          }
+        }
+      };
+      for (int i = 0; i < nodes; i++) {
+        String path = "/bulk/node" + i;
+        zkClient.create(path, null, CreateMode.PERSISTENT).get();
+        for (int j = 0; j < watchersPerNode; j++) {
+          zkClient.getData(path, watcher).get();
+        }
+      }
+
+      KillZKSession.kill(zkClientService.getZooKeeperSupplier().get(), zkServer.getConnectionStr(), 10000);
+      Assert.assertTrue(expireReconnectLatch.await(60, TimeUnit.SECONDS));
+
+      // Wait for re-watch to complete before changing data, so that the changes are seen by the re-set watches
+      while (zkClient.getLastRewatchMillis() < 0) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+
+      for (int i = 0; i < nodes; i++) {
+        zkClient.setData("/bulk/node" + i, "changed".getBytes(StandardCharsets.UTF_8)).get();
+      }
+      Assert.assertTrue(changedLatch.await(60, TimeUnit.SECONDS));
+    } finally {
+      zkClientService.stopAndWait();
+    }
+  }
+}
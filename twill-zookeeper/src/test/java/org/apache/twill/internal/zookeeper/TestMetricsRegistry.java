@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.twill.internal.zookeeper;
+
+import org.apache.twill.api.metrics.Counter;
+import org.apache.twill.api.metrics.Gauge;
+import org.apache.twill.api.metrics.MetricsRegistry;
+import org.apache.twill.api.metrics.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MetricsRegistry} that keeps the counts of the metrics in memory.
+ */
+final class TestMetricsRegistry implements MetricsRegistry {
+
+  private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+  @Override
+  public Counter counter(String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      final AtomicLong count = new AtomicLong();
+      counter = new Counter() {
+        @Override
+        public void increment() {
+          count.incrementAndGet();
+        }
+
+        @Override
+        public void increment(long delta) {
+          count.addAndGet(delta);
+        }
+
+        @Override
+        public long getCount() {
+          return count.get();
+        }
+      };
+      Counter existing = counters.putIfAbsent(name, counter);
+      counter = existing == null ? counter : existing;
+    }
+    return counter;
+  }
+
+  @Override
+  public Timer timer(String name) {
+    Timer timer = timers.get(name);
+    if (timer == null) {
+      final AtomicLong count = new AtomicLong();
+      timer = new Timer() {
+        @Override
+        public void record(long duration, TimeUnit unit) {
+          count.incrementAndGet();
+        }
+
+        @Override
+        public long getCount() {
+          return count.get();
+        }
+      };
+      Timer existing = timers.putIfAbsent(name, timer);
+      timer = existing == null ? timer : existing;
+    }
+    return timer;
+  }
+
+  @Override
+  public void gauge(String name, Gauge gauge) {
+    gauges.put(name, gauge);
+  }
+
+  Gauge getGauge(String name) {
+    return gauges.get(name);
+  }
+}
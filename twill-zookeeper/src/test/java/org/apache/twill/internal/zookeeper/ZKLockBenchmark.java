@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.io.Files;
+import org.apache.twill.zookeeper.ZKClientService;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Benchmark for comparing read-heavy access through the exclusive {@link ReentrantDistributedLock} and
+ * through the read lock of {@link ZKReadWriteLock}, with one writer taking the write lock periodically.
+ * Each reader uses its own {@link ZKClientService} to simulate readers in different processes.
+ * <p/>
+ * Usage: {@code ZKLockBenchmark [readers, default 8] [iterations per reader, default 200]
+ * [critical section ms, default 2]}
+ */
+public final class ZKLockBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int readers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    long criticalMillis = args.length > 2 ? Long.parseLong(args[2]) : 2L;
+
+    File dataDir = Files.createTempDir();
+    InMemoryZKServer zkServer = InMemoryZKServer.builder().setDataDir(dataDir).build();
+    zkServer.startAndWait();
+    try {
+      List<ZKClientService> zkClients = new ArrayList<>();
+      for (int i = 0; i <= readers; i++) {
+        ZKClientService zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+        zkClient.startAndWait();
+        zkClients.add(zkClient);
+      }
+      try {
+        System.out.printf("%d readers, %d iterations each, %d ms critical section%n",
+                          readers, iterations, criticalMillis);
+
+        List<Lock> readLocks = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+          readLocks.add(new ReentrantDistributedLock(zkClients.get(i), "exclusive"));
+        }
+        Lock writeLock = new ReentrantDistributedLock(zkClients.get(readers), "exclusive");
+        run("exclusive lock", readLocks, writeLock, iterations, criticalMillis);
+
+        readLocks.clear();
+        for (int i = 0; i < readers; i++) {
+          readLocks.add(new ZKReadWriteLock(zkClients.get(i), "readWrite").readLock());
+        }
+        writeLock = new ZKReadWriteLock(zkClients.get(readers), "readWrite").writeLock();
+        run("read-write lock", readLocks, writeLock, iterations, criticalMillis);
+      } finally {
+        for (ZKClientService zkClient : zkClients) {
+          zkClient.stopAndWait();
+        }
+      }
+    } finally {
+      zkServer.stopAndWait();
+    }
+  }
+
+  private static void run(String name, List<Lock> readLocks, final Lock writeLock,
+                          final int iterations, final long criticalMillis) throws InterruptedException {
+    List<Thread> threads = new ArrayList<>();
+    for (final Lock lock : readLocks) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < iterations; i++) {
+            lock.lock();
+            try {
+              TimeUnit.MILLISECONDS.sleep(criticalMillis);
+            } catch (InterruptedException e) {
+              return;
+            } finally {
+              lock.unlock();
+            }
+          }
+        }
+      });
+    }
+    // One write for every hundred reads of a reader
+    threads.add(new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < iterations / 100; i++) {
+          writeLock.lock();
+          try {
+            TimeUnit.MILLISECONDS.sleep(criticalMillis);
+          } catch (InterruptedException e) {
+            return;
+          } finally {
+            writeLock.unlock();
+          }
+        }
+      }
+    });
+
+    long startTime = System.nanoTime();
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    long elapsedNanos = System.nanoTime() - startTime;
+    int reads = readLocks.size() * iterations;
+    System.out.printf("%-16s %6d ms (%8.1f reads/s)%n", name, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                      reads * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+  }
+
+  private ZKLockBenchmark() {
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.twill.internal.zookeeper;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.twill.api.PartitionAssignment;
+import org.apache.twill.api.PartitionListener;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Unit test for {@link ZKPartitionAssignment}.
+ */
+public class ZKPartitionAssignmentTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static InMemoryZKServer zkServer;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    zkServer = InMemoryZKServer.builder().setDataDir(TMP_FOLDER.newFolder()).build();
+    zkServer.startAndWait();
+  }
+
+  @AfterClass
+  public static void finish() {
+    zkServer.stopAndWait();
+  }
+
+  @Test
+  public void testAssign() {
+    for (int numPartitions : new int[] {16, 32, 100, 1000}) {
+      for (int numMembers = 1; numMembers <= 10; numMembers++) {
+        List<String> members = new ArrayList<>();
+        for (int i = 0; i < numMembers; i++) {
+          members.add("member" + i);
+        }
+        Map<String, Set<Integer>> before = ZKPartitionAssignment.assign(members, numPartitions);
+        assertAssignment(before, numPartitions);
+
+        // The assignment doesn't depend on the order of members
+        List<String> reversed = new ArrayList<>(members);
+        Collections.reverse(reversed);
+        Assert.assertEquals(before, ZKPartitionAssignment.assign(reversed, numPartitions));
+
+        // Adding a member should only move partitions that prefer the new member or that overflow
+        List<String> added = new ArrayList<>(members);
+        added.add("new");
+        Map<String, Set<Integer>> after = ZKPartitionAssignment.assign(added, numPartitions);
+        assertAssignment(after, numPartitions);
+        assertMoves(members, before, added, after, numPartitions);
+
+        // Removing a member should only move partitions of the removed member or that overflow
+        List<String> removed = new ArrayList<>(added);
+        removed.remove("member0");
+        Map<String, Set<Integer>> afterRemove = ZKPartitionAssignment.assign(removed, numPartitions);
+        assertAssignment(afterRemove, numPartitions);
+        assertMoves(added, after, removed, afterRemove, numPartitions);
+      }
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testHandoff() throws InterruptedException {
+    final int numPartitions = 32;
+    final AtomicIntegerArray owners = new AtomicIntegerArray(numPartitions);
+    final AtomicInteger violations = new AtomicInteger();
+    final AtomicInteger owned = new AtomicInteger();
+
+    PartitionListener listener = new PartitionListener() {
+      @Override
+      public void acquired(Set<Integer> partitions) {
+        for (int partition : partitions) {
+          if (owners.incrementAndGet(partition) != 1) {
+            violations.incrementAndGet();
+          }
+          owned.incrementAndGet();
+        }
+      }
+
+      @Override
+      public void released(Set<Integer> partitions) {
+        for (int partition : partitions) {
+          owners.decrementAndGet(partition);
+          owned.decrementAndGet();
+        }
+      }
+    };
+
+    List<ZKClientService> zkClients = new ArrayList<>();
+    List<PartitionAssignment> assignments = new ArrayList<>();
+    Map<String, PartitionAssignment> members = new HashMap<>();
+    try {
+      for (int i = 0; i < 3; i++) {
+        ZKClientService zkClient = createZKClient();
+        zkClients.add(zkClient);
+        PartitionAssignment assignment = new ZKPartitionAssignment(zkClient, "handoff", "member" + i, numPartitions);
+        assignment.addListener(listener);
+        assignments.add(assignment);
+        members.put("member" + i, assignment);
+
+        // All partitions should be owned by exactly one member, as computed by the assignment
+        waitForAssignment(members, owned, numPartitions);
+        Assert.assertEquals(0, violations.get());
+      }
+
+      int total = 0;
+      for (PartitionAssignment assignment : assignments) {
+        Assert.assertFalse(assignment.getPartitions().isEmpty());
+        total += assignment.getPartitions().size();
+      }
+      Assert.assertEquals(numPartitions, total);
+
+      // Leaving should hand over the partitions to the remaining members
+      assignments.get(0).cancel();
+      members.remove("member0");
+      waitForAssignment(members, owned, numPartitions);
+      Assert.assertEquals(0, violations.get());
+      Assert.assertTrue(assignments.get(0).getPartitions().isEmpty());
+
+      // Leaving and closing the session right after should also hand over the partitions
+      assignments.get(1).cancel();
+      zkClients.get(1).stopAndWait();
+      members.remove("member1");
+      waitForAssignment(members, owned, numPartitions);
+      Assert.assertEquals(numPartitions, assignments.get(2).getPartitions().size());
+      Assert.assertEquals(0, violations.get());
+    } finally {
+      for (PartitionAssignment assignment : assignments) {
+        assignment.cancel();
+      }
+      for (ZKClientService zkClient : ImmutableList.copyOf(zkClients)) {
+        zkClient.stopAndWait();
+      }
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testDisconnect() throws IOException, InterruptedException {
+    File zkDataDir = TMP_FOLDER.newFolder();
+    InMemoryZKServer ownZKServer = InMemoryZKServer.builder().setDataDir(zkDataDir).build();
+    ownZKServer.startAndWait();
+    try {
+      ZKClientService zkClient = ZKClientService.Builder.of(ownZKServer.getConnectionStr())
+        .setSessionTimeout(60000).build();
+      zkClient.startAndWait();
+      try {
+        final int numPartitions = 8;
+        final AtomicInteger owned = new AtomicInteger();
+        PartitionAssignment assignment = new ZKPartitionAssignment(zkClient, "disconnect", "member", numPartitions);
+        assignment.addListener(new PartitionListener() {
+          @Override
+          public void acquired(Set<Integer> partitions) {
+            owned.addAndGet(partitions.size());
+          }
+
+          @Override
+          public void released(Set<Integer> partitions) {
+            owned.addAndGet(-partitions.size());
+          }
+        });
+        waitForOwned(owned, numPartitions);
+
+        // All partitions are released right after disconnect
+        int zkPort = ownZKServer.getLocalAddress().getPort();
+        ownZKServer.stopAndWait();
+        waitForOwned(owned, 0);
+        Assert.assertTrue(assignment.getPartitions().isEmpty());
+
+        // And acquired again after reconnecting with the same session
+        ownZKServer = InMemoryZKServer.builder().setDataDir(zkDataDir).setPort(zkPort).build();
+        ownZKServer.startAndWait();
+        waitForOwned(owned, numPartitions);
+        Assert.assertEquals(numPartitions, assignment.getPartitions().size());
+
+        assignment.cancel();
+        waitForOwned(owned, 0);
+      } finally {
+        zkClient.stopAndWait();
+      }
+    } finally {
+      ownZKServer.stopAndWait();
+    }
+  }
+
+  private void waitForOwned(AtomicInteger owned, int expected) throws InterruptedException {
+    while (owned.get() != expected) {
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+  }
+
+  private void assertAssignment(Map<String, Set<Integer>> assignment, int numPartitions) {
+    int capacity = (int) Math.ceil(ZKPartitionAssignment.LOAD_FACTOR * numPartitions / assignment.size());
+    Set<Integer> all = new HashSet<>();
+    for (Set<Integer> partitions : assignment.values()) {
+      Assert.assertTrue(partitions.size() <= capacity);
+      for (Integer partition : partitions) {
+        Assert.assertTrue(all.add(partition));
+      }
+    }
+    Assert.assertEquals(numPartitions, all.size());
+  }
+
+  /**
+   * Asserts that a partition only changes owner if its preferred member changed, or if it is not owned by its
+   * preferred member before or after the change due to the capacity.
+   */
+  private void assertMoves(List<String> membersBefore, Map<String, Set<Integer>> before,
+                           List<String> membersAfter, Map<String, Set<Integer>> after, int numPartitions) {
+    Map<Integer, String> ownersBefore = getOwners(before);
+    Map<Integer, String> ownersAfter = getOwners(after);
+    for (int partition = 0; partition < numPartitions; partition++) {
+      String preferredBefore = ZKPartitionAssignment.getPreferredMember(membersBefore, partition);
+      String preferredAfter = ZKPartitionAssignment.getPreferredMember(membersAfter, partition);
+      if (!ownersBefore.get(partition).equals(ownersAfter.get(partition))) {
+        Assert.assertTrue("Unexpected move of partition " + partition,
+                          !preferredBefore.equals(preferredAfter)
+                            || !preferredBefore.equals(ownersBefore.get(partition))
+                            || !preferredAfter.equals(ownersAfter.get(partition)));
+      }
+    }
+  }
+
+  private Map<Integer, String> getOwners(Map<String, Set<Integer>> assignment) {
+    Map<Integer, String> owners = new HashMap<>();
+    for (Map.Entry<String, Set<Integer>> entry : assignment.entrySet()) {
+      for (Integer partition : entry.getValue()) {
+        owners.put(partition, entry.getKey());
+      }
+    }
+    return owners;
+  }
+
+  /**
+   * Waits until all partitions are owned, and the given members own the partitions computed for them.
+   */
+  private void waitForAssignment(Map<String, PartitionAssignment> members,
+                                 AtomicInteger owned, int numPartitions) throws InterruptedException {
+    Map<String, Set<Integer>> expected = ZKPartitionAssignment.assign(members.keySet(), numPartitions);
+    while (owned.get() != numPartitions || !getAssignment(members).equals(expected)) {
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+  }
+
+  private Map<String, Set<Integer>> getAssignment(Map<String, PartitionAssignment> members) {
+    Map<String, Set<Integer>> result = new HashMap<>();
+    for (Map.Entry<String, PartitionAssignment> entry : members.entrySet()) {
+      result.put(entry.getKey(), new TreeSet<>(entry.getValue().getPartitions()));
+    }
+    return result;
+  }
+
+  private ZKClientService createZKClient() {
+    ZKClientService zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+    return zkClient;
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.twill.internal.zookeeper;
+
+import org.apache.twill.zookeeper.ZKClientService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * Unit test for {@link ZKReadWriteLock}.
+ */
+public class ZKReadWriteLockTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static InMemoryZKServer zkServer;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    zkServer = InMemoryZKServer.builder().setDataDir(TMP_FOLDER.newFolder()).build();
+    zkServer.startAndWait();
+  }
+
+  @AfterClass
+  public static void finish() {
+    zkServer.stopAndWait();
+  }
+
+  @Test(timeout = 20000)
+  public void testSharedRead() throws InterruptedException {
+    ZKClientService zkClient1 = createZKClient();
+    ZKClientService zkClient2 = createZKClient();
+    try {
+      ReadWriteLock lock1 = new ZKReadWriteLock(zkClient1, "sharedRead");
+      ReadWriteLock lock2 = new ZKReadWriteLock(zkClient2, "sharedRead");
+
+      // Multiple readers can hold the read lock, but not the write lock.
+      lock1.readLock().lock();
+      try {
+        Assert.assertTrue(lock2.readLock().tryLock());
+        lock2.readLock().unlock();
+        Assert.assertFalse(lock2.writeLock().tryLock());
+        Assert.assertFalse(lock2.writeLock().tryLock(500, TimeUnit.MILLISECONDS));
+      } finally {
+        lock1.readLock().unlock();
+      }
+      Assert.assertTrue(lock2.writeLock().tryLock(5, TimeUnit.SECONDS));
+      lock2.writeLock().unlock();
+    } finally {
+      zkClient1.stopAndWait();
+      zkClient2.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testWriteExclusive() throws InterruptedException {
+    ZKClientService zkClient1 = createZKClient();
+    ZKClientService zkClient2 = createZKClient();
+    try {
+      ReadWriteLock lock1 = new ZKReadWriteLock(zkClient1, "writeExclusive");
+      final ReadWriteLock lock2 = new ZKReadWriteLock(zkClient2, "writeExclusive");
+
+      final CountDownLatch readAcquired = new CountDownLatch(1);
+      Thread t = new Thread() {
+        @Override
+        public void run() {
+          lock2.readLock().lock();
+          try {
+            readAcquired.countDown();
+          } finally {
+            lock2.readLock().unlock();
+          }
+        }
+      };
+
+      lock1.writeLock().lock();
+      try {
+        // Reentrant, and the read lock can be acquired while holding the write lock.
+        lock1.writeLock().lock();
+        lock1.writeLock().unlock();
+        lock1.readLock().lock();
+        lock1.readLock().unlock();
+
+        t.start();
+        Assert.assertFalse(readAcquired.await(1, TimeUnit.SECONDS));
+      } finally {
+        lock1.writeLock().unlock();
+      }
+      Assert.assertTrue(readAcquired.await(5, TimeUnit.SECONDS));
+      t.join();
+    } finally {
+      zkClient1.stopAndWait();
+      zkClient2.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testWriterBlocksNewReaders() throws InterruptedException {
+    // A waiting writer should block readers that come after it
+    ZKClientService zkClient = createZKClient();
+    try {
+      final ReadWriteLock lock = new ZKReadWriteLock(zkClient, "writerBlocks");
+      final Lock readLock = lock.readLock();
+      readLock.lock();
+
+      final CountDownLatch writeAcquired = new CountDownLatch(1);
+      final CountDownLatch writeRelease = new CountDownLatch(1);
+      Thread writer = new Thread() {
+        @Override
+        public void run() {
+          lock.writeLock().lock();
+          try {
+            writeAcquired.countDown();
+            writeRelease.await();
+          } catch (InterruptedException e) {
+            // Just release the lock
+          } finally {
+            lock.writeLock().unlock();
+          }
+        }
+      };
+      writer.start();
+      Assert.assertFalse(writeAcquired.await(500, TimeUnit.MILLISECONDS));
+
+      final CountDownLatch readAcquired = new CountDownLatch(1);
+      Thread reader = new Thread() {
+        @Override
+        public void run() {
+          readLock.lock();
+          try {
+            readAcquired.countDown();
+          } finally {
+            readLock.unlock();
+          }
+        }
+      };
+      reader.start();
+      Assert.assertFalse(readAcquired.await(500, TimeUnit.MILLISECONDS));
+
+      // Release the first reader, the writer should get the lock, then the second reader
+      readLock.unlock();
+      Assert.assertTrue(writeAcquired.await(5, TimeUnit.SECONDS));
+      Assert.assertEquals(1L, readAcquired.getCount());
+      writeRelease.countDown();
+      Assert.assertTrue(readAcquired.await(5, TimeUnit.SECONDS));
+
+      writer.join();
+      reader.join();
+    } finally {
+      zkClient.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testDowngrade() throws InterruptedException {
+    ZKClientService zkClient1 = createZKClient();
+    ZKClientService zkClient2 = createZKClient();
+    try {
+      ReadWriteLock lock1 = new ZKReadWriteLock(zkClient1, "downgrade");
+      ReadWriteLock lock2 = new ZKReadWriteLock(zkClient2, "downgrade");
+
+      // Releasing the write lock while holding the read lock keeps the read lock
+      lock1.writeLock().lock();
+      lock1.readLock().lock();
+      lock1.writeLock().unlock();
+
+      // No writer can take over before the downgraded read lock is released
+      Assert.assertFalse(lock2.writeLock().tryLock(500, TimeUnit.MILLISECONDS));
+      lock1.readLock().unlock();
+      Assert.assertTrue(lock2.writeLock().tryLock(5, TimeUnit.SECONDS));
+      lock2.writeLock().unlock();
+    } finally {
+      zkClient1.stopAndWait();
+      zkClient2.stopAndWait();
+    }
+  }
+
+  private ZKClientService createZKClient() {
+    ZKClientService zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+    return zkClient;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.twill.internal.zookeeper;
+
+import org.apache.twill.api.DistributedSemaphore;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link ZKSemaphore}.
+ */
+public class ZKSemaphoreTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static InMemoryZKServer zkServer;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    zkServer = InMemoryZKServer.builder().setDataDir(TMP_FOLDER.newFolder()).build();
+    zkServer.startAndWait();
+  }
+
+  @AfterClass
+  public static void finish() {
+    zkServer.stopAndWait();
+  }
+
+  @Test(timeout = 20000)
+  public void testPermits() throws InterruptedException {
+    ZKClientService zkClient1 = createZKClient();
+    ZKClientService zkClient2 = createZKClient();
+    try {
+      DistributedSemaphore semaphore1 = new ZKSemaphore(zkClient1, "permits", 2);
+      DistributedSemaphore semaphore2 = new ZKSemaphore(zkClient2, "permits", 2);
+
+      semaphore1.acquire();
+      Assert.assertTrue(semaphore2.tryAcquire());
+      // No more permits
+      Assert.assertFalse(semaphore1.tryAcquire());
+      Assert.assertFalse(semaphore2.tryAcquire(500, TimeUnit.MILLISECONDS));
+
+      // Releasing a permit from one client makes it available to the other
+      semaphore1.release();
+      Assert.assertTrue(semaphore2.tryAcquire(5, TimeUnit.SECONDS));
+
+      semaphore2.release();
+      semaphore2.release();
+
+      try {
+        semaphore2.release();
+        Assert.fail("Expected IllegalStateException");
+      } catch (IllegalStateException e) {
+        // Expected
+      }
+    } finally {
+      zkClient1.stopAndWait();
+      zkClient2.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testSessionClose() throws InterruptedException {
+    // Permits held by a client are released when the session is closed
+    ZKClientService zkClient1 = createZKClient();
+    ZKClientService zkClient2 = createZKClient();
+    try {
+      DistributedSemaphore semaphore1 = new ZKSemaphore(zkClient1, "sessionClose", 1);
+      DistributedSemaphore semaphore2 = new ZKSemaphore(zkClient2, "sessionClose", 1);
+
+      semaphore1.acquire();
+      Assert.assertFalse(semaphore2.tryAcquire());
+      zkClient1.stopAndWait();
+      Assert.assertTrue(semaphore2.tryAcquire(5, TimeUnit.SECONDS));
+      semaphore2.release();
+    } finally {
+      zkClient2.stopAndWait();
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testWaitingQueue() throws Exception {
+    // Waiters only watch the node before their own, hence the permit must be handed down the queue
+    ZKClientService zkClient = createZKClient();
+    try {
+      final DistributedSemaphore semaphore = new ZKSemaphore(zkClient, "waitingQueue", 1);
+      semaphore.acquire();
+
+      int waiters = 3;
+      final BlockingQueue<Integer> acquired = new LinkedBlockingQueue<>();
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < waiters; i++) {
+        final int id = i;
+        Thread t = new Thread() {
+          @Override
+          public void run() {
+            try {
+              semaphore.acquire();
+              acquired.add(id);
+            } catch (InterruptedException e) {
+              // Just exit
+            }
+          }
+        };
+        t.start();
+        threads.add(t);
+      }
+      Assert.assertNull(acquired.poll(500, TimeUnit.MILLISECONDS));
+
+      // Each release grants exactly one waiter
+      for (int i = 0; i < waiters; i++) {
+        semaphore.release();
+        Assert.assertNotNull(acquired.poll(5, TimeUnit.SECONDS));
+        Assert.assertNull(acquired.poll(200, TimeUnit.MILLISECONDS));
+      }
+      semaphore.release();
+      for (Thread t : threads) {
+        t.join();
+      }
+    } finally {
+      zkClient.stopAndWait();
+    }
+  }
+
+  private ZKClientService createZKClient() {
+    ZKClientService zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+    return zkClient;
+  }
+}
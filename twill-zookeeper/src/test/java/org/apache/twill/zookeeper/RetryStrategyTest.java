@@ -20,6 +20,8 @@ package org.apache.twill.zookeeper;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -91,4 +93,38 @@ public class RetryStrategyTest {
     TimeUnit.MILLISECONDS.sleep(1100);
     Assert.assertEquals(-1L, strategy.nextRetry(2, startTime, RetryStrategy.OperationType.CREATE, "/"));
   }
+
+  @Test
+  public void testDecorrelatedJitter() {
+    RetryStrategy strategy = RetryStrategies.decorrelatedJitter(100, 10000, TimeUnit.MILLISECONDS);
+    long startTime = System.currentTimeMillis();
+    Assert.assertEquals(100L, strategy.nextRetry(1, startTime, RetryStrategy.OperationType.CREATE, "/"));
+
+    Set<Long> delays = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      long delay = strategy.nextRetry(3, startTime, RetryStrategy.OperationType.CREATE, "/");
+      Assert.assertTrue(delay >= 100L && delay <= 900L);
+      delays.add(delay);
+    }
+    // Delays are randomized
+    Assert.assertTrue(delays.size() > 1);
+
+    for (int i = 60; i <= 80; i++) {
+      long delay = strategy.nextRetry(i, startTime, RetryStrategy.OperationType.CREATE, "/");
+      Assert.assertTrue(delay >= 100L && delay <= 10000L);
+    }
+  }
+
+  @Test
+  public void testJitter() {
+    RetryStrategy strategy = RetryStrategies.jitter(0.5d, RetryStrategies.fixDelay(1000, TimeUnit.MILLISECONDS));
+    long startTime = System.currentTimeMillis();
+    for (int i = 1; i <= 100; i++) {
+      long delay = strategy.nextRetry(i, startTime, RetryStrategy.OperationType.CREATE, "/");
+      Assert.assertTrue(delay >= 500L && delay <= 1500L);
+    }
+    // Giving up is not affected by jitter
+    Assert.assertEquals(-1L, RetryStrategies.jitter(0.5d, RetryStrategies.noRetry())
+      .nextRetry(1, startTime, RetryStrategy.OperationType.CREATE, "/"));
+  }
 }
@@ -24,6 +24,7 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
 import org.apache.twill.internal.zookeeper.KillZKSession;
+import org.apache.twill.internal.zookeeper.ShardedZKClientService;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
@@ -44,7 +45,9 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -395,6 +398,141 @@ public class ZKClientTest {
     }
   }
 
+  @Test
+  public void testSharded() throws ExecutionException, InterruptedException {
+    InMemoryZKServer zkServer = InMemoryZKServer.builder().setTickTime(1000).build();
+    zkServer.startAndWait();
+
+    try {
+      ZKClientService zkClient = ZKClientServices.sharded(zkServer.getConnectionStr(), 4,
+                                                          ZKClientServices.pathPrefix(2));
+      zkClient.startAndWait();
+      ZKClientService plainClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+      plainClient.startAndWait();
+      try {
+        Set<Long> sessions = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+          String app = "/sharded/app" + i;
+          byte[] data = Integer.toString(i).getBytes();
+          zkClient.create(app + "/instances/run", data, CreateMode.PERSISTENT).get();
+          Assert.assertArrayEquals(data, zkClient.getData(app + "/instances/run").get().getData());
+          Assert.assertArrayEquals(data, plainClient.getData(app + "/instances/run").get().getData());
+
+          // All paths with the same prefix use the same session
+          ShardedZKClientService sharded = (ShardedZKClientService) zkClient;
+          Long sessionId = sharded.getShard(app).getSessionId();
+          Assert.assertEquals(sessionId, sharded.getShard(app + "/instances/run").getSessionId());
+          Assert.assertEquals(sessionId, sharded.getSessionId(app + "/instances/run"));
+          sessions.add(sessionId);
+        }
+        Assert.assertEquals(20, zkClient.getChildren("/sharded").get().getChildren().size());
+        Assert.assertTrue(sessions.size() > 1);
+      } finally {
+        plainClient.stopAndWait();
+        zkClient.stopAndWait();
+      }
+    } finally {
+      zkServer.stopAndWait();
+    }
+  }
+
+  @Test
+  public void testShardedConnectionState() throws Exception {
+    File dataDir = tmpFolder.newFolder();
+    InMemoryZKServer zkServer = InMemoryZKServer.builder().setDataDir(dataDir).setTickTime(1000).build();
+    zkServer.startAndWait();
+    int port = zkServer.getLocalAddress().getPort();
+
+    final BlockingQueue<Watcher.Event.KeeperState> states = new LinkedBlockingQueue<>();
+    ZKClientService zkClient = ZKClientServices.sharded(zkServer.getConnectionStr(), 4,
+                                                        ZKClientServices.pathPrefix(1));
+    zkClient.addConnectionWatcher(new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        states.add(event.getState());
+      }
+    });
+    zkClient.startAndWait();
+    try {
+      // Only one event after all shards are connected
+      Assert.assertEquals(Watcher.Event.KeeperState.SyncConnected, states.poll(10, TimeUnit.SECONDS));
+
+      // Disconnect all shards by restarting the server
+      zkServer.stopAndWait();
+      Assert.assertEquals(Watcher.Event.KeeperState.Disconnected, states.poll(10, TimeUnit.SECONDS));
+      zkServer = InMemoryZKServer.builder().setDataDir(dataDir).setTickTime(1000).setPort(port).build();
+      zkServer.startAndWait();
+      Assert.assertEquals(Watcher.Event.KeeperState.SyncConnected, states.poll(10, TimeUnit.SECONDS));
+      Assert.assertNull(states.poll(2, TimeUnit.SECONDS));
+    } finally {
+      zkClient.stopAndWait();
+      zkServer.stopAndWait();
+    }
+  }
+
+  @Test
+  public void testShardedExpire() throws Exception {
+    InMemoryZKServer zkServer = InMemoryZKServer.builder().setTickTime(1000).build();
+    zkServer.startAndWait();
+
+    final BlockingQueue<Watcher.Event.KeeperState> states = new LinkedBlockingQueue<>();
+    final BlockingQueue<Watcher.Event.KeeperState> shardStates = new LinkedBlockingQueue<>();
+    ShardedZKClientService zkClient = (ShardedZKClientService) ZKClientServices.sharded(
+      zkServer.getConnectionStr(), 4, ZKClientServices.pathPrefix(1));
+    zkClient.addConnectionWatcher(new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        states.add(event.getState());
+      }
+    });
+    zkClient.startAndWait();
+    try {
+      Assert.assertEquals(Watcher.Event.KeeperState.SyncConnected, states.poll(10, TimeUnit.SECONDS));
+
+      // Find a path that is not routed to the first shard
+      String path = null;
+      for (int i = 0; path == null; i++) {
+        if (!zkClient.getSessionId("/app" + i).equals(zkClient.getSessionId())) {
+          path = "/app" + i;
+        }
+      }
+      ZKClientService shard = (ZKClientService) zkClient.getShard(path);
+      shard.addConnectionWatcher(new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+          shardStates.add(event.getState());
+        }
+      });
+
+      // Expiration of the session of that shard is only seen through the client of the shard
+      Long firstSessionId = zkClient.getSessionId();
+      Long sessionId = zkClient.getSessionId(path);
+      KillZKSession.kill(shard.getZooKeeperSupplier().get(), zkServer.getConnectionStr(), 10000);
+      Watcher.Event.KeeperState state = shardStates.poll(10, TimeUnit.SECONDS);
+      while (state != null && state != Watcher.Event.KeeperState.Expired) {
+        state = shardStates.poll(10, TimeUnit.SECONDS);
+      }
+      Assert.assertEquals(Watcher.Event.KeeperState.Expired, state);
+      Assert.assertEquals(Watcher.Event.KeeperState.SyncConnected, shardStates.poll(10, TimeUnit.SECONDS));
+
+      Assert.assertNotEquals(sessionId, zkClient.getSessionId(path));
+      Assert.assertEquals(firstSessionId, zkClient.getSessionId());
+      Assert.assertFalse(states.contains(Watcher.Event.KeeperState.Expired));
+
+      // Expiration of the first shard is delivered to watchers of the sharded client
+      KillZKSession.kill(zkClient.getZooKeeperSupplier().get(), zkServer.getConnectionStr(), 10000);
+      state = states.poll(10, TimeUnit.SECONDS);
+      while (state != null && state != Watcher.Event.KeeperState.Expired) {
+        state = states.poll(10, TimeUnit.SECONDS);
+      }
+      Assert.assertEquals(Watcher.Event.KeeperState.Expired, state);
+      Assert.assertEquals(Watcher.Event.KeeperState.SyncConnected, states.poll(10, TimeUnit.SECONDS));
+    } finally {
+      zkClient.stopAndWait();
+      zkServer.stopAndWait();
+    }
+  }
+
   @Test
   public void testNamespace() throws ExecutionException, InterruptedException {
     InMemoryZKServer zkServer = InMemoryZKServer.builder().setTickTime(1000).build();
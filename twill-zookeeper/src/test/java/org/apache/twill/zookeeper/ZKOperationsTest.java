@@ -17,14 +17,28 @@
  */
 package org.apache.twill.zookeeper;
 
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
+import org.apache.twill.internal.zookeeper.KillZKSession;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  *
@@ -60,4 +74,219 @@ public class ZKOperationsTest {
       zkServer.stopAndWait();
     }
   }
+
+  @Test
+  public void cacheTree() throws Exception {
+    InMemoryZKServer zkServer = InMemoryZKServer.builder().setTickTime(1000).build();
+    zkServer.startAndWait();
+
+    try {
+      ZKClientService client = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+      client.startAndWait();
+
+      try {
+        client.create("/tree/a", "a".getBytes(StandardCharsets.UTF_8), CreateMode.PERSISTENT).get();
+        client.create("/tree/a/a1/a11", null, CreateMode.PERSISTENT).get();
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        TreeCache cache = ZKOperations.cacheTree(client, "/tree", 2, new TreeCache.Listener() {
+          @Override
+          public void nodeChanged(TreeCache.EventType type, String path, NodeData nodeData) {
+            events.add(type + " " + path);
+          }
+        });
+
+        try {
+          // Parent is always added before children. Nodes deeper than the max depth are not cached.
+          Assert.assertEquals("ADDED /tree", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertEquals("ADDED /tree/a", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertEquals("ADDED /tree/a/a1", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertNull(events.poll(500, TimeUnit.MILLISECONDS));
+          Assert.assertNull(cache.getData("/tree/a/a1/a11"));
+
+          client.setData("/tree/a", "b".getBytes(StandardCharsets.UTF_8)).get();
+          Assert.assertEquals("UPDATED /tree/a", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertArrayEquals("b".getBytes(StandardCharsets.UTF_8), cache.getData("/tree/a").getData());
+
+          client.create("/tree/b", null, CreateMode.PERSISTENT).get();
+          Assert.assertEquals("ADDED /tree/b", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertEquals(ImmutableSet.of("a", "b"), cache.getChildren("/tree"));
+
+          // Children are removed before the parent.
+          ZKOperations.recursiveDelete(client, "/tree/a").get(5, TimeUnit.SECONDS);
+          Assert.assertEquals("REMOVED /tree/a/a1", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertEquals("REMOVED /tree/a", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertEquals(ImmutableSet.of("b"), cache.getChildren("/tree"));
+        } finally {
+          cache.cancel();
+        }
+      } finally {
+        client.stopAndWait();
+      }
+    } finally {
+      zkServer.stopAndWait();
+    }
+  }
+
+  @Test
+  public void cacheTreeChildren() throws Exception {
+    InMemoryZKServer zkServer = InMemoryZKServer.builder().setTickTime(1000).build();
+    zkServer.startAndWait();
+
+    try {
+      ZKClientService client = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+      client.startAndWait();
+
+      try {
+        client.create("/children/a", "a".getBytes(StandardCharsets.UTF_8), CreateMode.PERSISTENT).get();
+
+        // Count the data reads made by the cache
+        final AtomicInteger dataReads = new AtomicInteger();
+        ZKClient countingClient = new ForwardingZKClient(client) {
+          @Override
+          public OperationFuture<NodeData> getData(String path, @Nullable Watcher watcher) {
+            dataReads.incrementAndGet();
+            return super.getData(path, watcher);
+          }
+        };
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        TreeCache cache = ZKOperations.cacheTree(countingClient, "/children", 1, Predicates.<String>alwaysTrue(),
+                                                 false, new TreeCache.Listener() {
+          @Override
+          public void nodeChanged(TreeCache.EventType type, String path, @Nullable NodeData nodeData) {
+            Assert.assertNull(nodeData);
+            events.add(type + " " + path);
+          }
+        });
+
+        try {
+          Assert.assertEquals("ADDED /children", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertEquals("ADDED /children/a", events.poll(5, TimeUnit.SECONDS));
+
+          // Data updates are neither read nor reported
+          client.setData("/children/a", "b".getBytes(StandardCharsets.UTF_8)).get();
+          client.setData("/children", "b".getBytes(StandardCharsets.UTF_8)).get();
+          Assert.assertNull(events.poll(500, TimeUnit.MILLISECONDS));
+
+          client.create("/children/b", null, CreateMode.PERSISTENT).get();
+          Assert.assertEquals("ADDED /children/b", events.poll(5, TimeUnit.SECONDS));
+          client.delete("/children/a").get();
+          Assert.assertEquals("REMOVED /children/a", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertEquals(ImmutableSet.of("b"), cache.getChildren("/children"));
+
+          // Removing the root removes all nodes, and the root is added back once created again
+          ZKOperations.recursiveDelete(client, "/children").get(5, TimeUnit.SECONDS);
+          Assert.assertEquals("REMOVED /children/b", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertEquals("REMOVED /children", events.poll(5, TimeUnit.SECONDS));
+          client.create("/children", null, CreateMode.PERSISTENT).get();
+          Assert.assertEquals("ADDED /children", events.poll(5, TimeUnit.SECONDS));
+
+          Assert.assertEquals(0, dataReads.get());
+        } finally {
+          cache.cancel();
+        }
+      } finally {
+        client.stopAndWait();
+      }
+    } finally {
+      zkServer.stopAndWait();
+    }
+  }
+
+  @Test
+  public void cacheTreeExpire() throws Exception {
+    InMemoryZKServer zkServer = InMemoryZKServer.builder().setTickTime(1000).build();
+    zkServer.startAndWait();
+
+    try {
+      // Watches lost on expiry should be set again exactly once, with and without a client that re-watches
+      testCacheTreeExpire(zkServer, false);
+      testCacheTreeExpire(zkServer, true);
+    } finally {
+      zkServer.stopAndWait();
+    }
+  }
+
+  private void testCacheTreeExpire(InMemoryZKServer zkServer, boolean rewatch) throws Exception {
+    final CountDownLatch expireReconnectLatch = new CountDownLatch(1);
+    final AtomicBoolean expired = new AtomicBoolean(false);
+    ZKClientService client = ZKClientService.Builder.of(zkServer.getConnectionStr())
+      .setSessionTimeout(2000)
+      .setConnectionWatcher(new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+          if (event.getState() == Event.KeeperState.Expired) {
+            expired.set(true);
+          } else if (event.getState() == Event.KeeperState.SyncConnected && expired.get()) {
+            expireReconnectLatch.countDown();
+          }
+        }
+      }).build();
+    client.startAndWait();
+
+    try {
+      final String path = "/expire" + (rewatch ? "/rewatch" : "/plain");
+      client.create(path + "/a", null, CreateMode.PERSISTENT).get();
+
+      // Counts the successful reads of the child node, each of them sets a new watch
+      final AtomicInteger reads = new AtomicInteger();
+      ZKClient cacheClient = new ForwardingZKClient(rewatch ? ZKClients.reWatchOnExpire(client) : client) {
+        @Override
+        public OperationFuture<NodeData> getData(String dataPath, @Nullable Watcher watcher) {
+          OperationFuture<NodeData> future = super.getData(dataPath, watcher);
+          if (dataPath.equals(path + "/a")) {
+            Futures.addCallback(future, new FutureCallback<NodeData>() {
+              @Override
+              public void onSuccess(NodeData result) {
+                reads.incrementAndGet();
+              }
+
+              @Override
+              public void onFailure(Throwable t) {
+                // No watch is set on failure
+              }
+            });
+          }
+          return future;
+        }
+      };
+
+      final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+      TreeCache cache = ZKOperations.cacheTree(cacheClient, path, 1, new TreeCache.Listener() {
+        @Override
+        public void nodeChanged(TreeCache.EventType type, String nodePath, NodeData nodeData) {
+          events.add(type + " " + nodePath);
+        }
+      });
+
+      try {
+        Assert.assertEquals("ADDED " + path, events.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals("ADDED " + path + "/a", events.poll(5, TimeUnit.SECONDS));
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assert.assertEquals(1, reads.get());
+
+        KillZKSession.kill(client.getZooKeeperSupplier().get(), zkServer.getConnectionStr(), 10000);
+        Assert.assertTrue(expireReconnectLatch.await(60, TimeUnit.SECONDS));
+        TimeUnit.SECONDS.sleep(1);
+
+        // Without re-watch by the client, the node is read again as its watch is lost
+        Assert.assertEquals(rewatch ? 1 : 2, reads.get());
+        Assert.assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+
+        // Each change should be seen once and read once
+        for (int i = 0; i < 3; i++) {
+          int readsBefore = reads.get();
+          client.setData(path + "/a", ("data" + i).getBytes(StandardCharsets.UTF_8)).get();
+          Assert.assertEquals("UPDATED " + path + "/a", events.poll(5, TimeUnit.SECONDS));
+          Assert.assertNull(events.poll(500, TimeUnit.MILLISECONDS));
+          Assert.assertEquals(readsBefore + 1, reads.get());
+        }
+      } finally {
+        cache.cancel();
+      }
+    } finally {
+      client.stopAndWait();
+    }
+  }
 }